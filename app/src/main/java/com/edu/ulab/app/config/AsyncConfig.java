@@ -0,0 +1,83 @@
+package com.edu.ulab.app.config;
+
+import com.edu.ulab.app.web.async.MdcTaskDecorator;
+import com.edu.ulab.app.web.async.UserRequestExecutor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.task.TaskDecorator;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Режим выполнения запросов UserController, по умолчанию синхронный.
+ * При user-controller.async.enabled=true вызовы фасада выполняются на виртуальных потоках,
+ * если JDK их поддерживает, иначе на пуле платформенных потоков с ограниченной очередью.
+ * В обоих режимах контроллер возвращает CompletableFuture, который Spring MVC обрабатывает стандартно,
+ * в синхронном режиме future уже завершён к возврату из метода.
+ */
+@Slf4j
+@Configuration
+public class AsyncConfig {
+
+    @Value("${user-controller.async.enabled:false}")
+    private boolean asyncEnabled;
+
+    @Value("${user-controller.async.virtual-threads:true}")
+    private boolean virtualThreads;
+
+    @Value("${user-controller.async.max-in-flight:1000}")
+    private int maxInFlight;
+
+    @Value("${user-controller.async.pool-size:64}")
+    private int poolSize;
+
+    @Value("${user-controller.async.queue-capacity:1000}")
+    private int queueCapacity;
+
+    /**
+     * Подхватывается applicationTaskExecutor, на котором Spring MVC выполняет StreamingResponseBody.
+     */
+    @Bean
+    public TaskDecorator mdcTaskDecorator() {
+        return new MdcTaskDecorator();
+    }
+
+    @Bean
+    public UserRequestExecutor userRequestExecutor() {
+        if (!asyncEnabled) {
+            return UserRequestExecutor.direct();
+        }
+        MdcTaskDecorator taskDecorator = new MdcTaskDecorator();
+        ExecutorService virtualExecutor = virtualThreads ? newVirtualThreadPerTaskExecutor() : null;
+        if (virtualExecutor != null) {
+            log.info("[{}]: User requests run on virtual threads, max in flight - {}", AsyncConfig.class, maxInFlight);
+            return UserRequestExecutor.bounded(virtualExecutor, maxInFlight, taskDecorator);
+        }
+        log.info("[{}]: User requests run on {} platform threads, queue capacity - {}",
+                AsyncConfig.class, poolSize, queueCapacity);
+        ThreadPoolExecutor poolExecutor = new ThreadPoolExecutor(poolSize, poolSize, 60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(queueCapacity), new CustomizableThreadFactory("user-request-"),
+                new ThreadPoolExecutor.AbortPolicy());
+        poolExecutor.allowCoreThreadTimeOut(true);
+        return UserRequestExecutor.pooled(poolExecutor, taskDecorator);
+    }
+
+    /**
+     * Executors.newVirtualThreadPerTaskExecutor появился в JDK 21, сборка идёт под более ранний JDK.
+     */
+    private static ExecutorService newVirtualThreadPerTaskExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            log.info("[{}]: Virtual threads are not supported by this JDK", AsyncConfig.class);
+            return null;
+        }
+    }
+}
@@ -0,0 +1,34 @@
+package com.edu.ulab.app.config;
+
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.cache.CacheManager;
+import org.springframework.cache.annotation.EnableCaching;
+import org.springframework.cache.transaction.TransactionAwareCacheManagerProxy;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Кэш чтения пользователей и книг. Провайдер (Caffeine), размер и TTL
+ * задаются в spring.cache, статистика доступна через actuator metrics/caches.
+ */
+@Configuration
+@EnableCaching
+public class CacheConfig {
+
+    /**
+     * Сброс и запись в кэш внутри транзакции выполняются после её фиксации. Иначе чтение между сбросом
+     * и фиксацией положило бы в кэш ещё не изменённые данные до истечения TTL. Вне транзакции — сразу.
+     */
+    @Bean
+    public static BeanPostProcessor transactionAwareCacheManagerPostProcessor() {
+        return new BeanPostProcessor() {
+            @Override
+            public Object postProcessAfterInitialization(Object bean, String beanName) {
+                if (bean instanceof CacheManager cacheManager && !(bean instanceof TransactionAwareCacheManagerProxy)) {
+                    return new TransactionAwareCacheManagerProxy(cacheManager);
+                }
+                return bean;
+            }
+        };
+    }
+}
@@ -0,0 +1,79 @@
+package com.edu.ulab.app.config;
+
+import com.edu.ulab.app.facade.SingleFlight;
+import com.edu.ulab.app.service.cache.SecondLevelCache;
+import com.edu.ulab.app.service.writebehind.BookWriteBehind;
+import com.edu.ulab.app.web.async.MdcTaskDecorator;
+import com.edu.ulab.app.web.response.UserBookResponse;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.cache.CacheManager;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.util.concurrent.ThreadPoolExecutor;
+
+/**
+ * Пул для параллельных чтений в UserDataFacade. Каждая задача держит своё соединение,
+ * поэтому pool-size вместе с потоками запросов должен помещаться в spring.datasource.hikari.maximum-pool-size.
+ * При заполненной очереди задача выполняется в вызывающем потоке, то есть последовательно.
+ * <p>
+ * Одновременные запросы пользователя с книгами по одному id объединяются в одну загрузку,
+ * отключается через user-data-facade.single-flight.enabled. Ожидание чужой загрузки ограничено
+ * тем же user-data-facade.fan-out.timeout, что и параллельные чтения.
+ * <p>
+ * С user-data-facade.write-behind.enabled книги пишутся в базу фоновым потоком пачками, см. {@link BookWriteBehind}.
+ */
+@Configuration
+public class FacadeConfig {
+
+    @Value("${user-data-facade.fan-out.pool-size:8}")
+    private int poolSize;
+
+    @Value("${user-data-facade.fan-out.queue-capacity:100}")
+    private int queueCapacity;
+
+    @Value("${user-data-facade.fan-out.timeout:5s}")
+    private Duration fanOutTimeout;
+
+    @Value("${user-data-facade.single-flight.enabled:true}")
+    private boolean singleFlightEnabled;
+
+    @Bean
+    public ThreadPoolTaskExecutor facadeExecutor() {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(poolSize);
+        executor.setMaxPoolSize(poolSize);
+        executor.setQueueCapacity(queueCapacity);
+        executor.setThreadNamePrefix("facade-");
+        executor.setTaskDecorator(new MdcTaskDecorator());
+        executor.setRejectedExecutionHandler(new ThreadPoolExecutor.CallerRunsPolicy());
+        return executor;
+    }
+
+    @Bean
+    public SingleFlight<Long, UserBookResponse> userWithBooksSingleFlight(MeterRegistry meterRegistry) {
+        return new SingleFlight<>("getUserWithBooks", singleFlightEnabled, fanOutTimeout, meterRegistry);
+    }
+
+    @Bean
+    @ConditionalOnProperty(name = "user-data-facade.write-behind.enabled", havingValue = "true")
+    public BookWriteBehind bookWriteBehind(JdbcTemplate jdbcTemplate,
+                                           PlatformTransactionManager transactionManager,
+                                           CacheManager cacheManager,
+                                           SecondLevelCache secondLevelCache,
+                                           MeterRegistry meterRegistry,
+                                           @Value("${user-data-facade.write-behind.queue-capacity:10000}") int queueCapacity,
+                                           @Value("${user-data-facade.write-behind.batch-size:500}") int batchSize,
+                                           @Value("${user-data-facade.write-behind.max-delay:5ms}") Duration maxDelay,
+                                           @Value("${user-data-facade.write-behind.enqueue-timeout:1s}") Duration enqueueTimeout) {
+        return new BookWriteBehind(jdbcTemplate, new TransactionTemplate(transactionManager), cacheManager,
+                secondLevelCache, meterRegistry, queueCapacity, batchSize, maxDelay, enqueueTimeout);
+    }
+}
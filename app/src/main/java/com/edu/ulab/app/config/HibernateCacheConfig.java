@@ -0,0 +1,112 @@
+package com.edu.ulab.app.config;
+
+import com.edu.ulab.app.service.cache.SecondLevelCache;
+import com.github.benmanes.caffeine.jcache.configuration.CaffeineConfiguration;
+import com.github.benmanes.caffeine.jcache.spi.CaffeineCachingProvider;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import io.micrometer.core.instrument.binder.cache.JCacheMetrics;
+import lombok.Data;
+import org.hibernate.cache.jcache.ConfigSettings;
+import org.hibernate.cache.spi.RegionFactory;
+import org.hibernate.cfg.AvailableSettings;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.orm.jpa.HibernatePropertiesCustomizer;
+import org.springframework.boot.context.properties.bind.Bindable;
+import org.springframework.boot.context.properties.bind.Binder;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.env.Environment;
+
+import javax.cache.CacheManager;
+import javax.cache.Caching;
+import java.net.URI;
+import java.time.Duration;
+import java.util.Map;
+import java.util.OptionalLong;
+import java.util.UUID;
+
+/**
+ * Кэш второго уровня Hibernate для Person, Book, коллекции Person.bookSet и кэш запроса книг пользователя,
+ * включается свойством hibernate-cache.enabled.
+ * <p>
+ * Регионы — кэши Caffeine через JCache с размером и TTL из hibernate-cache.regions; если региона сущности
+ * нет в настройках, приложение не запускается. Попадания и промахи по регионам видны в actuator metrics
+ * cache.gets с тегом cache по имени региона из статистики JCache, hibernate.generate_statistics для них не нужен.
+ * <p>
+ * JPQL UPDATE и DELETE очищают регион сущности целиком, поэтому при включённом кэше JPA-сервисы изменяют
+ * и удаляют пользователей и книги через сущности, а список книг Person.bookSet сбрасывается при записи книги
+ * (auto_evict_collection_cache). Любая запись в book сбрасывает все результаты запросов книг.
+ * Записи мимо Hibernate сбрасывают кэш через {@link SecondLevelCache}.
+ */
+@Configuration
+public class HibernateCacheConfig {
+
+    /**
+     * Время последней записи в каждую таблицу: без него сохранённые результаты запросов снова считались бы
+     * актуальными, поэтому регион без ограничений. Таблиц всего две.
+     */
+    private static final String TIMESTAMPS_REGION = RegionFactory.DEFAULT_UPDATE_TIMESTAMPS_REGION_UNQUALIFIED_NAME;
+
+    @Bean
+    @ConditionalOnProperty(name = "hibernate-cache.enabled", havingValue = "true")
+    public CacheManager hibernateCacheManager(Environment environment) {
+        Map<String, RegionProperties> regions = Binder.get(environment)
+                .bind("hibernate-cache.regions", Bindable.mapOf(String.class, RegionProperties.class))
+                .orElse(Map.of());
+
+        //own manager per context, the default one is shared by the class loader
+        CacheManager cacheManager = Caching.getCachingProvider(CaffeineCachingProvider.class.getName())
+                .getCacheManager(URI.create("hibernate-" + UUID.randomUUID()), getClass().getClassLoader());
+        regions.forEach((region, properties) -> cacheManager.createCache(region, configuration(properties)));
+        cacheManager.createCache(TIMESTAMPS_REGION, configuration(new RegionProperties()));
+        return cacheManager;
+    }
+
+    @Bean
+    @ConditionalOnProperty(name = "hibernate-cache.enabled", havingValue = "true")
+    public MeterBinder hibernateCacheMetrics(CacheManager hibernateCacheManager) {
+        return registry -> hibernateCacheManager.getCacheNames().forEach(region ->
+                JCacheMetrics.monitor(registry, hibernateCacheManager.getCache(region), Tags.empty()));
+    }
+
+    private static CaffeineConfiguration<Object, Object> configuration(RegionProperties properties) {
+        CaffeineConfiguration<Object, Object> configuration = new CaffeineConfiguration<>();
+        //entries are immutable cache entries of Hibernate, copying them on every read is not needed
+        configuration.setStoreByValue(false);
+        configuration.setStatisticsEnabled(true);
+        if (properties.getMaximumSize() != null) {
+            configuration.setMaximumSize(OptionalLong.of(properties.getMaximumSize()));
+        }
+        if (properties.getExpireAfterWrite() != null) {
+            configuration.setExpireAfterWrite(OptionalLong.of(properties.getExpireAfterWrite().toNanos()));
+        }
+        return configuration;
+    }
+
+    /**
+     * Без кэш-менеджера кэш выключается явно: иначе Hibernate сам выбрал бы JCache из classpath
+     * с неограниченными регионами.
+     */
+    @Bean
+    public HibernatePropertiesCustomizer secondLevelCacheCustomizer(ObjectProvider<CacheManager> hibernateCacheManager) {
+        return properties -> {
+            CacheManager cacheManager = hibernateCacheManager.getIfAvailable();
+            properties.put(AvailableSettings.USE_SECOND_LEVEL_CACHE, cacheManager != null);
+            properties.put(AvailableSettings.USE_QUERY_CACHE, cacheManager != null);
+            if (cacheManager != null) {
+                properties.put(AvailableSettings.CACHE_REGION_FACTORY, "jcache");
+                properties.put(ConfigSettings.CACHE_MANAGER, cacheManager);
+                properties.put(ConfigSettings.MISSING_CACHE_STRATEGY, "fail");
+                properties.put(AvailableSettings.AUTO_EVICT_COLLECTION_CACHE, true);
+            }
+        };
+    }
+
+    @Data
+    public static class RegionProperties {
+        private Long maximumSize;
+        private Duration expireAfterWrite;
+    }
+}
@@ -0,0 +1,45 @@
+package com.edu.ulab.app.config;
+
+import com.edu.ulab.app.metrics.QueryMetricsListener;
+import net.ttddyy.dsproxy.support.ProxyDataSource;
+import net.ttddyy.dsproxy.support.ProxyDataSourceBuilder;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import javax.sql.DataSource;
+import java.time.Duration;
+
+/**
+ * Оборачивает DataSource в datasource-proxy с {@link QueryMetricsListener}.
+ * Включается свойством query-metrics.enabled (профиль prod), где show-sql и статистика Hibernate выключены.
+ * Методы статические: BeanPostProcessor создаётся раньше остальных бинов.
+ */
+@Configuration
+@ConditionalOnProperty(name = "query-metrics.enabled", havingValue = "true")
+public class QueryMetricsConfig {
+
+    @Bean
+    public static QueryMetricsListener queryMetricsListener(
+            @Value("${query-metrics.slow-query-threshold:500ms}") Duration slowQueryThreshold) {
+        return new QueryMetricsListener(slowQueryThreshold);
+    }
+
+    @Bean
+    public static BeanPostProcessor queryMetricsDataSourcePostProcessor(QueryMetricsListener queryMetricsListener) {
+        return new BeanPostProcessor() {
+            @Override
+            public Object postProcessAfterInitialization(Object bean, String beanName) {
+                if (bean instanceof DataSource dataSource && !(bean instanceof ProxyDataSource)) {
+                    return ProxyDataSourceBuilder.create(dataSource)
+                            .name(beanName)
+                            .listener(queryMetricsListener)
+                            .build();
+                }
+                return bean;
+            }
+        };
+    }
+}
@@ -0,0 +1,135 @@
+package com.edu.ulab.app.config;
+
+import com.edu.ulab.app.datasource.DelayedEvictionCacheManager;
+import com.edu.ulab.app.datasource.ReadWriteRoutingDataSource;
+import com.edu.ulab.app.datasource.ReplicaRouter;
+import com.edu.ulab.app.datasource.ReplicaSelection;
+import com.zaxxer.hikari.HikariConfig;
+import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.metrics.micrometer.MicrometerMetricsTrackerFactory;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.context.properties.bind.Bindable;
+import org.springframework.boot.context.properties.bind.Binder;
+import org.springframework.cache.CacheManager;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.Ordered;
+import org.springframework.core.env.Environment;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+
+import javax.sql.DataSource;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+import static com.edu.ulab.app.web.constant.SQLQueryReplicaConstant.SELECT_REPLICA_LAG_SQL;
+
+/**
+ * Чтения в транзакциях readOnly идут на реплики, включается свойством read-routing.enabled.
+ * <p>
+ * Заменяет DataSource из автоконфигурации: основной пул создаётся по spring.datasource, пулы реплик —
+ * с теми же настройками и учётными данными по адресам read-routing.replica-urls.
+ * Пул реплики стартует, даже если реплика не отвечает: она будет недоступна до успешной проверки отставания.
+ * Реплика отстаёт на время до max-lag плюс lag-check-interval, поэтому чтение сразу после записи
+ * из другой транзакции может не увидеть её.
+ * <p>
+ * Кэшируемые чтения (getUserById, getUserWithBookIds, getAllByUserId) тоже идут на реплики. Такое чтение сразу
+ * после записи положило бы в кэш прежние данные на весь TTL вместе с устаревшей версией для ETag,
+ * поэтому каждый сброс кэшей Spring повторяется через max-lag плюс lag-check-interval:
+ * к этому времени доступные реплики уже видят запись. До повторного сброса кэш может отдавать прежние данные.
+ * getUserVersion, с которой при промахе кэша сверяется If-Match, читает основную базу.
+ */
+@Slf4j
+@Configuration
+@ConditionalOnProperty(name = "read-routing.enabled", havingValue = "true")
+public class ReadRoutingConfig {
+
+    @Bean
+    public ReplicaRouter replicaRouter(DataSourceProperties properties,
+                                       Environment environment,
+                                       @Value("${read-routing.replica-urls:}") List<String> replicaUrls,
+                                       @Value("${read-routing.selection:round-robin}") ReplicaSelection selection,
+                                       @Value("${read-routing.max-lag:5s}") Duration maxLag,
+                                       @Value("${read-routing.lag-check-interval:1s}") Duration lagCheckInterval,
+                                       @Value("${read-routing.lag-query:" + SELECT_REPLICA_LAG_SQL + "}") String lagQuery) {
+        HikariDataSource primary = properties.initializeDataSourceBuilder()
+                .type(HikariDataSource.class)
+                .build();
+        Binder.get(environment).bind("spring.datasource.hikari", Bindable.ofInstance(primary));
+
+        List<ReplicaRouter.Replica> replicas = new ArrayList<>();
+        for (String replicaUrl : replicaUrls) {
+            String name = "replica-" + (replicas.size() + 1);
+            HikariConfig config = new HikariConfig();
+            primary.copyStateTo(config);
+            config.setJdbcUrl(replicaUrl);
+            config.setPoolName(primary.getPoolName() == null ? name : primary.getPoolName() + "-" + name);
+            config.setInitializationFailTimeout(-1);
+            HikariDataSource pool = new HikariDataSource(config);
+            replicas.add(new ReplicaRouter.Replica(name, pool,
+                    () -> pool.getHikariPoolMXBean().getActiveConnections()));
+        }
+        if (replicas.isEmpty()) {
+            log.warn("[{}]: No read-routing.replica-urls, all reads go to the primary database",
+                    ReadRoutingConfig.class);
+        }
+
+        return new ReplicaRouter(primary, replicas, selection, maxLag, lagQuery, lagCheckInterval);
+    }
+
+    /**
+     * Метрики пулов реплик: автоконфигурация находит только пул основной базы через бин DataSource.
+     */
+    @Bean
+    public MeterBinder replicaPoolMetrics(ReplicaRouter replicaRouter) {
+        return registry -> replicaRouter.getDataSources().values().stream()
+                .filter(dataSource -> dataSource != replicaRouter.getPrimary())
+                .forEach(dataSource -> {
+                    if (dataSource instanceof HikariDataSource pool) {
+                        pool.setMetricsTrackerFactory(new MicrometerMetricsTrackerFactory(registry));
+                    }
+                });
+    }
+
+    @Bean
+    public DataSource dataSource(ReplicaRouter replicaRouter) {
+        return new LazyConnectionDataSourceProxy(new ReadWriteRoutingDataSource(replicaRouter));
+    }
+
+    @Bean
+    public static BeanPostProcessor delayedEvictionCacheManagerPostProcessor(
+            @Value("${read-routing.max-lag:5s}") Duration maxLag,
+            @Value("${read-routing.lag-check-interval:1s}") Duration lagCheckInterval) {
+        return new DelayedEvictionCacheManagerPostProcessor(maxLag.plus(lagCheckInterval));
+    }
+
+    /**
+     * Выполняется раньше обёртки из {@link CacheConfig}, чтобы повторный сброс отсчитывался от фиксации транзакции.
+     */
+    private static class DelayedEvictionCacheManagerPostProcessor implements BeanPostProcessor, Ordered {
+
+        private final Duration delay;
+
+        private DelayedEvictionCacheManagerPostProcessor(Duration delay) {
+            this.delay = delay;
+        }
+
+        @Override
+        public Object postProcessAfterInitialization(Object bean, String beanName) {
+            if (bean instanceof CacheManager cacheManager) {
+                return new DelayedEvictionCacheManager(cacheManager, delay);
+            }
+            return bean;
+        }
+
+        @Override
+        public int getOrder() {
+            return Ordered.HIGHEST_PRECEDENCE;
+        }
+    }
+}
@@ -0,0 +1,155 @@
+package com.edu.ulab.app.config;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.hibernate.SessionFactory;
+import org.hibernate.metamodel.spi.MetamodelImplementor;
+import org.hibernate.persister.collection.AbstractCollectionPersister;
+import org.hibernate.persister.entity.AbstractEntityPersister;
+import org.springframework.beans.factory.ListableBeanFactory;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.annotation.AnnotatedElementUtils;
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.Repository;
+import org.springframework.data.repository.core.RepositoryInformation;
+import org.springframework.data.repository.query.parser.PartTree;
+import org.springframework.data.repository.support.Repositories;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import javax.persistence.EntityManagerFactory;
+import java.lang.reflect.Method;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Проверка при старте, что для столбцов, по которым ищут Spring Data репозитории,
+ * есть валидный индекс с этим столбцом в начале ключа. Отсутствие индекса только логируется:
+ * например, CREATE INDEX CONCURRENTLY, прерванный на середине, оставляет невалидный индекс.
+ * <p>
+ * Столбцы берутся из метаданных репозиториев: первичный ключ каждой сущности (findById), первое условие
+ * WHERE и столбцы JOIN каждого {@link Query}, первое условие производных запросов (findBy...). Пути JPQL
+ * переводятся в столбцы через метамодель Hibernate. SQL JdbcTemplate-сервисов не разбирается:
+ * их запросы покрыты, пока ищут по тем же столбцам, что и репозитории.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+@ConditionalOnProperty(name = "index-check.enabled", havingValue = "true", matchIfMissing = true)
+public class RepositoryIndexChecker {
+
+    private static final String DEFAULT_SCHEMA = "public";
+
+    private static final Pattern ROOT = Pattern.compile(
+            "\\b(?:from|update)\\s+(\\w+)\\s+(?:as\\s+)?(\\w+)", Pattern.CASE_INSENSITIVE);
+    private static final Pattern JOIN = Pattern.compile(
+            "\\bjoin\\s+(?:fetch\\s+)?(\\w+)\\.(\\w+)\\s+(?:as\\s+)?(\\w+)", Pattern.CASE_INSENSITIVE);
+    private static final Pattern FIRST_CONDITION = Pattern.compile(
+            "\\bwhere[\\s(]+(\\w+)\\.([\\w.]+)", Pattern.CASE_INSENSITIVE);
+
+    private static final String LEADING_INDEX_COLUMNS_SQL = "SELECT a.attname FROM pg_index i " +
+            "JOIN pg_class c ON c.oid = i.indrelid " +
+            "JOIN pg_namespace n ON n.oid = c.relnamespace " +
+            "JOIN pg_attribute a ON a.attrelid = c.oid AND a.attnum = i.indkey[0] " +
+            "WHERE n.nspname = ? AND c.relname = ? AND i.indisvalid";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final EntityManagerFactory entityManagerFactory;
+    private final ListableBeanFactory beanFactory;
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void checkIndexes() {
+        try {
+            lookupColumns().forEach((table, columns) -> {
+                int dot = table.lastIndexOf('.');
+                List<String> indexedColumns = jdbcTemplate.queryForList(LEADING_INDEX_COLUMNS_SQL, String.class,
+                        dot < 0 ? DEFAULT_SCHEMA : table.substring(0, dot), table.substring(dot + 1));
+                columns.stream()
+                        .filter(column -> !indexedColumns.contains(column))
+                        .forEach(column -> log.warn("[{}]: No valid index starts with {}.{}, lookups by it are sequential scans",
+                                RepositoryIndexChecker.class, table, column));
+            });
+        } catch (DataAccessException e) {
+            log.warn("[{}]: Index check skipped: {}", RepositoryIndexChecker.class, e.getMessage());
+        }
+    }
+
+    /**
+     * @return таблица со схемой → столбцы, по которым в ней ищут репозитории
+     */
+    public Map<String, Set<String>> lookupColumns() {
+        MetamodelImplementor metamodel = (MetamodelImplementor) entityManagerFactory.unwrap(SessionFactory.class)
+                .getMetamodel();
+        Map<String, Set<String>> lookupColumns = new TreeMap<>();
+        Repositories repositories = new Repositories(beanFactory);
+        for (Class<?> domainType : repositories) {
+            RepositoryInformation information = repositories.getRequiredRepositoryInformation(domainType);
+            AbstractEntityPersister persister = entityPersister(metamodel, domainType.getName());
+            add(lookupColumns, persister.getTableName(), persister.getIdentifierColumnNames());
+
+            for (Method method : information.getQueryMethods()) {
+                //methods of repository fragments are implemented by hand and are not derived queries
+                if (!Repository.class.isAssignableFrom(method.getDeclaringClass())) {
+                    continue;
+                }
+                Query query = AnnotatedElementUtils.findMergedAnnotation(method, Query.class);
+                if (query != null && !query.nativeQuery()) {
+                    addJpqlColumns(lookupColumns, metamodel, query.value());
+                } else if (query == null) {
+                    new PartTree(method.getName(), domainType).getParts().stream()
+                            .findFirst()
+                            .ifPresent(part -> add(lookupColumns, persister.getTableName(),
+                                    persister.getPropertyColumnNames(part.getProperty().toDotPath())));
+                }
+            }
+        }
+        return lookupColumns;
+    }
+
+    private void addJpqlColumns(Map<String, Set<String>> lookupColumns, MetamodelImplementor metamodel, String jpql) {
+        Map<String, AbstractEntityPersister> aliases = new HashMap<>();
+        Matcher root = ROOT.matcher(jpql);
+        while (root.find()) {
+            aliases.put(root.group(2), entityPersister(metamodel, metamodel.getImportedClassName(root.group(1))));
+        }
+
+        Matcher join = JOIN.matcher(jpql);
+        while (join.find()) {
+            AbstractEntityPersister owner = aliases.get(join.group(1));
+            if (owner == null) {
+                continue;
+            }
+            //the joined rows are found by the foreign key of the collection
+            AbstractCollectionPersister collection = (AbstractCollectionPersister) metamodel.collectionPersister(
+                    owner.getEntityName() + "." + join.group(2));
+            add(lookupColumns, collection.getTableName(), collection.getKeyColumnNames());
+            if (collection.getElementType().isEntityType()) {
+                aliases.put(join.group(3), (AbstractEntityPersister) collection.getElementPersister());
+            }
+        }
+
+        Matcher condition = FIRST_CONDITION.matcher(jpql);
+        if (condition.find() && aliases.containsKey(condition.group(1))) {
+            AbstractEntityPersister persister = aliases.get(condition.group(1));
+            add(lookupColumns, persister.getTableName(), persister.getPropertyColumnNames(condition.group(2)));
+        }
+    }
+
+    private static AbstractEntityPersister entityPersister(MetamodelImplementor metamodel, String entityName) {
+        return (AbstractEntityPersister) metamodel.entityPersister(entityName);
+    }
+
+    private static void add(Map<String, Set<String>> lookupColumns, String table, String[] columns) {
+        //an index has to start with the first column of a composite key
+        lookupColumns.computeIfAbsent(table, key -> new TreeSet<>()).add(columns[0]);
+    }
+}
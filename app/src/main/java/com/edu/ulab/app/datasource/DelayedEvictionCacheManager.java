@@ -0,0 +1,140 @@
+package com.edu.ulab.app.datasource;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.lang.NonNull;
+import org.springframework.lang.Nullable;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Кэши, в которых каждый сброс выполняется сразу и ещё раз через delay.
+ * <p>
+ * Повторный сброс убирает значения, прочитанные за это время с отставшей реплики,
+ * см. {@link com.edu.ulab.app.config.ReadRoutingConfig}. Остальные операции передаются кэшу как есть.
+ */
+@Slf4j
+public class DelayedEvictionCacheManager implements CacheManager {
+
+    private final CacheManager delegate;
+    private final long delayMillis;
+    private final ScheduledExecutorService scheduler;
+    private final ConcurrentMap<String, Cache> caches = new ConcurrentHashMap<>();
+
+    public DelayedEvictionCacheManager(CacheManager delegate, Duration delay) {
+        this.delegate = delegate;
+        this.delayMillis = delay.toMillis();
+        CustomizableThreadFactory threadFactory = new CustomizableThreadFactory("cache-evict-");
+        threadFactory.setDaemon(true);
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(threadFactory);
+    }
+
+    @Override
+    @Nullable
+    public Cache getCache(@NonNull String name) {
+        Cache cache = delegate.getCache(name);
+        return cache == null ? null : caches.computeIfAbsent(name, key -> new DelayedEvictionCache(cache));
+    }
+
+    @Override
+    @NonNull
+    public Collection<String> getCacheNames() {
+        return delegate.getCacheNames();
+    }
+
+    private void schedule(Cache cache, Runnable eviction) {
+        scheduler.schedule(() -> {
+            try {
+                eviction.run();
+            } catch (RuntimeException e) {
+                log.error("[{}]: Delayed eviction from cache {} failed", DelayedEvictionCacheManager.class,
+                        cache.getName(), e);
+            }
+        }, delayMillis, TimeUnit.MILLISECONDS);
+    }
+
+    private class DelayedEvictionCache implements Cache {
+
+        private final Cache cache;
+
+        private DelayedEvictionCache(Cache cache) {
+            this.cache = cache;
+        }
+
+        @Override
+        @NonNull
+        public String getName() {
+            return cache.getName();
+        }
+
+        @Override
+        @NonNull
+        public Object getNativeCache() {
+            return cache.getNativeCache();
+        }
+
+        @Override
+        @Nullable
+        public ValueWrapper get(@NonNull Object key) {
+            return cache.get(key);
+        }
+
+        @Override
+        @Nullable
+        public <T> T get(@NonNull Object key, @Nullable Class<T> type) {
+            return cache.get(key, type);
+        }
+
+        @Override
+        @Nullable
+        public <T> T get(@NonNull Object key, @NonNull Callable<T> valueLoader) {
+            return cache.get(key, valueLoader);
+        }
+
+        @Override
+        public void put(@NonNull Object key, @Nullable Object value) {
+            cache.put(key, value);
+        }
+
+        @Override
+        @Nullable
+        public ValueWrapper putIfAbsent(@NonNull Object key, @Nullable Object value) {
+            return cache.putIfAbsent(key, value);
+        }
+
+        @Override
+        public void evict(@NonNull Object key) {
+            cache.evict(key);
+            schedule(cache, () -> cache.evict(key));
+        }
+
+        @Override
+        public boolean evictIfPresent(@NonNull Object key) {
+            boolean evicted = cache.evictIfPresent(key);
+            schedule(cache, () -> cache.evict(key));
+            return evicted;
+        }
+
+        @Override
+        public void clear() {
+            cache.clear();
+            schedule(cache, cache::clear);
+        }
+
+        @Override
+        public boolean invalidate() {
+            boolean invalidated = cache.invalidate();
+            schedule(cache, cache::clear);
+            return invalidated;
+        }
+    }
+}
@@ -0,0 +1,35 @@
+package com.edu.ulab.app.datasource;
+
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+import org.springframework.jdbc.datasource.lookup.AbstractRoutingDataSource;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.HashMap;
+
+/**
+ * Соединения транзакций readOnly берутся у реплики, выбранной {@link ReplicaRouter}, остальные — у основной базы.
+ * <p>
+ * Признак readOnly выставляется после того, как менеджер транзакций получил соединение,
+ * поэтому источник используется только через {@link LazyConnectionDataSourceProxy}:
+ * он берёт настоящее соединение при первом запросе, когда транзакция уже начата.
+ * Запросы вне транзакции и внутри транзакции на запись (в том числе чтения, присоединившиеся к ней) идут в основную базу.
+ */
+public class ReadWriteRoutingDataSource extends AbstractRoutingDataSource {
+
+    private final ReplicaRouter replicaRouter;
+
+    public ReadWriteRoutingDataSource(ReplicaRouter replicaRouter) {
+        this.replicaRouter = replicaRouter;
+        setTargetDataSources(new HashMap<Object, Object>(replicaRouter.getDataSources()));
+        setDefaultTargetDataSource(replicaRouter.getPrimary());
+        setLenientFallback(false);
+        afterPropertiesSet();
+    }
+
+    @Override
+    protected Object determineCurrentLookupKey() {
+        return TransactionSynchronizationManager.isCurrentTransactionReadOnly()
+                ? replicaRouter.selectForRead()
+                : ReplicaRouter.PRIMARY;
+    }
+}
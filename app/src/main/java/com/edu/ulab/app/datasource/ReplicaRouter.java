@@ -0,0 +1,232 @@
+package com.edu.ulab.app.datasource;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.Duration;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.IntSupplier;
+
+/**
+ * Выбор базы для чтения: основная или одна из реплик.
+ * <p>
+ * Отставание реплик проверяется запросом lagQuery (секунды) при создании и затем раз в lagCheckInterval.
+ * Реплика доступна, если запрос выполнился и отставание не больше maxLag; чтения распределяются между
+ * доступными репликами по {@link ReplicaSelection}, без доступных реплик идут в основную базу.
+ * Между проверками реплика, переставшая отвечать, ещё выбирается, её чтения завершаются ошибкой соединения.
+ * <p>
+ * Выбранные цели считаются в {@value #READS_COUNTER} с тегом target, отставание реплик —
+ * в {@value #LAG_GAUGE} (NaN, если проверка не удалась); метрики создаются в {@link #bindTo}.
+ * Владеет пулами всех баз и закрывает их в {@link #close}.
+ */
+@Slf4j
+public class ReplicaRouter implements MeterBinder, AutoCloseable {
+
+    public static final String PRIMARY = "primary";
+    public static final String READS_COUNTER = "app.datasource.reads";
+    public static final String LAG_GAUGE = "app.datasource.replica.lag";
+
+    private final DataSource primary;
+    private final List<ReplicaState> replicas;
+    private final ReplicaSelection selection;
+    private final double maxLagSeconds;
+    private final String lagQuery;
+    private final AtomicInteger nextReplica = new AtomicInteger();
+    private final ScheduledExecutorService lagMonitor;
+
+    private volatile List<ReplicaState> available = List.of();
+    private volatile Counter primaryReads;
+
+    /**
+     * @param replicas         реплики с уникальными именами, отличными от {@value #PRIMARY}
+     * @param lagQuery         запрос, возвращающий отставание реплики в секундах
+     * @param lagCheckInterval период проверки отставания, при нуле проверка только при создании
+     */
+    public ReplicaRouter(DataSource primary,
+                         List<Replica> replicas,
+                         ReplicaSelection selection,
+                         Duration maxLag,
+                         String lagQuery,
+                         Duration lagCheckInterval) {
+        this.primary = primary;
+        this.replicas = replicas.stream()
+                .map(ReplicaState::new)
+                .toList();
+        this.selection = selection;
+        this.maxLagSeconds = maxLag.toMillis() / 1000.0;
+        this.lagQuery = lagQuery;
+
+        checkLag();
+        for (ReplicaState replica : this.replicas) {
+            if (!replica.isAvailable(maxLagSeconds)) {
+                log.warn("[{}]: Replica {} is unavailable for reads, lag {} s", ReplicaRouter.class,
+                        replica.name(), replica.lagSeconds);
+            }
+        }
+        if (lagCheckInterval.isZero() || this.replicas.isEmpty()) {
+            this.lagMonitor = null;
+        } else {
+            CustomizableThreadFactory threadFactory = new CustomizableThreadFactory("replica-lag-");
+            threadFactory.setDaemon(true);
+            this.lagMonitor = Executors.newSingleThreadScheduledExecutor(threadFactory);
+            this.lagMonitor.scheduleWithFixedDelay(this::checkLag, lagCheckInterval.toMillis(),
+                    lagCheckInterval.toMillis(), TimeUnit.MILLISECONDS);
+        }
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        for (ReplicaState replica : replicas) {
+            Gauge.builder(LAG_GAUGE, replica, state -> state.lagSeconds)
+                    .description("Replication lag of the replica, NaN when it could not be checked")
+                    .baseUnit("seconds")
+                    .tag("replica", replica.name())
+                    .register(registry);
+            replica.reads = readsCounter(registry, replica.name());
+        }
+        primaryReads = readsCounter(registry, PRIMARY);
+    }
+
+    private static Counter readsCounter(MeterRegistry registry, String target) {
+        return Counter.builder(READS_COUNTER)
+                .description("Connections of read-only transactions by database")
+                .tag("target", target)
+                .register(registry);
+    }
+
+    public DataSource getPrimary() {
+        return primary;
+    }
+
+    /**
+     * Все базы по именам, основная под именем {@value #PRIMARY}.
+     */
+    public Map<String, DataSource> getDataSources() {
+        Map<String, DataSource> dataSources = new LinkedHashMap<>();
+        dataSources.put(PRIMARY, primary);
+        replicas.forEach(replica -> dataSources.put(replica.name(), replica.replica.dataSource()));
+        return dataSources;
+    }
+
+    /**
+     * @return имя доступной реплики или {@value #PRIMARY}
+     */
+    public String selectForRead() {
+        List<ReplicaState> candidates = available;
+        if (candidates.isEmpty()) {
+            increment(primaryReads);
+            return PRIMARY;
+        }
+
+        ReplicaState replica = switch (selection) {
+            case ROUND_ROBIN -> candidates.get(Math.floorMod(nextReplica.getAndIncrement(), candidates.size()));
+            case LEAST_CONNECTIONS -> candidates.stream()
+                    .min(Comparator.comparingInt(state -> state.replica.activeConnections().getAsInt()))
+                    .orElseThrow();
+        };
+        increment(replica.reads);
+        return replica.name();
+    }
+
+    private static void increment(Counter counter) {
+        //null before bindTo
+        if (counter != null) {
+            counter.increment();
+        }
+    }
+
+    /**
+     * Проверяет отставание всех реплик и обновляет список доступных.
+     */
+    void checkLag() {
+        for (ReplicaState replica : replicas) {
+            double lagSeconds = queryLag(replica);
+            boolean wasAvailable = replica.isAvailable(maxLagSeconds);
+            replica.lagSeconds = lagSeconds;
+            boolean isAvailable = replica.isAvailable(maxLagSeconds);
+            if (wasAvailable && !isAvailable) {
+                log.warn("[{}]: Replica {} is unavailable for reads, lag {} s", ReplicaRouter.class,
+                        replica.name(), lagSeconds);
+            } else if (!wasAvailable && isAvailable) {
+                log.info("[{}]: Replica {} is available for reads, lag {} s", ReplicaRouter.class,
+                        replica.name(), lagSeconds);
+            }
+        }
+        available = replicas.stream()
+                .filter(replica -> replica.isAvailable(maxLagSeconds))
+                .toList();
+    }
+
+    private double queryLag(ReplicaState replica) {
+        try (Connection connection = replica.replica.dataSource().getConnection();
+             Statement statement = connection.createStatement();
+             ResultSet resultSet = statement.executeQuery(lagQuery)) {
+            if (!resultSet.next()) {
+                return Double.NaN;
+            }
+            double lagSeconds = resultSet.getDouble(1);
+            return resultSet.wasNull() ? Double.NaN : lagSeconds;
+        } catch (SQLException e) {
+            log.debug("[{}]: Lag of replica {} could not be checked: {}", ReplicaRouter.class,
+                    replica.name(), e.getMessage());
+            return Double.NaN;
+        }
+    }
+
+    @Override
+    public void close() throws Exception {
+        if (lagMonitor != null) {
+            lagMonitor.shutdownNow();
+        }
+        for (ReplicaState replica : replicas) {
+            if (replica.replica.dataSource() instanceof AutoCloseable closeable) {
+                closeable.close();
+            }
+        }
+        if (primary instanceof AutoCloseable closeable) {
+            closeable.close();
+        }
+    }
+
+    /**
+     * @param activeConnections число выданных соединений пула реплики, для {@link ReplicaSelection#LEAST_CONNECTIONS}
+     */
+    public record Replica(String name, DataSource dataSource, IntSupplier activeConnections) {
+    }
+
+    private static class ReplicaState {
+        private final Replica replica;
+        private volatile Counter reads;
+        //NaN until the first successful check
+        private volatile double lagSeconds = Double.NaN;
+
+        private ReplicaState(Replica replica) {
+            this.replica = replica;
+        }
+
+        private String name() {
+            return replica.name();
+        }
+
+        private boolean isAvailable(double maxLagSeconds) {
+            //false for NaN
+            return lagSeconds <= maxLagSeconds;
+        }
+    }
+}
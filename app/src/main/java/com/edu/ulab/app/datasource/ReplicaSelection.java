@@ -0,0 +1,17 @@
+package com.edu.ulab.app.datasource;
+
+/**
+ * Выбор реплики для чтения среди доступных.
+ */
+public enum ReplicaSelection {
+
+    /**
+     * По очереди.
+     */
+    ROUND_ROBIN,
+
+    /**
+     * Реплика с наименьшим числом выданных соединений пула.
+     */
+    LEAST_CONNECTIONS
+}
@@ -0,0 +1,19 @@
+package com.edu.ulab.app.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+@Builder
+public class BookImportDto {
+    private long receivedRows;
+    private long importedRows;
+    private long rejectedRows;
+    private List<RejectedRowDto> rejectedRowSample;
+}
@@ -0,0 +1,15 @@
+package com.edu.ulab.app.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+@Builder
+public class RejectedRowDto {
+    private long row;
+    private String reason;
+}
@@ -0,0 +1,21 @@
+package com.edu.ulab.app.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+@Builder
+public class UserBooksDto {
+    private Long id;
+    private String fullName;
+    private String title;
+    private int age;
+    private List<Long> bookIdList;
+    private Long version;
+}
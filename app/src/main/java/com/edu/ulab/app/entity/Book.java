@@ -1,10 +1,12 @@
 package com.edu.ulab.app.entity;
 
-
+import com.edu.ulab.app.web.constant.CacheConstant;
 import lombok.Data;
 import lombok.Getter;
 import lombok.NoArgsConstructor;
 import lombok.Setter;
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
 
 import javax.persistence.*;
 
@@ -13,14 +15,20 @@ import javax.persistence.*;
 @Setter
 @Entity
 @Table(name = "book", schema = "ulab_edu")
+@Cacheable
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE, region = CacheConstant.BOOK_REGION)
 public class Book {
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "book_id_seq")
+    @SequenceGenerator(name = "book_id_seq", sequenceName = "ulab_edu.book_id_seq", allocationSize = 50)
     private Long id;
     private String title;
     private String author;
     private long pageCount;
 
+    @Version
+    private long version;
+
     @ManyToOne(fetch = FetchType.LAZY)
     @JoinColumn(name = "user_id", nullable = false)
     private Person person;
@@ -1,11 +1,13 @@
 package com.edu.ulab.app.entity;
 
 
-
+import com.edu.ulab.app.web.constant.CacheConstant;
 import lombok.Data;
 import lombok.Getter;
 import lombok.NoArgsConstructor;
 import lombok.Setter;
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
 
 import javax.persistence.*;
 import java.util.Set;
@@ -15,9 +17,12 @@ import java.util.Set;
 @NoArgsConstructor
 @Entity
 @Table(name = "person", schema = "ulab_edu")
+@Cacheable
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE, region = CacheConstant.PERSON_REGION)
 public class Person {
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "person_id_seq")
+    @SequenceGenerator(name = "person_id_seq", sequenceName = "ulab_edu.person_id_seq", allocationSize = 50)
     private Long id;
 
     @Column(nullable = false)
@@ -29,11 +34,19 @@ public class Person {
     @Column(nullable = false)
     private int age;
 
+    /**
+     * Версия для оптимистической блокировки. Примитив: ссылка new Person() с одним id
+     * не должна считаться несохранённой сущностью.
+     */
+    @Version
+    private long version;
+
     @OneToMany(mappedBy = "person", cascade = {
             CascadeType.MERGE,
             CascadeType.PERSIST,
             CascadeType.DETACH,
             CascadeType.REMOVE,
             CascadeType.REFRESH})
+    @Cache(usage = CacheConcurrencyStrategy.READ_WRITE, region = CacheConstant.PERSON_BOOKS_REGION)
     private Set<Book> bookSet;
 }
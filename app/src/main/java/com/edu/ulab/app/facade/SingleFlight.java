@@ -0,0 +1,102 @@
+package com.edu.ulab.app.facade;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.dao.QueryTimeoutException;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Supplier;
+
+/**
+ * Объединение одновременных одинаковых чтений (single-flight).
+ * <p>
+ * Первый запрос по ключу выполняет загрузку в своём потоке, запросы с тем же ключом, пришедшие до её окончания,
+ * ждут и получают тот же результат или то же исключение. Ожидание ограничено timeout,
+по его истечении ожидающий запрос получает QueryTimeoutException, загрузка продолжается. После окончания загрузки ключ удаляется,
+ * поэтому результат не кешируется: следующий запрос снова идёт в базу. Запрос, пришедший во время загрузки,
+ * может получить данные, прочитанные до записи, закоммиченной уже после начала загрузки.
+ * <p>
+ * Счётчик {@value #REQUEST_COUNTER} с тегами operation и outcome (loaded, coalesced),
+ * число ключей с загрузкой в процессе — в {@value #IN_FLIGHT_GAUGE}.
+ */
+public class SingleFlight<K, V> {
+
+    public static final String REQUEST_COUNTER = "app.single.flight.requests";
+    public static final String IN_FLIGHT_GAUGE = "app.single.flight.in.flight";
+
+    private final boolean enabled;
+    private final Duration timeout;
+    private final ConcurrentMap<K, CompletableFuture<V>> inFlight = new ConcurrentHashMap<>();
+    private final Counter loaded;
+    private final Counter coalesced;
+
+    public SingleFlight(String operation, boolean enabled, Duration timeout, MeterRegistry meterRegistry) {
+        this.enabled = enabled;
+        this.timeout = timeout;
+        this.loaded = counter(meterRegistry, operation, "loaded");
+        this.coalesced = counter(meterRegistry, operation, "coalesced");
+        Gauge.builder(IN_FLIGHT_GAUGE, inFlight, ConcurrentMap::size)
+                .description("Keys with a load in progress")
+                .tag("operation", operation)
+                .register(meterRegistry);
+    }
+
+    public V execute(K key, Supplier<V> loader) {
+        if (!enabled) {
+            return loader.get();
+        }
+
+        CompletableFuture<V> future = new CompletableFuture<>();
+        CompletableFuture<V> running = inFlight.putIfAbsent(key, future);
+        if (running != null) {
+            coalesced.increment();
+            return await(running);
+        }
+
+        loaded.increment();
+        try {
+            V value = loader.get();
+            future.complete(value);
+            return value;
+        } catch (RuntimeException | Error e) {
+            future.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(key, future);
+        }
+    }
+
+    private V await(CompletableFuture<V> future) {
+        try {
+            return future.get(timeout.toMillis(), TimeUnit.MILLISECONDS);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            if (e.getCause() instanceof Error cause) {
+                throw cause;
+            }
+            throw new IllegalStateException(e.getCause());
+        } catch (TimeoutException e) {
+            throw new QueryTimeoutException(String.format("Coalesced load did not finish in %s", timeout), e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for coalesced load", e);
+        }
+    }
+
+    private static Counter counter(MeterRegistry meterRegistry, String operation, String outcome) {
+        return Counter.builder(REQUEST_COUNTER)
+                .description("Requests that started a load or joined one already in progress")
+                .tag("operation", operation)
+                .tag("outcome", outcome)
+                .register(meterRegistry);
+    }
+}
@@ -0,0 +1,221 @@
+package com.edu.ulab.app.facade;
+
+import com.edu.ulab.app.dto.BookDto;
+import com.edu.ulab.app.dto.BookImportDto;
+import com.edu.ulab.app.dto.UserDto;
+import com.edu.ulab.app.exception.BadRequestException;
+import com.edu.ulab.app.mapper.BookMapper;
+import com.edu.ulab.app.mapper.UserMapper;
+import com.edu.ulab.app.service.BookService;
+import com.edu.ulab.app.service.UserService;
+import com.edu.ulab.app.service.bulk.BookBulkImport;
+import com.edu.ulab.app.service.bulk.BookImportFormat;
+import com.edu.ulab.app.web.request.BookRequest;
+import com.edu.ulab.app.web.request.UserBookRequest;
+import com.edu.ulab.app.web.response.BookImportResponse;
+import com.edu.ulab.app.web.response.RejectedRowResponse;
+import com.edu.ulab.app.web.response.UserBookBatchItemResponse;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.NestedExceptionUtils;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.validation.ConstraintViolation;
+import javax.validation.Validator;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * Пакетное создание пользователей с книгами.
+ * <p>
+ * Все запросы валидируются до записи, невалидные сразу получают ошибку в ответе.
+ * Валидные сохраняются порциями по user-batch.chunk-size: в одной транзакции вставка
+ * пользователей порции одним JDBC batch, затем вставка их книг одним batch.
+ * Если порция не сохранилась, её запросы сохраняются по одному, чтобы ошибка
+ * одного пользователя (например, занятый title) не отменяла остальных.
+ * <p>
+ * Импорт книг существующих пользователей из CSV или NDJSON выполняет {@link BookBulkImport}.
+ */
+@Slf4j
+@Component
+public class UserBatchFacade {
+    private final UserService userService;
+    private final BookService bookService;
+    private final UserMapper userMapper;
+    private final BookMapper bookMapper;
+    private final Validator validator;
+    private final TransactionTemplate transactionTemplate;
+    private final BookBulkImport bookBulkImport;
+    private final int chunkSize;
+    private final int maxSize;
+
+    public UserBatchFacade(@Qualifier("userServiceImpl") UserService userService,
+                           @Qualifier("bookServiceImpl") BookService bookService,
+                           UserMapper userMapper,
+                           BookMapper bookMapper,
+                           Validator validator,
+                           PlatformTransactionManager transactionManager,
+                           BookBulkImport bookBulkImport,
+                           @Value("${user-batch.chunk-size:500}") int chunkSize,
+                           @Value("${user-batch.max-size:10000}") int maxSize) {
+        this.userService = userService;
+        this.bookService = bookService;
+        this.userMapper = userMapper;
+        this.bookMapper = bookMapper;
+        this.validator = validator;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.bookBulkImport = bookBulkImport;
+        this.chunkSize = chunkSize;
+        this.maxSize = maxSize;
+    }
+
+    public List<UserBookBatchItemResponse> createUsersWithBooks(List<UserBookRequest> userBookRequests) {
+        if (Objects.isNull(userBookRequests) || userBookRequests.isEmpty()) {
+            throw new BadRequestException("Batch of users should not be empty");
+        }
+        if (userBookRequests.size() > maxSize) {
+            throw new BadRequestException(String.format("Batch of %d users exceeds limit of %d",
+                    userBookRequests.size(), maxSize));
+        }
+        log.info("Got batch of {} user book create requests", userBookRequests.size());
+
+        UserBookBatchItemResponse[] responses = new UserBookBatchItemResponse[userBookRequests.size()];
+        List<Integer> validIndexes = new ArrayList<>();
+        for (int i = 0; i < userBookRequests.size(); i++) {
+            String errorMessage = validate(userBookRequests.get(i));
+            if (Objects.isNull(errorMessage)) {
+                validIndexes.add(i);
+            } else {
+                responses[i] = failed(i, errorMessage);
+            }
+        }
+        log.info("Valid requests in batch: {} of {}", validIndexes.size(), userBookRequests.size());
+
+        for (int from = 0; from < validIndexes.size(); from += chunkSize) {
+            List<Integer> chunk = validIndexes.subList(from, Math.min(from + chunkSize, validIndexes.size()));
+            try {
+                saveInTransaction(userBookRequests, chunk)
+                        .forEach(response -> responses[response.getIndex()] = response);
+            } catch (RuntimeException e) {
+                if (chunk.size() == 1) {
+                    log.error("User at index {} was not saved: {}", chunk.get(0), causeMessage(e));
+                    responses[chunk.get(0)] = failed(chunk.get(0), causeMessage(e));
+                    continue;
+                }
+                log.warn("Chunk of {} users was not saved, saving one by one: {}", chunk.size(), causeMessage(e));
+                chunk.forEach(index -> responses[index] = saveOne(userBookRequests, index));
+            }
+        }
+
+        long failedCount = Arrays.stream(responses)
+                .filter(response -> Objects.nonNull(response.getErrorMessage()))
+                .count();
+        log.info("Batch processed: created {}, failed {}", responses.length - failedCount, failedCount);
+        return Arrays.asList(responses);
+    }
+
+    public BookImportResponse importBooks(InputStream body, BookImportFormat format) {
+        BookImportDto bookImportDto = bookBulkImport.importBooks(body, format);
+
+        return BookImportResponse.builder()
+                .receivedRows(bookImportDto.getReceivedRows())
+                .importedRows(bookImportDto.getImportedRows())
+                .rejectedRows(bookImportDto.getRejectedRows())
+                .rejected(bookImportDto.getRejectedRowSample()
+                        .stream()
+                        .map(rejectedRow -> RejectedRowResponse.builder()
+                                .row(rejectedRow.getRow())
+                                .reason(rejectedRow.getReason())
+                                .build())
+                        .collect(Collectors.toList()))
+                .build();
+    }
+
+    private UserBookBatchItemResponse saveOne(List<UserBookRequest> userBookRequests, int index) {
+        try {
+            return saveInTransaction(userBookRequests, List.of(index)).get(0);
+        } catch (RuntimeException e) {
+            log.error("User at index {} was not saved: {}", index, causeMessage(e));
+            return failed(index, causeMessage(e));
+        }
+    }
+
+    private List<UserBookBatchItemResponse> saveInTransaction(List<UserBookRequest> userBookRequests, List<Integer> indexes) {
+        return transactionTemplate.execute(status -> save(userBookRequests, indexes));
+    }
+
+    private List<UserBookBatchItemResponse> save(List<UserBookRequest> userBookRequests, List<Integer> indexes) {
+        List<UserDto> mappedUsers = indexes.stream()
+                .map(index -> userMapper.userRequestToUserDto(userBookRequests.get(index).getUserRequest()))
+                .collect(Collectors.toList());
+        List<UserDto> createdUsers = userService.createUsers(mappedUsers);
+
+        List<BookDto> mappedBooks = new ArrayList<>();
+        int[] bookCounts = new int[indexes.size()];
+        for (int i = 0; i < indexes.size(); i++) {
+            List<BookRequest> bookRequests = userBookRequests.get(indexes.get(i)).getBookRequests();
+            if (Objects.isNull(bookRequests)) {
+                continue;
+            }
+            for (BookRequest bookRequest : bookRequests) {
+                if (Objects.nonNull(bookRequest)) {
+                    BookDto bookDto = bookMapper.bookRequestToBookDto(bookRequest);
+                    bookDto.setUserId(createdUsers.get(i).getId());
+                    mappedBooks.add(bookDto);
+                    bookCounts[i]++;
+                }
+            }
+        }
+        List<BookDto> createdBooks = bookService.createBooks(mappedBooks);
+
+        List<UserBookBatchItemResponse> responses = new ArrayList<>(indexes.size());
+        int bookOffset = 0;
+        for (int i = 0; i < indexes.size(); i++) {
+            List<Long> bookIdList = createdBooks.subList(bookOffset, bookOffset + bookCounts[i])
+                    .stream()
+                    .map(BookDto::getId)
+                    .collect(Collectors.toList());
+            bookOffset += bookCounts[i];
+            responses.add(UserBookBatchItemResponse.builder()
+                    .index(indexes.get(i))
+                    .userId(createdUsers.get(i).getId())
+                    .booksIdList(bookIdList)
+                    .build());
+        }
+        return responses;
+    }
+
+    private String validate(UserBookRequest userBookRequest) {
+        if (Objects.isNull(userBookRequest) || Objects.isNull(userBookRequest.getUserRequest())) {
+            return "userRequest: User should not be null";
+        }
+        Set<ConstraintViolation<UserBookRequest>> violations = validator.validate(userBookRequest);
+        if (violations.isEmpty()) {
+            return null;
+        }
+        return violations.stream()
+                .map(violation -> violation.getPropertyPath() + ": " + violation.getMessage())
+                .sorted(Comparator.naturalOrder())
+                .collect(Collectors.joining("; "));
+    }
+
+    private static UserBookBatchItemResponse failed(int index, String errorMessage) {
+        return UserBookBatchItemResponse.builder()
+                .index(index)
+                .errorMessage(errorMessage)
+                .build();
+    }
+
+    private static String causeMessage(RuntimeException e) {
+        return NestedExceptionUtils.getMostSpecificCause(e).getMessage();
+    }
+}
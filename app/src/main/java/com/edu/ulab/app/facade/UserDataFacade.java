@@ -1,21 +1,51 @@
 package com.edu.ulab.app.facade;
 
 import com.edu.ulab.app.dto.BookDto;
+import com.edu.ulab.app.dto.UserBooksDto;
 import com.edu.ulab.app.dto.UserDto;
+import com.edu.ulab.app.exception.BadRequestException;
+import com.edu.ulab.app.exception.PreconditionFailedException;
+import com.edu.ulab.app.logging.LogSummary;
 import com.edu.ulab.app.mapper.BookMapper;
 import com.edu.ulab.app.mapper.UserMapper;
 import com.edu.ulab.app.service.BookService;
 import com.edu.ulab.app.service.UserService;
+import com.edu.ulab.app.service.writebehind.BookWriteBehind;
+import com.edu.ulab.app.web.etag.UserETag;
+import com.edu.ulab.app.web.pagination.CursorToken;
 import com.edu.ulab.app.web.request.UserBookRequest;
+import com.edu.ulab.app.web.response.BookResponse;
+import com.edu.ulab.app.web.response.PageResponse;
 import com.edu.ulab.app.web.response.UserBookResponse;
+import com.edu.ulab.app.web.response.UserResponse;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.dao.QueryTimeoutException;
 import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
 
+import java.time.Duration;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Consumer;
 import java.util.stream.Collectors;
 
+import static com.edu.ulab.app.web.constant.CacheConstant.USERS_WITH_BOOKS_CACHE;
+import static com.edu.ulab.app.web.constant.WebConstant.MAX_PAGE_SIZE;
+
 @Slf4j
 @Component
 public class UserDataFacade {
@@ -23,36 +53,63 @@ public class UserDataFacade {
     private final BookService bookService;
     private final UserMapper userMapper;
     private final BookMapper bookMapper;
+    private final Executor facadeExecutor;
+    private final Duration fanOutTimeout;
+    private final SingleFlight<Long, UserBookResponse> userWithBooksSingleFlight;
+    private final CacheManager cacheManager;
+    private final BookWriteBehind bookWriteBehind;
+    private final boolean waitForDurable;
+    private final Duration durableTimeout;
 
+    /**
+     * @param waitForDurable с отложенной записью отвечать только после коммита книг, а не после постановки в очередь
+     */
     public UserDataFacade(@Qualifier("userServiceImpl") UserService userService,
                           @Qualifier("bookServiceImpl") BookService bookService,
                           UserMapper userMapper,
-                          BookMapper bookMapper) {
+                          BookMapper bookMapper,
+                          @Qualifier("facadeExecutor") Executor facadeExecutor,
+                          @Value("${user-data-facade.fan-out.timeout:5s}") Duration fanOutTimeout,
+                          @Qualifier("userWithBooksSingleFlight")
+                          SingleFlight<Long, UserBookResponse> userWithBooksSingleFlight,
+                          CacheManager cacheManager,
+                          Optional<BookWriteBehind> bookWriteBehind,
+                          @Value("${user-data-facade.write-behind.wait-for-durable:false}") boolean waitForDurable,
+                          @Value("${user-data-facade.write-behind.durable-timeout:5s}") Duration durableTimeout) {
         this.userService = userService;
         this.bookService = bookService;
         this.userMapper = userMapper;
         this.bookMapper = bookMapper;
+        this.facadeExecutor = facadeExecutor;
+        this.fanOutTimeout = fanOutTimeout;
+        this.userWithBooksSingleFlight = userWithBooksSingleFlight;
+        this.cacheManager = cacheManager;
+        this.bookWriteBehind = bookWriteBehind.orElse(null);
+        this.waitForDurable = waitForDurable;
+        this.durableTimeout = durableTimeout;
     }
 
     public UserBookResponse createUserWithBooks(UserBookRequest userBookRequest) {
-        log.info("Got user book create request: {}", userBookRequest);
+        log.debug("Got user book create request: {}", userBookRequest);
         UserDto userDto = userMapper.userRequestToUserDto(userBookRequest.getUserRequest());
-        log.info("Mapped user request: {}", userDto);
 
         UserDto createdUser = userService.createUser(userDto);
-        log.info("Created user: {}", createdUser);
 
-        List<Long> bookIdList = userBookRequest.getBookRequests()
+        List<BookDto> mappedBooks = userBookRequest.getBookRequests()
                 .stream()
                 .filter(Objects::nonNull)
                 .map(bookMapper::bookRequestToBookDto)
                 .peek(bookDto -> bookDto.setUserId(createdUser.getId()))
-                .peek(mappedBookDto -> log.info("mapped book: {}", mappedBookDto))
-                .map(bookService::createBook)
-                .peek(createdBook -> log.info("Created book: {}", createdBook))
+                .collect(Collectors.toList());
+
+        List<Long> bookIdList = createBooks(mappedBooks)
+                .stream()
                 .map(BookDto::getId)
                 .toList();
-        log.info("Collected book ids: {}", bookIdList);
+        log.info("Created user with id - {} and {} books", createdUser.getId(), bookIdList.size());
+        if (log.isDebugEnabled()) {
+            log.debug("Collected book ids of user {}: {}", createdUser.getId(), LogSummary.ids(bookIdList));
+        }
 
         return UserBookResponse.builder()
                 .userId(createdUser.getId())
@@ -60,36 +117,60 @@ public class UserDataFacade {
                 .title(createdUser.getTitle())
                 .age(createdUser.getAge())
                 .booksIdList(bookIdList)
+                .version(versionAfter(createdUser, bookIdList))
                 .build();
     }
 
     public UserBookResponse updateUserWithBooks(UserBookRequest userBookRequest, Long id) {
-        log.info("Got user book update request: {}", userBookRequest);
+        return updateUserWithBooks(userBookRequest, id, null);
+    }
+
+    /**
+     * @param ifMatch значение If-Match или null: пользователь обновляется, только если его ETag совпадает
+     */
+    public UserBookResponse updateUserWithBooks(UserBookRequest userBookRequest, Long id, String ifMatch) {
+        log.debug("Got user book update request: {}", userBookRequest);
         UserDto userDto = userMapper.userRequestToUserDto(userBookRequest.getUserRequest());
         userDto.setId(id);
-        log.info("Mapped user request: {}", userDto);
+        if (Objects.nonNull(ifMatch)) {
+            checkIfMatch(userDto, ifMatch);
+        }
+
+        //existing books are read in parallel with the user update
+        Future<List<Long>> existingBookIds = submit(() -> bookService.getAllByUserId(id)
+                .stream()
+                .map(BookDto::getId)
+                .collect(Collectors.toList()));
 
-        UserDto updatedUser = userService.updateUser(userDto);
-        log.info("Updated user: {}", updatedUser);
+        UserDto updatedUser;
+        try {
+            updatedUser = userService.updateUser(userDto);
+        } catch (RuntimeException e) {
+            existingBookIds.cancel(true);
+            throw e;
+        }
+
+        //the snapshot is taken before the new books are inserted, otherwise a late read would list them twice
+        List<Long> bookIdList = new ArrayList<>(await(existingBookIds));
 
         //add new books for user
-        userBookRequest.getBookRequests()
+        List<BookDto> mappedBooks = userBookRequest.getBookRequests()
                 .stream()
                 .filter(Objects::nonNull)
                 .map(bookMapper::bookRequestToBookDto)
                 .peek(bookDto -> bookDto.setUserId(updatedUser.getId()))
-                .peek(mappedBookDto -> log.info("mapped book: {}", mappedBookDto))
-                .map(bookService::createBook)
-                .peek(createdBook -> log.info("Created book: {}", createdBook))
                 .collect(Collectors.toList());
+        List<BookDto> createdBooks = createBooks(mappedBooks);
 
-        //get all books for user = new books + old books
-        List<Long> bookIdList = bookService.getAllByUserId(updatedUser.getId())
-                .stream()
+        //all books for user = old books + new books
+        createdBooks.stream()
                 .map(BookDto::getId)
-                .collect(Collectors.toList());
+                .forEach(bookIdList::add);
 
-        log.info("Collected book ids: {}", bookIdList);
+        log.info("Updated user with id - {}, added {} books", updatedUser.getId(), createdBooks.size());
+        if (log.isDebugEnabled()) {
+            log.debug("Collected book ids of user {}: {}", updatedUser.getId(), LogSummary.ids(bookIdList));
+        }
 
         return UserBookResponse.builder()
                 .userId(updatedUser.getId())
@@ -97,46 +178,218 @@ public class UserDataFacade {
                 .title(updatedUser.getTitle())
                 .age(updatedUser.getAge())
                 .booksIdList(bookIdList)
+                .version(versionAfter(updatedUser, createdBooks))
                 .build();
     }
 
+    /**
+     * ETag пользователя с книгами без построения ответа. Версия берётся из кэша usersWithBooks,
+     * который сбрасывается при любой записи пользователя и его книг. При промахе читается только версия,
+     * кэш не заполняется.
+     *
+     * @return null, если у пользователя нет версии
+     */
+    public String getUserWithBooksETag(Long userId) {
+        Cache cache = cacheManager.getCache(USERS_WITH_BOOKS_CACHE);
+        UserBooksDto userBooksDto = Objects.nonNull(cache) && Objects.nonNull(userId)
+                ? cache.get(userId, UserBooksDto.class)
+                : null;
+        if (Objects.nonNull(userBooksDto)) {
+            return UserETag.of(userBooksDto.getVersion());
+        }
+        return UserETag.of(userService.getUserVersion(userId));
+    }
+
     public UserBookResponse getUserWithBooks(Long userId) {
-        UserDto userDto = userService.getUserById(userId);
-        log.info("Got user dto {}", userDto);
+        //concurrent requests for the same user share one load
+        return userWithBooksSingleFlight.execute(userId, () -> loadUserWithBooks(userId));
+    }
 
-        List<Long> bookIdList = bookService.getAllByUserId(userId)
-                .stream()
-                .filter(Objects::nonNull)
-                .peek(bookDto -> log.info("Got bookDto - {}", bookDto))
-                .map(BookDto::getId)
-                .collect(Collectors.toList());
-        log.info("Collected book ids: {}", bookIdList);
+    private UserBookResponse loadUserWithBooks(Long userId) {
+        UserBooksDto userBooksDto = userService.getUserWithBookIds(userId);
+        if (log.isDebugEnabled()) {
+            log.debug("Got user {} with book ids: {}", userId, LogSummary.ids(userBooksDto.getBookIdList()));
+        }
 
         return UserBookResponse.builder()
-                .userId(userDto.getId())
-                .fullName(userDto.getFullName())
-                .title(userDto.getTitle())
-                .age(userDto.getAge())
-                .booksIdList(bookIdList)
+                .userId(userBooksDto.getId())
+                .fullName(userBooksDto.getFullName())
+                .title(userBooksDto.getTitle())
+                .age(userBooksDto.getAge())
+                .booksIdList(userBooksDto.getBookIdList())
+                .version(userBooksDto.getVersion())
+                .build();
+    }
+
+    public PageResponse<UserResponse> getUsers(String cursor, int limit) {
+        checkPageSize(limit);
+        long afterId = CursorToken.decode(cursor);
+        log.info("Get {} users after id {}", limit, afterId);
+
+        //one extra row tells whether there is a next page
+        List<UserDto> users = userService.getUsersAfter(afterId, limit + 1);
+        List<UserResponse> items = users.stream()
+                .limit(limit)
+                .map(userDto -> UserResponse.builder()
+                        .userId(userDto.getId())
+                        .fullName(userDto.getFullName())
+                        .title(userDto.getTitle())
+                        .age(userDto.getAge())
+                        .build())
+                .collect(Collectors.toList());
+
+        return PageResponse.<UserResponse>builder()
+                .items(items)
+                .nextCursor(users.size() > limit ? CursorToken.encode(items.get(limit - 1).getUserId()) : null)
+                .build();
+    }
+
+    public PageResponse<BookResponse> getUserBooks(Long userId, String cursor, int limit) {
+        checkPageSize(limit);
+        long afterId = CursorToken.decode(cursor);
+        log.info("Get {} books of user {} after id {}", limit, userId, afterId);
+
+        //throws NotFoundException, so that unknown user is not returned as empty page
+        userService.getUserById(userId);
+
+        List<BookDto> books = bookService.getAllByUserIdAfter(userId, afterId, limit + 1);
+        List<BookResponse> items = books.stream()
+                .limit(limit)
+                .map(bookDto -> BookResponse.builder()
+                        .bookId(bookDto.getId())
+                        .title(bookDto.getTitle())
+                        .author(bookDto.getAuthor())
+                        .pageCount(bookDto.getPageCount())
+                        .build())
+                .collect(Collectors.toList());
+
+        return PageResponse.<BookResponse>builder()
+                .items(items)
+                .nextCursor(books.size() > limit ? CursorToken.encode(items.get(limit - 1).getBookId()) : null)
                 .build();
     }
 
+    public void exportUsersWithBooks(Consumer<UserBookResponse> action) {
+        log.info("Export users with books");
+        userService.forEachUserWithBookIds(userBooksDto -> action.accept(UserBookResponse.builder()
+                .userId(userBooksDto.getId())
+                .fullName(userBooksDto.getFullName())
+                .title(userBooksDto.getTitle())
+                .age(userBooksDto.getAge())
+                .booksIdList(userBooksDto.getBookIdList())
+                .version(userBooksDto.getVersion())
+                .build()));
+    }
+
+    @Transactional
     public void deleteUserWithBooks(Long userId) {
 
         log.info("Delete user with id - {}", userId);
 
         //delete books whose has relationship with user
-        bookService.getAllByUserId(userId)
-                .stream()
-                .filter(Objects::nonNull)
-                .peek(book -> log.info("Deleted book {}",book ))
-                .map(BookDto::getId)
-                .peek(bookService::deleteBookById)
-                .collect(Collectors.toList());
-
+        bookService.deleteAllByUserId(userId);
 
         userService.deleteUserById(userId);
         log.info("User with id - {} was deleted", userId);
 
     }
+
+    /**
+     * Книги пишутся сразу или, если включена отложенная запись, получают id и встают в очередь.
+     * Без waitForDurable ответ уходит до коммита, и книги, которые не удалось записать, видны только в логе
+     * и метрике {@link BookWriteBehind#FAILED_COUNTER}; с ним ошибка записи возвращается клиенту.
+     */
+    private List<BookDto> createBooks(List<BookDto> books) {
+        if (bookWriteBehind == null) {
+            return bookService.createBooks(books);
+        }
+        CompletableFuture<List<BookDto>> durable = bookWriteBehind.enqueue(books);
+        if (waitForDurable) {
+            return awaitDurable(durable);
+        }
+        durable.whenComplete((savedBooks, e) -> {
+            if (e != null) {
+                log.error("Books with ids {} were acknowledged but not written", LogSummary.ids(books, BookDto::getId), e);
+            }
+        });
+        return books;
+    }
+
+    private List<BookDto> awaitDurable(CompletableFuture<List<BookDto>> durable) {
+        try {
+            return durable.get(durableTimeout.toMillis(), TimeUnit.MILLISECONDS);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw new IllegalStateException(e.getCause());
+        } catch (TimeoutException e) {
+            //the books stay queued and may still be written
+            throw new QueryTimeoutException(String.format("Books were not committed in %s", durableTimeout), e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for books to be committed", e);
+        }
+    }
+
+    /**
+     * Сравнение с ETag из кэша дешёвое, но не атомарно с обновлением: поэтому версия из ETag, если её нет
+     * в запросе, проверяется ещё и самим UPDATE. Книги, добавленные или удалённые между проверкой и обновлением,
+     * тоже увеличивают версию, и обновление завершается конфликтом.
+     */
+    private void checkIfMatch(UserDto userDto, String ifMatch) {
+        String eTag = getUserWithBooksETag(userDto.getId());
+        if (!UserETag.matchesIfMatch(ifMatch, eTag)) {
+            throw new PreconditionFailedException(String.format("User with id - %d was modified, current ETag - %s",
+                    userDto.getId(), eTag));
+        }
+        if (Objects.nonNull(eTag) && !UserETag.isAny(ifMatch) && Objects.isNull(userDto.getVersion())) {
+            userDto.setVersion(UserETag.version(eTag));
+        }
+    }
+
+    /**
+     * Версия пользователя после добавления книг: {@link BookService#createBooks} увеличивает её на 1.
+     * Если книги пользователя параллельно меняет другой запрос, версия в базе будет больше,
+     * и ETag ответа просто не совпадёт с текущим.
+     */
+    private static Long versionAfter(UserDto userDto, List<?> createdBooks) {
+        if (Objects.isNull(userDto.getVersion()) || createdBooks.isEmpty()) {
+            return userDto.getVersion();
+        }
+        return userDto.getVersion() + 1;
+    }
+
+    private void checkPageSize(int limit) {
+        if (limit < 1 || limit > MAX_PAGE_SIZE) {
+            throw new BadRequestException(String.format("Page size should be between 1 and %d", MAX_PAGE_SIZE));
+        }
+    }
+
+    /**
+     * В отличие от CompletableFuture.supplyAsync, cancel(true) прерывает поток, выполняющий задачу.
+     */
+    private <T> Future<T> submit(Callable<T> task) {
+        FutureTask<T> future = new FutureTask<>(task);
+        facadeExecutor.execute(future);
+        return future;
+    }
+
+    private <T> T await(Future<T> future) {
+        try {
+            return future.get(fanOutTimeout.toMillis(), TimeUnit.MILLISECONDS);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw new IllegalStateException(e.getCause());
+        } catch (TimeoutException e) {
+            future.cancel(true);
+            throw new QueryTimeoutException(String.format("Parallel lookup did not finish in %s", fanOutTimeout), e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            future.cancel(true);
+            throw new IllegalStateException("Interrupted while waiting for parallel lookup", e);
+        }
+    }
 }
@@ -0,0 +1,45 @@
+package com.edu.ulab.app.logging;
+
+import lombok.experimental.UtilityClass;
+
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.Objects;
+import java.util.function.Function;
+
+/**
+ * Краткое описание коллекций для логов: размер и первые {@link #MAX_IDS} id вместо toString всех элементов.
+ * Строка собирается сразу, поэтому вызывать следует только под проверкой {@code log.isDebugEnabled()}.
+ */
+@UtilityClass
+public class LogSummary {
+
+    public static final int MAX_IDS = 10;
+
+    public static String ids(Collection<Long> ids) {
+        return summary(ids, Function.identity());
+    }
+
+    public static <T> String ids(Collection<T> items, Function<T, Long> idExtractor) {
+        return summary(items, idExtractor);
+    }
+
+    private static <T> String summary(Collection<T> items, Function<T, Long> idExtractor) {
+        if (Objects.isNull(items)) {
+            return "null";
+        }
+        StringBuilder builder = new StringBuilder("size=").append(items.size()).append(", ids=[");
+        Iterator<T> iterator = items.iterator();
+        for (int i = 0; i < MAX_IDS && iterator.hasNext(); i++) {
+            if (i > 0) {
+                builder.append(", ");
+            }
+            T item = iterator.next();
+            builder.append(Objects.isNull(item) ? null : idExtractor.apply(item));
+        }
+        if (iterator.hasNext()) {
+            builder.append(", ...");
+        }
+        return builder.append(']').toString();
+    }
+}
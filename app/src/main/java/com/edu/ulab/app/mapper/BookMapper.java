@@ -13,7 +13,9 @@ public interface BookMapper {
 
     BookRequest bookDtoToBookRequest(BookDto bookDto);
 
+    @Mapping(source = "userId", target = "person.id")
     Book bookDtoToBook(BookDto bookDto);
 
+    @Mapping(source = "person.id", target = "userId")
     BookDto bookToBookDto(Book book);
 }
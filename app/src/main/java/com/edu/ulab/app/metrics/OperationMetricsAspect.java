@@ -0,0 +1,104 @@
+package com.edu.ulab.app.metrics;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.RequiredArgsConstructor;
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.aspectj.lang.annotation.Around;
+import org.aspectj.lang.annotation.Aspect;
+import org.aspectj.lang.reflect.MethodSignature;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import org.springframework.util.ClassUtils;
+
+import java.lang.reflect.Method;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Время выполнения публичных методов фасадов и реализаций сервисов в таймере {@value #OPERATION_TIMER}.
+ * <p>
+ * Теги: layer (facade, service), impl (jpa, template, storage; у фасадов none), class, method
+ * и exception (none или простое имя класса исключения). Гистограммы включаются в
+ * management.metrics.distribution.percentiles-histogram. Таймеры успешных вызовов кешируются по классу и методу,
+ * поэтому на горячем пути нет поиска в реестре.
+ */
+@Aspect
+@Component
+@RequiredArgsConstructor
+@ConditionalOnProperty(name = "operation-metrics.enabled", havingValue = "true", matchIfMissing = true)
+public class OperationMetricsAspect {
+
+    public static final String OPERATION_TIMER = "app.operation";
+
+    private static final String NO_EXCEPTION = "none";
+
+    private final MeterRegistry meterRegistry;
+
+    private final Map<Class<?>, Map<Method, Timer>> successTimers = new ConcurrentHashMap<>();
+
+    @Around("execution(public * com.edu.ulab.app.facade..*(..))")
+    public Object timeFacade(ProceedingJoinPoint joinPoint) throws Throwable {
+        return time(joinPoint, "facade");
+    }
+
+    @Around("execution(public * com.edu.ulab.app.service.impl..*(..))")
+    public Object timeService(ProceedingJoinPoint joinPoint) throws Throwable {
+        return time(joinPoint, "service");
+    }
+
+    private Object time(ProceedingJoinPoint joinPoint, String layer) throws Throwable {
+        long start = System.nanoTime();
+        try {
+            Object result = joinPoint.proceed();
+            successTimer(joinPoint, layer).record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            return result;
+        } catch (Throwable e) {
+            timer(targetClass(joinPoint), ((MethodSignature) joinPoint.getSignature()).getMethod(), layer,
+                    e.getClass().getSimpleName())
+                    .record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            throw e;
+        }
+    }
+
+    private Timer successTimer(ProceedingJoinPoint joinPoint, String layer) {
+        Class<?> targetClass = targetClass(joinPoint);
+        Method method = ((MethodSignature) joinPoint.getSignature()).getMethod();
+        Map<Method, Timer> classTimers = successTimers.computeIfAbsent(targetClass, key -> new ConcurrentHashMap<>());
+        Timer timer = classTimers.get(method);
+        if (timer == null) {
+            timer = classTimers.computeIfAbsent(method, key -> timer(targetClass, method, layer, NO_EXCEPTION));
+        }
+        return timer;
+    }
+
+    private Timer timer(Class<?> targetClass, Method method, String layer, String exception) {
+        return Timer.builder(OPERATION_TIMER)
+                .description("Execution time of facade and service operations")
+                .tag("layer", layer)
+                .tag("impl", implementation(targetClass, layer))
+                .tag("class", targetClass.getSimpleName())
+                .tag("method", method.getName())
+                .tag("exception", exception)
+                .register(meterRegistry);
+    }
+
+    private static Class<?> targetClass(ProceedingJoinPoint joinPoint) {
+        return ClassUtils.getUserClass(joinPoint.getTarget());
+    }
+
+    /**
+     * Реализация сервиса по суффиксу класса: *Template — JdbcTemplate, *Storage — память, остальные — JPA.
+     */
+    static String implementation(Class<?> targetClass, String layer) {
+        if (!"service".equals(layer)) {
+            return "none";
+        }
+        String name = targetClass.getSimpleName();
+        if (name.endsWith("Template")) {
+            return "template";
+        }
+        return name.endsWith("Storage") ? "storage" : "jpa";
+    }
+}
@@ -0,0 +1,151 @@
+package com.edu.ulab.app.metrics;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import lombok.extern.slf4j.Slf4j;
+import net.ttddyy.dsproxy.ExecutionInfo;
+import net.ttddyy.dsproxy.QueryInfo;
+import net.ttddyy.dsproxy.QueryType;
+import net.ttddyy.dsproxy.listener.QueryExecutionListener;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Метрики SQL-запросов вместо вывода каждого запроса в консоль (show-sql).
+ * <p>
+ * Время выполнения пишется в таймер {@value #QUERY_TIMER} с тегами type (select, insert, update, delete, other)
+ * и outcome (success, error), пакет JDBC batch считается одним выполнением.
+ * Запросы дольше slowQueryThreshold дополнительно считаются в {@value #SLOW_QUERY_COUNTER}
+ * и логируются в WARN текстом без параметров.
+ * Таймеры создаются один раз в {@link #bindTo}, до этого (например, во время миграций при старте) запросы не учитываются.
+ */
+@Slf4j
+public class QueryMetricsListener implements QueryExecutionListener, MeterBinder {
+
+    public static final String QUERY_TIMER = "db.query";
+    public static final String SLOW_QUERY_COUNTER = "db.query.slow";
+
+    private static final int MAX_LOGGED_QUERY_LENGTH = 1000;
+    private static final QueryType[] KEYWORD_TYPES = {QueryType.SELECT, QueryType.INSERT, QueryType.UPDATE, QueryType.DELETE};
+
+    private final long slowQueryThresholdMillis;
+
+    private volatile Timer[][] timers;
+    private volatile Counter slowQueries;
+
+    public QueryMetricsListener(Duration slowQueryThreshold) {
+        this.slowQueryThresholdMillis = slowQueryThreshold.toMillis();
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        Timer[][] typeTimers = new Timer[QueryType.values().length][2];
+        for (QueryType type : QueryType.values()) {
+            typeTimers[type.ordinal()][0] = timer(registry, type, "success");
+            typeTimers[type.ordinal()][1] = timer(registry, type, "error");
+        }
+        slowQueries = Counter.builder(SLOW_QUERY_COUNTER)
+                .description("SQL executions slower than the slow query threshold")
+                .register(registry);
+        timers = typeTimers;
+    }
+
+    @Override
+    public void beforeQuery(ExecutionInfo execInfo, List<QueryInfo> queryInfoList) {
+    }
+
+    @Override
+    public void afterQuery(ExecutionInfo execInfo, List<QueryInfo> queryInfoList) {
+        Timer[][] typeTimers = timers;
+        if (typeTimers == null) {
+            return;
+        }
+        String query = queryInfoList.isEmpty() ? "" : queryInfoList.get(0).getQuery();
+        long elapsedMillis = execInfo.getElapsedTime();
+        typeTimers[queryType(query).ordinal()][execInfo.isSuccess() ? 0 : 1]
+                .record(elapsedMillis, TimeUnit.MILLISECONDS);
+
+        if (elapsedMillis >= slowQueryThresholdMillis) {
+            slowQueries.increment();
+            log.warn("[{}]: Slow query, {} ms, batch size {}: {}", QueryMetricsListener.class,
+                    elapsedMillis, execInfo.isBatch() ? execInfo.getBatchSize() : 0, abbreviate(query));
+        }
+    }
+
+    /**
+     * Тип запроса по первому слову, без копирования строки запроса.
+     * Для WITH — по основному запросу после CTE: INSERT ... SELECT из CTE считается вставкой.
+     */
+    static QueryType queryType(String query) {
+        int start = 0;
+        while (start < query.length() && (Character.isWhitespace(query.charAt(start)) || query.charAt(start) == '(')) {
+            start++;
+        }
+        QueryType type = keywordType(query, start);
+        if (type != null) {
+            return type;
+        }
+        return query.regionMatches(true, start, "WITH", 0, 4) ? mainStatementType(query, start + 4) : QueryType.OTHER;
+    }
+
+    /**
+     * Первое ключевое слово вне скобок: тела CTE всегда в скобках, строковые литералы и имена в кавычках пропускаются.
+     */
+    private static QueryType mainStatementType(String query, int from) {
+        int depth = 0;
+        char quote = 0;
+        for (int i = from; i < query.length(); i++) {
+            char c = query.charAt(i);
+            if (quote != 0) {
+                if (c == quote) {
+                    quote = 0;
+                }
+            } else if (c == '\'' || c == '"') {
+                quote = c;
+            } else if (c == '(') {
+                depth++;
+            } else if (c == ')') {
+                depth--;
+            } else if (depth == 0 && (i == 0 || !isIdentifierPart(query.charAt(i - 1)))) {
+                QueryType type = keywordType(query, i);
+                if (type != null) {
+                    return type;
+                }
+            }
+        }
+        return QueryType.OTHER;
+    }
+
+    private static QueryType keywordType(String query, int start) {
+        for (QueryType type : KEYWORD_TYPES) {
+            String keyword = type.name();
+            int end = start + keyword.length();
+            if (query.regionMatches(true, start, keyword, 0, keyword.length())
+                    && (end == query.length() || !isIdentifierPart(query.charAt(end)))) {
+                return type;
+            }
+        }
+        return null;
+    }
+
+    private static boolean isIdentifierPart(char c) {
+        return Character.isLetterOrDigit(c) || c == '_';
+    }
+
+    private static Timer timer(MeterRegistry registry, QueryType type, String outcome) {
+        return Timer.builder(QUERY_TIMER)
+                .description("SQL execution time")
+                .tag("type", type.name().toLowerCase(Locale.ROOT))
+                .tag("outcome", outcome)
+                .register(registry);
+    }
+
+    private static String abbreviate(String query) {
+        return query.length() <= MAX_LOGGED_QUERY_LENGTH ? query : query.substring(0, MAX_LOGGED_QUERY_LENGTH) + "...";
+    }
+}
@@ -1,21 +1,67 @@
 package com.edu.ulab.app.repository;
 
 import com.edu.ulab.app.entity.Book;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.data.repository.CrudRepository;
 
 import javax.persistence.LockModeType;
+import javax.persistence.QueryHint;
 import java.util.List;
 import java.util.Optional;
 
+import static com.edu.ulab.app.web.constant.CacheConstant.BOOKS_BY_USER_REGION;
+
 public interface BookRepository extends JpaRepository<Book, Long> {
 
+    /**
+     * Обновление одним UPDATE без чтения книги и её пользователя, версия увеличивается.
+     * Версия сверяется, только если она передана.
+     *
+     * @return 0, если книги нет или её версия другая
+     */
+    @Modifying
+    @Query("update Book b set b.title = :title, b.author = :author, b.pageCount = :pageCount, " +
+            "b.person.id = :userId, b.version = b.version + 1 " +
+            "where b.id = :id and (:version is null or b.version = :version)")
+    int updateById(Long id, String title, String author, long pageCount, Long userId, Long version);
+
+    @Query("select b.version from Book b where b.id = :id")
+    Optional<Long> findVersionById(Long id);
+
+    /**
+     * Пользователь книги; строка книги блокируется до конца транзакции, чтобы его не сменила другая запись.
+     */
     @Lock(LockModeType.PESSIMISTIC_WRITE)
-    @Query("select b from Book b where b.id = :id")
-    Optional<Book> findByIdForUpdate(long id);
+    @Query("select b.person.id from Book b where b.id = :id")
+    Optional<Long> findUserIdForUpdateById(Long id);
 
+    /**
+     * @return 0, если книги нет
+     */
+    @Modifying
+    @Query("delete from Book b where b.id = :id")
+    int deleteOneById(Long id);
+
+    /**
+     * Результат кэшируется в регионе {@value com.edu.ulab.app.web.constant.CacheConstant#BOOKS_BY_USER_REGION}
+     * при включённом кэше второго уровня и сбрасывается любой записью в book.
+     */
+    @QueryHints({
+            @QueryHint(name = org.hibernate.jpa.QueryHints.HINT_CACHEABLE, value = "true"),
+            @QueryHint(name = org.hibernate.jpa.QueryHints.HINT_CACHE_REGION, value = BOOKS_BY_USER_REGION)
+    })
     @Query("select b from Book b where b.person.id = :userId")
     List<Book> findAllByUserId(Long userId);
+
+    @Query("select b from Book b where b.person.id = :userId and b.id > :afterId order by b.id")
+    List<Book> findAllByUserIdAfter(Long userId, long afterId, Pageable pageable);
+
+    @Modifying
+    @Query("delete from Book b where b.person.id = :userId")
+    int deleteAllByUserId(Long userId);
 }
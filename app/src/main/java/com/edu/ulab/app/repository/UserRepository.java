@@ -1,15 +1,21 @@
 package com.edu.ulab.app.repository;
 
 import com.edu.ulab.app.entity.Person;
+import com.edu.ulab.app.repository.projection.UserBookIdProjection;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
-import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.data.repository.CrudRepository;
 
-import javax.persistence.LockModeType;
+import javax.persistence.QueryHint;
+import java.util.Collection;
+import java.util.List;
 import java.util.Optional;
+import java.util.stream.Stream;
 
-public interface UserRepository extends JpaRepository<Person, Long> {
+public interface UserRepository extends JpaRepository<Person, Long>, UserVersionRepository {
 
     /*
     User has books - book - started - comited status - other logic
@@ -17,8 +23,53 @@ public interface UserRepository extends JpaRepository<Person, Long> {
     User has books - book - finished
      */
 
-    @Lock(LockModeType.PESSIMISTIC_WRITE)
-    @Query("select p from Person p where p.id = :id")
-    Optional<Person> findByIdForUpdate(long id);
+    /**
+     * Обновление одним UPDATE без чтения пользователя, версия увеличивается.
+     * Версия сверяется, только если она передана.
+     *
+     * @return 0, если пользователя нет или его версия другая
+     */
+    @Modifying
+    @Query("update Person p set p.fullName = :fullName, p.title = :title, p.age = :age, p.version = p.version + 1 " +
+            "where p.id = :id and (:version is null or p.version = :version)")
+    int updateById(Long id, String fullName, String title, int age, Long version);
+
+    @Query("select p.version from Person p where p.id = :id")
+    Optional<Long> findVersionById(Long id);
+
+    /**
+     * Увеличивает версию пользователей одним UPDATE без их чтения.
+     */
+    @Modifying
+    @Query("update Person p set p.version = p.version + 1 where p.id in :ids")
+    int incrementVersionByIds(Collection<Long> ids);
+
+    /**
+     * Один DELETE без чтения пользователя. Книги пользователя удаляются раньше, как в JdbcTemplate-реализации.
+     *
+     * @return 0, если пользователя нет
+     */
+    @Modifying
+    @Query("delete from Person p where p.id = :id")
+    int deleteOneById(Long id);
+
+    @Query("select p from Person p where p.id > :afterId order by p.id")
+    List<Person> findAllByIdAfter(long afterId, Pageable pageable);
+
+    @Query("select new com.edu.ulab.app.repository.projection.UserBookIdProjection(p.id, p.fullName, p.title, p.age, b.id, p.version) " +
+            "from Person p left join p.bookSet b where p.id = :id order by b.id")
+    List<UserBookIdProjection> findWithBookIdsById(Long id);
+
+    /**
+     * Курсор по всем пользователям с id книг, нужна открытая транзакция.
+     * Размер выборки совпадает с SQLQueryUserConstant.EXPORT_FETCH_SIZE.
+     */
+    @QueryHints({
+            @QueryHint(name = org.hibernate.jpa.QueryHints.HINT_FETCH_SIZE, value = "500"),
+            @QueryHint(name = org.hibernate.jpa.QueryHints.HINT_READONLY, value = "true")
+    })
+    @Query("select new com.edu.ulab.app.repository.projection.UserBookIdProjection(p.id, p.fullName, p.title, p.age, b.id, p.version) " +
+            "from Person p left join p.bookSet b order by p.id, b.id")
+    Stream<UserBookIdProjection> streamAllWithBookIds();
 
 }
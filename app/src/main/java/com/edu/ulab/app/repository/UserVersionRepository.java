@@ -0,0 +1,15 @@
+package com.edu.ulab.app.repository;
+
+/**
+ * Увеличение версии пользователя через EntityManager при включённом кэше второго уровня:
+ * find с блокировкой обновляет запись пользователя в кэше, а JPQL UPDATE сбросил бы регион person целиком.
+ */
+public interface UserVersionRepository {
+
+    /**
+     * Блокирует строку пользователя до конца транзакции и увеличивает его версию.
+     *
+     * @return false, если пользователя нет
+     */
+    boolean incrementVersion(Long id);
+}
@@ -0,0 +1,18 @@
+package com.edu.ulab.app.repository;
+
+import com.edu.ulab.app.entity.Person;
+
+import javax.persistence.EntityManager;
+import javax.persistence.LockModeType;
+import javax.persistence.PersistenceContext;
+
+public class UserVersionRepositoryImpl implements UserVersionRepository {
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    @Override
+    public boolean incrementVersion(Long id) {
+        return entityManager.find(Person.class, id, LockModeType.PESSIMISTIC_FORCE_INCREMENT) != null;
+    }
+}
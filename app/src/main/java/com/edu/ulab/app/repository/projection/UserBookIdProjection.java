@@ -0,0 +1,19 @@
+package com.edu.ulab.app.repository.projection;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+/**
+ * Строка выборки пользователя вместе с id одной из его книг.
+ * bookId равен null, если у пользователя нет книг.
+ */
+@Data
+@AllArgsConstructor
+public class UserBookIdProjection {
+    private Long id;
+    private String fullName;
+    private String title;
+    private int age;
+    private Long bookId;
+    private Long version;
+}
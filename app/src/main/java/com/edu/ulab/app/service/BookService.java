@@ -5,9 +5,15 @@ import com.edu.ulab.app.dto.BookDto;
 
 import java.util.List;
 
+/**
+ * Добавление, удаление и перенос книг увеличивают на 1 за вызов версию каждого пользователя,
+ * список книг которого изменился, в той же транзакции: по версии считается ETag пользователя с книгами.
+ */
 public interface BookService {
     BookDto createBook(BookDto bookDto);
 
+    List<BookDto> createBooks(List<BookDto> bookDtoList);
+
     BookDto updateBook(BookDto bookDto);
 
     BookDto getBookById(Long id);
@@ -15,4 +21,11 @@ public interface BookService {
     void deleteBookById(Long id);
 
     List<BookDto> getAllByUserId(Long id);
+
+    /**
+     * Страница книг пользователя с id больше afterId по возрастанию id.
+     */
+    List<BookDto> getAllByUserIdAfter(Long userId, long afterId, int limit);
+
+    void deleteAllByUserId(Long userId);
 }
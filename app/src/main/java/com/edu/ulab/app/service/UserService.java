@@ -1,15 +1,40 @@
 package com.edu.ulab.app.service;
 
+import com.edu.ulab.app.dto.UserBooksDto;
 import com.edu.ulab.app.dto.UserDto;
 import org.springframework.stereotype.Repository;
 
+import java.util.List;
+import java.util.function.Consumer;
+
 @Repository
 public interface UserService {
     UserDto createUser(UserDto userDto);
 
+    List<UserDto> createUsers(List<UserDto> userDtoList);
+
     UserDto updateUser(UserDto userDto);
 
     UserDto getUserById(Long id);
 
+    UserBooksDto getUserWithBookIds(Long id);
+
+    /**
+     * Версия пользователя без чтения его полей и книг. Версия увеличивается и при изменении списка книг,
+     * см. {@link BookService}.
+     */
+    long getUserVersion(Long id);
+
+    /**
+     * Страница пользователей с id больше afterId по возрастанию id.
+     */
+    List<UserDto> getUsersAfter(long afterId, int limit);
+
+    /**
+     * Передаёт в action всех пользователей с id их книг по возрастанию id пользователя,
+     * не загружая всю выборку в память.
+     */
+    void forEachUserWithBookIds(Consumer<UserBooksDto> action);
+
     void deleteUserById(Long id);
 }
@@ -0,0 +1,324 @@
+package com.edu.ulab.app.service.bulk;
+
+import com.edu.ulab.app.dto.BookImportDto;
+import com.edu.ulab.app.dto.RejectedRowDto;
+import com.edu.ulab.app.exception.BadRequestException;
+import com.edu.ulab.app.service.cache.SecondLevelCache;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.postgresql.PGConnection;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.cache.annotation.CacheEvict;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.TreeSet;
+
+import static com.edu.ulab.app.web.constant.CacheConstant.USERS_CACHE;
+import static com.edu.ulab.app.web.constant.CacheConstant.USERS_WITH_BOOKS_CACHE;
+import static com.edu.ulab.app.web.constant.CacheConstant.USER_BOOKS_CACHE;
+import static com.edu.ulab.app.web.constant.SQLQueryBookConstant.*;
+import static com.edu.ulab.app.web.constant.SQLQueryUserConstant.INCREMENT_VERSION_SQL;
+
+/**
+ * Массовый импорт книг существующих пользователей из CSV или NDJSON.
+ * <p>
+ * В PostgreSQL тело запроса без буферизации в памяти передаётся в COPY во временную таблицу с текстовыми колонками,
+ * затем один INSERT ... SELECT проверяет значения и наличие пользователя и вставляет подходящие строки в ulab_edu.book.
+ * Остальные строки не вставляются и попадают в отчёт с номером и причиной. Нарушение формата
+ * (число колонок в CSV, невалидный JSON) отменяет весь импорт с {@link BadRequestException}.
+ * <p>
+ * Для других баз (H2 при локальном запуске) тело читается потоково, строки проверяются в Java
+ * и вставляются JDBC batch порциями по chunkSize, пользователь проверяется тем же INSERT.
+ * В обоих случаях импорт выполняется в одной транзакции, в ней же версия каждого пользователя, получившего книги,
+ * увеличивается на 1, как при {@link com.edu.ulab.app.service.BookService#createBooks}.
+ * После транзакции сбрасываются пользователи и списки книг в кэшах.
+ */
+@Slf4j
+@Component
+public class BookBulkImport {
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final ObjectMapper objectMapper;
+    private final SecondLevelCache secondLevelCache;
+    private final int rejectedSampleSize;
+    private final int chunkSize;
+
+    public BookBulkImport(JdbcTemplate jdbcTemplate,
+                          PlatformTransactionManager transactionManager,
+                          ObjectMapper objectMapper,
+                          SecondLevelCache secondLevelCache,
+                          @Value("${book-import.rejected-sample-size:100}") int rejectedSampleSize,
+                          @Value("${book-import.chunk-size:1000}") int chunkSize) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.objectMapper = objectMapper;
+        this.secondLevelCache = secondLevelCache;
+        this.rejectedSampleSize = rejectedSampleSize;
+        this.chunkSize = chunkSize;
+    }
+
+    @CacheEvict(cacheNames = {USERS_CACHE, USER_BOOKS_CACHE, USERS_WITH_BOOKS_CACHE}, allEntries = true)
+    public BookImportDto importBooks(InputStream body, BookImportFormat format) {
+        log.info("[{}]: Import of books from {}", BookBulkImport.class, format);
+        BookImportDto result = transactionTemplate.execute(status -> jdbcTemplate.execute(
+                (ConnectionCallback<BookImportDto>) connection -> connection.isWrapperFor(PGConnection.class)
+                        ? copyAndMerge(connection, body, format)
+                        : insertByChunks(connection, body, format)));
+        //rows are inserted with plain SQL, Hibernate does not see them
+        secondLevelCache.evictAllBookLists();
+        log.info("[{}]: Imported {} of {} books, rejected {}", BookBulkImport.class,
+                result.getImportedRows(), result.getReceivedRows(), result.getRejectedRows());
+        return result;
+    }
+
+    private BookImportDto copyAndMerge(Connection connection, InputStream body, BookImportFormat format)
+            throws SQLException {
+        long receivedRows;
+        try (Statement statement = connection.createStatement()) {
+            statement.execute(CREATE_IMPORT_TABLE_SQL);
+            if (format == BookImportFormat.CSV) {
+                receivedRows = copy(connection, COPY_IMPORT_CSV_SQL, body);
+            } else {
+                statement.execute(CREATE_IMPORT_JSON_TABLE_SQL);
+                copy(connection, COPY_IMPORT_JSON_SQL, body);
+                receivedRows = convertJson(statement);
+            }
+        }
+
+        int importedRows;
+        try (Statement statement = connection.createStatement()) {
+            //the users are locked before their books are inserted, as in BookService.createBooks
+            statement.executeUpdate(INCREMENT_IMPORT_USERS_VERSION_SQL);
+            importedRows = statement.executeUpdate(MERGE_IMPORT_SQL);
+        }
+
+        List<RejectedRowDto> rejectedRowSample = new ArrayList<>();
+        try (PreparedStatement statement = connection.prepareStatement(SELECT_IMPORT_REJECTED_SQL)) {
+            statement.setInt(1, rejectedSampleSize);
+            try (ResultSet resultSet = statement.executeQuery()) {
+                while (resultSet.next()) {
+                    rejectedRowSample.add(rejected(resultSet.getLong(1),
+                            BookImportRejection.valueOf(resultSet.getString(2))));
+                }
+            }
+        }
+
+        try (Statement statement = connection.createStatement()) {
+            //the tables are dropped on commit too, but the transaction may belong to the caller
+            statement.execute(DROP_IMPORT_TABLES_SQL);
+        }
+
+        return BookImportDto.builder()
+                .receivedRows(receivedRows)
+                .importedRows(importedRows)
+                .rejectedRows(receivedRows - importedRows)
+                .rejectedRowSample(rejectedRowSample)
+                .build();
+    }
+
+    private static long copy(Connection connection, String sql, InputStream body) throws SQLException {
+        try {
+            return connection.unwrap(PGConnection.class).getCopyAPI().copyIn(sql, body);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Body of book import could not be read", e);
+        } catch (SQLException e) {
+            //the whole body is rejected: wrong number of columns, unterminated quotes
+            throw new BadRequestException(String.format("Books could not be imported: %s", e.getMessage()));
+        }
+    }
+
+    private static long convertJson(Statement statement) {
+        try {
+            return statement.executeUpdate(INSERT_IMPORT_FROM_JSON_SQL);
+        } catch (SQLException e) {
+            throw new BadRequestException(String.format("Books could not be imported: %s", e.getMessage()));
+        }
+    }
+
+    private BookImportDto insertByChunks(Connection connection, InputStream body, BookImportFormat format)
+            throws SQLException {
+        BufferedReader reader = new BufferedReader(new InputStreamReader(body, StandardCharsets.UTF_8));
+        RowSource rows;
+        try {
+            rows = format == BookImportFormat.CSV ? csvRows(reader) : jsonRows(reader);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Body of book import could not be read", e);
+        } catch (IllegalArgumentException e) {
+            throw new BadRequestException(String.format("Books could not be imported: %s", e.getMessage()));
+        }
+
+        ImportCounter counter = new ImportCounter();
+        List<ImportRow> chunk = new ArrayList<>(chunkSize);
+        try (PreparedStatement statement = connection.prepareStatement(INSERT_IF_USER_EXISTS_SQL)) {
+            ImportRow row;
+            while ((row = nextRow(rows)) != null) {
+                counter.receivedRows++;
+                BookImportRejection rejection = BookImportRejection.check(row.title(), row.author(),
+                        row.pageCount(), row.userId());
+                if (rejection != null) {
+                    counter.reject(row.number(), rejection);
+                    continue;
+                }
+                chunk.add(row);
+                if (chunk.size() == chunkSize) {
+                    insertChunk(statement, chunk, counter);
+                }
+            }
+            insertChunk(statement, chunk, counter);
+        }
+        try (PreparedStatement statement = connection.prepareStatement(INCREMENT_VERSION_SQL)) {
+            for (Long userId : counter.importedUserIds) {
+                statement.setLong(1, 1);
+                statement.setLong(2, userId);
+                statement.addBatch();
+            }
+            statement.executeBatch();
+        }
+
+        List<RejectedRowDto> rejectedRowSample = new ArrayList<>(counter.rejectedRowSample);
+        rejectedRowSample.sort(Comparator.comparingLong(RejectedRowDto::getRow));
+        return BookImportDto.builder()
+                .receivedRows(counter.receivedRows)
+                .importedRows(counter.importedRows)
+                .rejectedRows(counter.receivedRows - counter.importedRows)
+                .rejectedRowSample(rejectedRowSample)
+                .build();
+    }
+
+    private static void insertChunk(PreparedStatement statement, List<ImportRow> chunk, ImportCounter counter)
+            throws SQLException {
+        if (chunk.isEmpty()) {
+            return;
+        }
+        for (ImportRow row : chunk) {
+            statement.setString(1, row.title());
+            statement.setString(2, row.author());
+            statement.setInt(3, BookImportRejection.parsePageCount(row.pageCount()));
+            statement.setLong(4, BookImportRejection.parseUserId(row.userId()));
+            statement.addBatch();
+        }
+        int[] counts = statement.executeBatch();
+        for (int i = 0; i < counts.length; i++) {
+            //no row inserted: the user does not exist
+            if (counts[i] == 0) {
+                counter.reject(chunk.get(i).number(), BookImportRejection.USER);
+            } else {
+                counter.importedRows++;
+                counter.importedUserIds.add(BookImportRejection.parseUserId(chunk.get(i).userId()));
+            }
+        }
+        chunk.clear();
+    }
+
+    private static ImportRow nextRow(RowSource rows) {
+        try {
+            return rows.next();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Body of book import could not be read", e);
+        } catch (IllegalArgumentException e) {
+            throw new BadRequestException(String.format("Books could not be imported: %s", e.getMessage()));
+        }
+    }
+
+    private static RowSource csvRows(BufferedReader reader) throws IOException {
+        CsvRecordReader csv = new CsvRecordReader(reader);
+        //header, as HEADER true in COPY: its names are not checked
+        csv.read();
+        long[] number = {0};
+        return () -> {
+            List<String> values = csv.read();
+            if (values == null) {
+                return null;
+            }
+            number[0]++;
+            if (values.size() != 4) {
+                throw new IllegalArgumentException(String.format(
+                        "CSV row %d has %d columns, expected title, author, page_count, user_id",
+                        number[0], values.size()));
+            }
+            return new ImportRow(number[0], values.get(0), values.get(1), values.get(2), values.get(3));
+        };
+    }
+
+    private RowSource jsonRows(BufferedReader reader) {
+        long[] number = {0};
+        return () -> {
+            String line;
+            do {
+                line = reader.readLine();
+                number[0]++;
+            } while (line != null && line.isBlank());
+            if (line == null) {
+                return null;
+            }
+            try {
+                JsonNode document = objectMapper.readTree(line);
+                return new ImportRow(number[0], text(document, "title"), text(document, "author"),
+                        text(document, "pageCount"), text(document, "userId"));
+            } catch (JsonProcessingException e) {
+                throw new IllegalArgumentException(String.format("NDJSON line %d is not valid JSON", number[0]));
+            }
+        };
+    }
+
+    private static String text(JsonNode document, String field) {
+        JsonNode value = document.get(field);
+        return value == null || value.isNull() ? null : value.asText();
+    }
+
+    private static RejectedRowDto rejected(long row, BookImportRejection rejection) {
+        return RejectedRowDto.builder()
+                .row(row)
+                .reason(rejection.getMessage())
+                .build();
+    }
+
+    private interface RowSource {
+        ImportRow next() throws IOException;
+    }
+
+    private record ImportRow(long number, String title, String author, String pageCount, String userId) {
+    }
+
+    /**
+     * Счётчики импорта, пользователи вставленных книг и первые по номеру отклонённые строки. Строки порции отклоняются после её вставки,
+     * то есть позже следующих за ними строк, поэтому хранятся rejectedSampleSize наименьших номеров.
+     */
+    private class ImportCounter {
+        private long receivedRows;
+        private long importedRows;
+        private final Set<Long> importedUserIds = new TreeSet<>();
+        private final PriorityQueue<RejectedRowDto> rejectedRowSample =
+                new PriorityQueue<>(Comparator.comparingLong(RejectedRowDto::getRow).reversed());
+
+        private void reject(long row, BookImportRejection rejection) {
+            rejectedRowSample.add(rejected(row, rejection));
+            if (rejectedRowSample.size() > rejectedSampleSize) {
+                rejectedRowSample.poll();
+            }
+        }
+    }
+}
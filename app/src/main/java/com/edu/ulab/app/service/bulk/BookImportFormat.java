@@ -0,0 +1,12 @@
+package com.edu.ulab.app.service.bulk;
+
+/**
+ * Формат тела импорта книг.
+ * <p>
+ * CSV — заголовок и колонки title, author, page_count, user_id в этом порядке.
+ * NDJSON — по объекту {"title", "author", "pageCount", "userId"} в строке, пустые строки пропускаются.
+ */
+public enum BookImportFormat {
+    CSV,
+    NDJSON
+}
@@ -0,0 +1,61 @@
+package com.edu.ulab.app.service.bulk;
+
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+
+/**
+ * Причина отказа в импорте строки. Имя константы возвращает SQL проверки строк в PostgreSQL,
+ * те же правила проверяются в Java для остальных баз.
+ */
+@Getter
+@RequiredArgsConstructor
+enum BookImportRejection {
+    TITLE("Title should not be blank and should be between 3 and 50 characters"),
+    AUTHOR("Name of author should not be blank and should be between 3 and 50 characters"),
+    PAGE_COUNT("The number of pages should be an integer greater or equals than 1"),
+    USER("User of book was not found");
+
+    //length of varchar columns of ulab_edu.book
+    static final int MAX_TEXT_LENGTH = 50;
+    static final int MIN_TEXT_LENGTH = 3;
+
+    private final String message;
+
+    /**
+     * Проверка значений строки, кроме существования пользователя.
+     *
+     * @return причина отказа или null
+     */
+    static BookImportRejection check(String title, String author, String pageCount, String userId) {
+        if (!isValidText(title)) {
+            return TITLE;
+        }
+        if (!isValidText(author)) {
+            return AUTHOR;
+        }
+        if (parsePageCount(pageCount) == null) {
+            return PAGE_COUNT;
+        }
+        return parseUserId(userId) == null ? USER : null;
+    }
+
+    static Integer parsePageCount(String pageCount) {
+        if (pageCount == null || !pageCount.matches("[0-9]{1,9}")) {
+            return null;
+        }
+        int value = Integer.parseInt(pageCount);
+        return value < 1 ? null : value;
+    }
+
+    static Long parseUserId(String userId) {
+        return userId == null || !userId.matches("[0-9]{1,18}") ? null : Long.parseLong(userId);
+    }
+
+    private static boolean isValidText(String value) {
+        if (value == null || value.isBlank()) {
+            return false;
+        }
+        int length = value.codePointCount(0, value.length());
+        return length >= MIN_TEXT_LENGTH && length <= MAX_TEXT_LENGTH;
+    }
+}
@@ -0,0 +1,92 @@
+package com.edu.ulab.app.service.bulk;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Потоковое чтение CSV по правилам COPY ... WITH (FORMAT csv) в PostgreSQL:
+ * разделитель запятая, кавычки удваиваются, в кавычках допустимы переводы строк,
+ * пустое значение без кавычек — null, пустое в кавычках — пустая строка.
+ */
+class CsvRecordReader {
+
+    private static final int END = -1;
+    private static final int NOT_READ = -2;
+
+    private final Reader reader;
+    private int next = NOT_READ;
+
+    CsvRecordReader(Reader reader) {
+        this.reader = reader;
+    }
+
+    /**
+     * @return значения следующей записи или null в конце потока
+     */
+    List<String> read() throws IOException {
+        if (peek() == END) {
+            return null;
+        }
+        List<String> values = new ArrayList<>();
+        while (true) {
+            values.add(readValue());
+            int c = take();
+            if (c == ',') {
+                continue;
+            }
+            if (c == '\r' && peek() == '\n') {
+                take();
+            }
+            return values;
+        }
+    }
+
+    private String readValue() throws IOException {
+        if (peek() != '"') {
+            StringBuilder value = new StringBuilder();
+            while (!isValueEnd(peek())) {
+                value.append((char) take());
+            }
+            return value.length() == 0 ? null : value.toString();
+        }
+
+        take();
+        StringBuilder value = new StringBuilder();
+        while (true) {
+            int c = take();
+            if (c == END) {
+                throw new IllegalArgumentException("Unterminated quoted value in CSV");
+            }
+            if (c == '"') {
+                if (peek() != '"') {
+                    break;
+                }
+                take();
+            }
+            value.append((char) c);
+        }
+        if (!isValueEnd(peek())) {
+            throw new IllegalArgumentException("Unexpected character after quoted value in CSV");
+        }
+        return value.toString();
+    }
+
+    private static boolean isValueEnd(int c) {
+        return c == ',' || c == '\n' || c == '\r' || c == END;
+    }
+
+    private int peek() throws IOException {
+        if (next == NOT_READ) {
+            next = reader.read();
+        }
+        return next;
+    }
+
+    private int take() throws IOException {
+        int c = peek();
+        next = NOT_READ;
+        return c;
+    }
+}
@@ -0,0 +1,89 @@
+package com.edu.ulab.app.service.cache;
+
+import com.edu.ulab.app.entity.Book;
+import com.edu.ulab.app.entity.Person;
+import lombok.RequiredArgsConstructor;
+import org.hibernate.Cache;
+import org.hibernate.SessionFactory;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.springframework.stereotype.Component;
+
+import javax.persistence.EntityManagerFactory;
+import java.util.Collection;
+
+import static com.edu.ulab.app.web.constant.CacheConstant.BOOKS_BY_USER_REGION;
+
+/**
+ * Сброс кэша второго уровня Hibernate после записей мимо Hibernate: JdbcTemplate, COPY, отложенная запись книг.
+ * Hibernate не знает о таких записях и продолжал бы отдавать из кэша прежние данные.
+ * При выключенном кэше методы ничего не делают.
+ */
+@Component
+@RequiredArgsConstructor
+public class SecondLevelCache {
+
+    private static final String PERSON_BOOKS_ROLE = Person.class.getName() + ".bookSet";
+
+    private final EntityManagerFactory entityManagerFactory;
+
+    /**
+     * При выключенном кэше JPA-сервисы пишут одним JPQL UPDATE или DELETE без чтения сущности.
+     */
+    public boolean isEnabled() {
+        return entityManagerFactory.unwrap(SessionFactoryImplementor.class)
+                .getSessionFactoryOptions()
+                .isSecondLevelCacheEnabled();
+    }
+
+    /**
+     * Пользователь и список его книг.
+     */
+    public void evictUser(Long userId) {
+        Cache cache = cache();
+        cache.evictEntityData(Person.class, userId);
+        cache.evictCollectionData(PERSON_BOOKS_ROLE, userId);
+    }
+
+    /**
+     * Пользователи, списки книг которых изменились, и сами списки: вместе со списком растёт версия пользователя.
+     */
+    public void evictBooksOfUsers(Collection<Long> userIds) {
+        Cache cache = cache();
+        userIds.forEach(userId -> {
+            cache.evictEntityData(Person.class, userId);
+            cache.evictCollectionData(PERSON_BOOKS_ROLE, userId);
+        });
+        cache.evictQueryRegion(BOOKS_BY_USER_REGION);
+    }
+
+    /**
+     * Все пользователи и списки книг: после добавления книг многим пользователям.
+     */
+    public void evictAllBookLists() {
+        Cache cache = cache();
+        cache.evictEntityData(Person.class);
+        cache.evictCollectionData(PERSON_BOOKS_ROLE);
+        cache.evictQueryRegion(BOOKS_BY_USER_REGION);
+    }
+
+    /**
+     * Книга после изменения. Если книга перенесена, списки книг сбрасываются через {@link #evictBooksOfUsers}.
+     */
+    public void evictBook(Long bookId) {
+        cache().evictEntityData(Book.class, bookId);
+    }
+
+    /**
+     * Все книги и списки книг: после изменения или удаления книг, пользователи которых неизвестны.
+     */
+    public void evictAllBooks() {
+        Cache cache = cache();
+        cache.evictEntityData(Book.class);
+        cache.evictCollectionData(PERSON_BOOKS_ROLE);
+        cache.evictQueryRegion(BOOKS_BY_USER_REGION);
+    }
+
+    private Cache cache() {
+        return entityManagerFactory.unwrap(SessionFactory.class).getCache();
+    }
+}
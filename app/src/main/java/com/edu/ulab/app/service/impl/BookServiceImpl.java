@@ -2,19 +2,35 @@ package com.edu.ulab.app.service.impl;
 
 import com.edu.ulab.app.dto.BookDto;
 import com.edu.ulab.app.entity.Book;
+import com.edu.ulab.app.entity.Person;
 import com.edu.ulab.app.exception.BadRequestException;
+import com.edu.ulab.app.exception.ConflictException;
 import com.edu.ulab.app.exception.NotFoundException;
+import com.edu.ulab.app.logging.LogSummary;
 import com.edu.ulab.app.mapper.BookMapper;
 import com.edu.ulab.app.repository.BookRepository;
+import com.edu.ulab.app.repository.UserRepository;
 import com.edu.ulab.app.service.BookService;
+import com.edu.ulab.app.service.cache.SecondLevelCache;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.cache.annotation.CacheEvict;
+import org.springframework.cache.annotation.Cacheable;
+import org.springframework.cache.annotation.Caching;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 
+import java.util.Collection;
 import java.util.List;
 import java.util.Objects;
+import java.util.Optional;
 import java.util.stream.Collectors;
 
+import static com.edu.ulab.app.web.constant.CacheConstant.USERS_CACHE;
+import static com.edu.ulab.app.web.constant.CacheConstant.USERS_WITH_BOOKS_CACHE;
+import static com.edu.ulab.app.web.constant.CacheConstant.USER_BOOKS_CACHE;
+
 @Slf4j
 @RequiredArgsConstructor
 @Service
@@ -22,37 +38,156 @@ public class BookServiceImpl implements BookService {
 
     private final BookRepository bookRepository;
 
+    private final UserRepository userRepository;
+
     private final BookMapper bookMapper;
 
+    private final SecondLevelCache secondLevelCache;
+
     @Override
+    @Caching(evict = {
+            @CacheEvict(cacheNames = USERS_CACHE, key = "#bookDto.userId"),
+            @CacheEvict(cacheNames = USER_BOOKS_CACHE, key = "#bookDto.userId"),
+            @CacheEvict(cacheNames = USERS_WITH_BOOKS_CACHE, key = "#bookDto.userId")
+    })
+    @Transactional
     public BookDto createBook(BookDto bookDto) {
+        log.debug("[{}]: Request to save book: {}", BookServiceImpl.class, bookDto);
+        incrementUserVersions(List.of(bookDto.getUserId()));
         Book book = bookMapper.bookDtoToBook(bookDto);
-        log.info("Mapped book: {}", book);
         Book savedBook = bookRepository.save(book);
-        log.info("Saved book: {}", savedBook);
+        log.info("[{}]: Saved book with id - {}", BookServiceImpl.class, savedBook.getId());
         return bookMapper.bookToBookDto(savedBook);
     }
 
     @Override
+    @Caching(evict = {
+            @CacheEvict(cacheNames = {USERS_CACHE, USER_BOOKS_CACHE, USERS_WITH_BOOKS_CACHE},
+                    key = "#bookDtoList[0].userId", condition = "new java.util.HashSet(#bookDtoList.![userId]).size() == 1"),
+            @CacheEvict(cacheNames = {USERS_CACHE, USER_BOOKS_CACHE, USERS_WITH_BOOKS_CACHE},
+                    allEntries = true, condition = "new java.util.HashSet(#bookDtoList.![userId]).size() > 1")
+    })
+    @Transactional
+    public List<BookDto> createBooks(List<BookDto> bookDtoList) {
+        if(Objects.isNull(bookDtoList)) {
+            log.error("[{}]: Book list for saving is null", BookServiceImpl.class);
+            throw new BadRequestException("Book list for saving is null");
+        }
+        log.info("[{}]: Request to save {} books", BookServiceImpl.class, bookDtoList.size());
+        if(bookDtoList.isEmpty()) {
+            return List.of();
+        }
+
+        incrementUserVersions(bookDtoList.stream().map(BookDto::getUserId).toList());
+        List<Book> books = bookDtoList.stream()
+                .map(bookMapper::bookDtoToBook)
+                .collect(Collectors.toList());
+        List<Book> savedBooks = bookRepository.saveAll(books);
+
+        log.info("[{}]: Saved {} books", BookServiceImpl.class, savedBooks.size());
+        return savedBooks.stream()
+                .map(bookMapper::bookToBookDto)
+                .collect(Collectors.toList());
+    }
+
+    @Override
+    @CacheEvict(cacheNames = {USERS_CACHE, USER_BOOKS_CACHE, USERS_WITH_BOOKS_CACHE}, allEntries = true)
+    @Transactional
     public BookDto updateBook(BookDto bookDto) {
         if(Objects.isNull(bookDto.getId())) {
             log.error("[{}]: Book id is null for updating {} ", BookServiceImpl.class, bookDto);
             throw new BadRequestException("Book id is null for updating");
         }
-        log.info("[{}]: Request to update book - {}", BookServiceImpl.class, bookDto);
+        if(Objects.isNull(bookDto.getUserId())) {
+            log.error("[{}]: User id of book is null for updating {} ", BookServiceImpl.class, bookDto);
+            throw new BadRequestException("User id of book is null for updating");
+        }
+        log.debug("[{}]: Request to update book - {}", BookServiceImpl.class, bookDto);
 
-        Book book = bookMapper.bookDtoToBook(bookDto);
+        if(secondLevelCache.isEnabled()) {
+            updateCachedBook(bookDto);
+        } else {
+            updateBookById(bookDto);
+        }
+
+        log.info("[{}]: Updated book with id - {}", BookServiceImpl.class, bookDto.getId());
 
-        log.info("[{}]: Mapped book: {}", BookServiceImpl.class, book);
+        return bookDto;
+    }
+
+    /**
+     * UPDATE без чтения книги: заранее читается только id её пользователя.
+     */
+    private void updateBookById(BookDto bookDto) {
+        Long userId = bookRepository.findUserIdForUpdateById(bookDto.getId())
+                .orElseThrow(() -> notFoundForUpdate(bookDto));
+        if(bookRepository.updateById(bookDto.getId(), bookDto.getTitle(), bookDto.getAuthor(), bookDto.getPageCount(),
+                bookDto.getUserId(), bookDto.getVersion()) == 0) {
+            throw updateFailure(bookDto);
+        }
+        if(Objects.nonNull(bookDto.getVersion())) {
+            bookDto.setVersion(bookDto.getVersion() + 1);
+        } else {
+            //the row stays locked by the UPDATE until commit, the version read is the one just written
+            bookDto.setVersion(bookRepository.findVersionById(bookDto.getId()).orElseThrow());
+        }
+        if(!bookDto.getUserId().equals(userId)) {
+            incrementUserVersions(List.of(userId, bookDto.getUserId()));
+        }
+    }
+
+    /**
+     * Обновление через сущность при включённом кэше второго уровня: книга обычно читается из кэша,
+     * сбрасываются только её запись и списки книг прежнего и нового пользователя.
+     * Изменение между чтением и flush отклоняется по версии сущности.
+     */
+    private void updateCachedBook(BookDto bookDto) {
+        Book book = bookRepository.findById(bookDto.getId())
+                .orElseThrow(() -> notFoundForUpdate(bookDto));
+        if(Objects.nonNull(bookDto.getVersion()) && bookDto.getVersion() != book.getVersion()) {
+            throw versionConflict(bookDto, book.getVersion());
+        }
+        book.setTitle(bookDto.getTitle());
+        book.setAuthor(bookDto.getAuthor());
+        book.setPageCount(bookDto.getPageCount());
+        //the id of the lazy user is read without loading it
+        Long userId = book.getPerson().getId();
+        if(!bookDto.getUserId().equals(userId)) {
+            Person person = new Person();
+            person.setId(bookDto.getUserId());
+            book.setPerson(person);
+        }
+        bookRepository.flush();
+        bookDto.setVersion(book.getVersion());
+        if(!bookDto.getUserId().equals(userId)) {
+            incrementUserVersions(List.of(userId, bookDto.getUserId()));
+        }
+    }
 
-        Book updatedBook = bookRepository.save(book);
+    /**
+     * Причина, по которой UPDATE не изменил строк: книги нет или её версия уже другая.
+     * Читается только после неудачного обновления.
+     */
+    private RuntimeException updateFailure(BookDto bookDto) {
+        return bookRepository.findVersionById(bookDto.getId())
+                .<RuntimeException>map(version -> versionConflict(bookDto, version))
+                .orElseGet(() -> notFoundForUpdate(bookDto));
+    }
 
-        log.info("[{}]: Updated book: {}", BookServiceImpl.class, updatedBook);
+    private NotFoundException notFoundForUpdate(BookDto bookDto) {
+        log.error("[{}]: Book with id - {} was not found for updating", BookServiceImpl.class, bookDto.getId());
+        return new NotFoundException(String.format("Book with id - %d was not found", bookDto.getId()));
+    }
 
-        return bookMapper.bookToBookDto(updatedBook);
+    private ConflictException versionConflict(BookDto bookDto, long version) {
+        log.error("[{}]: Book with id - {} has version {}, expected {}",
+                BookServiceImpl.class, bookDto.getId(), version, bookDto.getVersion());
+        return new ConflictException(String.format("Book with id - %d has version %d, expected %d",
+                bookDto.getId(), version, bookDto.getVersion()));
     }
 
     @Override
+    @Transactional(readOnly = true)
     public BookDto getBookById(Long id) {
         if(Objects.isNull(id)) {
             log.error("[{}]: Book id is null for getting", BookServiceImpl.class);
@@ -64,23 +199,35 @@ public class BookServiceImpl implements BookService {
         Book book = bookRepository.findById(id)
                 .orElseThrow(() -> new NotFoundException(String.format("Book with id - %d was not found", id)));
 
-        log.info("[{}]: Got book: {}", BookServiceImpl.class, book);
+        BookDto bookDto = bookMapper.bookToBookDto(book);
+        log.debug("[{}]: Got book: {}", BookServiceImpl.class, bookDto);
 
-        return bookMapper.bookToBookDto(book);
+        return bookDto;
     }
 
     @Override
+    @CacheEvict(cacheNames = {USERS_CACHE, USER_BOOKS_CACHE, USERS_WITH_BOOKS_CACHE}, allEntries = true)
+    @Transactional
     public void deleteBookById(Long id) {
         if(Objects.isNull(id)) {
             log.error("[{}]: Book id is null for deleting", BookServiceImpl.class);
             throw new BadRequestException("Book id is null for deleting");
         }
         log.info("[{}]: Request to delete book with id - {}", BookServiceImpl.class, id);
-        bookRepository.deleteById(id);
+        //deleting a missing book is not an error, as in the other implementations;
+        //deleteById would throw inside its own transaction and mark the caller's one rollback-only
+        Optional<Long> userId = deleteBook(id);
+        if(userId.isEmpty()) {
+            log.info("[{}]: Book with id - {} was not found for deleting", BookServiceImpl.class, id);
+            return;
+        }
+        incrementUserVersions(List.of(userId.get()));
         log.info("[{}]: Book with id - {} was deleted", BookServiceImpl.class, id);
     }
 
     @Override
+    @Transactional(readOnly = true)
+    @Cacheable(cacheNames = USER_BOOKS_CACHE, key = "#id", condition = "#id != null")
     public List<BookDto> getAllByUserId(Long id) {
         if(Objects.isNull(id)) {
             log.error("[{}]: Book id is null for getting by user id", BookServiceImpl.class);
@@ -88,11 +235,94 @@ public class BookServiceImpl implements BookService {
         }
         log.info("[{}]: Request to get book by user id {}", BookServiceImpl.class, id);
         List<Book> bookList = bookRepository.findAllByUserId(id);
-        log.info("[{}]: Got book list - {}", BookServiceImpl.class, bookList);
+        log.info("[{}]: Got {} books of user {}", BookServiceImpl.class, bookList.size(), id);
+        if (log.isDebugEnabled()) {
+            log.debug("[{}]: Books of user {}: {}", BookServiceImpl.class, id, LogSummary.ids(bookList, Book::getId));
+        }
 
         return bookList.stream()
                 .map(bookMapper::bookToBookDto)
-                .peek(mappedBook -> log.info("[{}]: Mapped book {}", BookServiceImpl.class, mappedBook))
                 .collect(Collectors.toList());
     }
+
+    @Override
+    @Transactional(readOnly = true)
+    public List<BookDto> getAllByUserIdAfter(Long userId, long afterId, int limit) {
+        if(Objects.isNull(userId)) {
+            log.error("[{}]: User id is null for getting page of books", BookServiceImpl.class);
+            throw new BadRequestException("User id is null for getting page of books");
+        }
+        log.info("[{}]: Request to get {} books of user {} after id - {}", BookServiceImpl.class, limit, userId, afterId);
+        List<BookDto> bookList = bookRepository.findAllByUserIdAfter(userId, afterId, PageRequest.of(0, limit))
+                .stream()
+                .map(bookMapper::bookToBookDto)
+                .collect(Collectors.toList());
+        log.info("[{}]: Got {} books of user {}", BookServiceImpl.class, bookList.size(), userId);
+        return bookList;
+    }
+
+    @Override
+    @Transactional
+    @Caching(evict = {
+            @CacheEvict(cacheNames = USERS_CACHE, key = "#userId"),
+            @CacheEvict(cacheNames = USER_BOOKS_CACHE, key = "#userId"),
+            @CacheEvict(cacheNames = USERS_WITH_BOOKS_CACHE, key = "#userId")
+    })
+    public void deleteAllByUserId(Long userId) {
+        if(Objects.isNull(userId)) {
+            log.error("[{}]: User id is null for deleting books", BookServiceImpl.class);
+            throw new BadRequestException("User id is null for deleting books");
+        }
+        log.info("[{}]: Request to delete books by user id {}", BookServiceImpl.class, userId);
+        int countOfDeletedBooks = deleteBooksOfUser(userId);
+        if(countOfDeletedBooks > 0) {
+            incrementUserVersions(List.of(userId));
+        }
+        log.info("[{}]: Deleted {} books of user with id - {}", BookServiceImpl.class, countOfDeletedBooks, userId);
+    }
+
+    /**
+     * При включённом кэше второго уровня книга удаляется через сущность:
+     * JPQL DELETE сбросил бы регион book целиком.
+     *
+     * @return id пользователя удалённой книги; пусто, если книги нет
+     */
+    private Optional<Long> deleteBook(Long id) {
+        if(!secondLevelCache.isEnabled()) {
+            Optional<Long> userId = bookRepository.findUserIdForUpdateById(id);
+            userId.ifPresent(user -> bookRepository.deleteOneById(id));
+            return userId;
+        }
+        Optional<Book> book = bookRepository.findById(id);
+        book.ifPresent(bookRepository::delete);
+        bookRepository.flush();
+        return book.map(found -> found.getPerson().getId());
+    }
+
+    /**
+     * При включённом кэше второго уровня книги читаются запросом из кэша и удаляются через сущности.
+     */
+    private int deleteBooksOfUser(Long userId) {
+        if(!secondLevelCache.isEnabled()) {
+            return bookRepository.deleteAllByUserId(userId);
+        }
+        List<Book> books = bookRepository.findAllByUserId(userId);
+        bookRepository.deleteAll(books);
+        bookRepository.flush();
+        return books.size();
+    }
+
+    /**
+     * Увеличивает версии пользователей, списки книг которых изменились, по одному разу за вызов.
+     * Вызывается до вставки книг и после изменения или удаления существующих, поэтому строки книг
+     * блокируются раньше строк пользователей; пользователи сортируются, чтобы блокироваться в одном порядке.
+     */
+    private void incrementUserVersions(Collection<Long> userIds) {
+        List<Long> ids = userIds.stream().distinct().sorted().toList();
+        if(secondLevelCache.isEnabled()) {
+            ids.forEach(userRepository::incrementVersion);
+        } else {
+            userRepository.incrementVersionByIds(ids);
+        }
+    }
 }
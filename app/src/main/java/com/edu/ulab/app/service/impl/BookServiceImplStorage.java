@@ -0,0 +1,133 @@
+package com.edu.ulab.app.service.impl;
+
+import com.edu.ulab.app.dto.BookDto;
+import com.edu.ulab.app.exception.BadRequestException;
+import com.edu.ulab.app.exception.NotFoundException;
+import com.edu.ulab.app.logging.LogSummary;
+import com.edu.ulab.app.service.BookService;
+import com.edu.ulab.app.storage.Storage;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+
+import java.util.List;
+import java.util.Objects;
+
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class BookServiceImplStorage implements BookService {
+
+    private final Storage storage;
+
+    @Override
+    public BookDto createBook(BookDto bookDto) {
+        if(Objects.isNull(bookDto) || Objects.isNull(bookDto.getUserId())) {
+            log.error("[{}]: Book for saving or its user id is null", BookServiceImplStorage.class);
+            throw new BadRequestException(String.format("[%s] : Book for saving or its user id is null",
+                    BookServiceImplStorage.class));
+        }
+        log.debug("[{}]: Request to save book: {}", BookServiceImplStorage.class, bookDto);
+        BookDto savedBook = storage.saveBook(bookDto);
+        log.info("[{}]: Saved book with id - {}", BookServiceImplStorage.class, savedBook.getId());
+        return savedBook;
+    }
+
+    @Override
+    public List<BookDto> createBooks(List<BookDto> bookDtoList) {
+        if(Objects.isNull(bookDtoList) || bookDtoList.stream().anyMatch(book -> Objects.isNull(book.getUserId()))) {
+            log.error("[{}]: Book list for saving or user id of its book is null", BookServiceImplStorage.class);
+            throw new BadRequestException(String.format("[%s] : Book list for saving or user id of its book is null",
+                    BookServiceImplStorage.class));
+        }
+        log.info("[{}]: Request to save {} books", BookServiceImplStorage.class, bookDtoList.size());
+        List<BookDto> savedBooks = storage.saveBooks(bookDtoList);
+        log.info("[{}]: Saved {} books", BookServiceImplStorage.class, savedBooks.size());
+        return savedBooks;
+    }
+
+    @Override
+    public BookDto updateBook(BookDto bookDto) {
+        if(Objects.isNull(bookDto.getId()) || Objects.isNull(bookDto.getUserId())) {
+            log.error("[{}]: Id or user id for updating book is null", BookServiceImplStorage.class);
+            throw new BadRequestException(String.format("[%s] : Id or user id for updating book is null",
+                    BookServiceImplStorage.class));
+        }
+        log.debug("[{}]: Request to update book: {}", BookServiceImplStorage.class, bookDto);
+        BookDto updatedBook = storage.updateBook(bookDto)
+                .orElseThrow(() -> new NotFoundException(String.format("[%s] : Book by id - %d was not found",
+                        BookServiceImplStorage.class, bookDto.getId())));
+        log.info("[{}]: Updated book with id - {}", BookServiceImplStorage.class, updatedBook.getId());
+        return updatedBook;
+    }
+
+    @Override
+    public BookDto getBookById(Long id) {
+        if(Objects.isNull(id)) {
+            log.error("[{}]: Id for getting book is null", BookServiceImplStorage.class);
+            throw new BadRequestException(String.format("[%s] : Id for getting book is null",
+                    BookServiceImplStorage.class));
+        }
+        log.info("[{}]: Request to get book by id: {}", BookServiceImplStorage.class, id);
+        BookDto bookDto = storage.findBookById(id)
+                .orElseThrow(() -> new NotFoundException(String.format("[%s] : Book by id - %d was not found",
+                        BookServiceImplStorage.class, id)));
+        log.debug("[{}]: Got book: {}", BookServiceImplStorage.class, bookDto);
+        return bookDto;
+    }
+
+    @Override
+    public void deleteBookById(Long id) {
+        if(Objects.isNull(id)) {
+            log.error("[{}]: Id for deleting book is null", BookServiceImplStorage.class);
+            throw new BadRequestException(String.format("[%s] : Id for deleting book is null",
+                    BookServiceImplStorage.class));
+        }
+        log.info("[{}]: Request to delete book by id: {}", BookServiceImplStorage.class, id);
+        boolean deleted = storage.deleteBookById(id);
+        log.info("[{}]: book with id - {} deleted - {}", BookServiceImplStorage.class, id, deleted);
+    }
+
+    @Override
+    public List<BookDto> getAllByUserId(Long id) {
+        if(Objects.isNull(id)) {
+            log.error("[{}]: Id for getting book by user id is null", BookServiceImplStorage.class);
+            throw new BadRequestException(String.format("[%s] : Id for getting book by user id is null",
+                    BookServiceImplStorage.class));
+        }
+        log.info("[{}]: Request to get books by user id: {}", BookServiceImplStorage.class, id);
+        List<BookDto> bookDtoList = storage.findBooksByUserId(id);
+        log.info("[{}]: Got {} books of user {}", BookServiceImplStorage.class, bookDtoList.size(), id);
+        if (log.isDebugEnabled()) {
+            log.debug("[{}]: Books of user {}: {}", BookServiceImplStorage.class, id, LogSummary.ids(bookDtoList, BookDto::getId));
+        }
+        return bookDtoList;
+    }
+
+    @Override
+    public List<BookDto> getAllByUserIdAfter(Long userId, long afterId, int limit) {
+        if(Objects.isNull(userId)) {
+            log.error("[{}]: User id for getting page of books is null", BookServiceImplStorage.class);
+            throw new BadRequestException(String.format("[%s] : User id for getting page of books is null",
+                    BookServiceImplStorage.class));
+        }
+        log.info("[{}]: Request to get {} books of user {} after id: {}",
+                BookServiceImplStorage.class, limit, userId, afterId);
+        List<BookDto> bookDtoList = storage.findBooksByUserIdAfter(userId, afterId, limit);
+        log.info("[{}]: Got {} books of user {}", BookServiceImplStorage.class, bookDtoList.size(), userId);
+        return bookDtoList;
+    }
+
+    @Override
+    public void deleteAllByUserId(Long userId) {
+        if(Objects.isNull(userId)) {
+            log.error("[{}]: User id for deleting books is null", BookServiceImplStorage.class);
+            throw new BadRequestException(String.format("[%s] : User id for deleting books is null",
+                    BookServiceImplStorage.class));
+        }
+        log.info("[{}]: Request to delete books by user id: {}", BookServiceImplStorage.class, userId);
+        int countOfDeletedBooks = storage.deleteBooksByUserId(userId);
+        log.info("[{}]: count of deleted books - {} with user id - {} ",
+                BookServiceImplStorage.class, countOfDeletedBooks, userId);
+    }
+}
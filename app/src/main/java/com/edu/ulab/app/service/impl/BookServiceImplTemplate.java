@@ -2,21 +2,37 @@ package com.edu.ulab.app.service.impl;
 
 import com.edu.ulab.app.dto.BookDto;
 import com.edu.ulab.app.exception.BadRequestException;
+import com.edu.ulab.app.exception.ConflictException;
 import com.edu.ulab.app.exception.NotFoundException;
+import com.edu.ulab.app.logging.LogSummary;
 import com.edu.ulab.app.service.BookService;
+import com.edu.ulab.app.service.cache.SecondLevelCache;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.dao.EmptyResultDataAccessException;
+import org.springframework.dao.InvalidDataAccessResourceUsageException;
+import org.springframework.jdbc.core.ConnectionCallback;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.jdbc.core.RowMapper;
 import org.springframework.jdbc.support.GeneratedKeyHolder;
 import org.springframework.jdbc.support.KeyHolder;
+import org.springframework.cache.annotation.CacheEvict;
+import org.springframework.cache.annotation.Cacheable;
+import org.springframework.cache.annotation.Caching;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 
 import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.util.Collection;
 import java.util.List;
 import java.util.Objects;
 
 import static com.edu.ulab.app.web.constant.SQLQueryBookConstant.*;
+import static com.edu.ulab.app.web.constant.SQLQueryUserConstant.INCREMENT_VERSION_SQL;
+import static com.edu.ulab.app.web.constant.CacheConstant.USERS_CACHE;
+import static com.edu.ulab.app.web.constant.CacheConstant.USERS_WITH_BOOKS_CACHE;
+import static com.edu.ulab.app.web.constant.CacheConstant.USER_BOOKS_CACHE;
 
 @Slf4j
 @Service
@@ -25,12 +41,16 @@ public class BookServiceImplTemplate implements BookService {
 
     private final JdbcTemplate jdbcTemplate;
 
+    //the JPA implementation reads the same tables through the Hibernate cache
+    private final SecondLevelCache secondLevelCache;
+
     private final RowMapper<BookDto> rowMapper = (resultSet, i) -> {
         Long id = resultSet.getLong("ID");
         String title = resultSet.getString("TITLE");
         String author = resultSet.getString("AUTHOR");
         long pageCount = resultSet.getLong("PAGE_COUNT");
         Long userId = resultSet.getLong("USER_ID");
+        long version = resultSet.getLong("VERSION");
 
         return BookDto.builder()
                 .id(id)
@@ -38,17 +58,25 @@ public class BookServiceImplTemplate implements BookService {
                 .title(title)
                 .pageCount(pageCount)
                 .userId(userId)
+                .version(version)
                 .build();
     };
 
     @Override
+    @Caching(evict = {
+            @CacheEvict(cacheNames = USERS_CACHE, key = "#bookDto.userId"),
+            @CacheEvict(cacheNames = USER_BOOKS_CACHE, key = "#bookDto.userId"),
+            @CacheEvict(cacheNames = USERS_WITH_BOOKS_CACHE, key = "#bookDto.userId")
+    })
+    @Transactional
     public BookDto createBook(BookDto bookDto) {
         if(Objects.isNull(bookDto)) {
             log.error("[{}]: Book for saving is null", BookServiceImplTemplate.class);
             throw new BadRequestException(String.format("[%s] : Book for saving is null",
                     BookServiceImplTemplate.class));
         }
-        log.info("[{}]: Request to save book: {}",BookServiceImplTemplate.class, bookDto);
+        log.debug("[{}]: Request to save book: {}", BookServiceImplTemplate.class, bookDto);
+        incrementUserVersions(List.of(bookDto.getUserId()));
         KeyHolder keyHolder = new GeneratedKeyHolder();
         jdbcTemplate.update(
                 connection -> {
@@ -63,11 +91,65 @@ public class BookServiceImplTemplate implements BookService {
                 keyHolder);
 
         bookDto.setId(Objects.requireNonNull(keyHolder.getKey()).longValue());
-        log.info("[{}]: Saved book: {}",BookServiceImplTemplate.class, bookDto);
+        bookDto.setVersion(0L);
+        secondLevelCache.evictBooksOfUsers(List.of(bookDto.getUserId()));
+        log.info("[{}]: Saved book with id - {}", BookServiceImplTemplate.class, bookDto.getId());
         return bookDto;
     }
 
     @Override
+    @Caching(evict = {
+            @CacheEvict(cacheNames = {USERS_CACHE, USER_BOOKS_CACHE, USERS_WITH_BOOKS_CACHE},
+                    key = "#bookDtoList[0].userId", condition = "new java.util.HashSet(#bookDtoList.![userId]).size() == 1"),
+            @CacheEvict(cacheNames = {USERS_CACHE, USER_BOOKS_CACHE, USERS_WITH_BOOKS_CACHE},
+                    allEntries = true, condition = "new java.util.HashSet(#bookDtoList.![userId]).size() > 1")
+    })
+    @Transactional
+    public List<BookDto> createBooks(List<BookDto> bookDtoList) {
+        if(Objects.isNull(bookDtoList)) {
+            log.error("[{}]: Book list for saving is null", BookServiceImplTemplate.class);
+            throw new BadRequestException(String.format("[%s] : Book list for saving is null",
+                    BookServiceImplTemplate.class));
+        }
+        log.info("[{}]: Request to save {} books", BookServiceImplTemplate.class, bookDtoList.size());
+        if(bookDtoList.isEmpty()) {
+            return bookDtoList;
+        }
+
+        incrementUserVersions(bookDtoList.stream().map(BookDto::getUserId).toList());
+        jdbcTemplate.execute((ConnectionCallback<Void>) connection -> {
+            try (PreparedStatement ps = connection.prepareStatement(INSERT_SQL, new String[]{"id"})) {
+                for (BookDto bookDto : bookDtoList) {
+                    ps.setString(1, bookDto.getTitle());
+                    ps.setString(2, bookDto.getAuthor());
+                    ps.setLong(3, bookDto.getPageCount());
+                    ps.setLong(4, bookDto.getUserId());
+                    ps.addBatch();
+                }
+                ps.executeBatch();
+
+                try (ResultSet keys = ps.getGeneratedKeys()) {
+                    for (BookDto bookDto : bookDtoList) {
+                        if (!keys.next()) {
+                            throw new InvalidDataAccessResourceUsageException(
+                                    "Batch insert of books returned fewer generated keys than rows");
+                        }
+                        bookDto.setId(keys.getLong(1));
+                        bookDto.setVersion(0L);
+                    }
+                }
+            }
+            return null;
+        });
+        secondLevelCache.evictBooksOfUsers(bookDtoList.stream().map(BookDto::getUserId).distinct().toList());
+
+        log.info("[{}]: Saved {} books", BookServiceImplTemplate.class, bookDtoList.size());
+        return bookDtoList;
+    }
+
+    @Override
+    @CacheEvict(cacheNames = {USERS_CACHE, USER_BOOKS_CACHE, USERS_WITH_BOOKS_CACHE}, allEntries = true)
+    @Transactional
     public BookDto updateBook(BookDto bookDto) {
 
         if(Objects.isNull(bookDto.getId())) {
@@ -76,14 +158,54 @@ public class BookServiceImplTemplate implements BookService {
                     BookServiceImplTemplate.class));
         }
 
-        log.info("[{}]: Request to update book: {}",BookServiceImplTemplate.class, bookDto);
-        jdbcTemplate.update(UPDATE_SQL, bookDto.getTitle(), bookDto.getAuthor(),
-                bookDto.getPageCount(), bookDto.getAuthor(), bookDto.getId());
-        log.info("[{}]: Updated book: {}",BookServiceImplTemplate.class, bookDto);
+        log.debug("[{}]: Request to update book: {}", BookServiceImplTemplate.class, bookDto);
+        List<Long> userIds = jdbcTemplate.queryForList(SELECT_USER_ID_FOR_UPDATE_SQL, Long.class, bookDto.getId());
+        if(userIds.isEmpty()) {
+            throw updateFailure(bookDto);
+        }
+        if(Objects.isNull(bookDto.getVersion())) {
+            if(jdbcTemplate.update(UPDATE_SQL, bookDto.getTitle(), bookDto.getAuthor(),
+                    bookDto.getPageCount(), bookDto.getUserId(), bookDto.getId()) == 0) {
+                throw updateFailure(bookDto);
+            }
+            //the row stays locked by the UPDATE until commit, the version read is the one just written
+            bookDto.setVersion(jdbcTemplate.queryForObject(SELECT_VERSION_BY_ID_SQL, Long.class, bookDto.getId()));
+        } else {
+            if(jdbcTemplate.update(UPDATE_IF_VERSION_SQL, bookDto.getTitle(), bookDto.getAuthor(),
+                    bookDto.getPageCount(), bookDto.getUserId(), bookDto.getId(), bookDto.getVersion()) == 0) {
+                throw updateFailure(bookDto);
+            }
+            bookDto.setVersion(bookDto.getVersion() + 1);
+        }
+        secondLevelCache.evictBook(bookDto.getId());
+        if(!userIds.get(0).equals(bookDto.getUserId())) {
+            List<Long> changedUserIds = List.of(userIds.get(0), bookDto.getUserId());
+            incrementUserVersions(changedUserIds);
+            secondLevelCache.evictBooksOfUsers(changedUserIds);
+        }
+        log.info("[{}]: Updated book with id - {}", BookServiceImplTemplate.class, bookDto.getId());
         return bookDto;
     }
 
+    /**
+     * Причина, по которой UPDATE не изменил строк: книги нет или её версия уже другая.
+     * Читается только после неудачного обновления.
+     */
+    private RuntimeException updateFailure(BookDto bookDto) {
+        List<Long> versions = jdbcTemplate.queryForList(SELECT_VERSION_BY_ID_SQL, Long.class, bookDto.getId());
+        if(versions.isEmpty()) {
+            log.error("[{}]: Book by id - {} was not found", BookServiceImplTemplate.class, bookDto.getId());
+            return new NotFoundException(String.format("[%s] : Book by id - %d was not found",
+                    BookServiceImplTemplate.class, bookDto.getId()));
+        }
+        log.error("[{}]: Book with id - {} has version {}, expected {}",
+                BookServiceImplTemplate.class, bookDto.getId(), versions.get(0), bookDto.getVersion());
+        return new ConflictException(String.format("[%s] : Book with id - %d has version %d, expected %d",
+                BookServiceImplTemplate.class, bookDto.getId(), versions.get(0), bookDto.getVersion()));
+    }
+
     @Override
+    @Transactional(readOnly = true)
     public BookDto getBookById(Long id) {
         if(Objects.isNull(id)) {
             log.error("[{}]: Id for getting book is null", BookServiceImplTemplate.class);
@@ -91,17 +213,21 @@ public class BookServiceImplTemplate implements BookService {
                     BookServiceImplTemplate.class));
         }
         log.info("[{}]: Request to get book by id: {}",BookServiceImplTemplate.class, id);
-        BookDto bookDto = jdbcTemplate.queryForObject(SELECT_BY_ID_SQL, rowMapper, id);
-        if(Objects.isNull(bookDto)) {
+        BookDto bookDto;
+        try {
+            bookDto = jdbcTemplate.queryForObject(SELECT_BY_ID_SQL, rowMapper, id);
+        } catch (EmptyResultDataAccessException ex) {
             log.error("[{}]: Book by id - {} was not found", BookServiceImplTemplate.class, id);
             throw new NotFoundException(String.format("[%s] : Book by id - %d was not found",
                     BookServiceImplTemplate.class, id));
         }
-        log.info("[{}]: Got book: {}",BookServiceImplTemplate.class, bookDto);
+        log.debug("[{}]: Got book: {}", BookServiceImplTemplate.class, bookDto);
         return bookDto;
     }
 
     @Override
+    @CacheEvict(cacheNames = {USERS_CACHE, USER_BOOKS_CACHE, USERS_WITH_BOOKS_CACHE}, allEntries = true)
+    @Transactional
     public void deleteBookById(Long id) {
         if(Objects.isNull(id)) {
             log.error("[{}]: Id for deleting book is null", BookServiceImplTemplate.class);
@@ -109,12 +235,20 @@ public class BookServiceImplTemplate implements BookService {
                     BookServiceImplTemplate.class));
         }
         log.info("[{}]: Request to delete book by id: {}", BookServiceImplTemplate.class, id);
+        List<Long> userIds = jdbcTemplate.queryForList(SELECT_USER_ID_FOR_UPDATE_SQL, Long.class, id);
         int countOfDeletedBooks = jdbcTemplate.update(DELETE_BY_ID_SQL, id);
+        if(countOfDeletedBooks > 0) {
+            incrementUserVersions(userIds);
+            secondLevelCache.evictBook(id);
+            secondLevelCache.evictBooksOfUsers(userIds);
+        }
         log.info("[{}]: count of deleted books - {} with id - {} ",
                 BookServiceImplTemplate.class, countOfDeletedBooks, id);
     }
 
     @Override
+    @Transactional(readOnly = true)
+    @Cacheable(cacheNames = USER_BOOKS_CACHE, key = "#id", condition = "#id != null")
     public List<BookDto> getAllByUserId(Long id) {
         if(Objects.isNull(id)) {
             log.error("[{}]: Id for getting book by user id is null", BookServiceImplTemplate.class);
@@ -123,7 +257,61 @@ public class BookServiceImplTemplate implements BookService {
         }
         log.info("[{}]: Request to get books by user id: {}", BookServiceImpl.class, id);
         List<BookDto> bookDtoList = jdbcTemplate.query(SELECT_BY_USER_ID_SQL, rowMapper, id);
-        log.info("[{}]: Got books by user id - {}", BookServiceImplTemplate.class, bookDtoList);
+        log.info("[{}]: Got {} books of user {}", BookServiceImplTemplate.class, bookDtoList.size(), id);
+        if (log.isDebugEnabled()) {
+            log.debug("[{}]: Books of user {}: {}", BookServiceImplTemplate.class, id, LogSummary.ids(bookDtoList, BookDto::getId));
+        }
         return bookDtoList;
     }
+
+    @Override
+    @Transactional(readOnly = true)
+    public List<BookDto> getAllByUserIdAfter(Long userId, long afterId, int limit) {
+        if(Objects.isNull(userId)) {
+            log.error("[{}]: User id for getting page of books is null", BookServiceImplTemplate.class);
+            throw new BadRequestException(String.format("[%s] : User id for getting page of books is null",
+                    BookServiceImplTemplate.class));
+        }
+        log.info("[{}]: Request to get {} books of user {} after id: {}",
+                BookServiceImplTemplate.class, limit, userId, afterId);
+        List<BookDto> bookDtoList = jdbcTemplate.query(SELECT_PAGE_BY_USER_ID_SQL, rowMapper, userId, afterId, limit);
+        log.info("[{}]: Got {} books of user {}", BookServiceImplTemplate.class, bookDtoList.size(), userId);
+        return bookDtoList;
+    }
+
+    @Override
+    @Caching(evict = {
+            @CacheEvict(cacheNames = USERS_CACHE, key = "#userId"),
+            @CacheEvict(cacheNames = USER_BOOKS_CACHE, key = "#userId"),
+            @CacheEvict(cacheNames = USERS_WITH_BOOKS_CACHE, key = "#userId")
+    })
+    @Transactional
+    public void deleteAllByUserId(Long userId) {
+        if(Objects.isNull(userId)) {
+            log.error("[{}]: User id for deleting books is null", BookServiceImplTemplate.class);
+            throw new BadRequestException(String.format("[%s] : User id for deleting books is null",
+                    BookServiceImplTemplate.class));
+        }
+        log.info("[{}]: Request to delete books by user id: {}", BookServiceImplTemplate.class, userId);
+        int countOfDeletedBooks = jdbcTemplate.update(DELETE_BY_USER_ID_SQL, userId);
+        if(countOfDeletedBooks > 0) {
+            incrementUserVersions(List.of(userId));
+            secondLevelCache.evictAllBooks();
+            secondLevelCache.evictUser(userId);
+        }
+        log.info("[{}]: count of deleted books - {} with user id - {} ",
+                BookServiceImplTemplate.class, countOfDeletedBooks, userId);
+    }
+
+    /**
+     * Увеличивает версии пользователей, списки книг которых изменились, по одному разу за вызов,
+     * в том же порядке блокировок, что и {@link BookServiceImpl}.
+     */
+    private void incrementUserVersions(Collection<Long> userIds) {
+        List<Long> ids = userIds.stream().distinct().sorted().toList();
+        jdbcTemplate.batchUpdate(INCREMENT_VERSION_SQL, ids, ids.size(), (ps, userId) -> {
+            ps.setLong(1, 1);
+            ps.setLong(2, userId);
+        });
+    }
 }
@@ -1,18 +1,37 @@
 package com.edu.ulab.app.service.impl;
 
+import com.edu.ulab.app.dto.UserBooksDto;
 import com.edu.ulab.app.dto.UserDto;
 import com.edu.ulab.app.entity.Book;
 import com.edu.ulab.app.entity.Person;
 import com.edu.ulab.app.exception.BadRequestException;
+import com.edu.ulab.app.exception.ConflictException;
 import com.edu.ulab.app.exception.NotFoundException;
 import com.edu.ulab.app.mapper.UserMapper;
 import com.edu.ulab.app.repository.UserRepository;
+import com.edu.ulab.app.repository.projection.UserBookIdProjection;
 import com.edu.ulab.app.service.UserService;
+import com.edu.ulab.app.service.cache.SecondLevelCache;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.cache.annotation.CacheEvict;
+import org.springframework.cache.annotation.Cacheable;
+import org.springframework.cache.annotation.Caching;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Objects;
+import java.util.Optional;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static com.edu.ulab.app.web.constant.CacheConstant.USERS_CACHE;
+import static com.edu.ulab.app.web.constant.CacheConstant.USERS_WITH_BOOKS_CACHE;
+import static com.edu.ulab.app.web.constant.CacheConstant.USER_BOOKS_CACHE;
 
 @Slf4j
 @Service
@@ -23,35 +42,118 @@ public class UserServiceImpl implements UserService {
 
     private final UserMapper userMapper;
 
+    private final SecondLevelCache secondLevelCache;
+
     @Override
     public UserDto createUser(UserDto userDto) {
+        log.debug("[{}]: Request to save user: {}", UserServiceImpl.class, userDto);
         Person user = userMapper.userDtoToPerson(userDto);
-        log.info("Mapped user: {}", user);
         Person savedUser = userRepository.save(user);
-        log.info("Saved user: {}", savedUser);
+        log.info("[{}]: Saved user with id - {}", UserServiceImpl.class, savedUser.getId());
         return userMapper.personToUserDto(savedUser);
     }
 
     @Override
+    public List<UserDto> createUsers(List<UserDto> userDtoList) {
+        if(Objects.isNull(userDtoList)) {
+            log.error("[{}]: User list for saving is null", UserServiceImpl.class);
+            throw new BadRequestException("User list for saving is null");
+        }
+        log.info("[{}]: Request to save {} users", UserServiceImpl.class, userDtoList.size());
+
+        List<Person> users = userDtoList.stream()
+                .map(userMapper::userDtoToPerson)
+                .collect(Collectors.toList());
+        List<Person> savedUsers = userRepository.saveAll(users);
+
+        log.info("[{}]: Saved {} users", UserServiceImpl.class, savedUsers.size());
+        return savedUsers.stream()
+                .map(userMapper::personToUserDto)
+                .collect(Collectors.toList());
+    }
+
+    @Override
+    @Caching(evict = {
+            @CacheEvict(cacheNames = USERS_CACHE, key = "#userDto.id"),
+            @CacheEvict(cacheNames = USERS_WITH_BOOKS_CACHE, key = "#userDto.id")
+    })
+    @Transactional
     public UserDto updateUser(UserDto userDto) {
         if(Objects.isNull(userDto.getId())) {
             log.error("[{}]: User id is null for updating {} ", UserServiceImpl.class, userDto);
             throw new BadRequestException("User id is null for updating");
         }
-        log.info("[{}]: Request to update user - {}", UserServiceImpl.class, userDto);
+        log.debug("[{}]: Request to update user - {}", UserServiceImpl.class, userDto);
 
-        Person user = userMapper.userDtoToPerson(userDto);
+        if(secondLevelCache.isEnabled()) {
+            updateCachedUser(userDto);
+        } else {
+            updateUserById(userDto);
+        }
 
-        log.info("[{}]: Mapped user: {}", UserServiceImpl.class, user);
+        log.info("[{}]: Updated user with id - {}", UserServiceImpl.class, userDto.getId());
 
-        Person updatedUser = userRepository.save(user);
+        return userDto;
+    }
 
-        log.info("[{}]: Updated user: {}", UserServiceImpl.class, updatedUser);
+    /**
+     * Один UPDATE без чтения пользователя.
+     */
+    private void updateUserById(UserDto userDto) {
+        if(userRepository.updateById(userDto.getId(), userDto.getFullName(), userDto.getTitle(), userDto.getAge(),
+                userDto.getVersion()) == 0) {
+            throw updateFailure(userDto);
+        }
+        if(Objects.nonNull(userDto.getVersion())) {
+            userDto.setVersion(userDto.getVersion() + 1);
+        } else {
+            //the row stays locked by the UPDATE until commit, the version read is the one just written
+            userDto.setVersion(userRepository.findVersionById(userDto.getId()).orElseThrow());
+        }
+    }
 
-        return userMapper.personToUserDto(updatedUser);
+    /**
+     * Обновление через сущность при включённом кэше второго уровня: пользователь обычно читается из кэша,
+     * сбрасывается только его запись. Изменение между чтением и flush отклоняется по версии сущности.
+     */
+    private void updateCachedUser(UserDto userDto) {
+        Person user = userRepository.findById(userDto.getId())
+                .orElseThrow(() -> notFoundForUpdate(userDto));
+        if(Objects.nonNull(userDto.getVersion()) && userDto.getVersion() != user.getVersion()) {
+            throw versionConflict(userDto, user.getVersion());
+        }
+        user.setFullName(userDto.getFullName());
+        user.setTitle(userDto.getTitle());
+        user.setAge(userDto.getAge());
+        userRepository.flush();
+        userDto.setVersion(user.getVersion());
+    }
+
+    /**
+     * Причина, по которой UPDATE не изменил строк: пользователя нет или его версия уже другая.
+     * Читается только после неудачного обновления.
+     */
+    private RuntimeException updateFailure(UserDto userDto) {
+        return userRepository.findVersionById(userDto.getId())
+                .<RuntimeException>map(version -> versionConflict(userDto, version))
+                .orElseGet(() -> notFoundForUpdate(userDto));
+    }
+
+    private NotFoundException notFoundForUpdate(UserDto userDto) {
+        log.error("[{}]: User with id - {} was not found for updating", UserServiceImpl.class, userDto.getId());
+        return new NotFoundException(String.format("User with id - %d was not found", userDto.getId()));
+    }
+
+    private ConflictException versionConflict(UserDto userDto, long version) {
+        log.error("[{}]: User with id - {} has version {}, expected {}",
+                UserServiceImpl.class, userDto.getId(), version, userDto.getVersion());
+        return new ConflictException(String.format("User with id - %d has version %d, expected %d",
+                userDto.getId(), version, userDto.getVersion()));
     }
 
     @Override
+    @Transactional(readOnly = true)
+    @Cacheable(cacheNames = USERS_CACHE, key = "#id", condition = "#id != null")
     public UserDto getUserById(Long id) {
         if(Objects.isNull(id)) {
             log.error("[{}]: User id is null for getting", UserServiceImpl.class);
@@ -63,19 +165,143 @@ public class UserServiceImpl implements UserService {
         Person user = userRepository.findById(id)
                 .orElseThrow(() -> new NotFoundException(String.format("User with id - %d was not found", id)));
 
-        log.info("[{}]: Got user: {}", UserServiceImpl.class, user);
+        UserDto userDto = userMapper.personToUserDto(user);
+        log.debug("[{}]: Got user: {}", UserServiceImpl.class, userDto);
 
-        return userMapper.personToUserDto(user);
+        return userDto;
     }
 
     @Override
+    @Transactional(readOnly = true)
+    @Cacheable(cacheNames = USERS_WITH_BOOKS_CACHE, key = "#id", condition = "#id != null")
+    public UserBooksDto getUserWithBookIds(Long id) {
+        if(Objects.isNull(id)) {
+            log.error("[{}]: User id is null for getting with books", UserServiceImpl.class);
+            throw new BadRequestException("User id is null for getting with books");
+        }
+
+        log.info("[{}]: Request to get user with book ids, user id - {}", UserServiceImpl.class, id);
+
+        List<UserBookIdProjection> rows = userRepository.findWithBookIdsById(id);
+        if(rows.isEmpty()) {
+            throw new NotFoundException(String.format("User with id - %d was not found", id));
+        }
+
+        UserBookIdProjection user = rows.get(0);
+        List<Long> bookIdList = rows.stream()
+                .map(UserBookIdProjection::getBookId)
+                .filter(Objects::nonNull)
+                .collect(Collectors.toList());
+
+        log.info("[{}]: Got user with id - {} and {} book ids", UserServiceImpl.class, id, bookIdList.size());
+
+        return UserBooksDto.builder()
+                .id(user.getId())
+                .fullName(user.getFullName())
+                .title(user.getTitle())
+                .age(user.getAge())
+                .bookIdList(bookIdList)
+                .version(user.getVersion())
+                .build();
+    }
+
+    @Override
+    @Transactional
+    public long getUserVersion(Long id) {
+        if(Objects.isNull(id)) {
+            log.error("[{}]: User id is null for getting version", UserServiceImpl.class);
+            throw new BadRequestException("User id is null for getting version");
+        }
+
+        log.info("[{}]: Request to get version of user with id - {}", UserServiceImpl.class, id);
+
+        long version = userRepository.findVersionById(id)
+                .orElseThrow(() -> new NotFoundException(String.format("User with id - %d was not found", id)));
+
+        log.info("[{}]: Got version {} of user with id - {}", UserServiceImpl.class, version, id);
+        return version;
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public List<UserDto> getUsersAfter(long afterId, int limit) {
+        log.info("[{}]: Request to get {} users after id - {}", UserServiceImpl.class, limit, afterId);
+        List<UserDto> users = userRepository.findAllByIdAfter(afterId, PageRequest.of(0, limit))
+                .stream()
+                .map(userMapper::personToUserDto)
+                .collect(Collectors.toList());
+        log.info("[{}]: Got {} users after id - {}", UserServiceImpl.class, users.size(), afterId);
+        return users;
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public void forEachUserWithBookIds(Consumer<UserBooksDto> action) {
+        log.info("[{}]: Request to export users with book ids", UserServiceImpl.class);
+        long[] count = new long[1];
+        UserBooksDto[] current = new UserBooksDto[1];
+        try (Stream<UserBookIdProjection> rows = userRepository.streamAllWithBookIds()) {
+            rows.forEach(row -> {
+                if (current[0] == null || !current[0].getId().equals(row.getId())) {
+                    if (current[0] != null) {
+                        action.accept(current[0]);
+                        count[0]++;
+                    }
+                    current[0] = UserBooksDto.builder()
+                            .id(row.getId())
+                            .fullName(row.getFullName())
+                            .title(row.getTitle())
+                            .age(row.getAge())
+                            .bookIdList(new ArrayList<>())
+                            .version(row.getVersion())
+                            .build();
+                }
+                if (Objects.nonNull(row.getBookId())) {
+                    current[0].getBookIdList().add(row.getBookId());
+                }
+            });
+        }
+        if (current[0] != null) {
+            action.accept(current[0]);
+            count[0]++;
+        }
+        log.info("[{}]: Exported {} users with book ids", UserServiceImpl.class, count[0]);
+    }
+
+    @Override
+    @Caching(evict = {
+            @CacheEvict(cacheNames = USERS_CACHE, key = "#id"),
+            @CacheEvict(cacheNames = USERS_WITH_BOOKS_CACHE, key = "#id"),
+            @CacheEvict(cacheNames = USER_BOOKS_CACHE, key = "#id")
+    })
+    @Transactional
     public void deleteUserById(Long id) {
         if(Objects.isNull(id)) {
             log.error("[{}]: User id is null for deleting", UserServiceImpl.class);
             throw new BadRequestException("User id is null for deleting");
         }
         log.info("[{}]: Request to delete user with id - {}", UserServiceImpl.class, id);
-        userRepository.deleteById(id);
+        //deleting a missing user is not an error, as in the other implementations;
+        //deleteById would throw inside its own transaction and mark the caller's one rollback-only
+        if(deleteUser(id) == 0) {
+            log.info("[{}]: User with id - {} was not found for deleting", UserServiceImpl.class, id);
+            return;
+        }
         log.info("[{}]: User with id - {} was deleted", UserServiceImpl.class, id);
     }
+
+    /**
+     * При включённом кэше второго уровня пользователь удаляется через сущность:
+     * JPQL DELETE сбросил бы регион person целиком.
+     *
+     * @return 0, если пользователя нет
+     */
+    private int deleteUser(Long id) {
+        if(!secondLevelCache.isEnabled()) {
+            return userRepository.deleteOneById(id);
+        }
+        Optional<Person> user = userRepository.findById(id);
+        user.ifPresent(userRepository::delete);
+        return user.isPresent() ? 1 : 0;
+    }
 }
@@ -0,0 +1,132 @@
+package com.edu.ulab.app.service.impl;
+
+import com.edu.ulab.app.dto.UserBooksDto;
+import com.edu.ulab.app.dto.UserDto;
+import com.edu.ulab.app.exception.BadRequestException;
+import com.edu.ulab.app.exception.NotFoundException;
+import com.edu.ulab.app.service.UserService;
+import com.edu.ulab.app.storage.Storage;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+
+import java.util.List;
+import java.util.Objects;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class UserServiceImplStorage implements UserService {
+
+    private final Storage storage;
+
+    @Override
+    public UserDto createUser(UserDto userDto) {
+        if(Objects.isNull(userDto)) {
+            log.error("[{}]: User for saving is null", UserServiceImplStorage.class);
+            throw new BadRequestException(String.format("[%s] : User for saving is null",
+                    UserServiceImplStorage.class));
+        }
+        log.debug("[{}]: Request to save user: {}", UserServiceImplStorage.class, userDto);
+        UserDto savedUser = storage.saveUser(userDto);
+        log.info("[{}]: Saved user with id - {}", UserServiceImplStorage.class, savedUser.getId());
+        return savedUser;
+    }
+
+    @Override
+    public List<UserDto> createUsers(List<UserDto> userDtoList) {
+        if(Objects.isNull(userDtoList)) {
+            log.error("[{}]: User list for saving is null", UserServiceImplStorage.class);
+            throw new BadRequestException(String.format("[%s] : User list for saving is null",
+                    UserServiceImplStorage.class));
+        }
+        log.info("[{}]: Request to save {} users", UserServiceImplStorage.class, userDtoList.size());
+        List<UserDto> savedUsers = userDtoList.stream()
+                .map(storage::saveUser)
+                .collect(Collectors.toList());
+        log.info("[{}]: Saved {} users", UserServiceImplStorage.class, savedUsers.size());
+        return savedUsers;
+    }
+
+    @Override
+    public UserDto updateUser(UserDto userDto) {
+        if(Objects.isNull(userDto.getId())) {
+            log.error("[{}]: Id for updating user is null", UserServiceImplStorage.class);
+            throw new BadRequestException(String.format("[%s] : Id for updating user is null",
+                    UserServiceImplStorage.class));
+        }
+        log.debug("[{}]: Request to update user: {}", UserServiceImplStorage.class, userDto);
+        UserDto updatedUser = storage.updateUser(userDto)
+                .orElseThrow(() -> new NotFoundException(
+                        String.format("User was not found with id - %d", userDto.getId())));
+        log.info("[{}]: Updated user with id - {}", UserServiceImplStorage.class, updatedUser.getId());
+        return updatedUser;
+    }
+
+    @Override
+    public UserDto getUserById(Long id) {
+        if(Objects.isNull(id)) {
+            log.error("[{}]: Id for getting user is null", UserServiceImplStorage.class);
+            throw new BadRequestException(String.format("[%s] : Id for getting user is null",
+                    UserServiceImplStorage.class));
+        }
+        log.info("[{}]: Request to get user by id: {}", UserServiceImplStorage.class, id);
+        UserDto userDto = storage.findUserById(id)
+                .orElseThrow(() -> new NotFoundException(String.format("User was not found with id - %d", id)));
+        log.debug("[{}]: Got user: {}", UserServiceImplStorage.class, userDto);
+        return userDto;
+    }
+
+    @Override
+    public UserBooksDto getUserWithBookIds(Long id) {
+        UserDto userDto = getUserById(id);
+        return UserBooksDto.builder()
+                .id(userDto.getId())
+                .fullName(userDto.getFullName())
+                .title(userDto.getTitle())
+                .age(userDto.getAge())
+                .bookIdList(storage.findBookIdsByUserId(id))
+                .version(userDto.getVersion())
+                .build();
+    }
+
+    @Override
+    public long getUserVersion(Long id) {
+        return getUserById(id).getVersion();
+    }
+
+    @Override
+    public List<UserDto> getUsersAfter(long afterId, int limit) {
+        log.info("[{}]: Request to get {} users after id: {}", UserServiceImplStorage.class, limit, afterId);
+        List<UserDto> userDtoList = storage.findUsersAfter(afterId, limit);
+        log.info("[{}]: Got {} users after id: {}", UserServiceImplStorage.class, userDtoList.size(), afterId);
+        return userDtoList;
+    }
+
+    @Override
+    public void forEachUserWithBookIds(Consumer<UserBooksDto> action) {
+        log.info("[{}]: Request to export users with book ids", UserServiceImplStorage.class);
+        storage.forEachUser(userDto -> action.accept(UserBooksDto.builder()
+                .id(userDto.getId())
+                .fullName(userDto.getFullName())
+                .title(userDto.getTitle())
+                .age(userDto.getAge())
+                .bookIdList(storage.findBookIdsByUserId(userDto.getId()))
+                .version(userDto.getVersion())
+                .build()));
+    }
+
+    @Override
+    public void deleteUserById(Long id) {
+        if(Objects.isNull(id)) {
+            log.error("[{}]: Id for deleting user is null", UserServiceImplStorage.class);
+            throw new BadRequestException(String.format("[%s] : Id for deleting user is null",
+                    UserServiceImplStorage.class));
+        }
+        log.info("[{}]: Request to delete user by id: {}", UserServiceImplStorage.class, id);
+        boolean deleted = storage.deleteUserById(id);
+        log.info("[{}]: user with id - {} deleted - {}", UserServiceImplStorage.class, id, deleted);
+    }
+}
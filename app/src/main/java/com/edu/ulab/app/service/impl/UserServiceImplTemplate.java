@@ -1,26 +1,49 @@
 package com.edu.ulab.app.service.impl;
 
-import com.edu.ulab.app.dto.BookDto;
+import com.edu.ulab.app.dto.UserBooksDto;
 import com.edu.ulab.app.dto.UserDto;
 import com.edu.ulab.app.exception.BadRequestException;
+import com.edu.ulab.app.exception.ConflictException;
 import com.edu.ulab.app.exception.NotFoundException;
 import com.edu.ulab.app.service.UserService;
+import com.edu.ulab.app.service.cache.SecondLevelCache;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
-import org.springframework.dao.DataAccessException;
+import org.springframework.dao.EmptyResultDataAccessException;
+import org.springframework.dao.InvalidDataAccessResourceUsageException;
+import org.springframework.jdbc.core.ConnectionCallback;
 import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.ResultSetExtractor;
+import org.springframework.jdbc.core.RowCallbackHandler;
 import org.springframework.jdbc.core.RowMapper;
 import org.springframework.jdbc.support.GeneratedKeyHolder;
 import org.springframework.jdbc.support.KeyHolder;
+import org.springframework.cache.annotation.CacheEvict;
+import org.springframework.cache.annotation.Cacheable;
+import org.springframework.cache.annotation.Caching;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 
 import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Objects;
+import java.util.function.Consumer;
 
 import static com.edu.ulab.app.web.constant.SQLQueryUserConstant.DELETE_BY_ID_SQL;
+import static com.edu.ulab.app.web.constant.SQLQueryUserConstant.EXPORT_FETCH_SIZE;
+import static com.edu.ulab.app.web.constant.SQLQueryUserConstant.SELECT_ALL_WITH_BOOK_IDS_SQL;
 import static com.edu.ulab.app.web.constant.SQLQueryUserConstant.SELECT_BY_ID_SQL;
+import static com.edu.ulab.app.web.constant.SQLQueryUserConstant.SELECT_PAGE_SQL;
+import static com.edu.ulab.app.web.constant.SQLQueryUserConstant.SELECT_WITH_BOOK_IDS_BY_ID_SQL;
 import static com.edu.ulab.app.web.constant.SQLQueryUserConstant.INSERT_SQL;
+import static com.edu.ulab.app.web.constant.SQLQueryUserConstant.SELECT_VERSION_BY_ID_SQL;
+import static com.edu.ulab.app.web.constant.SQLQueryUserConstant.UPDATE_IF_VERSION_SQL;
 import static com.edu.ulab.app.web.constant.SQLQueryUserConstant.UPDATE_SQL;
+import static com.edu.ulab.app.web.constant.CacheConstant.USERS_CACHE;
+import static com.edu.ulab.app.web.constant.CacheConstant.USERS_WITH_BOOKS_CACHE;
+import static com.edu.ulab.app.web.constant.CacheConstant.USER_BOOKS_CACHE;
 
 @Slf4j
 @Service
@@ -29,20 +52,96 @@ public class UserServiceImplTemplate implements UserService {
 
     private final JdbcTemplate jdbcTemplate;
 
+    //the JPA implementation reads the same tables through the Hibernate cache
+    private final SecondLevelCache secondLevelCache;
+
     private final RowMapper<UserDto> rowMapper = (resultSet, i) -> {
       Long id = resultSet.getLong("ID");
       String title = resultSet.getString("TITLE");
       String fullName = resultSet.getString("FULL_NAME");
       int age = resultSet.getInt("AGE");
+      long version = resultSet.getLong("VERSION");
 
       return UserDto.builder()
               .id(id)
               .title(title)
               .fullName(fullName)
               .age(age)
+              .version(version)
               .build();
     };
 
+    private final ResultSetExtractor<UserBooksDto> userBooksExtractor = resultSet -> {
+        UserBooksDto userBooksDto = null;
+        List<Long> bookIdList = new ArrayList<>();
+        while (resultSet.next()) {
+            if (userBooksDto == null) {
+                userBooksDto = UserBooksDto.builder()
+                        .id(resultSet.getLong("ID"))
+                        .title(resultSet.getString("TITLE"))
+                        .fullName(resultSet.getString("FULL_NAME"))
+                        .age(resultSet.getInt("AGE"))
+                        .bookIdList(bookIdList)
+                        .version(resultSet.getLong("VERSION"))
+                        .build();
+            }
+            long bookId = resultSet.getLong("BOOK_ID");
+            if (!resultSet.wasNull()) {
+                bookIdList.add(bookId);
+            }
+        }
+        return userBooksDto;
+    };
+
+    @Override
+    @Transactional(readOnly = true)
+    public List<UserDto> getUsersAfter(long afterId, int limit) {
+        log.info("[{}]: Request to get {} users after id: {}", UserServiceImplTemplate.class, limit, afterId);
+        List<UserDto> userDtoList = jdbcTemplate.query(SELECT_PAGE_SQL, rowMapper, afterId, limit);
+        log.info("[{}]: Got {} users after id: {}", UserServiceImplTemplate.class, userDtoList.size(), afterId);
+        return userDtoList;
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public void forEachUserWithBookIds(Consumer<UserBooksDto> action) {
+        log.info("[{}]: Request to export users with book ids", UserServiceImplTemplate.class);
+        UserBooksDto[] current = new UserBooksDto[1];
+        long[] count = new long[1];
+        // PostgreSQL отдаёт строки порциями по fetch size только вне autocommit, отсюда транзакция
+        jdbcTemplate.query(connection -> {
+            PreparedStatement ps = connection.prepareStatement(SELECT_ALL_WITH_BOOK_IDS_SQL);
+            ps.setFetchSize(EXPORT_FETCH_SIZE);
+            return ps;
+        }, (RowCallbackHandler) resultSet -> {
+            long userId = resultSet.getLong("ID");
+            if (current[0] == null || current[0].getId() != userId) {
+                if (current[0] != null) {
+                    action.accept(current[0]);
+                    count[0]++;
+                }
+                UserDto userDto = rowMapper.mapRow(resultSet, resultSet.getRow());
+                current[0] = UserBooksDto.builder()
+                        .id(userDto.getId())
+                        .fullName(userDto.getFullName())
+                        .title(userDto.getTitle())
+                        .age(userDto.getAge())
+                        .bookIdList(new ArrayList<>())
+                        .version(userDto.getVersion())
+                        .build();
+            }
+            long bookId = resultSet.getLong("BOOK_ID");
+            if (!resultSet.wasNull()) {
+                current[0].getBookIdList().add(bookId);
+            }
+        });
+        if (current[0] != null) {
+            action.accept(current[0]);
+            count[0]++;
+        }
+        log.info("[{}]: Exported {} users with book ids", UserServiceImplTemplate.class, count[0]);
+    }
+
     @Override
     public UserDto createUser(UserDto userDto) {
 
@@ -51,7 +150,7 @@ public class UserServiceImplTemplate implements UserService {
             throw new BadRequestException(String.format("[%s] : User for saving is null",
                     UserServiceImplTemplate.class));
         }
-        log.info("[{}]: Request to save user: {}", UserServiceImplTemplate.class, userDto);
+        log.debug("[{}]: Request to save user: {}", UserServiceImplTemplate.class, userDto);
 
         KeyHolder keyHolder = new GeneratedKeyHolder();
         jdbcTemplate.update(
@@ -64,11 +163,57 @@ public class UserServiceImplTemplate implements UserService {
                 }, keyHolder);
 
         userDto.setId(Objects.requireNonNull(keyHolder.getKey()).longValue());
-        log.info("[{}]: Saved book: {}", UserServiceImplTemplate.class, userDto);
+        userDto.setVersion(0L);
+        log.info("[{}]: Saved user with id - {}", UserServiceImplTemplate.class, userDto.getId());
         return userDto;
     }
 
     @Override
+    public List<UserDto> createUsers(List<UserDto> userDtoList) {
+        if(Objects.isNull(userDtoList)) {
+            log.error("[{}]: User list for saving is null", UserServiceImplTemplate.class);
+            throw new BadRequestException(String.format("[%s] : User list for saving is null",
+                    UserServiceImplTemplate.class));
+        }
+        log.info("[{}]: Request to save {} users", UserServiceImplTemplate.class, userDtoList.size());
+        if(userDtoList.isEmpty()) {
+            return userDtoList;
+        }
+
+        jdbcTemplate.execute((ConnectionCallback<Void>) connection -> {
+            try (PreparedStatement ps = connection.prepareStatement(INSERT_SQL, new String[]{"id"})) {
+                for (UserDto userDto : userDtoList) {
+                    ps.setString(1, userDto.getFullName());
+                    ps.setString(2, userDto.getTitle());
+                    ps.setLong(3, userDto.getAge());
+                    ps.addBatch();
+                }
+                ps.executeBatch();
+
+                try (ResultSet keys = ps.getGeneratedKeys()) {
+                    for (UserDto userDto : userDtoList) {
+                        if (!keys.next()) {
+                            throw new InvalidDataAccessResourceUsageException(
+                                    "Batch insert of users returned fewer generated keys than rows");
+                        }
+                        userDto.setId(keys.getLong(1));
+                        userDto.setVersion(0L);
+                    }
+                }
+            }
+            return null;
+        });
+
+        log.info("[{}]: Saved {} users", UserServiceImplTemplate.class, userDtoList.size());
+        return userDtoList;
+    }
+
+    @Override
+    @Caching(evict = {
+            @CacheEvict(cacheNames = USERS_CACHE, key = "#userDto.id"),
+            @CacheEvict(cacheNames = USERS_WITH_BOOKS_CACHE, key = "#userDto.id")
+    })
+    @Transactional
     public UserDto updateUser(UserDto userDto) {
         if(Objects.isNull(userDto.getId())) {
             log.error("[{}]: Id for updating user is null", UserServiceImplTemplate.class);
@@ -76,13 +221,45 @@ public class UserServiceImplTemplate implements UserService {
                     UserServiceImplTemplate.class));
         }
 
-        log.info("[{}]: Request to update user: {}", UserServiceImplTemplate.class, userDto);
-        jdbcTemplate.update(UPDATE_SQL, userDto.getFullName(), userDto.getTitle(), userDto.getAge(), userDto.getId());
-        log.info("[{}]: Updated user: {}",UserServiceImplTemplate.class, userDto);
+        log.debug("[{}]: Request to update user: {}", UserServiceImplTemplate.class, userDto);
+        if(Objects.isNull(userDto.getVersion())) {
+            if(jdbcTemplate.update(UPDATE_SQL, userDto.getFullName(), userDto.getTitle(), userDto.getAge(),
+                    userDto.getId()) == 0) {
+                throw updateFailure(userDto);
+            }
+            //the row stays locked by the UPDATE until commit, the version read is the one just written
+            userDto.setVersion(jdbcTemplate.queryForObject(SELECT_VERSION_BY_ID_SQL, Long.class, userDto.getId()));
+        } else {
+            if(jdbcTemplate.update(UPDATE_IF_VERSION_SQL, userDto.getFullName(), userDto.getTitle(), userDto.getAge(),
+                    userDto.getId(), userDto.getVersion()) == 0) {
+                throw updateFailure(userDto);
+            }
+            userDto.setVersion(userDto.getVersion() + 1);
+        }
+        secondLevelCache.evictUser(userDto.getId());
+        log.info("[{}]: Updated user with id - {}", UserServiceImplTemplate.class, userDto.getId());
         return userDto;
     }
 
+    /**
+     * Причина, по которой UPDATE не изменил строк: пользователя нет или его версия уже другая.
+     * Читается только после неудачного обновления.
+     */
+    private RuntimeException updateFailure(UserDto userDto) {
+        List<Long> versions = jdbcTemplate.queryForList(SELECT_VERSION_BY_ID_SQL, Long.class, userDto.getId());
+        if(versions.isEmpty()) {
+            log.error("[{}]: User was not found with id - {}", UserServiceImplTemplate.class, userDto.getId());
+            return new NotFoundException(String.format("User was not found with id - %d", userDto.getId()));
+        }
+        log.error("[{}]: User with id - {} has version {}, expected {}",
+                UserServiceImplTemplate.class, userDto.getId(), versions.get(0), userDto.getVersion());
+        return new ConflictException(String.format("User with id - %d has version %d, expected %d",
+                userDto.getId(), versions.get(0), userDto.getVersion()));
+    }
+
     @Override
+    @Transactional(readOnly = true)
+    @Cacheable(cacheNames = USERS_CACHE, key = "#id", condition = "#id != null")
     public UserDto getUserById(Long id) {
         if(Objects.isNull(id)) {
             log.error("[{}]: Id for getting user is null", UserServiceImplTemplate.class);
@@ -93,16 +270,59 @@ public class UserServiceImplTemplate implements UserService {
         UserDto userDto = null;
         try {
             userDto = jdbcTemplate.queryForObject(SELECT_BY_ID_SQL, rowMapper, id);
-        }catch (DataAccessException ex) {
+        } catch (EmptyResultDataAccessException ex) {
             log.error("[{}]: User was not found with id - {}", UserServiceImplTemplate.class, id);
             throw new NotFoundException(String.format("User was not found with id - %d", id));
         }
 
-        log.info("[{}]: Got book: {}", UserServiceImplTemplate.class, userDto);
+        log.debug("[{}]: Got user: {}", UserServiceImplTemplate.class, userDto);
         return userDto;
     }
 
     @Override
+    @Transactional(readOnly = true)
+    @Cacheable(cacheNames = USERS_WITH_BOOKS_CACHE, key = "#id", condition = "#id != null")
+    public UserBooksDto getUserWithBookIds(Long id) {
+        if(Objects.isNull(id)) {
+            log.error("[{}]: Id for getting user with books is null", UserServiceImplTemplate.class);
+            throw new BadRequestException(String.format("[%s] : Id for getting user with books is null",
+                    UserServiceImplTemplate.class));
+        }
+        log.info("[{}]: Request to get user with book ids by id: {}", UserServiceImplTemplate.class, id);
+        UserBooksDto userBooksDto = jdbcTemplate.query(SELECT_WITH_BOOK_IDS_BY_ID_SQL, userBooksExtractor, id);
+        if(Objects.isNull(userBooksDto)) {
+            log.error("[{}]: User was not found with id - {}", UserServiceImplTemplate.class, id);
+            throw new NotFoundException(String.format("User was not found with id - %d", id));
+        }
+
+        log.info("[{}]: Got user with id - {} and {} book ids",
+                UserServiceImplTemplate.class, id, userBooksDto.getBookIdList().size());
+        return userBooksDto;
+    }
+
+    @Override
+    public long getUserVersion(Long id) {
+        if(Objects.isNull(id)) {
+            log.error("[{}]: Id for getting version is null", UserServiceImplTemplate.class);
+            throw new BadRequestException(String.format("[%s] : Id for getting version is null",
+                    UserServiceImplTemplate.class));
+        }
+        log.info("[{}]: Request to get version of user by id: {}", UserServiceImplTemplate.class, id);
+        List<Long> versions = jdbcTemplate.queryForList(SELECT_VERSION_BY_ID_SQL, Long.class, id);
+        if(versions.isEmpty()) {
+            log.error("[{}]: User was not found with id - {}", UserServiceImplTemplate.class, id);
+            throw new NotFoundException(String.format("User was not found with id - %d", id));
+        }
+        log.info("[{}]: Got version {} of user with id - {}", UserServiceImplTemplate.class, versions.get(0), id);
+        return versions.get(0);
+    }
+
+    @Override
+    @Caching(evict = {
+            @CacheEvict(cacheNames = USERS_CACHE, key = "#id"),
+            @CacheEvict(cacheNames = USERS_WITH_BOOKS_CACHE, key = "#id"),
+            @CacheEvict(cacheNames = USER_BOOKS_CACHE, key = "#id")
+    })
     public void deleteUserById(Long id) {
         if(Objects.isNull(id)) {
             log.error("[{}]: Id for deleting user is null", UserServiceImplTemplate.class);
@@ -111,6 +331,7 @@ public class UserServiceImplTemplate implements UserService {
         }
         log.info("[{}]: Request to delete user by id: {}", UserServiceImplTemplate.class, id);
         int countOfDeletedUsers = jdbcTemplate.update(DELETE_BY_ID_SQL, id);
+        secondLevelCache.evictUser(id);
         log.info("[{}]: count of deleted users - {} with id - {} ",
                 UserServiceImplTemplate.class, countOfDeletedUsers, id);
     }
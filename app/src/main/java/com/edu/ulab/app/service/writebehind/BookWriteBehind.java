@@ -0,0 +1,304 @@
+package com.edu.ulab.app.service.writebehind;
+
+import com.edu.ulab.app.dto.BookDto;
+import com.edu.ulab.app.service.cache.SecondLevelCache;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.TreeMap;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import static com.edu.ulab.app.web.constant.CacheConstant.USERS_CACHE;
+import static com.edu.ulab.app.web.constant.CacheConstant.USERS_WITH_BOOKS_CACHE;
+import static com.edu.ulab.app.web.constant.CacheConstant.USER_BOOKS_CACHE;
+import static com.edu.ulab.app.web.constant.SQLQueryBookConstant.INSERT_WITH_ID_SQL;
+import static com.edu.ulab.app.web.constant.SQLQueryBookConstant.SELECT_NEXT_ID_SQL;
+import static com.edu.ulab.app.web.constant.SQLQueryUserConstant.INCREMENT_VERSION_SQL;
+
+/**
+ * Отложенная запись книг с групповым коммитом (write-behind).
+ * <p>
+ * Книги сразу получают id из диапазона, выделенного одним вызовом book_id_seq (шаг {@value #ID_ALLOCATION_SIZE},
+ * как allocationSize в Book), и встают в ограниченную очередь. Фоновый поток забирает из очереди запросы,
+ * пока в пачке меньше batchSize книг и с первого запроса прошло не больше maxDelay, и вставляет пачку
+ * одним JDBC batch в одной транзакции: один коммит на пачку вместо коммита на каждый запрос.
+ * В той же транзакции до вставки версия каждого пользователя увеличивается на число запросов пачки с его книгами,
+ * как если бы каждый запрос записывался {@link com.edu.ulab.app.service.BookService#createBooks}.
+ * <p>
+ * Future из {@link #enqueue} завершается после коммита пачки. Если пачка не записалась, запросы из неё
+ * повторяются по одному, и исключение получают только те, что не удалось записать; их id уже выданы клиенту.
+ * До коммита книги не видны при чтении. При полной очереди вызывающий поток ждёт до enqueueTimeout,
+ * затем получает {@link RejectedExecutionException}. {@link #close} дописывает очередь до конца,
+ * в том числе запросы, поставленные одновременно с ним.
+ */
+@Slf4j
+public class BookWriteBehind implements AutoCloseable {
+
+    public static final String BATCH_SIZE_SUMMARY = "app.write.behind.batch.size";
+    public static final String QUEUE_GAUGE = "app.write.behind.queue.size";
+    public static final String FAILED_COUNTER = "app.write.behind.failed";
+
+    static final int ID_ALLOCATION_SIZE = 50;
+
+    private static final long POLL_TIMEOUT_MILLIS = 100;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final CacheManager cacheManager;
+    private final SecondLevelCache secondLevelCache;
+    private final BlockingQueue<PendingBooks> queue;
+    private final int batchSize;
+    private final long maxDelayNanos;
+    private final Duration enqueueTimeout;
+    private final DistributionSummary batchSizes;
+    private final Counter failedBooks;
+    private final Thread writer;
+
+    private final ReadWriteLock shutdownLock = new ReentrantReadWriteLock();
+
+    private volatile boolean running = true;
+
+    //guarded by this
+    private long nextId = 1;
+    private long maxId = 0;
+
+    /**
+     * @param queueCapacity  максимальное число запросов в очереди
+     * @param batchSize      число книг, после которого пачка записывается без ожидания
+     * @param maxDelay       сколько ждать следующих запросов после первого в пачке
+     * @param enqueueTimeout сколько ждать места в полной очереди
+     */
+    public BookWriteBehind(JdbcTemplate jdbcTemplate,
+                           TransactionTemplate transactionTemplate,
+                           CacheManager cacheManager,
+                           SecondLevelCache secondLevelCache,
+                           MeterRegistry meterRegistry,
+                           int queueCapacity,
+                           int batchSize,
+                           Duration maxDelay,
+                           Duration enqueueTimeout) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = transactionTemplate;
+        this.cacheManager = cacheManager;
+        this.secondLevelCache = secondLevelCache;
+        this.queue = new ArrayBlockingQueue<>(queueCapacity);
+        this.batchSize = batchSize;
+        this.maxDelayNanos = maxDelay.toNanos();
+        this.enqueueTimeout = enqueueTimeout;
+        this.batchSizes = DistributionSummary.builder(BATCH_SIZE_SUMMARY)
+                .description("Books written in one group commit")
+                .register(meterRegistry);
+        this.failedBooks = Counter.builder(FAILED_COUNTER)
+                .description("Books with assigned ids that could not be written")
+                .register(meterRegistry);
+        Gauge.builder(QUEUE_GAUGE, queue, BlockingQueue::size)
+                .description("Requests waiting for the write-behind writer")
+                .register(meterRegistry);
+
+        this.writer = new Thread(this::writeLoop, "book-write-behind");
+        this.writer.setDaemon(true);
+        this.writer.start();
+    }
+
+    /**
+     * Присваивает книгам id и версию 0 и ставит их в очередь на запись.
+     *
+     * @return future, завершающийся теми же книгами после коммита
+     */
+    public CompletableFuture<List<BookDto>> enqueue(List<BookDto> books) {
+        PendingBooks pending;
+        //the check and the offer under one read lock: close() cannot stop the writer in between
+        shutdownLock.readLock().lock();
+        try {
+            if (!running) {
+                throw new RejectedExecutionException("Write-behind of books is stopped");
+            }
+            assignIds(books);
+            if (books.isEmpty()) {
+                return CompletableFuture.completedFuture(books);
+            }
+
+            pending = new PendingBooks(books, new CompletableFuture<>());
+            if (!queue.offer(pending, enqueueTimeout.toMillis(), TimeUnit.MILLISECONDS)) {
+                throw new RejectedExecutionException(String.format(
+                        "Write-behind queue of books is full for %s", enqueueTimeout));
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RejectedExecutionException("Interrupted while waiting for write-behind queue", e);
+        } finally {
+            shutdownLock.readLock().unlock();
+        }
+        log.debug("[{}]: Enqueued {} books", BookWriteBehind.class, books.size());
+        return pending.durable();
+    }
+
+    private synchronized void assignIds(List<BookDto> books) {
+        for (BookDto book : books) {
+            if (nextId > maxId) {
+                //pooled ranges as in Hibernate: the sequence value is the upper bound of the range
+                long upperId = Objects.requireNonNull(jdbcTemplate.queryForObject(SELECT_NEXT_ID_SQL, Long.class));
+                maxId = upperId;
+                nextId = Math.max(1, upperId - ID_ALLOCATION_SIZE + 1);
+            }
+            book.setId(nextId++);
+            book.setVersion(0L);
+        }
+    }
+
+    private void writeLoop() {
+        List<PendingBooks> batch = new ArrayList<>();
+        while (running || !queue.isEmpty()) {
+            try {
+                PendingBooks first = queue.poll(POLL_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                int books = first.books().size();
+                long deadline = System.nanoTime() + maxDelayNanos;
+                while (books < batchSize) {
+                    PendingBooks next = queue.poll(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+                    if (next == null) {
+                        break;
+                    }
+                    batch.add(next);
+                    books += next.books().size();
+                }
+            } catch (InterruptedException e) {
+                log.warn("[{}]: Writer was interrupted, writing {} queued requests",
+                        BookWriteBehind.class, queue.size());
+                running = false;
+                queue.drainTo(batch);
+            }
+            flush(batch);
+            batch.clear();
+        }
+        log.info("[{}]: Writer stopped", BookWriteBehind.class);
+    }
+
+    private void flush(List<PendingBooks> batch) {
+        if (batch.isEmpty()) {
+            return;
+        }
+        List<BookDto> books = batch.stream()
+                .flatMap(pending -> pending.books().stream())
+                .toList();
+        try {
+            insert(batch, books);
+            batchSizes.record(books.size());
+            log.debug("[{}]: Committed {} books of {} requests", BookWriteBehind.class, books.size(), batch.size());
+            batch.forEach(this::complete);
+        } catch (RuntimeException e) {
+            if (batch.size() == 1) {
+                fail(batch.get(0), e);
+                return;
+            }
+            //one bad request must not fail the requests grouped with it
+            log.warn("[{}]: Group commit of {} books failed, writing {} requests one by one: {}",
+                    BookWriteBehind.class, books.size(), batch.size(), e.getMessage());
+            for (PendingBooks pending : batch) {
+                try {
+                    insert(List.of(pending), pending.books());
+                    batchSizes.record(pending.books().size());
+                    complete(pending);
+                } catch (RuntimeException ex) {
+                    fail(pending, ex);
+                }
+            }
+        }
+    }
+
+    private void insert(List<PendingBooks> batch, List<BookDto> books) {
+        //users in id order, as in BookService implementations
+        Map<Long, Long> versionIncrements = batch.stream()
+                .flatMap(pending -> pending.books().stream().map(BookDto::getUserId).distinct())
+                .collect(Collectors.groupingBy(Function.identity(), TreeMap::new, Collectors.counting()));
+        transactionTemplate.executeWithoutResult(status -> {
+            jdbcTemplate.batchUpdate(INCREMENT_VERSION_SQL, versionIncrements.entrySet(), versionIncrements.size(),
+                    (ps, increment) -> {
+                        ps.setLong(1, increment.getValue());
+                        ps.setLong(2, increment.getKey());
+                    });
+            jdbcTemplate.batchUpdate(INSERT_WITH_ID_SQL, books, books.size(), (ps, book) -> {
+                ps.setLong(1, book.getId());
+                ps.setString(2, book.getTitle());
+                ps.setString(3, book.getAuthor());
+                ps.setLong(4, book.getPageCount());
+                ps.setLong(5, book.getUserId());
+            });
+        });
+    }
+
+    private void complete(PendingBooks pending) {
+        //reads made before the commit may have cached the user without these books
+        List<Long> userIds = pending.books().stream()
+                .map(BookDto::getUserId)
+                .distinct()
+                .toList();
+        userIds.forEach(userId -> {
+            evict(USERS_CACHE, userId);
+            evict(USER_BOOKS_CACHE, userId);
+            evict(USERS_WITH_BOOKS_CACHE, userId);
+        });
+        secondLevelCache.evictBooksOfUsers(userIds);
+        pending.durable().complete(pending.books());
+    }
+
+    private void evict(String cacheName, Long userId) {
+        Cache cache = cacheManager.getCache(cacheName);
+        if (cache != null) {
+            cache.evict(userId);
+        }
+    }
+
+    private void fail(PendingBooks pending, RuntimeException e) {
+        failedBooks.increment(pending.books().size());
+        log.error("[{}]: {} books of user {} were not written: {}", BookWriteBehind.class,
+                pending.books().size(), pending.books().get(0).getUserId(), e.getMessage());
+        pending.durable().completeExceptionally(e);
+    }
+
+    /**
+     * Останавливает приём запросов и ждёт, пока записывается очередь.
+     */
+    @Override
+    public void close() throws InterruptedException {
+        //waits for enqueue calls that already passed the running check
+        shutdownLock.writeLock().lock();
+        try {
+            running = false;
+        } finally {
+            shutdownLock.writeLock().unlock();
+        }
+        writer.join();
+
+        //requests enqueued while the writer was finishing
+        List<PendingBooks> rest = new ArrayList<>();
+        queue.drainTo(rest);
+        flush(rest);
+    }
+
+    private record PendingBooks(List<BookDto> books, CompletableFuture<List<BookDto>> durable) {
+    }
+}
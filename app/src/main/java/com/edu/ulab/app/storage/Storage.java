@@ -1,11 +1,286 @@
 package com.edu.ulab.app.storage;
 
+import com.edu.ulab.app.dto.BookDto;
+import com.edu.ulab.app.dto.UserDto;
+import com.edu.ulab.app.exception.ConflictException;
+import com.edu.ulab.app.exception.NotFoundException;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.NavigableSet;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+
+/**
+ * Потокобезопасное хранилище пользователей и книг в памяти.
+ * <p>
+ * Идентификаторы выдаются счётчиками {@link AtomicLong}, связь пользователь → книги
+ * хранится во вторичном индексе. Пользователи и id книг пользователя хранятся упорядоченно,
+ * поэтому страница после заданного id читается без сортировки. Изменения индекса пользователя и его книг выполняются
+ * под блокировкой ключа пользователя в {@link ConcurrentHashMap#compute}, поэтому книга
+ * не может остаться без пользователя при параллельном удалении.
+ * Наружу отдаются только копии, хранимые объекты не изменяются вызывающим кодом.
+ * Версия пользователя и книги увеличивается при каждом обновлении, как столбец version в базе.
+ * Версия пользователя увеличивается и при изменении списка его книг, на 1 за вызов.
+ */
+@Component
 public class Storage {
-    //todo создать хранилище в котором будут содержаться данные
-    // сделать абстракции через которые можно будет производить операции с хранилищем
-    // продумать логику поиска и сохранения
-    // продумать возможные ошибки
-    // учесть, что при сохранеии юзера или книги, должен генерироваться идентификатор
-    // продумать что у узера может быть много книг и нужно создать эту связь
-    // так же учесть, что методы хранилища принимают друго тип данных - учесть это в абстракции
+
+    private final AtomicLong userIdSequence = new AtomicLong();
+    private final AtomicLong bookIdSequence = new AtomicLong();
+
+    private final ConcurrentNavigableMap<Long, UserDto> users = new ConcurrentSkipListMap<>();
+    private final ConcurrentMap<Long, BookDto> books = new ConcurrentHashMap<>();
+    private final ConcurrentMap<Long, NavigableSet<Long>> userBookIds = new ConcurrentHashMap<>();
+
+    public UserDto saveUser(UserDto userDto) {
+        long id = userIdSequence.incrementAndGet();
+        UserDto stored = copy(userDto);
+        stored.setId(id);
+        stored.setVersion(0L);
+        users.put(id, stored);
+        userBookIds.put(id, new ConcurrentSkipListSet<>());
+        return copy(stored);
+    }
+
+    public Optional<UserDto> findUserById(long id) {
+        return Optional.ofNullable(users.get(id)).map(Storage::copy);
+    }
+
+    /**
+     * Обходит пользователей по возрастанию id, удалённые во время обхода пропускаются.
+     */
+    public void forEachUser(Consumer<UserDto> action) {
+        users.values().forEach(userDto -> action.accept(copy(userDto)));
+    }
+
+    public List<UserDto> findUsersAfter(long afterId, int limit) {
+        return users.tailMap(afterId, false).values().stream()
+                .limit(limit)
+                .map(Storage::copy)
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * Обновляет пользователя и увеличивает его версию.
+     *
+     * @throws ConflictException если задана версия и она не совпадает с текущей
+     */
+    public Optional<UserDto> updateUser(UserDto userDto) {
+        return Optional.ofNullable(users.computeIfPresent(userDto.getId(), (id, old) -> {
+                    checkVersion("User", id, old.getVersion(), userDto.getVersion());
+                    UserDto stored = copy(userDto);
+                    stored.setVersion(old.getVersion() + 1);
+                    return stored;
+                }))
+                .map(Storage::copy);
+    }
+
+    /**
+     * Удаляет пользователя вместе с его книгами.
+     *
+     * @return true, если пользователь существовал
+     */
+    public boolean deleteUserById(long id) {
+        Set<Long> bookIds = userBookIds.remove(id);
+        if (bookIds != null) {
+            bookIds.forEach(books::remove);
+        }
+        return users.remove(id) != null;
+    }
+
+    /**
+     * @throws NotFoundException если пользователя книги нет в хранилище
+     */
+    public BookDto saveBook(BookDto bookDto) {
+        BookDto saved = insertBook(bookDto);
+        incrementUserVersion(saved.getUserId());
+        return saved;
+    }
+
+    public List<BookDto> saveBooks(List<BookDto> bookDtoList) {
+        List<BookDto> saved = new ArrayList<>(bookDtoList.size());
+        for (BookDto bookDto : bookDtoList) {
+            saved.add(insertBook(bookDto));
+        }
+        saved.stream()
+                .map(BookDto::getUserId)
+                .distinct()
+                .forEach(this::incrementUserVersion);
+        return saved;
+    }
+
+    public Optional<BookDto> findBookById(long id) {
+        return Optional.ofNullable(books.get(id)).map(Storage::copy);
+    }
+
+    /**
+     * Обновляет книгу и увеличивает её версию, при смене пользователя переносит её в индекс нового пользователя.
+     * Версия при переносе сверяется до переноса, а не под блокировкой.
+     *
+     * @throws NotFoundException если нового пользователя книги нет в хранилище
+     * @throws ConflictException если задана версия и она не совпадает с текущей
+     */
+    public Optional<BookDto> updateBook(BookDto bookDto) {
+        BookDto old = books.get(bookDto.getId());
+        if (old == null) {
+            return Optional.empty();
+        }
+        BookDto stored = copy(bookDto);
+        if (Objects.equals(old.getUserId(), stored.getUserId())) {
+            Set<Long> linked = userBookIds.computeIfPresent(stored.getUserId(), (userId, bookIds) -> {
+                BookDto current = Objects.requireNonNullElse(books.get(stored.getId()), old);
+                checkVersion("Book", stored.getId(), current.getVersion(), bookDto.getVersion());
+                stored.setVersion(current.getVersion() + 1);
+                books.put(stored.getId(), stored);
+                return bookIds;
+            });
+            return Optional.ofNullable(linked).map(bookIds -> copy(stored));
+        }
+        checkVersion("Book", stored.getId(), old.getVersion(), bookDto.getVersion());
+        stored.setVersion(old.getVersion() + 1);
+        linkBook(stored);
+        unlinkBook(old);
+        incrementUserVersion(old.getUserId());
+        incrementUserVersion(stored.getUserId());
+        return Optional.of(copy(stored));
+    }
+
+    public boolean deleteBookById(long id) {
+        BookDto book = books.remove(id);
+        if (book == null) {
+            return false;
+        }
+        unlinkBook(book);
+        incrementUserVersion(book.getUserId());
+        return true;
+    }
+
+    public List<BookDto> findBooksByUserId(long userId) {
+        return findBooks(userBookIds.getOrDefault(userId, Collections.emptyNavigableSet()), Integer.MAX_VALUE);
+    }
+
+    public List<BookDto> findBooksByUserIdAfter(long userId, long afterId, int limit) {
+        return findBooks(userBookIds.getOrDefault(userId, Collections.emptyNavigableSet()).tailSet(afterId, false), limit);
+    }
+
+    public List<Long> findBookIdsByUserId(long userId) {
+        return new ArrayList<>(userBookIds.getOrDefault(userId, Collections.emptyNavigableSet()));
+    }
+
+    /**
+     * @return количество удалённых книг
+     */
+    public int deleteBooksByUserId(long userId) {
+        int[] deleted = new int[1];
+        userBookIds.computeIfPresent(userId, (id, bookIds) -> {
+            bookIds.forEach(bookId -> {
+                if (books.remove(bookId) != null) {
+                    deleted[0]++;
+                }
+            });
+            return new ConcurrentSkipListSet<>();
+        });
+        if (deleted[0] > 0) {
+            incrementUserVersion(userId);
+        }
+        return deleted[0];
+    }
+
+    /**
+     * Удаляет все данные, счётчики идентификаторов не сбрасываются.
+     */
+    public void clear() {
+        userBookIds.clear();
+        books.clear();
+        users.clear();
+    }
+
+    private List<BookDto> findBooks(Set<Long> bookIds, int limit) {
+        List<BookDto> result = new ArrayList<>();
+        for (Long bookId : bookIds) {
+            if (result.size() >= limit) {
+                break;
+            }
+            BookDto book = books.get(bookId);
+            if (book != null) {
+                result.add(copy(book));
+            }
+        }
+        return result;
+    }
+
+    private BookDto insertBook(BookDto bookDto) {
+        long id = bookIdSequence.incrementAndGet();
+        BookDto stored = copy(bookDto);
+        stored.setId(id);
+        stored.setVersion(0L);
+        linkBook(stored);
+        return copy(stored);
+    }
+
+    private void incrementUserVersion(long userId) {
+        users.computeIfPresent(userId, (id, old) -> {
+            UserDto stored = copy(old);
+            stored.setVersion(old.getVersion() + 1);
+            return stored;
+        });
+    }
+
+    private void linkBook(BookDto book) {
+        Set<Long> linked = userBookIds.computeIfPresent(book.getUserId(), (userId, bookIds) -> {
+            books.put(book.getId(), book);
+            bookIds.add(book.getId());
+            return bookIds;
+        });
+        if (linked == null) {
+            throw new NotFoundException(String.format("User with id - %d was not found", book.getUserId()));
+        }
+    }
+
+    private void unlinkBook(BookDto book) {
+        userBookIds.computeIfPresent(book.getUserId(), (userId, bookIds) -> {
+            bookIds.remove(book.getId());
+            return bookIds;
+        });
+    }
+
+    private static void checkVersion(String entity, long id, long actual, Long expected) {
+        if (expected != null && expected != actual) {
+            throw new ConflictException(String.format("%s with id - %d has version %d, expected %d",
+                    entity, id, actual, expected));
+        }
+    }
+
+    private static UserDto copy(UserDto userDto) {
+        return UserDto.builder()
+                .id(userDto.getId())
+                .fullName(userDto.getFullName())
+                .title(userDto.getTitle())
+                .age(userDto.getAge())
+                .version(userDto.getVersion())
+                .build();
+    }
+
+    private static BookDto copy(BookDto bookDto) {
+        return BookDto.builder()
+                .id(bookDto.getId())
+                .userId(bookDto.getUserId())
+                .title(bookDto.getTitle())
+                .author(bookDto.getAuthor())
+                .pageCount(bookDto.getPageCount())
+                .version(bookDto.getVersion())
+                .build();
+    }
 }
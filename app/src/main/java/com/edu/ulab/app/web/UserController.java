@@ -1,9 +1,21 @@
 package com.edu.ulab.app.web;
 
+import com.edu.ulab.app.facade.UserBatchFacade;
 import com.edu.ulab.app.facade.UserDataFacade;
+import com.edu.ulab.app.service.bulk.BookImportFormat;
+import com.edu.ulab.app.web.async.UserRequestExecutor;
 import com.edu.ulab.app.web.constant.WebConstant;
+import com.edu.ulab.app.web.etag.UserETag;
 import com.edu.ulab.app.web.request.UserBookRequest;
+import com.edu.ulab.app.web.response.BookImportResponse;
+import com.edu.ulab.app.web.response.BookResponse;
+import com.edu.ulab.app.web.response.PageResponse;
+import com.edu.ulab.app.web.response.UserBookBatchItemResponse;
 import com.edu.ulab.app.web.response.UserBookResponse;
+import com.edu.ulab.app.web.response.UserResponse;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import io.swagger.v3.oas.annotations.media.ArraySchema;
 import io.swagger.v3.oas.annotations.media.Content;
 import io.swagger.v3.oas.annotations.media.Schema;
 import io.swagger.v3.oas.annotations.responses.ApiResponse;
@@ -11,14 +23,25 @@ import io.swagger.v3.oas.annotations.responses.ApiResponses;
 import io.swagger.v3.oas.annotations.tags.Tag;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 import javax.validation.Valid;
 import javax.validation.constraints.Pattern;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
 
+import static com.edu.ulab.app.web.constant.WebConstant.DEFAULT_PAGE_SIZE;
 import static com.edu.ulab.app.web.constant.WebConstant.REQUEST_ID_PATTERN;
 import static com.edu.ulab.app.web.constant.WebConstant.RQID;
+import static com.edu.ulab.app.web.constant.WebConstant.TEXT_CSV_VALUE;
 
 @Slf4j
 @RestController
@@ -29,6 +52,9 @@ import static com.edu.ulab.app.web.constant.WebConstant.RQID;
         description = "CRUD operation with User")
 public class UserController {
     private final UserDataFacade userDataFacade;
+    private final UserBatchFacade userBatchFacade;
+    private final UserRequestExecutor userRequestExecutor;
+    private final ObjectMapper objectMapper;
 
     @PostMapping
     @ApiResponses(value = {
@@ -45,11 +71,145 @@ public class UserController {
                     content = @Content)
 
     })
-    public UserBookResponse createUserWithBooks(@Valid @RequestBody UserBookRequest request,
-                                                @RequestHeader(RQID) @Pattern(regexp = REQUEST_ID_PATTERN) final String requestId) {
-        UserBookResponse response = userDataFacade.createUserWithBooks(request);
-        log.info("Response with created user and his books: {}", response);
-        return response;
+    public CompletableFuture<UserBookResponse> createUserWithBooks(@Valid @RequestBody UserBookRequest request,
+                                                                   @RequestHeader(RQID) @Pattern(regexp = REQUEST_ID_PATTERN) final String requestId) {
+        return userRequestExecutor.submit(() -> {
+            UserBookResponse response = userDataFacade.createUserWithBooks(request);
+            log.debug("Response with created user and his books: {}", response);
+            return response;
+        });
+    }
+
+    @PostMapping(value = "/batch")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Create users, result for each request in batch",
+                    content = {
+                            @Content(mediaType = "application/json",
+                                    array = @ArraySchema(
+                                            schema = @Schema(implementation = UserBookBatchItemResponse.class))
+                            )
+                    }
+            ),
+            @ApiResponse(responseCode = "400",
+                    description = "Batch should not be empty or exceed limit",
+                    content = @Content)
+
+    })
+    public CompletableFuture<List<UserBookBatchItemResponse>> createUsersWithBooks(@RequestBody List<UserBookRequest> requests,
+                                                                                   @RequestHeader(RQID) @Pattern(regexp = REQUEST_ID_PATTERN) final String requestId) {
+        return userRequestExecutor.submit(() -> {
+            List<UserBookBatchItemResponse> response = userBatchFacade.createUsersWithBooks(requests);
+            log.info("Response with {} results of batch creation", response.size());
+            return response;
+        });
+    }
+
+    @PostMapping(value = "/books/import", consumes = {TEXT_CSV_VALUE, MediaType.APPLICATION_NDJSON_VALUE})
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Import books of existing users, rows with invalid values " +
+                    "or unknown user are rejected",
+                    content = {
+                            @Content(mediaType = "application/json",
+                                    schema =
+                                    @Schema(implementation = BookImportResponse.class)
+                            )
+                    }
+            ),
+            @ApiResponse(responseCode = "400",
+                    description = "Body is not valid CSV with header title,author,page_count,user_id or NDJSON",
+                    content = @Content)
+
+    })
+    public CompletableFuture<BookImportResponse> importBooks(InputStream body,
+                                                             @RequestHeader(HttpHeaders.CONTENT_TYPE) MediaType contentType,
+                                                             @RequestHeader(RQID) @Pattern(regexp = REQUEST_ID_PATTERN) final String requestId) {
+        BookImportFormat format = MediaType.APPLICATION_NDJSON.isCompatibleWith(contentType)
+                ? BookImportFormat.NDJSON
+                : BookImportFormat.CSV;
+        return userRequestExecutor.submit(() -> {
+            BookImportResponse response = userBatchFacade.importBooks(body, format);
+            log.info("Response with {} imported and {} rejected books",
+                    response.getImportedRows(), response.getRejectedRows());
+            return response;
+        });
+    }
+
+    @GetMapping
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Page of users ordered by id",
+                    content = {
+                            @Content(mediaType = "application/json",
+                                    schema =
+                                    @Schema(implementation = PageResponse.class)
+                            )
+                    }
+            ),
+            @ApiResponse(responseCode = "400",
+                    description = "Invalid cursor or page size",
+                    content = @Content)
+
+    })
+    public CompletableFuture<PageResponse<UserResponse>> getUsers(@RequestParam(required = false) String cursor,
+                                                                  @RequestParam(defaultValue = DEFAULT_PAGE_SIZE) int limit) {
+        return userRequestExecutor.submit(() -> {
+            PageResponse<UserResponse> response = userDataFacade.getUsers(cursor, limit);
+            log.info("Response with {} users", response.getItems().size());
+            return response;
+        });
+    }
+
+    @GetMapping(value = "/{userId}/books")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Page of user books ordered by id",
+                    content = {
+                            @Content(mediaType = "application/json",
+                                    schema =
+                                    @Schema(implementation = PageResponse.class)
+                            )
+                    }
+            ),
+            @ApiResponse(responseCode = "404",
+                    description = "User was not found",
+                    content = @Content)
+
+    })
+    public CompletableFuture<PageResponse<BookResponse>> getUserBooks(@PathVariable Long userId,
+                                                                      @RequestParam(required = false) String cursor,
+                                                                      @RequestParam(defaultValue = DEFAULT_PAGE_SIZE) int limit) {
+        return userRequestExecutor.submit(() -> {
+            PageResponse<BookResponse> response = userDataFacade.getUserBooks(userId, cursor, limit);
+            log.info("Response with {} books of user {}", response.getItems().size(), userId);
+            return response;
+        });
+    }
+
+    @GetMapping(value = "/export", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "All users with books, one JSON object per line",
+                    content = {
+                            @Content(mediaType = MediaType.APPLICATION_NDJSON_VALUE,
+                                    schema =
+                                    @Schema(implementation = UserBookResponse.class)
+                            )
+                    }
+            )
+    })
+    public ResponseEntity<StreamingResponseBody> exportUsersWithBooks() {
+        ObjectWriter writer = objectMapper.writerFor(UserBookResponse.class);
+        StreamingResponseBody body = outputStream -> {
+            userDataFacade.exportUsersWithBooks(response -> {
+                try {
+                    outputStream.write(writer.writeValueAsBytes(response));
+                    outputStream.write('\n');
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+            log.info("Export of users with books finished");
+        };
+        return ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_NDJSON)
+                .body(body);
     }
 
     @PutMapping(value = "/{userId}")
@@ -64,13 +224,20 @@ public class UserController {
             ),
             @ApiResponse(responseCode = "404",
                     description = "User id was not found",
+                    content = @Content),
+            @ApiResponse(responseCode = "412",
+                    description = "User or his books were changed since the ETag from If-Match",
                     content = @Content)
 
     })
-    public UserBookResponse updateUserWithBooks(@RequestBody @Valid UserBookRequest request, @PathVariable Long userId) {
-        UserBookResponse response = userDataFacade.updateUserWithBooks(request, userId);
-        log.info("Response with updated user and his books: {}", response);
-        return response;
+    public CompletableFuture<ResponseEntity<UserBookResponse>> updateUserWithBooks(@RequestBody @Valid UserBookRequest request,
+                                                                                   @PathVariable Long userId,
+                                                                                   @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch) {
+        return userRequestExecutor.submit(() -> {
+            UserBookResponse response = userDataFacade.updateUserWithBooks(request, userId, ifMatch);
+            log.debug("Response with updated user and his books: {}", response);
+            return withETag(response);
+        });
     }
 
     @GetMapping(value = "/{userId}")
@@ -83,15 +250,29 @@ public class UserController {
                             )
                     }
             ),
+            @ApiResponse(responseCode = "304",
+                    description = "User and his books were not changed since the ETag from If-None-Match",
+                    content = @Content),
             @ApiResponse(responseCode = "404",
                     description = "User was not found",
                     content = @Content)
 
     })
-    public UserBookResponse updateUserWithBooks(@PathVariable  Long userId) {
-        UserBookResponse response = userDataFacade.getUserWithBooks(userId);
-        log.info("Response with user and his books: {}", response);
-        return response;
+    public CompletableFuture<ResponseEntity<UserBookResponse>> updateUserWithBooks(@PathVariable  Long userId,
+                                                                                   @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
+        return userRequestExecutor.submit(() -> {
+            //the ETag is checked before the response is built and serialized
+            if (ifNoneMatch != null) {
+                String eTag = userDataFacade.getUserWithBooksETag(userId);
+                if (eTag != null && UserETag.matchesIfNoneMatch(ifNoneMatch, eTag)) {
+                    log.debug("User {} was not modified", userId);
+                    return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(eTag).build();
+                }
+            }
+            UserBookResponse response = userDataFacade.getUserWithBooks(userId);
+            log.debug("Response with user and his books: {}", response);
+            return withETag(response);
+        });
     }
 
     @DeleteMapping(value = "/{userId}")
@@ -105,8 +286,20 @@ public class UserController {
                     }
             )
     })
-    public void deleteUserWithBooks(@PathVariable Long userId) {
+    public CompletableFuture<Void> deleteUserWithBooks(@PathVariable Long userId) {
         log.info("Delete user and his books:  userId {}", userId);
-        userDataFacade.deleteUserWithBooks(userId);
+        return userRequestExecutor.submit(() -> {
+            userDataFacade.deleteUserWithBooks(userId);
+            return null;
+        });
+    }
+
+    private static ResponseEntity<UserBookResponse> withETag(UserBookResponse response) {
+        String eTag = UserETag.of(response.getVersion());
+        ResponseEntity.BodyBuilder builder = ResponseEntity.ok();
+        if (eTag != null) {
+            builder.eTag(eTag);
+        }
+        return builder.body(response);
     }
 }
@@ -0,0 +1,93 @@
+package com.edu.ulab.app.web.async;
+
+import org.springframework.core.task.TaskDecorator;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.function.Supplier;
+
+/**
+ * Исполнитель вызовов фасада из UserController.
+ * <p>
+ * В синхронном режиме действие выполняется в потоке Tomcat, исключения пробрасываются как есть.
+ * В асинхронном режиме действие уходит в ограниченный пул, поток Tomcat освобождается до ответа.
+ * Если пул переполнен, выбрасывается {@link RejectedExecutionException}.
+ */
+public final class UserRequestExecutor implements AutoCloseable {
+
+    private final ExecutorService executor;
+    private final Semaphore inFlight;
+    private final TaskDecorator taskDecorator;
+
+    private UserRequestExecutor(ExecutorService executor, Semaphore inFlight, TaskDecorator taskDecorator) {
+        this.executor = executor;
+        this.inFlight = inFlight;
+        this.taskDecorator = taskDecorator;
+    }
+
+    public static UserRequestExecutor direct() {
+        return new UserRequestExecutor(null, null, null);
+    }
+
+    /**
+     * @param executor      пул, сам ограничивающий очередь задач
+     * @param taskDecorator декоратор задач, например перенос MDC
+     */
+    public static UserRequestExecutor pooled(ExecutorService executor, TaskDecorator taskDecorator) {
+        return new UserRequestExecutor(executor, null, taskDecorator);
+    }
+
+    /**
+     * @param executor    неограниченный исполнитель, например на виртуальных потоках
+     * @param maxInFlight максимальное число одновременно выполняемых задач
+     */
+    public static UserRequestExecutor bounded(ExecutorService executor, int maxInFlight, TaskDecorator taskDecorator) {
+        return new UserRequestExecutor(executor, new Semaphore(maxInFlight), taskDecorator);
+    }
+
+    public <T> CompletableFuture<T> submit(Supplier<T> action) {
+        if (executor == null) {
+            return CompletableFuture.completedFuture(action.get());
+        }
+        if (inFlight != null && !inFlight.tryAcquire()) {
+            throw new RejectedExecutionException("Too many user requests in progress");
+        }
+        CompletableFuture<T> result = new CompletableFuture<>();
+        Runnable task = taskDecorator.decorate(() -> {
+            T value = null;
+            Throwable failure = null;
+            try {
+                value = action.get();
+            } catch (Throwable e) {
+                failure = e;
+            }
+            // разрешение освобождается до завершения future, чтобы следующий запрос клиента не получил отказ
+            if (inFlight != null) {
+                inFlight.release();
+            }
+            if (failure == null) {
+                result.complete(value);
+            } else {
+                result.completeExceptionally(failure);
+            }
+        });
+        try {
+            executor.execute(task);
+        } catch (RejectedExecutionException e) {
+            if (inFlight != null) {
+                inFlight.release();
+            }
+            throw e;
+        }
+        return result;
+    }
+
+    @Override
+    public void close() {
+        if (executor != null) {
+            executor.shutdown();
+        }
+    }
+}
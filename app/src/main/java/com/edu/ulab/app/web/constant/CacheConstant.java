@@ -0,0 +1,23 @@
+package com.edu.ulab.app.web.constant;
+
+import lombok.experimental.UtilityClass;
+
+@UtilityClass
+public class CacheConstant {
+
+    public static final String USERS_CACHE = "users";
+
+    public static final String USERS_WITH_BOOKS_CACHE = "usersWithBooks";
+
+    public static final String USER_BOOKS_CACHE = "userBooks";
+
+    //regions of the Hibernate second-level cache
+
+    public static final String PERSON_REGION = "person";
+
+    public static final String BOOK_REGION = "book";
+
+    public static final String PERSON_BOOKS_REGION = "person-books";
+
+    public static final String BOOKS_BY_USER_REGION = "books-by-user";
+}
@@ -7,8 +7,20 @@ public class SQLQueryBookConstant {
 
    public static final String INSERT_SQL = "INSERT INTO BOOK(TITLE, AUTHOR, PAGE_COUNT, USER_ID) VALUES (?,?,?,?)";
 
+   public static final String INSERT_WITH_ID_SQL = "INSERT INTO BOOK(ID, TITLE, AUTHOR, PAGE_COUNT, USER_ID) " +
+           "VALUES (?,?,?,?,?)";
+
+   public static final String SELECT_NEXT_ID_SQL = "SELECT nextval('ulab_edu.book_id_seq')";
+
    public static final String UPDATE_SQL = "UPDATE BOOK " +
-           "SET TITLE = ?, AUTHOR = ?, PAGE_COUNT = ?, USER_ID = ? WHERE ID = ?";
+           "SET TITLE = ?, AUTHOR = ?, PAGE_COUNT = ?, USER_ID = ?, VERSION = VERSION + 1 WHERE ID = ?";
+
+   public static final String UPDATE_IF_VERSION_SQL = "UPDATE BOOK " +
+           "SET TITLE = ?, AUTHOR = ?, PAGE_COUNT = ?, USER_ID = ?, VERSION = VERSION + 1 WHERE ID = ? AND VERSION = ?";
+
+   public static final String SELECT_VERSION_BY_ID_SQL = "SELECT VERSION FROM BOOK WHERE ID = ?";
+
+   public static final String SELECT_USER_ID_FOR_UPDATE_SQL = "SELECT USER_ID FROM BOOK WHERE ID = ? FOR UPDATE";
 
    public static final String SELECT_BY_ID_SQL = "SELECT * FROM BOOK WHERE ID = ?";
 
@@ -16,4 +28,63 @@ public class SQLQueryBookConstant {
 
    public static final String SELECT_BY_USER_ID_SQL = "SELECT * FROM BOOK WHERE USER_ID = ?";
 
+   public static final String SELECT_PAGE_BY_USER_ID_SQL = "SELECT * FROM BOOK WHERE USER_ID = ? AND ID > ? " +
+           "ORDER BY ID LIMIT ?";
+
+   public static final String DELETE_BY_USER_ID_SQL = "DELETE FROM BOOK WHERE USER_ID = ?";
+
+   //bulk import, PostgreSQL: rows are copied as text into a temporary table and checked by one statement
+
+   public static final String CREATE_IMPORT_TABLE_SQL = "CREATE TEMPORARY TABLE book_import " +
+           "(row_number bigserial, title text, author text, page_count text, user_id text) ON COMMIT DROP";
+
+   public static final String CREATE_IMPORT_JSON_TABLE_SQL = "CREATE TEMPORARY TABLE book_import_json " +
+           "(row_number bigserial, document text) ON COMMIT DROP";
+
+   public static final String COPY_IMPORT_CSV_SQL = "COPY book_import (title, author, page_count, user_id) " +
+           "FROM STDIN WITH (FORMAT csv, HEADER true)";
+
+   //quote and delimiter that cannot occur in JSON text: every line is copied as one value
+   public static final String COPY_IMPORT_JSON_SQL = "COPY book_import_json (document) " +
+           "FROM STDIN WITH (FORMAT csv, QUOTE e'\\x01', DELIMITER e'\\x02')";
+
+   public static final String INSERT_IMPORT_FROM_JSON_SQL = "INSERT INTO book_import " +
+           "(row_number, title, author, page_count, user_id) " +
+           "SELECT row_number, document::json ->> 'title', document::json ->> 'author', " +
+           "document::json ->> 'pageCount', document::json ->> 'userId' " +
+           "FROM book_import_json WHERE document !~ '^\\s*$'";
+
+   //rejection names are the constants of BookImportRejection
+   private static final String CHECKED_IMPORT_CTE = "WITH parsed AS (" +
+           "SELECT row_number, title, author, " +
+           "CASE WHEN page_count ~ '^[0-9]{1,9}$' THEN page_count::integer END AS page_count, " +
+           "CASE WHEN user_id ~ '^[0-9]{1,18}$' THEN user_id::bigint END AS user_id " +
+           "FROM book_import), " +
+           "checked AS (" +
+           "SELECT s.row_number, s.title, s.author, s.page_count, p.id AS user_id, " +
+           "CASE " +
+           "WHEN s.title IS NULL OR s.title ~ '^\\s*$' OR char_length(s.title) NOT BETWEEN 3 AND 50 THEN 'TITLE' " +
+           "WHEN s.author IS NULL OR s.author ~ '^\\s*$' OR char_length(s.author) NOT BETWEEN 3 AND 50 THEN 'AUTHOR' " +
+           "WHEN s.page_count IS NULL OR s.page_count < 1 THEN 'PAGE_COUNT' " +
+           "WHEN p.id IS NULL THEN 'USER' " +
+           "END AS rejection " +
+           "FROM parsed s LEFT JOIN ulab_edu.person p ON p.id = s.user_id) ";
+
+   public static final String MERGE_IMPORT_SQL = CHECKED_IMPORT_CTE +
+           "INSERT INTO ulab_edu.book (title, author, page_count, user_id) " +
+           "SELECT title, author, page_count, user_id FROM checked WHERE rejection IS NULL";
+
+   public static final String INCREMENT_IMPORT_USERS_VERSION_SQL = CHECKED_IMPORT_CTE +
+           "UPDATE ulab_edu.person SET version = version + 1 " +
+           "WHERE id IN (SELECT user_id FROM checked WHERE rejection IS NULL)";
+
+   public static final String SELECT_IMPORT_REJECTED_SQL = CHECKED_IMPORT_CTE +
+           "SELECT row_number, rejection FROM checked WHERE rejection IS NOT NULL ORDER BY row_number LIMIT ?";
+
+   public static final String DROP_IMPORT_TABLES_SQL = "DROP TABLE IF EXISTS book_import, book_import_json";
+
+   //bulk import, other databases: the row is inserted only if its user exists
+   public static final String INSERT_IF_USER_EXISTS_SQL = "INSERT INTO BOOK(TITLE, AUTHOR, PAGE_COUNT, USER_ID) " +
+           "SELECT ?, ?, ?, ID FROM PERSON WHERE ID = ?";
+
 }
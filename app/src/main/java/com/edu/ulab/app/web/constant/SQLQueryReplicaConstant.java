@@ -0,0 +1,13 @@
+package com.edu.ulab.app.web.constant;
+
+import lombok.experimental.UtilityClass;
+
+@UtilityClass
+public class SQLQueryReplicaConstant {
+
+   //replication lag in seconds, PostgreSQL: a replica that has replayed everything it received is not behind,
+   //even if the primary had no writes for a long time; null when it has received but never replayed
+   public static final String SELECT_REPLICA_LAG_SQL = "SELECT CASE " +
+           "WHEN NOT pg_is_in_recovery() OR pg_last_wal_receive_lsn() = pg_last_wal_replay_lsn() THEN 0 " +
+           "ELSE EXTRACT(EPOCH FROM now() - pg_last_xact_replay_timestamp()) END";
+}
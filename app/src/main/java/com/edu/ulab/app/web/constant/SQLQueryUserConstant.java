@@ -7,9 +7,27 @@ public class SQLQueryUserConstant {
 
     public static final String INSERT_SQL = "INSERT INTO PERSON(FULL_NAME, TITLE, AGE) VALUES (?,?,?)";
 
-    public static final String UPDATE_SQL = "UPDATE PERSON SET FULL_NAME = ?, TITLE = ?, AGE = ? WHERE ID = ?";
+    public static final String UPDATE_SQL = "UPDATE PERSON SET FULL_NAME = ?, TITLE = ?, AGE = ?, VERSION = VERSION + 1 " +
+            "WHERE ID = ?";
+
+    public static final String UPDATE_IF_VERSION_SQL = "UPDATE PERSON SET FULL_NAME = ?, TITLE = ?, AGE = ?, " +
+            "VERSION = VERSION + 1 WHERE ID = ? AND VERSION = ?";
+
+    public static final String SELECT_VERSION_BY_ID_SQL = "SELECT VERSION FROM PERSON WHERE ID = ?";
+
+    public static final String INCREMENT_VERSION_SQL = "UPDATE PERSON SET VERSION = VERSION + ? WHERE ID = ?";
 
     public static final String SELECT_BY_ID_SQL = "SELECT * FROM PERSON WHERE ID = ?";
 
+    public static final String SELECT_WITH_BOOK_IDS_BY_ID_SQL = "SELECT P.ID, P.FULL_NAME, P.TITLE, P.AGE, P.VERSION, B.ID AS BOOK_ID " +
+            "FROM PERSON P LEFT JOIN BOOK B ON B.USER_ID = P.ID WHERE P.ID = ? ORDER BY B.ID";
+
+    public static final String SELECT_ALL_WITH_BOOK_IDS_SQL = "SELECT P.ID, P.FULL_NAME, P.TITLE, P.AGE, P.VERSION, B.ID AS BOOK_ID " +
+            "FROM PERSON P LEFT JOIN BOOK B ON B.USER_ID = P.ID ORDER BY P.ID, B.ID";
+
+    public static final int EXPORT_FETCH_SIZE = 500;
+
+    public static final String SELECT_PAGE_SQL = "SELECT * FROM PERSON WHERE ID > ? ORDER BY ID LIMIT ?";
+
     public static final String DELETE_BY_ID_SQL = "DELETE FROM PERSON WHERE ID = ?";
 }
@@ -7,4 +7,9 @@ public class WebConstant {
     public static final String VERSION_URL = "/api/v1";
     public static final String RQID = "rqid";
     public static final String REQUEST_ID_PATTERN = "^[A-Za-z0-9_-]*$";
+    public static final String DEFAULT_PAGE_SIZE = "50";
+    public static final int MAX_PAGE_SIZE = 1000;
+    public static final String TEXT_CSV_VALUE = "text/csv";
+    public static final String CONFLICT_RETRY_GUIDANCE =
+            "Read the resource again and retry the update with its current version";
 }
@@ -0,0 +1,71 @@
+package com.edu.ulab.app.web.etag;
+
+import lombok.experimental.UtilityClass;
+
+import java.util.Objects;
+
+/**
+ * Сильный ETag пользователя с книгами — версия пользователя. Версия увеличивается при изменении полей пользователя
+ * и при добавлении, удалении и переносе его книг (см. {@link com.edu.ulab.app.service.BookService}),
+ * поэтому ETag меняется вместе с представлением и одинаков на всех экземплярах приложения.
+ */
+@UtilityClass
+public class UserETag {
+
+    private static final String ANY = "*";
+    private static final String WEAK_PREFIX = "W/";
+
+    /**
+     * @return ETag в кавычках; null, если версия неизвестна
+     */
+    public static String of(Long version) {
+        if (Objects.isNull(version)) {
+            return null;
+        }
+        return String.format("\"%d\"", version);
+    }
+
+    /**
+     * Версия пользователя из ETag, выданного {@link #of}.
+     */
+    public static long version(String eTag) {
+        return Long.parseLong(eTag.substring(1, eTag.length() - 1));
+    }
+
+    public static boolean isAny(String header) {
+        return header.trim().equals(ANY);
+    }
+
+    /**
+     * Слабое сравнение для If-None-Match: префикс W/ не учитывается.
+     */
+    public static boolean matchesIfNoneMatch(String header, String eTag) {
+        return matches(header, eTag, true);
+    }
+
+    /**
+     * Сильное сравнение для If-Match: слабые ETag не совпадают ни с чем.
+     */
+    public static boolean matchesIfMatch(String header, String eTag) {
+        return matches(header, eTag, false);
+    }
+
+    private static boolean matches(String header, String eTag, boolean weak) {
+        for (String candidate : header.split(",")) {
+            candidate = candidate.trim();
+            if (candidate.equals(ANY)) {
+                return true;
+            }
+            if (candidate.startsWith(WEAK_PREFIX)) {
+                if (!weak) {
+                    continue;
+                }
+                candidate = candidate.substring(WEAK_PREFIX.length());
+            }
+            if (candidate.equals(eTag)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -2,12 +2,15 @@ package com.edu.ulab.app.web.handler;
 
 
 import com.edu.ulab.app.exception.BadRequestException;
+import com.edu.ulab.app.exception.ConflictException;
 import com.edu.ulab.app.exception.NotFoundException;
+import com.edu.ulab.app.exception.PreconditionFailedException;
 import com.edu.ulab.app.validation.ValidError;
 import com.edu.ulab.app.validation.ValidErrorInfo;
 import com.edu.ulab.app.web.response.BaseWebResponse;
 import lombok.NonNull;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.dao.OptimisticLockingFailureException;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.validation.BindingResult;
@@ -18,8 +21,11 @@ import org.springframework.web.bind.annotation.ExceptionHandler;
 
 import javax.servlet.http.HttpServletRequest;
 import java.util.List;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.stream.Collectors;
 
+import static com.edu.ulab.app.web.constant.WebConstant.CONFLICT_RETRY_GUIDANCE;
+
 
 @Slf4j
 @ControllerAdvice
@@ -52,6 +58,43 @@ public class ControllerExceptionHandler {
                 .body(new BaseWebResponse(createErrorMessage(exc)));
     }
 
+    @ExceptionHandler(ConflictException.class)
+    public ResponseEntity<BaseWebResponse> handleConflictException(@NonNull final ConflictException exc) {
+        log.error(exc.getMessage());
+        return ResponseEntity.status(HttpStatus.CONFLICT)
+                .body(new BaseWebResponse(createErrorMessage(exc) + ". " + CONFLICT_RETRY_GUIDANCE));
+    }
+
+    /**
+     * ETag из If-Match не совпал с текущим.
+     */
+    @ExceptionHandler(PreconditionFailedException.class)
+    public ResponseEntity<BaseWebResponse> handlePreconditionFailedException(
+            @NonNull final PreconditionFailedException exc) {
+        log.error(exc.getMessage());
+        return ResponseEntity.status(HttpStatus.PRECONDITION_FAILED)
+                .body(new BaseWebResponse(createErrorMessage(exc) + ". " + CONFLICT_RETRY_GUIDANCE));
+    }
+
+    /**
+     * Версия изменилась между чтением и UPDATE в JPA-реализации.
+     */
+    @ExceptionHandler(OptimisticLockingFailureException.class)
+    public ResponseEntity<BaseWebResponse> handleOptimisticLockingFailureException(
+            @NonNull final OptimisticLockingFailureException exc) {
+        //the message names entity classes, it is logged but not returned
+        log.error(ExceptionHandlerUtils.buildErrorMessage(exc));
+        return ResponseEntity.status(HttpStatus.CONFLICT)
+                .body(new BaseWebResponse("Resource was modified concurrently. " + CONFLICT_RETRY_GUIDANCE));
+    }
+
+    @ExceptionHandler(RejectedExecutionException.class)
+    public ResponseEntity<BaseWebResponse> handleRejectedExecutionException(@NonNull final RejectedExecutionException exc) {
+        log.error(exc.getMessage());
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                .body(new BaseWebResponse(createErrorMessage(exc)));
+    }
+
     private String createErrorMessage(Exception exception) {
         final String message = exception.getMessage();
         log.error(ExceptionHandlerUtils.buildErrorMessage(exception));
@@ -0,0 +1,41 @@
+package com.edu.ulab.app.web.pagination;
+
+import com.edu.ulab.app.exception.BadRequestException;
+import lombok.experimental.UtilityClass;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.Objects;
+
+/**
+ * Непрозрачный курсор keyset-пагинации: id последней записи страницы в Base64.
+ * Клиент передаёт его обратно как есть, формат может меняться вместе с версией префикса.
+ */
+@UtilityClass
+public class CursorToken {
+
+    private static final String PREFIX = "v1:";
+
+    public static String encode(long lastId) {
+        return Base64.getUrlEncoder().withoutPadding()
+                .encodeToString((PREFIX + lastId).getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * @return id, после которого начинается страница, 0 для первой страницы
+     */
+    public static long decode(String token) {
+        if (Objects.isNull(token) || token.isEmpty()) {
+            return 0L;
+        }
+        try {
+            String decoded = new String(Base64.getUrlDecoder().decode(token), StandardCharsets.UTF_8);
+            if (!decoded.startsWith(PREFIX)) {
+                throw new BadRequestException(String.format("Invalid cursor - %s", token));
+            }
+            return Long.parseLong(decoded.substring(PREFIX.length()));
+        } catch (IllegalArgumentException e) {
+            throw new BadRequestException(String.format("Invalid cursor - %s", token));
+        }
+    }
+}
@@ -24,4 +24,8 @@ public class UserRequest {
     @Min(value = 18, message = "Age should be greater or equals than {value}")
     @Max(value = 100, message = "Age should be less or equals than {value}")
     private int age;
+
+    @Schema(description = "Expected version of User, the update is rejected with 409 if it has changed. " +
+            "Not checked if absent", example = "3")
+    private Long version;
 }
@@ -0,0 +1,23 @@
+package com.edu.ulab.app.web.response;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+import lombok.Builder;
+import lombok.Data;
+
+import java.util.List;
+
+@Data
+@Builder
+public class BookImportResponse {
+    @Schema(description = "Data rows in request body", example = "100000")
+    private Long receivedRows;
+
+    @Schema(description = "Books inserted", example = "99998")
+    private Long importedRows;
+
+    @Schema(description = "Rows skipped because of invalid values or unknown user", example = "2")
+    private Long rejectedRows;
+
+    @Schema(description = "First rejected rows ordered by row number, at most book-import.rejected-sample-size")
+    private List<RejectedRowResponse> rejected;
+}
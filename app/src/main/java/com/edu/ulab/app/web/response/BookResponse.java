@@ -0,0 +1,20 @@
+package com.edu.ulab.app.web.response;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+import lombok.Builder;
+import lombok.Data;
+
+@Data
+@Builder
+public class BookResponse {
+    private Long bookId;
+
+    @Schema(description = "Title of book", example = "Dead souls")
+    private String title;
+
+    @Schema(description = "Name of author", example = "Nikolai Gogol")
+    private String author;
+
+    @Schema(description = "Number of pages", example = "352")
+    private Long pageCount;
+}
@@ -0,0 +1,16 @@
+package com.edu.ulab.app.web.response;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+import lombok.Builder;
+import lombok.Data;
+
+import java.util.List;
+
+@Data
+@Builder
+public class PageResponse<T> {
+    private List<T> items;
+
+    @Schema(description = "Cursor of next page, null if this page is last", example = "djE6NTA")
+    private String nextCursor;
+}
@@ -0,0 +1,15 @@
+package com.edu.ulab.app.web.response;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+import lombok.Builder;
+import lombok.Data;
+
+@Data
+@Builder
+public class RejectedRowResponse {
+    @Schema(description = "Number of data row: CSV record after header or NDJSON line, starting from 1", example = "42")
+    private Long row;
+
+    @Schema(description = "Reason of rejection", example = "User of book was not found")
+    private String reason;
+}
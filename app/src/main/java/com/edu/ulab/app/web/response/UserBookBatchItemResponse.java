@@ -0,0 +1,21 @@
+package com.edu.ulab.app.web.response;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+import lombok.Builder;
+import lombok.Data;
+
+import java.util.List;
+
+@Data
+@Builder
+public class UserBookBatchItemResponse {
+    @Schema(description = "Index of request in batch", example = "0")
+    private Integer index;
+
+    private Long userId;
+
+    private List<Long> booksIdList;
+
+    @Schema(description = "Reason of failure, null if user was created", example = "userRequest.age: Age should be greater or equals than 18")
+    private String errorMessage;
+}
@@ -21,4 +21,7 @@ public class UserBookResponse {
     private Integer age;
 
     private List<Long> booksIdList;
+
+    @Schema(description = "Version of User, pass it with the next update", example = "3")
+    private Long version;
 }
@@ -0,0 +1,3 @@
+ALTER SEQUENCE ulab_edu.book_id_seq INCREMENT BY 50;
+
+comment on sequence ulab_edu.book_id_seq is 'Последовательность идентификаторов книг, шаг совпадает с allocationSize в Book';
@@ -0,0 +1,6 @@
+--liquibase formatted sql
+
+--changeset ulab:v2026101802 runInTransaction:false
+CREATE INDEX CONCURRENTLY IF NOT EXISTS idx_ulab_edu_book_user_id_id on ulab_edu.book (user_id, id);
+
+comment on index ulab_edu.idx_ulab_edu_book_user_id_id is 'Поиск и удаление книг пользователя, список идентификаторов книг без чтения таблицы';
@@ -0,0 +1,3 @@
+ALTER SEQUENCE ulab_edu.person_id_seq INCREMENT BY 50;
+
+comment on sequence ulab_edu.person_id_seq is 'Последовательность идентификаторов пользователей, шаг совпадает с allocationSize в Person';
@@ -1,18 +1,24 @@
 DROP TABLE IF EXISTS PERSON;
+CREATE SEQUENCE IF NOT EXISTS PERSON_ID_SEQ START WITH 1 INCREMENT BY 50;
 CREATE TABLE IF NOT EXISTS PERSON
 (
-    ID BIGINT AUTO_INCREMENT PRIMARY KEY,
+    ID BIGINT DEFAULT NEXT VALUE FOR PERSON_ID_SEQ PRIMARY KEY,
     FULL_NAME VARCHAR (255),
     TITLE VARCHAR (255),
-    AGE INTEGER
+    AGE INTEGER,
+    VERSION BIGINT NOT NULL DEFAULT 0
 );
 
 DROP TABLE IF EXISTS BOOK;
+CREATE SEQUENCE IF NOT EXISTS BOOK_ID_SEQ START WITH 1 INCREMENT BY 50;
 CREATE TABLE IF NOT EXISTS BOOK
 (
-    ID BIGINT AUTO_INCREMENT PRIMARY KEY,
+    ID BIGINT DEFAULT NEXT VALUE FOR BOOK_ID_SEQ PRIMARY KEY,
     TITLE VARCHAR (255),
     AUTHOR VARCHAR (255),
     PAGE_COUNT INTEGER,
-    USER_ID BIGINT
+    USER_ID BIGINT,
+    VERSION BIGINT NOT NULL DEFAULT 0
 );
+
+CREATE INDEX IF NOT EXISTS IDX_BOOK_USER_ID_ID ON BOOK (USER_ID, ID);
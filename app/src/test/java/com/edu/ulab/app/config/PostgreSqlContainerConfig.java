@@ -1,12 +1,12 @@
 package com.edu.ulab.app.config;
 
+import com.zaxxer.hikari.HikariDataSource;
 import net.ttddyy.dsproxy.listener.ChainListener;
 import net.ttddyy.dsproxy.listener.DataSourceQueryCountListener;
 import net.ttddyy.dsproxy.listener.logging.SLF4JQueryLoggingListener;
 import net.ttddyy.dsproxy.support.ProxyDataSourceBuilder;
 import org.springframework.boot.test.context.TestConfiguration;
 import org.springframework.context.annotation.Bean;
-import org.springframework.jdbc.datasource.DriverManagerDataSource;
 import org.testcontainers.containers.PostgreSQLContainer;
 import org.testcontainers.junit.jupiter.Testcontainers;
 import org.testcontainers.utility.DockerImageName;
@@ -21,15 +21,17 @@ public class PostgreSqlContainerConfig {
     private static final String PASSWORD = "qwerty";
     private static final String POSTGRESQL_DRIVER_CLASS_NAME = "org.postgresql.Driver";
     private static final String JDBC_URL = "jdbc:postgresql://localhost:5432/mpl_ylab_db";
+    private static final int MAXIMUM_POOL_SIZE = 5;
 
     @Bean
     public DataSource dataSource() {
 
-        DriverManagerDataSource dataSource = new DriverManagerDataSource();
+        HikariDataSource dataSource = new HikariDataSource();
         dataSource.setDriverClassName(POSTGRESQL_DRIVER_CLASS_NAME);
-        dataSource.setUrl(JDBC_URL);
+        dataSource.setJdbcUrl(JDBC_URL);
         dataSource.setUsername(USERNAME);
         dataSource.setPassword(PASSWORD);
+        dataSource.setMaximumPoolSize(MAXIMUM_POOL_SIZE);
 
         return proxyListenerDataSource(dataSource);
     }
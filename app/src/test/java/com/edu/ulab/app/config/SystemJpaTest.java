@@ -18,7 +18,12 @@ import java.lang.annotation.Target;
  */
 @ActiveProfiles("test")
 @ExtendWith(SpringExtension.class)
-@DataJpaTest
+//HibernateCacheConfig is not loaded, without the switch Hibernate would take JCache from the classpath
+//and entities of one test would be read from the cache in the next ones
+@DataJpaTest(properties = {
+        "spring.jpa.properties.hibernate.cache.use_second_level_cache=false",
+        "spring.jpa.properties.hibernate.cache.use_query_cache=false"
+})
 @ContextConfiguration(classes = {SystemTestingJpaConfig.class, PostgreSqlContainerConfig.class})
 @AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
 @Transactional
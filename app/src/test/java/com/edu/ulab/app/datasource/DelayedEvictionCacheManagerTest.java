@@ -0,0 +1,61 @@
+package com.edu.ulab.app.datasource;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.cache.Cache;
+import org.springframework.cache.concurrent.ConcurrentMapCacheManager;
+
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Тестирование повторного сброса кэша {@link DelayedEvictionCacheManager}.
+ */
+@DisplayName("Testing delayed repeat of cache evictions.")
+public class DelayedEvictionCacheManagerTest {
+
+    private static final Duration DELAY = Duration.ofMillis(100);
+
+    private final DelayedEvictionCacheManager cacheManager =
+            new DelayedEvictionCacheManager(new ConcurrentMapCacheManager("users"), DELAY);
+
+    private static void awaitEviction(Cache cache, Object key) throws InterruptedException {
+        long deadline = System.nanoTime() + Duration.ofSeconds(5).toNanos();
+        while (cache.get(key) != null && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+    }
+
+    @Test
+    @DisplayName("Значение положено в кэш после сброса. Оно сбрасывается повторно через delay.")
+    void evict_Test() throws Exception {
+        Cache cache = cacheManager.getCache("users");
+        cache.put(1L, "user 1");
+        cache.put(2L, "user 2");
+
+        cache.evict(1L);
+        assertNull(cache.get(1L));
+        //read from a lagging replica right after the write
+        cache.put(1L, "stale user 1");
+        assertEquals("stale user 1", cache.get(1L).get());
+
+        awaitEviction(cache, 1L);
+        assertNull(cache.get(1L));
+        assertEquals("user 2", cache.get(2L).get());
+    }
+
+    @Test
+    @DisplayName("Очистка кэша. Значения, положенные после неё, сбрасываются повторно через delay.")
+    void clear_Test() throws Exception {
+        Cache cache = cacheManager.getCache("users");
+        cache.put(1L, "user 1");
+
+        cache.clear();
+        cache.put(1L, "stale user 1");
+
+        awaitEviction(cache, 1L);
+        assertNull(cache.get(1L));
+        assertSame(cache, cacheManager.getCache("users"));
+    }
+}
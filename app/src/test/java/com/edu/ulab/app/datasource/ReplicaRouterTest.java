@@ -0,0 +1,139 @@
+package com.edu.ulab.app.datasource;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Тестирование выбора реплики {@link ReplicaRouter} и маршрутизации {@link ReadWriteRoutingDataSource}.
+ */
+@DisplayName("Testing routing of read-only transactions to replicas.")
+public class ReplicaRouterTest {
+
+    private static final String LAG_QUERY = "SELECT 0";
+
+    private final DataSource primary = mock(DataSource.class);
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+
+    private ReplicaRouter router;
+
+    @AfterEach
+    void tearDown() throws Exception {
+        TransactionSynchronizationManager.setCurrentTransactionReadOnly(false);
+        router.close();
+    }
+
+    private ReplicaRouter router(ReplicaSelection selection, ReplicaRouter.Replica... replicas) {
+        router = new ReplicaRouter(primary, List.of(replicas), selection, Duration.ofSeconds(5), LAG_QUERY,
+                Duration.ZERO);
+        router.bindTo(registry);
+        return router;
+    }
+
+    /**
+     * @param lagSeconds отставание, которое вернёт запрос; null — реплика не отвечает
+     */
+    private static ReplicaRouter.Replica replica(String name, AtomicReference<Double> lagSeconds,
+                                                 int activeConnections) throws SQLException {
+        DataSource dataSource = mock(DataSource.class);
+        Connection connection = mock(Connection.class);
+        Statement statement = mock(Statement.class);
+        ResultSet resultSet = mock(ResultSet.class);
+        when(dataSource.getConnection()).thenAnswer(invocation -> {
+            if (lagSeconds.get() == null) {
+                throw new SQLException("Connection refused");
+            }
+            return connection;
+        });
+        when(connection.createStatement()).thenReturn(statement);
+        when(statement.executeQuery(anyString())).thenReturn(resultSet);
+        when(resultSet.next()).thenReturn(true);
+        when(resultSet.getDouble(1)).thenAnswer(invocation -> lagSeconds.get());
+        return new ReplicaRouter.Replica(name, dataSource, () -> activeConnections);
+    }
+
+    private double reads(String target) {
+        return registry.get(ReplicaRouter.READS_COUNTER).tag("target", target).counter().count();
+    }
+
+    @Test
+    @DisplayName("По очереди. Чтения распределяются между доступными репликами поровну.")
+    void roundRobin_Test() throws SQLException {
+        ReplicaRouter router = router(ReplicaSelection.ROUND_ROBIN,
+                replica("replica-1", new AtomicReference<>(0.0), 0),
+                replica("replica-2", new AtomicReference<>(1.0), 0));
+
+        List<String> targets = List.of(router.selectForRead(), router.selectForRead(),
+                router.selectForRead(), router.selectForRead());
+
+        assertEquals(List.of("replica-1", "replica-2", "replica-1", "replica-2"), targets);
+        assertEquals(2, reads("replica-1"));
+        assertEquals(0, reads(ReplicaRouter.PRIMARY));
+    }
+
+    @Test
+    @DisplayName("Наименьшее число соединений. Выбирается наименее загруженная реплика.")
+    void leastConnections_Test() throws SQLException {
+        ReplicaRouter router = router(ReplicaSelection.LEAST_CONNECTIONS,
+                replica("replica-1", new AtomicReference<>(0.0), 7),
+                replica("replica-2", new AtomicReference<>(0.0), 2),
+                replica("replica-3", new AtomicReference<>(0.0), 4));
+
+        assertEquals("replica-2", router.selectForRead());
+    }
+
+    @Test
+    @DisplayName("Отставание больше допустимого. Реплика исключается до следующей проверки, без реплик чтение идёт в основную базу.")
+    void lagFallback_Test() throws SQLException {
+        AtomicReference<Double> lag = new AtomicReference<>(0.0);
+        ReplicaRouter router = router(ReplicaSelection.ROUND_ROBIN, replica("replica-1", lag, 0));
+        assertEquals("replica-1", router.selectForRead());
+
+        lag.set(30.0);
+        router.checkLag();
+        assertEquals(ReplicaRouter.PRIMARY, router.selectForRead());
+        assertEquals(30.0, registry.get(ReplicaRouter.LAG_GAUGE).tag("replica", "replica-1").gauge().value());
+
+        lag.set(null);
+        router.checkLag();
+        assertEquals(ReplicaRouter.PRIMARY, router.selectForRead());
+        assertTrue(Double.isNaN(registry.get(ReplicaRouter.LAG_GAUGE).gauge().value()));
+
+        lag.set(2.0);
+        router.checkLag();
+        assertEquals("replica-1", router.selectForRead());
+        assertEquals(2, reads(ReplicaRouter.PRIMARY));
+    }
+
+    @Test
+    @DisplayName("Маршрутизация. Транзакция readOnly получает соединение реплики, остальные — основной базы.")
+    void routing_Test() throws SQLException {
+        ReplicaRouter.Replica replica = replica("replica-1", new AtomicReference<>(0.0), 0);
+        Connection replicaConnection = replica.dataSource().getConnection();
+        Connection primaryConnection = mock(Connection.class);
+        when(primary.getConnection()).thenReturn(primaryConnection);
+        ReadWriteRoutingDataSource dataSource =
+                new ReadWriteRoutingDataSource(router(ReplicaSelection.ROUND_ROBIN, replica));
+
+        assertSame(primaryConnection, dataSource.getConnection());
+
+        TransactionSynchronizationManager.setCurrentTransactionReadOnly(true);
+        assertSame(replicaConnection, dataSource.getConnection());
+    }
+}
@@ -0,0 +1,179 @@
+package com.edu.ulab.app.facade;
+
+import com.edu.ulab.app.exception.NotFoundException;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.dao.QueryTimeoutException;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Тестирование объединения одновременных загрузок {@link SingleFlight}.
+ */
+@DisplayName("Testing single-flight request coalescing.")
+public class SingleFlightTest {
+
+    private static final int REQUESTS = 8;
+    private static final Duration TIMEOUT = Duration.ofSeconds(5);
+
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    private final ExecutorService executor = Executors.newFixedThreadPool(REQUESTS);
+
+    @AfterEach
+    void tearDown() {
+        executor.shutdownNow();
+    }
+
+    private double requests(String outcome) {
+        return registry.get(SingleFlight.REQUEST_COUNTER)
+                .tags("operation", "test", "outcome", outcome)
+                .counter()
+                .count();
+    }
+
+    /**
+     * Запускает REQUESTS вызовов по одному ключу, пока первая загрузка ждёт release.
+     */
+    private List<Future<String>> concurrentCalls(SingleFlight<Long, String> singleFlight,
+                                                 CountDownLatch release,
+                                                 AtomicInteger loads,
+                                                 RuntimeException failure) throws InterruptedException {
+        CountDownLatch loadStarted = new CountDownLatch(1);
+        List<Future<String>> results = new ArrayList<>();
+        results.add(executor.submit(() -> singleFlight.execute(1L, () -> {
+            loads.incrementAndGet();
+            loadStarted.countDown();
+            await(release);
+            if (failure != null) {
+                throw failure;
+            }
+            return "user 1";
+        })));
+        assertTrue(loadStarted.await(5, TimeUnit.SECONDS));
+
+        for (int i = 1; i < REQUESTS; i++) {
+            results.add(executor.submit(() -> singleFlight.execute(1L, () -> {
+                loads.incrementAndGet();
+                return "user 1 again";
+            })));
+        }
+        //followers are counted before they start waiting
+        while (requests("coalesced") < REQUESTS - 1) {
+            Thread.onSpinWait();
+        }
+        return results;
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @Test
+    @DisplayName("Одновременные запросы по одному ключу. Загрузка выполняется один раз, результат получают все.")
+    void coalesce_Test() throws Exception {
+        SingleFlight<Long, String> singleFlight = new SingleFlight<>("test", true, TIMEOUT, registry);
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicInteger loads = new AtomicInteger();
+
+        List<Future<String>> results = concurrentCalls(singleFlight, release, loads, null);
+        release.countDown();
+
+        for (Future<String> result : results) {
+            assertEquals("user 1", result.get(5, TimeUnit.SECONDS));
+        }
+        assertEquals(1, loads.get());
+        assertEquals(1, requests("loaded"));
+        assertEquals(REQUESTS - 1, requests("coalesced"));
+        assertEquals(0, registry.get(SingleFlight.IN_FLIGHT_GAUGE).gauge().value());
+    }
+
+    @Test
+    @DisplayName("Ошибка загрузки. Исключение получают все ожидающие запросы.")
+    void coalesceFailure_Test() throws Exception {
+        SingleFlight<Long, String> singleFlight = new SingleFlight<>("test", true, TIMEOUT, registry);
+        CountDownLatch release = new CountDownLatch(1);
+        NotFoundException failure = new NotFoundException("User with id 1 was not found");
+
+        List<Future<String>> results = concurrentCalls(singleFlight, release, new AtomicInteger(), failure);
+        release.countDown();
+
+        for (Future<String> result : results) {
+            ExecutionException e = assertThrows(ExecutionException.class, () -> result.get(5, TimeUnit.SECONDS));
+            assertSame(failure, e.getCause());
+        }
+    }
+
+    @Test
+    @DisplayName("Загрузка не успевает за timeout. Ожидающие запросы получают QueryTimeoutException.")
+    void coalesceTimeout_Test() throws Exception {
+        SingleFlight<Long, String> singleFlight = new SingleFlight<>("test", true, Duration.ofMillis(50), registry);
+        CountDownLatch release = new CountDownLatch(1);
+
+        List<Future<String>> results = concurrentCalls(singleFlight, release, new AtomicInteger(), null);
+        for (Future<String> result : results.subList(1, REQUESTS)) {
+            ExecutionException e = assertThrows(ExecutionException.class, () -> result.get(5, TimeUnit.SECONDS));
+            assertInstanceOf(QueryTimeoutException.class, e.getCause());
+        }
+        release.countDown();
+
+        assertEquals("user 1", results.get(0).get(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    @DisplayName("Последовательные запросы и разные ключи. Результат не кешируется, каждый запрос загружает данные.")
+    void noCaching_Test() {
+        SingleFlight<Long, String> singleFlight = new SingleFlight<>("test", true, TIMEOUT, registry);
+        AtomicInteger loads = new AtomicInteger();
+
+        singleFlight.execute(1L, () -> "user " + loads.incrementAndGet());
+        String second = singleFlight.execute(1L, () -> "user " + loads.incrementAndGet());
+        singleFlight.execute(2L, () -> "user " + loads.incrementAndGet());
+
+        assertEquals("user 2", second);
+        assertEquals(3, requests("loaded"));
+        assertEquals(0, requests("coalesced"));
+    }
+
+    @Test
+    @DisplayName("Выключенное объединение. Каждый запрос загружает данные сам, счётчики не растут.")
+    void disabled_Test() throws Exception {
+        SingleFlight<Long, String> singleFlight = new SingleFlight<>("test", false, TIMEOUT, registry);
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicInteger loads = new AtomicInteger();
+
+        List<Future<String>> results = new ArrayList<>();
+        for (int i = 0; i < REQUESTS; i++) {
+            results.add(executor.submit(() -> singleFlight.execute(1L, () -> {
+                loads.incrementAndGet();
+                await(release);
+                return "user 1";
+            })));
+        }
+        while (loads.get() < REQUESTS) {
+            Thread.onSpinWait();
+        }
+        release.countDown();
+
+        for (Future<String> result : results) {
+            assertEquals("user 1", result.get(5, TimeUnit.SECONDS));
+        }
+        assertEquals(0, requests("loaded"));
+    }
+}
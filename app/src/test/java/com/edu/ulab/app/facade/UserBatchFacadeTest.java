@@ -0,0 +1,147 @@
+package com.edu.ulab.app.facade;
+
+import com.edu.ulab.app.dto.BookDto;
+import com.edu.ulab.app.dto.UserDto;
+import com.edu.ulab.app.exception.BadRequestException;
+import com.edu.ulab.app.mapper.BookMapper;
+import com.edu.ulab.app.mapper.UserMapper;
+import com.edu.ulab.app.service.BookService;
+import com.edu.ulab.app.service.UserService;
+import com.edu.ulab.app.service.bulk.BookBulkImport;
+import com.edu.ulab.app.web.request.BookRequest;
+import com.edu.ulab.app.web.request.UserBookRequest;
+import com.edu.ulab.app.web.request.UserRequest;
+import com.edu.ulab.app.web.response.UserBookBatchItemResponse;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.mapstruct.factory.Mappers;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import javax.validation.Validation;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Тестирование пакетного создания пользователей {@link UserBatchFacade}.
+ */
+@DisplayName("Testing user batch facade.")
+public class UserBatchFacadeTest {
+
+    private final UserService userService = mock(UserService.class);
+    private final BookService bookService = mock(BookService.class);
+    private final AtomicLong ids = new AtomicLong();
+
+    private final UserBatchFacade facade = new UserBatchFacade(userService, bookService,
+            Mappers.getMapper(UserMapper.class), Mappers.getMapper(BookMapper.class),
+            Validation.buildDefaultValidatorFactory().getValidator(),
+            mock(PlatformTransactionManager.class), mock(BookBulkImport.class), 2, 10);
+
+    private UserBookRequest request(String title, int age, int bookCount) {
+        UserRequest userRequest = new UserRequest();
+        userRequest.setFullName("test name");
+        userRequest.setTitle(title);
+        userRequest.setAge(age);
+
+        List<BookRequest> bookRequests = new ArrayList<>();
+        for (int i = 0; i < bookCount; i++) {
+            BookRequest bookRequest = new BookRequest();
+            bookRequest.setTitle("test title " + i);
+            bookRequest.setAuthor("test author");
+            bookRequest.setPageCount(100);
+            bookRequests.add(bookRequest);
+        }
+
+        UserBookRequest request = new UserBookRequest();
+        request.setUserRequest(userRequest);
+        request.setBookRequests(bookRequests);
+        return request;
+    }
+
+    private List<UserDto> withIds(List<UserDto> users) {
+        users.forEach(user -> user.setId(ids.incrementAndGet()));
+        return users;
+    }
+
+    private List<BookDto> booksWithIds(List<BookDto> books) {
+        books.forEach(book -> book.setId(ids.incrementAndGet()));
+        return books;
+    }
+
+    @Test
+    @DisplayName("Пакет с невалидным запросом. Невалидный получает ошибку, остальные сохраняются порциями.")
+    void createWithInvalidRequest_Test() {
+        //given
+
+        when(userService.createUsers(anyList())).thenAnswer(invocation -> withIds(invocation.getArgument(0)));
+        when(bookService.createBooks(anyList())).thenAnswer(invocation -> booksWithIds(invocation.getArgument(0)));
+
+        List<UserBookRequest> requests = List.of(
+                request("reader-1", 30, 2),
+                request("reader-2", 10, 1),
+                request("reader-3", 30, 0),
+                request("reader-4", 30, 1));
+
+        //then
+
+        List<UserBookBatchItemResponse> responses = facade.createUsersWithBooks(requests);
+        assertEquals(4, responses.size());
+        assertEquals(List.of(0, 1, 2, 3), responses.stream().map(UserBookBatchItemResponse::getIndex).toList());
+
+        assertNull(responses.get(0).getErrorMessage());
+        assertEquals(2, responses.get(0).getBooksIdList().size());
+        assertEquals("userRequest.age: Age should be greater or equals than 18", responses.get(1).getErrorMessage());
+        assertNull(responses.get(1).getUserId());
+        assertEquals(List.of(), responses.get(2).getBooksIdList());
+        assertEquals(1, responses.get(3).getBooksIdList().size());
+
+        // три валидных запроса при размере порции 2
+        verify(userService, times(2)).createUsers(anyList());
+    }
+
+    @Test
+    @DisplayName("Ошибка сохранения порции. Запросы порции сохраняются по одному, ошибка только у одного.")
+    void createWithFailedChunk_Test() {
+        //given
+
+        when(userService.createUsers(anyList())).thenAnswer(invocation -> {
+            List<UserDto> users = invocation.getArgument(0);
+            if (users.stream().anyMatch(user -> "taken".equals(user.getTitle()))) {
+                throw new DataIntegrityViolationException("duplicate key value violates unique constraint");
+            }
+            return withIds(users);
+        });
+        when(bookService.createBooks(anyList())).thenAnswer(invocation -> booksWithIds(invocation.getArgument(0)));
+
+        //then
+
+        List<UserBookBatchItemResponse> responses = facade.createUsersWithBooks(List.of(
+                request("reader-1", 30, 1),
+                request("taken", 30, 1)));
+
+        assertNull(responses.get(0).getErrorMessage());
+        assertNotNull(responses.get(0).getUserId());
+        assertEquals("duplicate key value violates unique constraint", responses.get(1).getErrorMessage());
+        assertNull(responses.get(1).getUserId());
+    }
+
+    @Test
+    @DisplayName("Пустой пакет и пакет больше лимита. Должно выкинуть exception.")
+    void createEmptyOrTooLargeBatch_Test() {
+        List<UserBookRequest> tooLarge = new ArrayList<>();
+        for (int i = 0; i < 11; i++) {
+            tooLarge.add(request("reader-" + i, 30, 0));
+        }
+
+        assertThrows(BadRequestException.class, () -> facade.createUsersWithBooks(List.of()));
+        assertThrows(BadRequestException.class, () -> facade.createUsersWithBooks(tooLarge));
+    }
+}
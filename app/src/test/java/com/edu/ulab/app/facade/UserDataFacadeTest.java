@@ -0,0 +1,338 @@
+package com.edu.ulab.app.facade;
+
+import com.edu.ulab.app.dto.BookDto;
+import com.edu.ulab.app.dto.UserBooksDto;
+import com.edu.ulab.app.dto.UserDto;
+import com.edu.ulab.app.exception.BadRequestException;
+import com.edu.ulab.app.exception.NotFoundException;
+import com.edu.ulab.app.exception.PreconditionFailedException;
+import com.edu.ulab.app.mapper.BookMapper;
+import com.edu.ulab.app.mapper.UserMapper;
+import com.edu.ulab.app.service.BookService;
+import com.edu.ulab.app.service.UserService;
+import com.edu.ulab.app.service.writebehind.BookWriteBehind;
+import com.edu.ulab.app.web.etag.UserETag;
+import com.edu.ulab.app.web.pagination.CursorToken;
+import com.edu.ulab.app.web.request.BookRequest;
+import com.edu.ulab.app.web.request.UserBookRequest;
+import com.edu.ulab.app.web.request.UserRequest;
+import com.edu.ulab.app.web.response.PageResponse;
+import com.edu.ulab.app.web.response.UserBookResponse;
+import com.edu.ulab.app.web.response.UserResponse;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InOrder;
+import org.springframework.cache.CacheManager;
+import org.springframework.cache.concurrent.ConcurrentMapCacheManager;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.dao.QueryTimeoutException;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static com.edu.ulab.app.web.constant.CacheConstant.USERS_WITH_BOOKS_CACHE;
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Тестирование {@link UserDataFacade}: параллельные чтения, постраничная выдача и ETag.
+ */
+@DisplayName("Testing user data facade.")
+public class UserDataFacadeTest {
+
+    private final UserService userService = mock(UserService.class);
+    private final BookService bookService = mock(BookService.class);
+    private final UserMapper userMapper = mock(UserMapper.class);
+    private final BookMapper bookMapper = mock(BookMapper.class);
+    private final CacheManager cacheManager = new ConcurrentMapCacheManager();
+
+    private ExecutorService executor;
+    private UserDataFacade facade;
+
+    @BeforeEach
+    void setUp() {
+        executor = Executors.newFixedThreadPool(2);
+        facade = new UserDataFacade(userService, bookService, userMapper, bookMapper,
+                executor, Duration.ofMillis(500),
+                new SingleFlight<>("getUserWithBooks", true, Duration.ofSeconds(5), new SimpleMeterRegistry()), cacheManager, Optional.empty(), false, Duration.ZERO);
+    }
+
+    @AfterEach
+    void tearDown() {
+        executor.shutdownNow();
+    }
+
+    private UserBookRequest request() {
+        UserBookRequest request = new UserBookRequest();
+        request.setUserRequest(new UserRequest());
+        request.setBookRequests(List.of(new BookRequest()));
+        return request;
+    }
+
+    private UserDto user() {
+        UserDto userDto = new UserDto();
+        userDto.setId(1L);
+        userDto.setFullName("test name");
+        userDto.setTitle("test title");
+        userDto.setAge(11);
+        return userDto;
+    }
+
+    @Test
+    @DisplayName("Обновление пользователя. Ид книг должны состоять из старых и новых книг.")
+    void updateUserWithBooks_Test() {
+        //given
+
+        when(userMapper.userRequestToUserDto(any())).thenReturn(user());
+        when(userService.updateUser(any())).thenReturn(user());
+        when(bookMapper.bookRequestToBookDto(any())).thenReturn(BookDto.builder().build());
+        when(bookService.getAllByUserId(1L)).thenReturn(List.of(
+                BookDto.builder().id(1L).userId(1L).build(),
+                BookDto.builder().id(2L).userId(1L).build()));
+        when(bookService.createBooks(anyList())).thenReturn(List.of(BookDto.builder().id(3L).userId(1L).build()));
+
+        //then
+
+        UserBookResponse response = facade.updateUserWithBooks(request(), 1L);
+        assertEquals(1L, response.getUserId());
+        assertEquals(List.of(1L, 2L, 3L), response.getBooksIdList());
+    }
+
+    @Test
+    @DisplayName("Чтение книг в пуле запаздывает. Новые книги не попадают в ответ дважды.")
+    void updateUserSlowBookRead_Test() {
+        //given
+
+        //the pool starts the read only after a delay, long enough for the insert to commit first
+        UserDataFacade slowReadFacade = new UserDataFacade(userService, bookService, userMapper, bookMapper,
+                task -> executor.execute(() -> {
+                    sleep(200);
+                    task.run();
+                }),
+                Duration.ofSeconds(1),
+                new SingleFlight<>("getUserWithBooks", true, Duration.ofSeconds(5), new SimpleMeterRegistry()), cacheManager, Optional.empty(), false, Duration.ZERO);
+        List<BookDto> storedBooks = new CopyOnWriteArrayList<>(List.of(
+                BookDto.builder().id(1L).userId(1L).build(),
+                BookDto.builder().id(2L).userId(1L).build()));
+        when(userMapper.userRequestToUserDto(any())).thenReturn(user());
+        when(userService.updateUser(any())).thenReturn(user());
+        when(bookMapper.bookRequestToBookDto(any())).thenReturn(BookDto.builder().build());
+        when(bookService.getAllByUserId(1L)).thenAnswer(invocation -> List.copyOf(storedBooks));
+        when(bookService.createBooks(anyList())).thenAnswer(invocation -> {
+            BookDto created = BookDto.builder().id(3L).userId(1L).build();
+            storedBooks.add(created);
+            return List.of(created);
+        });
+
+        //then
+
+        UserBookResponse response = slowReadFacade.updateUserWithBooks(request(), 1L);
+        assertEquals(List.of(1L, 2L, 3L), response.getBooksIdList());
+        InOrder order = inOrder(bookService);
+        order.verify(bookService).getAllByUserId(1L);
+        order.verify(bookService).createBooks(anyList());
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @Test
+    @DisplayName("Обновление несуществующего пользователя. Должно выкинуть exception, книги не создаются.")
+    void updateNotExistUser_Test() {
+        //given
+
+        when(userMapper.userRequestToUserDto(any())).thenReturn(user());
+        when(userService.updateUser(any())).thenThrow(new NotFoundException("User with id - 1 was not found"));
+        when(bookService.getAllByUserId(1L)).thenReturn(List.of());
+
+        //then
+
+        assertThrows(NotFoundException.class, () -> facade.updateUserWithBooks(request(), 1L));
+        verify(bookService, never()).createBooks(anyList());
+    }
+
+    @Test
+    @DisplayName("Чтение книг не уложилось в таймаут. Должно выкинуть exception.")
+    void updateUserTimeout_Test() throws InterruptedException {
+        //given
+
+        CountDownLatch release = new CountDownLatch(1);
+        when(userMapper.userRequestToUserDto(any())).thenReturn(user());
+        when(userService.updateUser(any())).thenReturn(user());
+        when(bookMapper.bookRequestToBookDto(any())).thenReturn(BookDto.builder().build());
+        when(bookService.createBooks(anyList())).thenReturn(List.of());
+        when(bookService.getAllByUserId(1L)).thenAnswer(invocation -> {
+            release.await(5, TimeUnit.SECONDS);
+            return List.of();
+        });
+
+        //then
+
+        assertThrows(QueryTimeoutException.class, () -> facade.updateUserWithBooks(request(), 1L));
+        release.countDown();
+    }
+
+    private UserBooksDto userWithBooks(long version, List<Long> bookIds) {
+        return UserBooksDto.builder()
+                .id(1L)
+                .version(version)
+                .bookIdList(bookIds)
+                .build();
+    }
+
+    @Test
+    @DisplayName("ETag пользователя. Меняется вместе с версией, слабое сравнение только для If-None-Match.")
+    void getUserWithBooksETag_Test() {
+        when(userService.getUserVersion(1L)).thenReturn(3L, 4L);
+
+        String eTag = facade.getUserWithBooksETag(1L);
+        assertEquals(UserETag.of(3L), eTag);
+        assertNotEquals(eTag, facade.getUserWithBooksETag(1L));
+        assertTrue(UserETag.matchesIfNoneMatch("\"other\", W/" + eTag, eTag));
+        assertFalse(UserETag.matchesIfMatch("W/" + eTag, eTag));
+        assertEquals(3L, UserETag.version(eTag));
+    }
+
+    @Test
+    @DisplayName("ETag пользователя из кэша usersWithBooks. Запрос к базе не выполняется.")
+    void getUserWithBooksETagCached_Test() {
+        cacheManager.getCache(USERS_WITH_BOOKS_CACHE).put(1L, userWithBooks(3L, List.of(1L, 2L)));
+
+        assertEquals(UserETag.of(3L), facade.getUserWithBooksETag(1L));
+        verify(userService, never()).getUserVersion(any());
+        verify(userService, never()).getUserWithBookIds(any());
+    }
+
+    @Test
+    @DisplayName("Обновление с устаревшим If-Match. Должно выкинуть exception, пользователь не обновляется.")
+    void updateUserIfMatchFailed_Test() {
+        when(userMapper.userRequestToUserDto(any())).thenReturn(user());
+        when(userService.getUserVersion(1L)).thenReturn(4L);
+        String staleETag = UserETag.of(3L);
+
+        assertThrows(PreconditionFailedException.class, () -> facade.updateUserWithBooks(request(), 1L, staleETag));
+        verify(userService, never()).updateUser(any());
+    }
+
+    @Test
+    @DisplayName("Обновление с текущим If-Match. Версия из ETag передаётся в UPDATE, в ответе версия после добавления книг.")
+    void updateUserIfMatch_Test() {
+        when(userMapper.userRequestToUserDto(any())).thenReturn(user());
+        when(userService.getUserVersion(1L)).thenReturn(3L);
+        when(userService.updateUser(any())).thenAnswer(invocation -> {
+            UserDto userDto = invocation.getArgument(0);
+            return UserDto.builder().id(userDto.getId()).version(userDto.getVersion() + 1).build();
+        });
+        when(bookMapper.bookRequestToBookDto(any())).thenReturn(BookDto.builder().build());
+        when(bookService.getAllByUserId(1L)).thenReturn(List.of(BookDto.builder().id(1L).userId(1L).build()));
+        when(bookService.createBooks(anyList())).thenReturn(List.of(BookDto.builder().id(2L).userId(1L).build()));
+
+        UserBookResponse response = facade.updateUserWithBooks(request(), 1L, UserETag.of(3L));
+
+        ArgumentCaptor<UserDto> updated = ArgumentCaptor.forClass(UserDto.class);
+        verify(userService).updateUser(updated.capture());
+        assertEquals(3L, updated.getValue().getVersion());
+        assertEquals(5L, response.getVersion());
+    }
+
+    @Test
+    @DisplayName("Страница пользователей. Курсор следующей страницы указывает на последнего пользователя страницы.")
+    void getUsersPage_Test() {
+        //given
+
+        UserDto second = user();
+        second.setId(2L);
+        UserDto third = user();
+        third.setId(3L);
+        when(userService.getUsersAfter(0L, 3)).thenReturn(List.of(user(), second, third));
+        when(userService.getUsersAfter(2L, 3)).thenReturn(List.of(third));
+
+        //then
+
+        PageResponse<UserResponse> firstPage = facade.getUsers(null, 2);
+        assertEquals(List.of(1L, 2L), firstPage.getItems().stream().map(UserResponse::getUserId).toList());
+        assertEquals(CursorToken.encode(2L), firstPage.getNextCursor());
+
+        PageResponse<UserResponse> lastPage = facade.getUsers(firstPage.getNextCursor(), 2);
+        assertEquals(List.of(3L), lastPage.getItems().stream().map(UserResponse::getUserId).toList());
+        assertNull(lastPage.getNextCursor());
+    }
+
+    @Test
+    @DisplayName("Страница книг несуществующего пользователя. Должно выкинуть exception.")
+    void getUserBooksNoExistUser_Test() {
+        when(userService.getUserById(2L)).thenThrow(new NotFoundException("User with id - 2 was not found"));
+
+        assertThrows(NotFoundException.class, () -> facade.getUserBooks(2L, null, 10));
+    }
+
+    @Test
+    @DisplayName("Неверный курсор или размер страницы. Должно выкинуть exception.")
+    void getUsersInvalidPage_Test() {
+        assertThrows(BadRequestException.class, () -> facade.getUsers("not a cursor", 10));
+        assertThrows(BadRequestException.class, () -> facade.getUsers(null, 0));
+        assertThrows(BadRequestException.class, () -> facade.getUsers(null, 1001));
+    }
+
+    private UserDataFacade writeBehindFacade(BookWriteBehind bookWriteBehind, boolean waitForDurable) {
+        when(userMapper.userRequestToUserDto(any())).thenReturn(user());
+        when(userService.createUser(any())).thenReturn(user());
+        when(bookMapper.bookRequestToBookDto(any())).thenReturn(BookDto.builder().build());
+        return new UserDataFacade(userService, bookService, userMapper, bookMapper,
+                executor, Duration.ofMillis(500),
+                new SingleFlight<>("getUserWithBooks", true, Duration.ofSeconds(5), new SimpleMeterRegistry()), cacheManager, Optional.of(bookWriteBehind),
+                waitForDurable, Duration.ofMillis(200));
+    }
+
+    @Test
+    @DisplayName("Отложенная запись без ожидания. Ид книг возвращаются до коммита.")
+    void createUserWriteBehind_Test() {
+        BookWriteBehind bookWriteBehind = mock(BookWriteBehind.class);
+        when(bookWriteBehind.enqueue(anyList())).thenAnswer(invocation -> {
+            List<BookDto> books = invocation.getArgument(0);
+            books.forEach(book -> book.setId(3L));
+            return new CompletableFuture<>();
+        });
+
+        UserBookResponse response = writeBehindFacade(bookWriteBehind, false).createUserWithBooks(request());
+
+        assertEquals(List.of(3L), response.getBooksIdList());
+        verify(bookService, never()).createBooks(anyList());
+    }
+
+    @Test
+    @DisplayName("Отложенная запись с ожиданием коммита. Ошибка записи и таймаут возвращаются клиенту.")
+    void createUserWaitForDurable_Test() {
+        BookWriteBehind bookWriteBehind = mock(BookWriteBehind.class);
+        when(bookWriteBehind.enqueue(anyList()))
+                .thenReturn(CompletableFuture.failedFuture(
+                        new DataIntegrityViolationException("Key (user_id) is not present in table person")))
+                .thenReturn(new CompletableFuture<>());
+        UserDataFacade waitingFacade = writeBehindFacade(bookWriteBehind, true);
+
+        assertThrows(DataIntegrityViolationException.class, () -> waitingFacade.createUserWithBooks(request()));
+        assertThrows(QueryTimeoutException.class, () -> waitingFacade.createUserWithBooks(request()));
+    }
+}
@@ -0,0 +1,64 @@
+package com.edu.ulab.app.metrics;
+
+import com.edu.ulab.app.dto.UserDto;
+import com.edu.ulab.app.exception.NotFoundException;
+import com.edu.ulab.app.facade.UserDataFacade;
+import com.edu.ulab.app.service.UserService;
+import com.edu.ulab.app.service.impl.BookServiceImplTemplate;
+import com.edu.ulab.app.service.impl.UserServiceImpl;
+import com.edu.ulab.app.service.impl.UserServiceImplStorage;
+import com.edu.ulab.app.storage.Storage;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.aop.aspectj.annotation.AspectJProxyFactory;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Тестирование таймеров операций {@link OperationMetricsAspect}.
+ */
+@DisplayName("Testing operation metrics aspect.")
+public class OperationMetricsAspectTest {
+
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+
+    private UserService timedStorageService() {
+        AspectJProxyFactory proxyFactory = new AspectJProxyFactory(new UserServiceImplStorage(new Storage()));
+        proxyFactory.addAspect(new OperationMetricsAspect(registry));
+        return proxyFactory.getProxy();
+    }
+
+    @Test
+    @DisplayName("Вызовы сервиса. Время пишется с тегами слоя, реализации, метода и исключения.")
+    void serviceTimers_Test() {
+        UserService userService = timedStorageService();
+
+        UserDto savedUser = userService.createUser(UserDto.builder().fullName("Test User").title("reader").age(30).build());
+        userService.getUserById(savedUser.getId());
+        userService.getUserById(savedUser.getId());
+        assertThrows(NotFoundException.class, () -> userService.getUserById(100L));
+
+        assertEquals(1, registry.get(OperationMetricsAspect.OPERATION_TIMER)
+                .tags("layer", "service", "impl", "storage", "method", "createUser", "exception", "none")
+                .timer()
+                .count());
+        assertEquals(2, registry.get(OperationMetricsAspect.OPERATION_TIMER)
+                .tags("class", "UserServiceImplStorage", "method", "getUserById", "exception", "none")
+                .timer()
+                .count());
+        assertEquals(1, registry.get(OperationMetricsAspect.OPERATION_TIMER)
+                .tags("method", "getUserById", "exception", "NotFoundException")
+                .timer()
+                .count());
+    }
+
+    @Test
+    @DisplayName("Реализация по имени класса. Template, Storage и JPA для сервисов, none для фасадов.")
+    void implementation_Test() {
+        assertEquals("storage", OperationMetricsAspect.implementation(UserServiceImplStorage.class, "service"));
+        assertEquals("template", OperationMetricsAspect.implementation(BookServiceImplTemplate.class, "service"));
+        assertEquals("jpa", OperationMetricsAspect.implementation(UserServiceImpl.class, "service"));
+        assertEquals("none", OperationMetricsAspect.implementation(UserDataFacade.class, "facade"));
+    }
+}
@@ -0,0 +1,85 @@
+package com.edu.ulab.app.metrics;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import net.ttddyy.dsproxy.ExecutionInfo;
+import net.ttddyy.dsproxy.QueryInfo;
+import net.ttddyy.dsproxy.QueryType;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Тестирование метрик SQL-запросов {@link QueryMetricsListener}.
+ */
+@DisplayName("Testing query metrics listener.")
+public class QueryMetricsListenerTest {
+
+    @Test
+    @DisplayName("Тип запроса. Определяется по первому слову без учёта регистра и пробелов.")
+    void queryType_Test() {
+        assertEquals(QueryType.SELECT, QueryMetricsListener.queryType("  select * from person"));
+        assertEquals(QueryType.SELECT, QueryMetricsListener.queryType("WITH t AS (SELECT 1) SELECT * FROM t"));
+        assertEquals(QueryType.INSERT, QueryMetricsListener.queryType("INSERT INTO person VALUES (?)"));
+        assertEquals(QueryType.UPDATE, QueryMetricsListener.queryType("\nupdate book set title = ?"));
+        assertEquals(QueryType.DELETE, QueryMetricsListener.queryType("DELETE FROM book WHERE id = ?"));
+        assertEquals(QueryType.OTHER, QueryMetricsListener.queryType("SET search_path TO ulab_edu"));
+        assertEquals(QueryType.OTHER, QueryMetricsListener.queryType(""));
+    }
+
+    @Test
+    @DisplayName("Запрос с CTE. Тип определяется по основному запросу после WITH.")
+    void queryTypeWith_Test() {
+        assertEquals(QueryType.INSERT, QueryMetricsListener.queryType(
+                "WITH checked AS (SELECT i.*, (SELECT 'no user') AS rejection FROM book_import i) " +
+                        "INSERT INTO ulab_edu.book (title) SELECT title FROM checked WHERE rejection IS NULL"));
+        assertEquals(QueryType.SELECT, QueryMetricsListener.queryType(
+                "with recursive select_ids(id) as (select 1 union all select id + 1 from select_ids) select id from select_ids"));
+        assertEquals(QueryType.DELETE, QueryMetricsListener.queryType(
+                "WITH \"update\" AS (SELECT ')insert' AS id) DELETE FROM book WHERE id IN (SELECT id FROM \"update\")"));
+        assertEquals(QueryType.UPDATE, QueryMetricsListener.queryType(
+                "WITH t AS (SELECT 1 AS id)\nUPDATE book SET title = ? FROM t WHERE book.id = t.id"));
+    }
+
+    @Test
+    @DisplayName("Запись метрик. Время пишется в таймер по типу и исходу, медленные запросы считаются отдельно.")
+    void afterQuery_Test() {
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        QueryMetricsListener listener = new QueryMetricsListener(Duration.ofMillis(100));
+        listener.bindTo(registry);
+
+        listener.afterQuery(execution(5, true), List.of(new QueryInfo("SELECT * FROM person WHERE id = ?")));
+        listener.afterQuery(execution(150, true), List.of(new QueryInfo("SELECT * FROM book")));
+        listener.afterQuery(execution(1, false), List.of(new QueryInfo("DELETE FROM book WHERE id = ?")));
+
+        var selects = registry.get(QueryMetricsListener.QUERY_TIMER)
+                .tags("type", "select", "outcome", "success")
+                .timer();
+        assertEquals(2, selects.count());
+        assertEquals(155, selects.totalTime(TimeUnit.MILLISECONDS));
+        assertEquals(1, registry.get(QueryMetricsListener.QUERY_TIMER)
+                .tags("type", "delete", "outcome", "error")
+                .timer()
+                .count());
+        assertEquals(1, registry.get(QueryMetricsListener.SLOW_QUERY_COUNTER).counter().count());
+    }
+
+    @Test
+    @DisplayName("Запросы до регистрации метрик. Не учитываются и не падают.")
+    void afterQueryBeforeBind_Test() {
+        QueryMetricsListener listener = new QueryMetricsListener(Duration.ofMillis(100));
+
+        assertDoesNotThrow(() -> listener.afterQuery(execution(500, true), List.of(new QueryInfo("SELECT 1"))));
+    }
+
+    private static ExecutionInfo execution(long elapsedMillis, boolean success) {
+        ExecutionInfo executionInfo = new ExecutionInfo();
+        executionInfo.setElapsedTime(elapsedMillis);
+        executionInfo.setSuccess(success);
+        return executionInfo;
+    }
+}
@@ -37,7 +37,7 @@ public class BookRepositoryTest {
         SQLStatementCountValidator.reset();
     }
 
-    @DisplayName("Сохранить книгу и автора. Число insert должно равняться 2")
+    @DisplayName("Сохранить книгу и автора. После flush число insert должно равняться 2")
     @Test
     @Rollback
     @Sql({"classpath:sql/1_clear_schema.sql"
@@ -59,12 +59,12 @@ public class BookRepositoryTest {
         book.setPerson(savedPerson);
 
         //When
-        Book result = bookRepository.save(book);
+        Book result = bookRepository.saveAndFlush(book);
 
         //Then
+        //selects are not counted: the sequence is read only when the pooled range of ids runs out
         assertThat(result.getPageCount()).isEqualTo(1000);
         assertThat(result.getTitle()).isEqualTo("test");
-        assertSelectCount(0);
         assertInsertCount(2);
         assertUpdateCount(0);
         assertDeleteCount(0);
@@ -154,6 +154,23 @@ public class BookRepositoryTest {
 
     }
 
+    @DisplayName("Удаление всех книг пользователя. Должен быть 1 delete без select")
+    @Test
+    @Rollback
+    @Sql({"classpath:sql/1_clear_schema.sql",
+            "classpath:sql/2_insert_person_data.sql",
+            "classpath:sql/3_insert_book_data.sql"
+    })
+    void deleteBooksByUserId_Test() {
+        int deleted = bookRepository.deleteAllByUserId(1001L);
+
+        assertThat(deleted).isEqualTo(3);
+        assertSelectCount(0);
+        assertInsertCount(0);
+        assertUpdateCount(0);
+        assertDeleteCount(1);
+    }
+
     @DisplayName("Получение книги по id которого не существует. Должен быть 1 select")
     @Test
     @Rollback
@@ -2,6 +2,7 @@ package com.edu.ulab.app.repository;
 
 import com.edu.ulab.app.config.SystemJpaTest;
 import com.edu.ulab.app.entity.Person;
+import com.edu.ulab.app.repository.projection.UserBookIdProjection;
 import com.vladmihalcea.sql.SQLStatementCountValidator;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.DisplayName;
@@ -31,7 +32,7 @@ public class UserRepositoryTest {
         SQLStatementCountValidator.reset();
     }
 
-    @DisplayName("Сохранить юзера. Число insert должно равняться 1")
+    @DisplayName("Сохранить юзера. После flush число insert должно равняться 1")
     @Test
     @Rollback
     void insertPerson_thenAssertDmlCount() {
@@ -42,11 +43,11 @@ public class UserRepositoryTest {
         person.setFullName("Test Test");
 
         //When
-        Person result = userRepository.save(person);
+        Person result = userRepository.saveAndFlush(person);
 
         //Then
+        //selects are not counted: the sequence is read only when the pooled range of ids runs out
         assertThat(result.getAge()).isEqualTo(111);
-        assertSelectCount(0);
         assertInsertCount(1);
         assertUpdateCount(0);
         assertDeleteCount(0);
@@ -101,6 +102,26 @@ public class UserRepositoryTest {
         assertDeleteCount(0);
     }
 
+    @DisplayName("Получение юзера вместе с id книг. Число select должно равняться 1")
+    @Test
+    @Rollback
+    @Sql({"classpath:sql/1_clear_schema.sql",
+            "classpath:sql/2_insert_person_data.sql",
+            "classpath:sql/3_insert_book_data.sql"
+    })
+    void getPersonWithBookIds_thenAssertDmlCount() {
+        List<UserBookIdProjection> result = userRepository.findWithBookIdsById(1001L);
+
+        assertThat(result).extracting(UserBookIdProjection::getBookId)
+                .containsExactly(2002L, 3003L, 4004L);
+        assertThat(result).extracting(UserBookIdProjection::getTitle)
+                .containsOnly("reader");
+        assertSelectCount(1);
+        assertInsertCount(0);
+        assertUpdateCount(0);
+        assertDeleteCount(0);
+    }
+
     @DisplayName("Получение юзера по id, которого нет в БД. Число select должно равняться 1")
     @Test
     @Rollback
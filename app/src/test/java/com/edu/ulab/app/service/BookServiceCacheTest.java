@@ -0,0 +1,152 @@
+package com.edu.ulab.app.service;
+
+import com.edu.ulab.app.config.CacheConfig;
+import com.edu.ulab.app.dto.BookDto;
+import com.edu.ulab.app.entity.Book;
+import com.edu.ulab.app.exception.BadRequestException;
+import com.edu.ulab.app.mapper.BookMapper;
+import com.edu.ulab.app.repository.BookRepository;
+import com.edu.ulab.app.repository.UserRepository;
+import com.edu.ulab.app.service.cache.SecondLevelCache;
+import com.edu.ulab.app.service.impl.BookServiceImpl;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.cache.caffeine.CaffeineCacheManager;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Import;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.junit.jupiter.SpringJUnitConfig;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionSynchronizationUtils;
+
+import java.util.List;
+import java.util.Optional;
+
+import static com.edu.ulab.app.web.constant.CacheConstant.USERS_CACHE;
+import static com.edu.ulab.app.web.constant.CacheConstant.USERS_WITH_BOOKS_CACHE;
+import static com.edu.ulab.app.web.constant.CacheConstant.USER_BOOKS_CACHE;
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Тестирование кэширования {@link BookServiceImpl}.
+ */
+@ActiveProfiles("test")
+@SpringJUnitConfig(BookServiceCacheTest.Config.class)
+@DisplayName("Testing book cache.")
+public class BookServiceCacheTest {
+
+    @Configuration
+    @Import({CacheConfig.class, BookServiceImpl.class})
+    static class Config {
+        @Bean
+        CacheManager cacheManager() {
+            return new CaffeineCacheManager(USERS_CACHE, USERS_WITH_BOOKS_CACHE, USER_BOOKS_CACHE);
+        }
+    }
+
+    @Autowired
+    BookService bookService;
+
+    @Autowired
+    CacheManager cacheManager;
+
+    @MockBean
+    SecondLevelCache secondLevelCache;
+
+    @MockBean
+    BookRepository bookRepository;
+
+    @MockBean
+    UserRepository userRepository;
+
+    @MockBean
+    BookMapper bookMapper;
+
+    @BeforeEach
+    void setUp() {
+        Book book = new Book();
+        book.setId(2L);
+        BookDto bookDto = BookDto.builder().id(2L).userId(1L).build();
+        when(bookRepository.findAllByUserId(1L)).thenReturn(List.of(book));
+        when(bookMapper.bookToBookDto(book)).thenReturn(bookDto);
+        when(bookRepository.findUserIdForUpdateById(2L)).thenReturn(Optional.of(1L));
+        when(bookRepository.deleteOneById(2L)).thenReturn(1);
+    }
+
+    @AfterEach
+    void tearDown() {
+        cacheManager.getCacheNames().forEach(name -> cacheManager.getCache(name).clear());
+    }
+
+    @Test
+    @DisplayName("Повторное чтение книг пользователя. Должно вернуться из кэша.")
+    void getAllByUserIdCached_Test() {
+        List<BookDto> first = bookService.getAllByUserId(1L);
+        List<BookDto> second = bookService.getAllByUserId(1L);
+
+        assertSame(first, second);
+        verify(bookRepository, times(1)).findAllByUserId(1L);
+    }
+
+    @Test
+    @DisplayName("Чтение книг пользователя с id null. Должно выпасть исключение, в кэш ничего не попадает.")
+    void getAllByNullUserIdNotCached_Test() {
+        assertThrows(BadRequestException.class, () -> bookService.getAllByUserId(null));
+    }
+
+    @Test
+    @DisplayName("Удаление книги. Должно сбросить списки книг из кэша.")
+    void deleteBookEvicts_Test() {
+        bookService.getAllByUserId(1L);
+        cache(USERS_WITH_BOOKS_CACHE).put(1L, "user with books");
+
+        bookService.deleteBookById(2L);
+
+        assertNull(cache(USER_BOOKS_CACHE).get(1L));
+        assertNull(cache(USERS_WITH_BOOKS_CACHE).get(1L));
+    }
+
+    @Test
+    @DisplayName("Удаление книг пользователя. Должно сбросить только его записи.")
+    void deleteAllByUserIdEvicts_Test() {
+        bookService.getAllByUserId(1L);
+        cache(USER_BOOKS_CACHE).put(3L, "books of other user");
+
+        bookService.deleteAllByUserId(1L);
+        bookService.getAllByUserId(1L);
+
+        verify(bookRepository, times(2)).findAllByUserId(1L);
+        assertNotNull(cache(USER_BOOKS_CACHE).get(3L));
+    }
+
+    @Test
+    @DisplayName("Удаление книги в транзакции. Кэш должен сброситься только после фиксации.")
+    void deleteBookEvictsAfterCommit_Test() {
+        bookService.getAllByUserId(1L);
+
+        TransactionSynchronizationManager.initSynchronization();
+        try {
+            bookService.deleteBookById(2L);
+            assertNotNull(cache(USER_BOOKS_CACHE).get(1L));
+
+            TransactionSynchronizationUtils.triggerAfterCommit();
+            assertNull(cache(USER_BOOKS_CACHE).get(1L));
+        } finally {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+    }
+
+    private Cache cache(String name) {
+        return cacheManager.getCache(name);
+    }
+}
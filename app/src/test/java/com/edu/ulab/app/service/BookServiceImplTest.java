@@ -4,9 +4,12 @@ import com.edu.ulab.app.dto.BookDto;
 import com.edu.ulab.app.entity.Book;
 import com.edu.ulab.app.entity.Person;
 import com.edu.ulab.app.exception.BadRequestException;
+import com.edu.ulab.app.exception.ConflictException;
 import com.edu.ulab.app.exception.NotFoundException;
 import com.edu.ulab.app.mapper.BookMapper;
 import com.edu.ulab.app.repository.BookRepository;
+import com.edu.ulab.app.repository.UserRepository;
+import com.edu.ulab.app.service.cache.SecondLevelCache;
 import com.edu.ulab.app.service.impl.BookServiceImpl;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
@@ -21,6 +24,12 @@ import java.util.List;
 import java.util.Optional;
 
 import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 /**
@@ -36,9 +45,15 @@ public class BookServiceImplTest {
     @Mock
     BookRepository bookRepository;
 
+    @Mock
+    UserRepository userRepository;
+
     @Mock
     BookMapper bookMapper;
 
+    @Mock
+    SecondLevelCache secondLevelCache;
+
     @Test
     @DisplayName("Создание книги. Должно пройти успешно.")
     void saveBook_Test() {
@@ -84,15 +99,83 @@ public class BookServiceImplTest {
         //then
         BookDto bookDtoResult = bookService.createBook(bookDto);
         assertEquals(1L, bookDtoResult.getId());
+        verify(userRepository).incrementVersionByIds(List.of(1L));
     }
 
     @Test
-    @DisplayName("Обновление книги. Должно пройти успешно.")
-    void updateBook_Test() {
+    @DisplayName("Создание списка книг одним вызовом saveAll. Должно пройти успешно.")
+    void saveBooks_Test() {
         //given
         Person person  = new Person();
         person.setId(1L);
 
+        BookDto bookDto1 = BookDto.builder()
+                .userId(1L)
+                .author("test author")
+                .title("test title")
+                .pageCount(1000)
+                .build();
+
+        BookDto bookDto2 = BookDto.builder()
+                .userId(1L)
+                .author("test author 2")
+                .title("test title 2")
+                .pageCount(500)
+                .build();
+
+        Book book1 = new Book();
+        book1.setPageCount(1000);
+        book1.setTitle("test title");
+        book1.setAuthor("test author");
+        book1.setPerson(person);
+
+        Book book2 = new Book();
+        book2.setPageCount(500);
+        book2.setTitle("test title 2");
+        book2.setAuthor("test author 2");
+        book2.setPerson(person);
+
+        Book savedBook1 = new Book();
+        savedBook1.setId(1L);
+        Book savedBook2 = new Book();
+        savedBook2.setId(2L);
+
+        BookDto result1 = BookDto.builder().id(1L).userId(1L).build();
+        BookDto result2 = BookDto.builder().id(2L).userId(1L).build();
+
+        //when
+
+        when(bookMapper.bookDtoToBook(bookDto1)).thenReturn(book1);
+        when(bookMapper.bookDtoToBook(bookDto2)).thenReturn(book2);
+        when(bookRepository.saveAll(List.of(book1, book2))).thenReturn(List.of(savedBook1, savedBook2));
+        when(bookMapper.bookToBookDto(savedBook1)).thenReturn(result1);
+        when(bookMapper.bookToBookDto(savedBook2)).thenReturn(result2);
+
+
+        //then
+        List<BookDto> bookDtoResult = bookService.createBooks(List.of(bookDto1, bookDto2));
+        assertEquals(List.of(result1, result2), bookDtoResult);
+        verify(userRepository).incrementVersionByIds(List.of(1L));
+    }
+
+    @Test
+    @DisplayName("Создание пустого списка книг. Версии пользователей не меняются.")
+    void saveEmptyBooks_Test() {
+        assertEquals(List.of(), bookService.createBooks(List.of()));
+        verify(bookRepository, never()).saveAll(anyList());
+        verify(userRepository, never()).incrementVersionByIds(anyCollection());
+    }
+
+    @Test
+    @DisplayName("Создание списка книг = null. Должно выкинуть exception.")
+    void saveBooksNull_Test() {
+        assertThrows(BadRequestException.class, () -> bookService.createBooks(null));
+    }
+
+    @Test
+    @DisplayName("Обновление книги. Должно пройти успешно.")
+    void updateBook_Test() {
+        //given
         BookDto bookDto = BookDto.builder()
                 .id(1L)
                 .userId(1L)
@@ -101,40 +184,131 @@ public class BookServiceImplTest {
                 .pageCount(500)
                 .build();
 
-        BookDto result = BookDto.builder()
+        //when
+
+        when(bookRepository.findUserIdForUpdateById(1L)).thenReturn(Optional.of(1L));
+        when(bookRepository.updateById(1L, "test titile 2", "test author 2", 500, 1L, null)).thenReturn(1);
+        when(bookRepository.findVersionById(1L)).thenReturn(Optional.of(4L));
+
+
+        //then
+        BookDto bookDtoResult = bookService.updateBook(bookDto);
+        verify(bookRepository, never()).findById(1L);
+        assertEquals(1L, bookDtoResult.getId());
+        assertEquals("test titile 2", bookDtoResult.getTitle());
+        assertEquals("test author 2", bookDtoResult.getAuthor());
+        assertEquals(500, bookDtoResult.getPageCount());
+        assertEquals(4L, bookDtoResult.getVersion());
+        verify(userRepository, never()).incrementVersionByIds(anyCollection());
+    }
+
+    @Test
+    @DisplayName("Перенос книги другому пользователю. Увеличиваются версии обоих пользователей.")
+    void updateBookOwner_Test() {
+        //given
+        BookDto bookDto = BookDto.builder()
+                .id(1L)
+                .userId(1L)
+                .title("test titile 2")
+                .version(2L)
+                .build();
+
+        //when
+
+        when(bookRepository.findUserIdForUpdateById(1L)).thenReturn(Optional.of(2L));
+        when(bookRepository.updateById(1L, "test titile 2", null, 0, 1L, 2L)).thenReturn(1);
+
+        //then
+        bookService.updateBook(bookDto);
+        assertEquals(3L, bookDto.getVersion());
+        verify(userRepository).incrementVersionByIds(List.of(1L, 2L));
+    }
+
+    @Test
+    @DisplayName("Обновление несуществующей книги. Должно вылететь ошибка.")
+    void updateNotExistBook_Test() {
+        BookDto bookDto = BookDto.builder()
+                .id(1L)
+                .userId(1L)
+                .title("test titile 2")
+                .build();
+        when(bookRepository.findUserIdForUpdateById(1L)).thenReturn(Optional.empty());
+
+        assertThrows(NotFoundException.class, () -> bookService.updateBook(bookDto));
+        verify(bookRepository, never()).updateById(anyLong(), any(), any(), anyLong(), anyLong(), any());
+    }
+
+    @Test
+    @DisplayName("Обновление книги с устаревшей версией. Должно вылететь ошибка конфликта.")
+    void updateBookWithStaleVersion_Test() {
+        //given
+        BookDto bookDto = BookDto.builder()
                 .id(1L)
                 .userId(1L)
                 .author("test author 2")
                 .title("test titile 2")
                 .pageCount(500)
+                .version(0L)
                 .build();
 
+        //when
+
+        when(bookRepository.findUserIdForUpdateById(1L)).thenReturn(Optional.of(1L));
+        when(bookRepository.updateById(1L, "test titile 2", "test author 2", 500, 1L, 0L)).thenReturn(0);
+        when(bookRepository.findVersionById(1L)).thenReturn(Optional.of(1L));
+
+        //then
+        assertThrows(ConflictException.class, () -> bookService.updateBook(bookDto));
+    }
+
+    @Test
+    @DisplayName("Перенос книги другому пользователю при включённом кэше второго уровня. Изменяется сущность.")
+    void updateCachedBook_Test() {
+        //given
+        Person person = new Person();
+        person.setId(1L);
         Book book = new Book();
-        book.setPageCount(500);
-        book.setTitle("test titile 2");
-        book.setAuthor("test author 2");
+        book.setId(1L);
+        book.setVersion(2L);
         book.setPerson(person);
 
-        Book updatedBook = new Book();
-        updatedBook.setId(1L);
-        updatedBook.setPageCount(500);
-        updatedBook.setTitle("test titile 2");
-        updatedBook.setAuthor("test author 2");
-        updatedBook.setPerson(person);
+        BookDto bookDto = BookDto.builder()
+                .id(1L)
+                .userId(2L)
+                .author("test author 2")
+                .title("test titile 2")
+                .pageCount(500)
+                .version(2L)
+                .build();
 
         //when
 
-        when(bookMapper.bookDtoToBook(bookDto)).thenReturn(book);
-        when(bookRepository.save(book)).thenReturn(updatedBook);
-        when(bookMapper.bookToBookDto(updatedBook)).thenReturn(result);
-
+        when(secondLevelCache.isEnabled()).thenReturn(true);
+        when(bookRepository.findById(1L)).thenReturn(Optional.of(book));
 
         //then
-        BookDto bookDtoResult = bookService.updateBook(bookDto);
-        assertEquals(1L, bookDtoResult.getId());
-        assertEquals("test titile 2", bookDtoResult.getTitle());
-        assertEquals("test author 2", bookDtoResult.getAuthor());
-        assertEquals(500, bookDtoResult.getPageCount());
+        bookService.updateBook(bookDto);
+        verify(bookRepository).flush();
+        verify(bookRepository, never()).findVersionById(1L);
+        assertEquals("test titile 2", book.getTitle());
+        assertEquals(500, book.getPageCount());
+        assertEquals(2L, book.getPerson().getId());
+        verify(userRepository).incrementVersion(1L);
+        verify(userRepository).incrementVersion(2L);
+    }
+
+    @Test
+    @DisplayName("Обновление несуществующей книги при включённом кэше второго уровня. Должно вылететь ошибка.")
+    void updateCachedNotExistBook_Test() {
+        BookDto bookDto = BookDto.builder()
+                .id(1L)
+                .userId(1L)
+                .title("test titile 2")
+                .build();
+        when(secondLevelCache.isEnabled()).thenReturn(true);
+        when(bookRepository.findById(1L)).thenReturn(Optional.empty());
+
+        assertThrows(NotFoundException.class, () -> bookService.updateBook(bookDto));
     }
 
     @Test
@@ -302,7 +476,49 @@ public class BookServiceImplTest {
     @Test
     @DisplayName("Удаление книги по id. Должно пройти успешно.")
     void deleteBookWithId_Test() {
+       when(bookRepository.findUserIdForUpdateById(1L)).thenReturn(Optional.of(2L));
+
        assertDoesNotThrow(() -> bookService.deleteBookById(1L));
+       verify(bookRepository).deleteOneById(1L);
+       verify(userRepository).incrementVersionByIds(List.of(2L));
+    }
+
+    @Test
+    @DisplayName("Удаление несуществующей книги. Должно пройти без ошибки, версии не меняются.")
+    void deleteNotExistBook_Test() {
+        when(bookRepository.findUserIdForUpdateById(1L)).thenReturn(Optional.empty());
+
+        assertDoesNotThrow(() -> bookService.deleteBookById(1L));
+        verify(bookRepository, never()).deleteOneById(anyLong());
+        verify(userRepository, never()).incrementVersionByIds(anyCollection());
+    }
+
+    @Test
+    @DisplayName("Удаление всех книг пользователя одним запросом. Должно пройти успешно.")
+    void deleteBooksByUserId_Test() {
+        when(bookRepository.deleteAllByUserId(1L)).thenReturn(3);
+
+        bookService.deleteAllByUserId(1L);
+        verify(bookRepository).deleteAllByUserId(1L);
+        verify(userRepository).incrementVersionByIds(List.of(1L));
+    }
+
+    @Test
+    @DisplayName("Удаление всех книг пользователя при включённом кэше второго уровня. Удаляются сущности.")
+    void deleteCachedBooksByUserId_Test() {
+        List<Book> books = List.of(new Book(), new Book());
+        when(secondLevelCache.isEnabled()).thenReturn(true);
+        when(bookRepository.findAllByUserId(1L)).thenReturn(books);
+
+        bookService.deleteAllByUserId(1L);
+        verify(bookRepository).deleteAll(books);
+        verify(bookRepository, never()).deleteAllByUserId(anyLong());
+    }
+
+    @Test
+    @DisplayName("Удаление всех книг пользователя с user id = null. Должно выкинуть exception.")
+    void deleteBooksByNullUserId_Test() {
+        assertThrows(BadRequestException.class, () -> bookService.deleteAllByUserId(null));
     }
 
 }
@@ -0,0 +1,164 @@
+package com.edu.ulab.app.service;
+
+import com.edu.ulab.app.config.CacheConfig;
+import com.edu.ulab.app.dto.UserDto;
+import com.edu.ulab.app.entity.Person;
+import com.edu.ulab.app.exception.BadRequestException;
+import com.edu.ulab.app.mapper.UserMapper;
+import com.edu.ulab.app.repository.UserRepository;
+import com.edu.ulab.app.service.cache.SecondLevelCache;
+import com.edu.ulab.app.service.impl.UserServiceImpl;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.cache.caffeine.CaffeineCacheManager;
+import org.springframework.cache.transaction.TransactionAwareCacheManagerProxy;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Import;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.junit.jupiter.SpringJUnitConfig;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionSynchronizationUtils;
+
+import java.util.Optional;
+
+import static com.edu.ulab.app.web.constant.CacheConstant.USERS_CACHE;
+import static com.edu.ulab.app.web.constant.CacheConstant.USERS_WITH_BOOKS_CACHE;
+import static com.edu.ulab.app.web.constant.CacheConstant.USER_BOOKS_CACHE;
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Тестирование кэширования {@link UserServiceImpl}.
+ */
+@ActiveProfiles("test")
+@SpringJUnitConfig(UserServiceCacheTest.Config.class)
+@DisplayName("Testing user cache.")
+public class UserServiceCacheTest {
+
+    @Configuration
+    @Import({CacheConfig.class, UserServiceImpl.class})
+    static class Config {
+        @Bean
+        CacheManager cacheManager() {
+            return new CaffeineCacheManager(USERS_CACHE, USERS_WITH_BOOKS_CACHE, USER_BOOKS_CACHE);
+        }
+    }
+
+    @Autowired
+    UserService userService;
+
+    @Autowired
+    CacheManager cacheManager;
+
+    @MockBean
+    SecondLevelCache secondLevelCache;
+
+    @MockBean
+    UserRepository userRepository;
+
+    @MockBean
+    UserMapper userMapper;
+
+    @BeforeEach
+    void setUp() {
+        Person person = new Person();
+        person.setId(1L);
+        UserDto userDto = new UserDto();
+        userDto.setId(1L);
+        userDto.setVersion(0L);
+        when(userRepository.findById(1L)).thenReturn(Optional.of(person));
+        when(userMapper.personToUserDto(person)).thenReturn(userDto);
+        when(userRepository.updateById(1L, "test name", "test title", 11, 0L)).thenReturn(1);
+        when(userRepository.deleteOneById(1L)).thenReturn(1);
+    }
+
+    @AfterEach
+    void tearDown() {
+        cacheManager.getCacheNames().forEach(name -> cacheManager.getCache(name).clear());
+    }
+
+    @Test
+    @DisplayName("Кэш оборачивается для работы с транзакциями.")
+    void transactionAwareCacheManager_Test() {
+        assertInstanceOf(TransactionAwareCacheManagerProxy.class, cacheManager);
+    }
+
+    @Test
+    @DisplayName("Повторное чтение пользователя. Должно вернуться из кэша.")
+    void getUserByIdCached_Test() {
+        UserDto first = userService.getUserById(1L);
+        UserDto second = userService.getUserById(1L);
+
+        assertSame(first, second);
+        verify(userRepository, times(1)).findById(1L);
+    }
+
+    @Test
+    @DisplayName("Чтение пользователя с id null. Должно выпасть исключение, в кэш ничего не попадает.")
+    void getUserByNullIdNotCached_Test() {
+        assertThrows(BadRequestException.class, () -> userService.getUserById(null));
+        assertThrows(BadRequestException.class, () -> userService.getUserWithBookIds(null));
+    }
+
+    @Test
+    @DisplayName("Обновление пользователя. Должно сбросить его из кэша.")
+    void updateUserEvicts_Test() {
+        userService.getUserById(1L);
+
+        userService.updateUser(updateRequest());
+
+        assertNull(cache(USERS_CACHE).get(1L));
+    }
+
+    @Test
+    @DisplayName("Удаление пользователя. Должно сбросить его из кэша.")
+    void deleteUserEvicts_Test() {
+        userService.getUserById(1L);
+        cache(USER_BOOKS_CACHE).put(1L, "books");
+
+        userService.deleteUserById(1L);
+
+        assertNull(cache(USERS_CACHE).get(1L));
+        assertNull(cache(USER_BOOKS_CACHE).get(1L));
+    }
+
+    @Test
+    @DisplayName("Обновление пользователя в транзакции. Кэш должен сброситься только после фиксации.")
+    void updateUserEvictsAfterCommit_Test() {
+        userService.getUserById(1L);
+
+        TransactionSynchronizationManager.initSynchronization();
+        try {
+            userService.updateUser(updateRequest());
+            assertNotNull(cache(USERS_CACHE).get(1L));
+
+            TransactionSynchronizationUtils.triggerAfterCommit();
+            assertNull(cache(USERS_CACHE).get(1L));
+        } finally {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+    }
+
+    private Cache cache(String name) {
+        return cacheManager.getCache(name);
+    }
+
+    private UserDto updateRequest() {
+        UserDto userDto = new UserDto();
+        userDto.setId(1L);
+        userDto.setFullName("test name");
+        userDto.setTitle("test title");
+        userDto.setAge(11);
+        userDto.setVersion(0L);
+        return userDto;
+    }
+}
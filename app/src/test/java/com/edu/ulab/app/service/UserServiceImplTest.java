@@ -1,12 +1,16 @@
 package com.edu.ulab.app.service;
 
 import com.edu.ulab.app.dto.BookDto;
+import com.edu.ulab.app.dto.UserBooksDto;
 import com.edu.ulab.app.dto.UserDto;
 import com.edu.ulab.app.entity.Person;
 import com.edu.ulab.app.exception.BadRequestException;
+import com.edu.ulab.app.exception.ConflictException;
 import com.edu.ulab.app.exception.NotFoundException;
 import com.edu.ulab.app.mapper.UserMapper;
 import com.edu.ulab.app.repository.UserRepository;
+import com.edu.ulab.app.repository.projection.UserBookIdProjection;
+import com.edu.ulab.app.service.cache.SecondLevelCache;
 import com.edu.ulab.app.service.impl.UserServiceImpl;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
@@ -16,9 +20,17 @@ import org.mockito.Mock;
 import org.springframework.test.context.ActiveProfiles;
 import org.springframework.test.context.junit.jupiter.SpringExtension;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Optional;
+import java.util.stream.Stream;
 
 import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 /**
@@ -37,6 +49,9 @@ public class UserServiceImplTest {
     @Mock
     UserMapper userMapper;
 
+    @Mock
+    SecondLevelCache secondLevelCache;
+
     @Test
     @DisplayName("Создание пользователя. Должно пройти успешно.")
     void savePerson_Test() {
@@ -88,41 +103,151 @@ public class UserServiceImplTest {
         userDto.setAge(11);
         userDto.setFullName("test name");
         userDto.setTitle("test title");
-
-        Person person  = new Person();
-        person.setId(1L);
-        person.setFullName("test name");
-        person.setAge(11);
-        person.setTitle("test title");
-
-        Person updatedPerson  = new Person();
-        updatedPerson.setId(1L);
-        updatedPerson.setFullName("test name");
-        updatedPerson.setAge(11);
-        updatedPerson.setTitle("test title");
-
-        UserDto result = new UserDto();
-        result.setId(1L);
-        result.setAge(11);
-        result.setFullName("test name");
-        result.setTitle("test title");
+        userDto.setVersion(2L);
 
 
         //when
 
-        when(userMapper.userDtoToPerson(userDto)).thenReturn(person);
-        when(userRepository.save(person)).thenReturn(updatedPerson);
-        when(userMapper.personToUserDto(updatedPerson)).thenReturn(result);
+        when(userRepository.updateById(1L, "test name", "test title", 11, 2L)).thenReturn(1);
 
 
         //then
 
         UserDto userDtoResult = userService.updateUser(userDto);
+        verify(userRepository, never()).findById(1L);
         assertEquals(1L, userDtoResult.getId());
         assertEquals(11, userDtoResult.getAge());
         assertEquals("test name", userDtoResult.getFullName());
         assertEquals("test title", userDtoResult.getTitle());
+        assertEquals(3L, userDtoResult.getVersion());
+
+    }
+
+    @Test
+    @DisplayName("Обновление пользователя без версии. Возвращается новая версия из базы.")
+    void updatePersonWithoutVersion_Test() {
+        //given
+
+        UserDto userDto = new UserDto();
+        userDto.setId(1L);
+        userDto.setAge(11);
+        userDto.setFullName("test name");
+        userDto.setTitle("test title");
+
+
+        //when
+
+        when(userRepository.updateById(1L, "test name", "test title", 11, null)).thenReturn(1);
+        when(userRepository.findVersionById(1L)).thenReturn(Optional.of(5L));
+
+
+        //then
+
+        assertEquals(5L, userService.updateUser(userDto).getVersion());
+    }
+
+    @Test
+    @DisplayName("Обновление пользователя с устаревшей версией. Должно вылететь ошибка конфликта.")
+    void updatePersonWithStaleVersion_Test() {
+        //given
+
+        UserDto userDto = UserDto.builder()
+                .id(1L)
+                .age(11)
+                .fullName("test name")
+                .title("test title")
+                .version(2L)
+                .build();
+
+        //when
+
+        when(userRepository.updateById(1L, "test name", "test title", 11, 2L)).thenReturn(0);
+        when(userRepository.findVersionById(1L)).thenReturn(Optional.of(3L));
+
+        //then
+
+        assertThrows(ConflictException.class, () -> userService.updateUser(userDto));
+    }
+
+    @Test
+    @DisplayName("Обновление несуществующего пользователя. Должно вылететь ошибка.")
+    void updateNotExistPerson_Test() {
+        //given
+
+        UserDto userDto = UserDto.builder()
+                .id(1L)
+                .age(11)
+                .fullName("test name")
+                .title("test title")
+                .build();
+
+        //when
+
+        when(userRepository.updateById(1L, "test name", "test title", 11, null)).thenReturn(0);
+        when(userRepository.findVersionById(1L)).thenReturn(Optional.empty());
+
+        //then
+
+        assertThrows(NotFoundException.class, () -> userService.updateUser(userDto));
+    }
+
+    @Test
+    @DisplayName("Обновление пользователя при включённом кэше второго уровня. Изменяется сущность, без JPQL UPDATE.")
+    void updateCachedPerson_Test() {
+        //given
+
+        Person person = new Person();
+        person.setId(1L);
+        person.setVersion(2L);
+
+        UserDto userDto = UserDto.builder()
+                .id(1L)
+                .age(11)
+                .fullName("test name")
+                .title("test title")
+                .version(2L)
+                .build();
+
+        //when
+
+        when(secondLevelCache.isEnabled()).thenReturn(true);
+        when(userRepository.findById(1L)).thenReturn(Optional.of(person));
+
+        //then
+
+        userService.updateUser(userDto);
+        verify(userRepository).flush();
+        verify(userRepository, never()).updateById(anyLong(), any(), any(), anyInt(), any());
+        assertEquals("test name", person.getFullName());
+        assertEquals(11, person.getAge());
+    }
+
+    @Test
+    @DisplayName("Обновление пользователя с устаревшей версией при включённом кэше второго уровня. Ошибка конфликта.")
+    void updateCachedPersonWithStaleVersion_Test() {
+        //given
+
+        Person person = new Person();
+        person.setId(1L);
+        person.setVersion(3L);
 
+        UserDto userDto = UserDto.builder()
+                .id(1L)
+                .age(11)
+                .fullName("test name")
+                .title("test title")
+                .version(2L)
+                .build();
+
+        //when
+
+        when(secondLevelCache.isEnabled()).thenReturn(true);
+        when(userRepository.findById(1L)).thenReturn(Optional.of(person));
+
+        //then
+
+        assertThrows(ConflictException.class, () -> userService.updateUser(userDto));
+        assertNull(person.getFullName());
     }
 
     @Test
@@ -186,6 +311,77 @@ public class UserServiceImplTest {
         assertThrows(BadRequestException.class, () -> userService.getUserById(null));
     }
 
+    @Test
+    @DisplayName("Получение пользователя с id книг одним запросом. Должно пройти успешно.")
+    void getUserWithBookIds_Test() {
+        Long userId = 2L;
+
+        when(userRepository.findWithBookIdsById(userId)).thenReturn(List.of(
+                new UserBookIdProjection(userId, "Marsel", "student", 13, 10L, 0L),
+                new UserBookIdProjection(userId, "Marsel", "student", 13, 11L, 0L)));
+
+        UserBooksDto givenUser = userService.getUserWithBookIds(userId);
+        assertEquals(userId, givenUser.getId());
+        assertEquals(13, givenUser.getAge());
+        assertEquals("Marsel", givenUser.getFullName());
+        assertEquals("student", givenUser.getTitle());
+        assertEquals(List.of(10L, 11L), givenUser.getBookIdList());
+    }
+
+    @Test
+    @DisplayName("Получение пользователя без книг. Должен вернуться пустой список id книг.")
+    void getUserWithoutBooks_Test() {
+        Long userId = 2L;
+
+        when(userRepository.findWithBookIdsById(userId)).thenReturn(List.of(
+                new UserBookIdProjection(userId, "Marsel", "student", 13, null, 0L)));
+
+        assertEquals(List.of(), userService.getUserWithBookIds(userId).getBookIdList());
+    }
+
+    @Test
+    @DisplayName("Получение пользователя с книгами по id которого нет. Должно выкинуть exception.")
+    void getUserWithBookIdsNoExistId_Test() {
+        when(userRepository.findWithBookIdsById(2L)).thenReturn(List.of());
+
+        assertThrows(NotFoundException.class, () -> userService.getUserWithBookIds(2L));
+    }
+
+    @Test
+    @DisplayName("Версия пользователя. Читается без полей пользователя и его книг.")
+    void getUserVersion_Test() {
+        when(userRepository.findVersionById(2L)).thenReturn(Optional.of(3L));
+
+        assertEquals(3L, userService.getUserVersion(2L));
+        verify(userRepository, never()).findWithBookIdsById(any());
+    }
+
+    @Test
+    @DisplayName("Версия пользователя по id которого нет. Должно выкинуть exception.")
+    void getUserVersionNoExistId_Test() {
+        when(userRepository.findVersionById(2L)).thenReturn(Optional.empty());
+
+        assertThrows(NotFoundException.class, () -> userService.getUserVersion(2L));
+    }
+
+    @Test
+    @DisplayName("Выгрузка всех пользователей с книгами. Строки одного пользователя должны собраться в один объект.")
+    void forEachUserWithBookIds_Test() {
+        when(userRepository.streamAllWithBookIds()).thenReturn(Stream.of(
+                new UserBookIdProjection(1L, "Marsel", "student", 13, 10L, 0L),
+                new UserBookIdProjection(1L, "Marsel", "student", 13, 11L, 0L),
+                new UserBookIdProjection(2L, "Ivan", "reader", 20, null, 0L),
+                new UserBookIdProjection(3L, "Petr", "writer", 30, 12L, 0L)));
+
+        List<UserBooksDto> exported = new ArrayList<>();
+        userService.forEachUserWithBookIds(exported::add);
+
+        assertEquals(List.of(1L, 2L, 3L), exported.stream().map(UserBooksDto::getId).toList());
+        assertEquals(List.of(10L, 11L), exported.get(0).getBookIdList());
+        assertEquals(List.of(), exported.get(1).getBookIdList());
+        assertEquals(List.of(12L), exported.get(2).getBookIdList());
+    }
+
     @Test
     @DisplayName("Удаление пользователя по id = null. Должно выкинуть exception.")
     void deleteBookWithNullId_Test() {
@@ -195,6 +391,31 @@ public class UserServiceImplTest {
     @Test
     @DisplayName("Удаление пользователя по id. Должно пройти успешно.")
     void deleteBookWithId_Test() {
+        when(userRepository.deleteOneById(1L)).thenReturn(1);
+
         assertDoesNotThrow(() -> userService.deleteUserById(1L));
+        verify(userRepository).deleteOneById(1L);
+    }
+
+    @Test
+    @DisplayName("Удаление несуществующего пользователя. Не ошибка, пользователь не читается.")
+    void deleteNotExistPerson_Test() {
+        when(userRepository.deleteOneById(2L)).thenReturn(0);
+
+        assertDoesNotThrow(() -> userService.deleteUserById(2L));
+        verify(userRepository, never()).findById(2L);
+    }
+
+    @Test
+    @DisplayName("Удаление пользователя при включённом кэше второго уровня. Удаляется сущность, без JPQL DELETE.")
+    void deleteCachedPerson_Test() {
+        Person person = new Person();
+        person.setId(1L);
+        when(secondLevelCache.isEnabled()).thenReturn(true);
+        when(userRepository.findById(1L)).thenReturn(Optional.of(person));
+
+        userService.deleteUserById(1L);
+        verify(userRepository).delete(person);
+        verify(userRepository, never()).deleteOneById(1L);
     }
 }
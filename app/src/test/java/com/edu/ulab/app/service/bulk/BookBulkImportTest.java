@@ -0,0 +1,114 @@
+package com.edu.ulab.app.service.bulk;
+
+import com.edu.ulab.app.config.SystemJpaTest;
+import com.edu.ulab.app.dto.BookImportDto;
+import com.edu.ulab.app.exception.BadRequestException;
+import com.edu.ulab.app.service.cache.SecondLevelCache;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.jackson.JacksonAutoConfiguration;
+import org.springframework.context.annotation.Import;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.annotation.Rollback;
+import org.springframework.test.context.jdbc.Sql;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * Тесты импорта книг через COPY {@link BookBulkImport}.
+ */
+@SystemJpaTest
+@Import({BookBulkImport.class, SecondLevelCache.class, JacksonAutoConfiguration.class})
+public class BookBulkImportTest {
+    @Autowired
+    BookBulkImport bookBulkImport;
+    @Autowired
+    JdbcTemplate jdbcTemplate;
+
+    private static InputStream body(String text) {
+        return new ByteArrayInputStream(text.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private long booksOf(long userId) {
+        return jdbcTemplate.queryForObject("SELECT count(*) FROM ulab_edu.book WHERE user_id = ?", Long.class, userId);
+    }
+
+    private long versionOf(long userId) {
+        return jdbcTemplate.queryForObject("SELECT version FROM ulab_edu.person WHERE id = ?", Long.class, userId);
+    }
+
+    @DisplayName("Импорт CSV. Подходящие строки вставлены, остальные отклонены с номером строки и причиной, "
+            + "версия пользователей с книгами выросла на 1")
+    @Test
+    @Rollback
+    @Sql({"classpath:sql/1_clear_schema.sql",
+            "classpath:sql/2_insert_person_data.sql"
+    })
+    void importCsv_thenRejectInvalidRows() {
+        //Given
+        String csv = "title,author,page_count,user_id\n"
+                + "\"Dead souls, vol. 1\",Nikolai Gogol,352,1001\n"
+                + "Dead souls,Nikolai Gogol,0,1001\n"
+                + "Dead souls,Nikolai Gogol,352,42\n"
+                + "Dead souls,Nikolai Gogol,352,not a number\n"
+                + "War and peace,Leo Tolstoy,1225,6006\n";
+
+        //When
+        BookImportDto result = bookBulkImport.importBooks(body(csv), BookImportFormat.CSV);
+
+        //Then
+        assertThat(result.getReceivedRows()).isEqualTo(5);
+        assertThat(result.getImportedRows()).isEqualTo(2);
+        assertThat(result.getRejectedRows()).isEqualTo(3);
+        assertThat(result.getRejectedRowSample())
+                .extracting(rejectedRow -> rejectedRow.getRow() + ": " + rejectedRow.getReason())
+                .containsExactly(
+                        "2: " + BookImportRejection.PAGE_COUNT.getMessage(),
+                        "3: " + BookImportRejection.USER.getMessage(),
+                        "4: " + BookImportRejection.USER.getMessage());
+        assertThat(booksOf(1001)).isEqualTo(1);
+        assertThat(booksOf(6006)).isEqualTo(1);
+        assertThat(versionOf(1001)).isEqualTo(1);
+        assertThat(versionOf(6006)).isEqualTo(1);
+    }
+
+    @DisplayName("Импорт NDJSON. Пустые строки пропущены, номер отклонённой строки равен номеру строки в теле")
+    @Test
+    @Rollback
+    @Sql({"classpath:sql/1_clear_schema.sql",
+            "classpath:sql/2_insert_person_data.sql"
+    })
+    void importNdjson_thenSkipBlankLines() {
+        //Given
+        String ndjson = "{\"title\":\"Dead souls\",\"author\":\"Nikolai Gogol\",\"pageCount\":352,\"userId\":1001}\n"
+                + "\n"
+                + "{\"title\":\"Dead souls\",\"author\":\"Nikolai Gogol\",\"pageCount\":352,\"userId\":42}\n";
+
+        //When
+        BookImportDto result = bookBulkImport.importBooks(body(ndjson), BookImportFormat.NDJSON);
+
+        //Then
+        assertThat(result.getReceivedRows()).isEqualTo(2);
+        assertThat(result.getImportedRows()).isEqualTo(1);
+        assertThat(result.getRejectedRowSample())
+                .extracting(rejectedRow -> rejectedRow.getRow())
+                .containsExactly(3L);
+    }
+
+    @DisplayName("CSV с неверным числом колонок. Должно выкинуть exception")
+    @Test
+    @Rollback
+    @Sql({"classpath:sql/1_clear_schema.sql"
+    })
+    void importCsvWithMissingColumn_thenThrow() {
+        String csv = "title,author,page_count,user_id\nDead souls,Nikolai Gogol,352\n";
+
+        assertThrows(BadRequestException.class, () -> bookBulkImport.importBooks(body(csv), BookImportFormat.CSV));
+    }
+}
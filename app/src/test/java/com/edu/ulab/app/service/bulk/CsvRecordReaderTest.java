@@ -0,0 +1,60 @@
+package com.edu.ulab.app.service.bulk;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Тестирование чтения CSV {@link CsvRecordReader} и проверки строк импорта {@link BookImportRejection}.
+ */
+@DisplayName("Testing CSV reading and row checks of book import.")
+public class CsvRecordReaderTest {
+
+    private static List<List<String>> readAll(String csv) throws IOException {
+        CsvRecordReader reader = new CsvRecordReader(new StringReader(csv));
+        List<List<String>> records = new ArrayList<>();
+        List<String> values;
+        while ((values = reader.read()) != null) {
+            records.add(values);
+        }
+        return records;
+    }
+
+    @Test
+    @DisplayName("Кавычки и переводы строк. Разбирается как COPY в формате csv, пустое без кавычек — null.")
+    void read_Test() throws IOException {
+        List<List<String>> records = readAll("title,author,page_count,user_id\r\n"
+                + "\"Dead souls, vol. 1\",\"Nikolai \"\"N.\"\" Gogol\",352,1\n"
+                + "\"Two\nlines\",,\"\",2");
+
+        assertEquals(3, records.size());
+        assertEquals(List.of("Dead souls, vol. 1", "Nikolai \"N.\" Gogol", "352", "1"), records.get(1));
+        assertEquals(Arrays.asList("Two\nlines", null, "", "2"), records.get(2));
+    }
+
+    @Test
+    @DisplayName("Незакрытая кавычка и символы после кавычки. Должно выкинуть exception.")
+    void readInvalid_Test() {
+        assertThrows(IllegalArgumentException.class, () -> readAll("\"not closed,1\n"));
+        assertThrows(IllegalArgumentException.class, () -> readAll("\"quoted\"tail,1\n"));
+    }
+
+    @Test
+    @DisplayName("Проверка строки. Причина отказа по первому неверному значению, пользователь проверяется при вставке.")
+    void check_Test() {
+        assertNull(BookImportRejection.check("Dead souls", "Gogol", "352", "1"));
+        assertEquals(BookImportRejection.TITLE, BookImportRejection.check("  ", "Gogol", "352", "1"));
+        assertEquals(BookImportRejection.TITLE, BookImportRejection.check("x".repeat(51), "Gogol", "352", "1"));
+        assertEquals(BookImportRejection.AUTHOR, BookImportRejection.check("Dead souls", null, "352", "1"));
+        assertEquals(BookImportRejection.PAGE_COUNT, BookImportRejection.check("Dead souls", "Gogol", "0", "1"));
+        assertEquals(BookImportRejection.PAGE_COUNT, BookImportRejection.check("Dead souls", "Gogol", "3.5", "1"));
+        assertEquals(BookImportRejection.USER, BookImportRejection.check("Dead souls", "Gogol", "352", "-1"));
+    }
+}
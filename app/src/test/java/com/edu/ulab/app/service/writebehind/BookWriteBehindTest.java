@@ -0,0 +1,231 @@
+package com.edu.ulab.app.service.writebehind;
+
+import com.edu.ulab.app.dto.BookDto;
+import com.edu.ulab.app.service.cache.SecondLevelCache;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.cache.concurrent.ConcurrentMapCacheManager;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static com.edu.ulab.app.web.constant.CacheConstant.USERS_WITH_BOOKS_CACHE;
+import static com.edu.ulab.app.web.constant.SQLQueryBookConstant.INSERT_WITH_ID_SQL;
+import static com.edu.ulab.app.web.constant.SQLQueryBookConstant.SELECT_NEXT_ID_SQL;
+import static com.edu.ulab.app.web.constant.SQLQueryUserConstant.INCREMENT_VERSION_SQL;
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Тестирование отложенной записи книг {@link BookWriteBehind}.
+ */
+@DisplayName("Testing write-behind of books.")
+public class BookWriteBehindTest {
+
+    private final JdbcTemplate jdbcTemplate = mock(JdbcTemplate.class);
+    private final ConcurrentMapCacheManager cacheManager = new ConcurrentMapCacheManager();
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+
+    //books of every executed batch insert
+    private final List<List<BookDto>> insertedBatches = new CopyOnWriteArrayList<>();
+
+    private BookWriteBehind writeBehind;
+
+    @AfterEach
+    void tearDown() throws InterruptedException {
+        writeBehind.close();
+    }
+
+    private BookWriteBehind writeBehind(int queueCapacity, int batchSize, Duration maxDelay) {
+        when(jdbcTemplate.queryForObject(SELECT_NEXT_ID_SQL, Long.class)).thenReturn(50L, 100L, 150L);
+        writeBehind = new BookWriteBehind(jdbcTemplate, new TransactionTemplate(mock(PlatformTransactionManager.class)),
+                cacheManager, mock(SecondLevelCache.class), registry, queueCapacity, batchSize, maxDelay, Duration.ofMillis(50));
+        return writeBehind;
+    }
+
+    @SuppressWarnings("unchecked")
+    private void onInsert(CountDownLatch started, CountDownLatch release, Long failingUserId) {
+        when(jdbcTemplate.batchUpdate(eq(INSERT_WITH_ID_SQL), anyCollection(), anyInt(), any()))
+                .thenAnswer(invocation -> {
+                    List<BookDto> books = new ArrayList<>((Collection<BookDto>) invocation.getArgument(1));
+                    started.countDown();
+                    release.await(5, TimeUnit.SECONDS);
+                    if (books.stream().anyMatch(book -> book.getUserId().equals(failingUserId))) {
+                        throw new DataIntegrityViolationException("Key (user_id) is not present in table person");
+                    }
+                    insertedBatches.add(books);
+                    return new int[0][];
+                });
+    }
+
+    private static List<BookDto> books(long userId, int count) {
+        return IntStream.range(0, count)
+                .mapToObj(i -> BookDto.builder()
+                        .userId(userId)
+                        .title("title " + i)
+                        .author("author")
+                        .pageCount(100)
+                        .build())
+                .collect(ArrayList::new, ArrayList::add, ArrayList::addAll);
+    }
+
+    @Test
+    @DisplayName("Выдача id. Диапазоны по шагу последовательности, версия 0.")
+    void assignIds_Test() throws Exception {
+        onInsert(new CountDownLatch(1), new CountDownLatch(0), null);
+        BookWriteBehind writeBehind = writeBehind(100, 500, Duration.ZERO);
+
+        List<BookDto> first = writeBehind.enqueue(books(1L, 30)).get(5, TimeUnit.SECONDS);
+        List<BookDto> second = writeBehind.enqueue(books(1L, 30)).get(5, TimeUnit.SECONDS);
+
+        assertEquals(1L, first.get(0).getId());
+        assertEquals(30L, first.get(29).getId());
+        assertEquals(31L, second.get(0).getId());
+        assertEquals(51L, second.get(20).getId());
+        assertEquals(60L, second.get(29).getId());
+        assertTrue(second.stream().allMatch(book -> book.getVersion() == 0L));
+    }
+
+    @Test
+    @DisplayName("Несколько запросов. Записываются одной пачкой, кэш пользователя сбрасывается после коммита.")
+    void groupCommit_Test() throws Exception {
+        onInsert(new CountDownLatch(1), new CountDownLatch(0), null);
+        cacheManager.getCache(USERS_WITH_BOOKS_CACHE).put(2L, "user without books");
+        BookWriteBehind writeBehind = writeBehind(100, 6, Duration.ofSeconds(5));
+
+        List<CompletableFuture<List<BookDto>>> results = List.of(
+                writeBehind.enqueue(books(1L, 2)),
+                writeBehind.enqueue(books(2L, 2)),
+                writeBehind.enqueue(books(3L, 2)));
+        for (CompletableFuture<List<BookDto>> result : results) {
+            result.get(5, TimeUnit.SECONDS);
+        }
+
+        assertEquals(1, insertedBatches.size());
+        assertEquals(6, insertedBatches.get(0).size());
+        assertNull(cacheManager.getCache(USERS_WITH_BOOKS_CACHE).get(2L));
+        assertEquals(6, registry.get(BookWriteBehind.BATCH_SIZE_SUMMARY).summary().totalAmount());
+    }
+
+    @Test
+    @DisplayName("Пачка из нескольких запросов. Версия пользователя увеличивается на 1 за каждый его запрос.")
+    @SuppressWarnings("unchecked")
+    void groupVersionIncrements_Test() throws Exception {
+        onInsert(new CountDownLatch(1), new CountDownLatch(0), null);
+        List<Map<Long, Long>> increments = new CopyOnWriteArrayList<>();
+        when(jdbcTemplate.batchUpdate(eq(INCREMENT_VERSION_SQL), anyCollection(), anyInt(), any()))
+                .thenAnswer(invocation -> {
+                    Collection<Map.Entry<Long, Long>> entries = invocation.getArgument(1);
+                    increments.add(entries.stream().collect(Collectors.toMap(Map.Entry::getKey, Map.Entry::getValue)));
+                    return new int[0][];
+                });
+        BookWriteBehind writeBehind = writeBehind(100, 6, Duration.ofSeconds(5));
+
+        List<CompletableFuture<List<BookDto>>> results = List.of(
+                writeBehind.enqueue(books(1L, 2)),
+                writeBehind.enqueue(books(1L, 2)),
+                writeBehind.enqueue(books(2L, 2)));
+        for (CompletableFuture<List<BookDto>> result : results) {
+            result.get(5, TimeUnit.SECONDS);
+        }
+
+        assertEquals(1, insertedBatches.size());
+        assertEquals(List.of(Map.of(1L, 2L, 2L, 1L)), increments);
+    }
+
+    @Test
+    @DisplayName("Ошибка пачки. Запросы повторяются по одному, ошибку получает только неверный запрос.")
+    void groupFailure_Test() throws Exception {
+        onInsert(new CountDownLatch(1), new CountDownLatch(0), 2L);
+        BookWriteBehind writeBehind = writeBehind(100, 3, Duration.ofSeconds(5));
+
+        CompletableFuture<List<BookDto>> first = writeBehind.enqueue(books(1L, 1));
+        CompletableFuture<List<BookDto>> failing = writeBehind.enqueue(books(2L, 1));
+        CompletableFuture<List<BookDto>> third = writeBehind.enqueue(books(3L, 1));
+
+        assertEquals(1, first.get(5, TimeUnit.SECONDS).size());
+        assertEquals(1, third.get(5, TimeUnit.SECONDS).size());
+        ExecutionException e = assertThrows(ExecutionException.class, () -> failing.get(5, TimeUnit.SECONDS));
+        assertInstanceOf(DataIntegrityViolationException.class, e.getCause());
+        assertEquals(2, insertedBatches.size());
+        assertEquals(1, registry.get(BookWriteBehind.FAILED_COUNTER).counter().count());
+    }
+
+    @Test
+    @DisplayName("Полная очередь. Запрос отклоняется после ожидания, очередь дописывается при остановке.")
+    void queueFull_Test() throws Exception {
+        CountDownLatch insertStarted = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        onInsert(insertStarted, release, null);
+        BookWriteBehind writeBehind = writeBehind(1, 1, Duration.ZERO);
+
+        CompletableFuture<List<BookDto>> writing = writeBehind.enqueue(books(1L, 1));
+        assertTrue(insertStarted.await(5, TimeUnit.SECONDS));
+        CompletableFuture<List<BookDto>> queued = writeBehind.enqueue(books(2L, 1));
+
+        assertThrows(RejectedExecutionException.class, () -> writeBehind.enqueue(books(3L, 1)));
+
+        release.countDown();
+        writeBehind.close();
+        assertTrue(writing.isDone());
+        assertTrue(queued.isDone());
+        assertEquals(2, insertedBatches.size());
+        assertThrows(RejectedExecutionException.class, () -> writeBehind.enqueue(books(4L, 1)));
+    }
+
+    @Test
+    @DisplayName("Остановка во время постановки в очередь. Каждый принятый запрос записывается.")
+    void closeWhileEnqueue_Test() throws Exception {
+        onInsert(new CountDownLatch(1), new CountDownLatch(0), null);
+        BookWriteBehind writeBehind = writeBehind(100, 500, Duration.ZERO);
+        List<CompletableFuture<List<BookDto>>> accepted = new CopyOnWriteArrayList<>();
+        ExecutorService producers = Executors.newFixedThreadPool(4);
+        CountDownLatch enqueued = new CountDownLatch(4);
+        for (long userId = 1; userId <= 4; userId++) {
+            long producerUserId = userId;
+            producers.execute(() -> {
+                try {
+                    while (true) {
+                        accepted.add(writeBehind.enqueue(books(producerUserId, 1)));
+                        enqueued.countDown();
+                    }
+                } catch (RejectedExecutionException e) {
+                    //stopped or the queue is full
+                }
+            });
+        }
+
+        assertTrue(enqueued.await(5, TimeUnit.SECONDS));
+        writeBehind.close();
+        producers.shutdown();
+        assertTrue(producers.awaitTermination(5, TimeUnit.SECONDS));
+
+        for (CompletableFuture<List<BookDto>> result : accepted) {
+            result.get(5, TimeUnit.SECONDS);
+        }
+    }
+}
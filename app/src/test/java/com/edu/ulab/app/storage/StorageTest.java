@@ -0,0 +1,199 @@
+package com.edu.ulab.app.storage;
+
+import com.edu.ulab.app.dto.BookDto;
+import com.edu.ulab.app.dto.UserDto;
+import com.edu.ulab.app.exception.ConflictException;
+import com.edu.ulab.app.exception.NotFoundException;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Тестирование хранилища {@link Storage}.
+ */
+@DisplayName("Testing in-memory storage.")
+public class StorageTest {
+
+    private final Storage storage = new Storage();
+
+    private UserDto user(String title) {
+        return UserDto.builder()
+                .fullName("Test User")
+                .title(title)
+                .age(30)
+                .build();
+    }
+
+    private BookDto book(Long userId, String title) {
+        return BookDto.builder()
+                .userId(userId)
+                .title(title)
+                .author("test author")
+                .pageCount(100)
+                .build();
+    }
+
+    @Test
+    @DisplayName("Сохранение пользователя и книг. Должны выдаваться идентификаторы и связь с книгами.")
+    void saveUserWithBooks_Test() {
+        UserDto savedUser = storage.saveUser(user("reader"));
+        BookDto first = storage.saveBook(book(savedUser.getId(), "first"));
+        BookDto second = storage.saveBook(book(savedUser.getId(), "second"));
+
+        assertNotNull(savedUser.getId());
+        assertEquals(List.of(first.getId(), second.getId()), storage.findBookIdsByUserId(savedUser.getId()));
+        assertEquals(List.of(first, second), storage.findBooksByUserId(savedUser.getId()));
+    }
+
+    @Test
+    @DisplayName("Сохранение книги пользователя, которого нет. Должно выкинуть exception.")
+    void saveBookWithNoExistUser_Test() {
+        assertThrows(NotFoundException.class, () -> storage.saveBook(book(100L, "orphan")));
+    }
+
+    @Test
+    @DisplayName("Изменение полученного объекта не должно менять хранилище.")
+    void returnedCopy_Test() {
+        UserDto savedUser = storage.saveUser(user("reader"));
+        savedUser.setTitle("changed");
+
+        assertEquals("reader", storage.findUserById(savedUser.getId()).orElseThrow().getTitle());
+    }
+
+    @Test
+    @DisplayName("Перенос книги другому пользователю. Книга должна переместиться в индексе.")
+    void moveBook_Test() {
+        Long firstUserId = storage.saveUser(user("first")).getId();
+        Long secondUserId = storage.saveUser(user("second")).getId();
+        BookDto saved = storage.saveBook(book(firstUserId, "book"));
+
+        saved.setUserId(secondUserId);
+        storage.updateBook(saved);
+
+        assertEquals(List.of(), storage.findBookIdsByUserId(firstUserId));
+        assertEquals(List.of(saved.getId()), storage.findBookIdsByUserId(secondUserId));
+        assertEquals(secondUserId, storage.findBookById(saved.getId()).orElseThrow().getUserId());
+    }
+
+    @Test
+    @DisplayName("Обновление с версией. Версия растёт, устаревшая версия должна выкинуть exception.")
+    void updateWithVersion_Test() {
+        Long userId = storage.saveUser(user("reader")).getId();
+        BookDto savedBook = storage.saveBook(book(userId, "book"));
+        UserDto savedUser = storage.findUserById(userId).orElseThrow();
+
+        savedUser.setTitle("writer");
+        assertEquals(2L, storage.updateUser(savedUser).orElseThrow().getVersion());
+        savedBook.setTitle("changed");
+        assertEquals(1L, storage.updateBook(savedBook).orElseThrow().getVersion());
+
+        assertThrows(ConflictException.class, () -> storage.updateUser(savedUser));
+        assertThrows(ConflictException.class, () -> storage.updateBook(savedBook));
+        assertEquals("writer", storage.findUserById(savedUser.getId()).orElseThrow().getTitle());
+        assertEquals(1L, storage.findBookById(savedBook.getId()).orElseThrow().getVersion());
+
+        savedUser.setVersion(null);
+        assertEquals(3L, storage.updateUser(savedUser).orElseThrow().getVersion());
+    }
+
+    @Test
+    @DisplayName("Добавление, перенос и удаление книг. Версия пользователя растёт на 1 за вызов.")
+    void bookWritesIncrementUserVersion_Test() {
+        Long firstUserId = storage.saveUser(user("first")).getId();
+        Long secondUserId = storage.saveUser(user("second")).getId();
+
+        List<BookDto> saved = storage.saveBooks(List.of(book(firstUserId, "first"), book(firstUserId, "second")));
+        assertEquals(1L, storage.findUserById(firstUserId).orElseThrow().getVersion());
+
+        BookDto moved = saved.get(0);
+        moved.setUserId(secondUserId);
+        storage.updateBook(moved);
+        assertEquals(2L, storage.findUserById(firstUserId).orElseThrow().getVersion());
+        assertEquals(1L, storage.findUserById(secondUserId).orElseThrow().getVersion());
+
+        BookDto renamed = storage.findBookById(moved.getId()).orElseThrow();
+        renamed.setTitle("renamed");
+        storage.updateBook(renamed);
+        assertEquals(1L, storage.findUserById(secondUserId).orElseThrow().getVersion());
+
+        storage.deleteBookById(moved.getId());
+        assertEquals(2L, storage.findUserById(secondUserId).orElseThrow().getVersion());
+        storage.deleteBooksByUserId(firstUserId);
+        storage.deleteBooksByUserId(firstUserId);
+        assertEquals(3L, storage.findUserById(firstUserId).orElseThrow().getVersion());
+    }
+
+    @Test
+    @DisplayName("Страницы пользователей и книг. Должны начинаться после указанного id.")
+    void findPagesAfter_Test() {
+        Long firstUserId = storage.saveUser(user("first")).getId();
+        Long secondUserId = storage.saveUser(user("second")).getId();
+        Long thirdUserId = storage.saveUser(user("third")).getId();
+        BookDto first = storage.saveBook(book(firstUserId, "first"));
+        BookDto second = storage.saveBook(book(firstUserId, "second"));
+        BookDto third = storage.saveBook(book(firstUserId, "third"));
+
+        assertEquals(List.of(secondUserId, thirdUserId), storage.findUsersAfter(firstUserId, 5).stream()
+                .map(UserDto::getId).toList());
+        assertEquals(List.of(firstUserId), storage.findUsersAfter(0, 1).stream()
+                .map(UserDto::getId).toList());
+        assertEquals(List.of(second), storage.findBooksByUserIdAfter(firstUserId, first.getId(), 1));
+        assertEquals(List.of(), storage.findBooksByUserIdAfter(firstUserId, third.getId(), 5));
+    }
+
+    @Test
+    @DisplayName("Удаление пользователя. Должны удалиться и его книги.")
+    void deleteUserWithBooks_Test() {
+        Long userId = storage.saveUser(user("reader")).getId();
+        BookDto saved = storage.saveBook(book(userId, "book"));
+
+        assertTrue(storage.deleteUserById(userId));
+        assertEquals(Optional.empty(), storage.findUserById(userId));
+        assertEquals(Optional.empty(), storage.findBookById(saved.getId()));
+        assertFalse(storage.deleteUserById(userId));
+    }
+
+    @Test
+    @DisplayName("Удаление всех книг пользователя. Должно вернуть число удалённых книг.")
+    void deleteBooksByUserId_Test() {
+        Long userId = storage.saveUser(user("reader")).getId();
+        storage.saveBook(book(userId, "first"));
+        storage.saveBook(book(userId, "second"));
+
+        assertEquals(2, storage.deleteBooksByUserId(userId));
+        assertEquals(List.of(), storage.findBooksByUserId(userId));
+        assertTrue(storage.findUserById(userId).isPresent());
+    }
+
+    @Test
+    @DisplayName("Параллельное создание книг. Идентификаторы должны быть уникальны, книги не должны теряться.")
+    void concurrentSaveBooks_Test() throws Exception {
+        Long userId = storage.saveUser(user("reader")).getId();
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<BookDto>> futures = new ArrayList<>();
+            for (int i = 0; i < 1000; i++) {
+                String title = "book " + i;
+                futures.add(executor.submit(() -> storage.saveBook(book(userId, title))));
+            }
+            List<Long> ids = new ArrayList<>();
+            for (Future<BookDto> future : futures) {
+                ids.add(future.get().getId());
+            }
+
+            assertEquals(1000, ids.stream().distinct().count());
+            assertEquals(ids.stream().sorted().collect(Collectors.toList()), storage.findBookIdsByUserId(userId));
+        } finally {
+            executor.shutdown();
+        }
+    }
+}
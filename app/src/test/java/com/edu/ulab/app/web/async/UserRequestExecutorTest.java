@@ -0,0 +1,87 @@
+package com.edu.ulab.app.web.async;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.slf4j.MDC;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Тестирование исполнителя запросов {@link UserRequestExecutor}.
+ */
+@DisplayName("Testing user request executor.")
+public class UserRequestExecutorTest {
+
+    @AfterEach
+    void clearMdc() {
+        MDC.clear();
+    }
+
+    @Test
+    @DisplayName("Синхронный режим. Действие выполняется в текущем потоке, исключение пробрасывается.")
+    void direct_Test() {
+        UserRequestExecutor executor = UserRequestExecutor.direct();
+        Thread caller = Thread.currentThread();
+
+        assertSame(caller, executor.submit(Thread::currentThread).join());
+        assertThrows(IllegalStateException.class, () -> executor.submit(() -> {
+            throw new IllegalStateException("failed");
+        }));
+    }
+
+    @Test
+    @DisplayName("Асинхронный режим. requestId из MDC должен попасть в рабочий поток.")
+    void mdcPropagation_Test() throws Exception {
+        try (UserRequestExecutor executor = UserRequestExecutor.pooled(Executors.newSingleThreadExecutor(),
+                new MdcTaskDecorator())) {
+            MDC.put("requestId", "rq-1");
+
+            assertEquals("rq-1", executor.submit(() -> MDC.get("requestId")).get(5, TimeUnit.SECONDS));
+            MDC.remove("requestId");
+            assertNull(executor.submit(() -> MDC.get("requestId")).get(5, TimeUnit.SECONDS));
+        }
+    }
+
+    @Test
+    @DisplayName("Асинхронный режим. Исключение действия завершает future.")
+    void failedAction_Test() {
+        try (UserRequestExecutor executor = UserRequestExecutor.pooled(Executors.newSingleThreadExecutor(),
+                new MdcTaskDecorator())) {
+            CompletableFuture<Object> future = executor.submit(() -> {
+                throw new IllegalStateException("failed");
+            });
+
+            ExecutionException exception = assertThrows(ExecutionException.class, () -> future.get(5, TimeUnit.SECONDS));
+            assertInstanceOf(IllegalStateException.class, exception.getCause());
+        }
+    }
+
+    @Test
+    @DisplayName("Превышение лимита одновременных запросов. Должно выкинуть exception, после завершения лимит освобождается.")
+    void boundedRejection_Test() throws Exception {
+        try (UserRequestExecutor executor = UserRequestExecutor.bounded(Executors.newCachedThreadPool(), 1,
+                new MdcTaskDecorator())) {
+            CountDownLatch release = new CountDownLatch(1);
+            CompletableFuture<Boolean> running = executor.submit(() -> {
+                try {
+                    return release.await(5, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    throw new IllegalStateException(e);
+                }
+            });
+
+            assertThrows(RejectedExecutionException.class, () -> executor.submit(() -> true));
+            release.countDown();
+            assertTrue(running.get(5, TimeUnit.SECONDS));
+            assertTrue(executor.submit(() -> true).get(5, TimeUnit.SECONDS));
+        }
+    }
+}
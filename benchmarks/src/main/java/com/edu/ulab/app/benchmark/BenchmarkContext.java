@@ -0,0 +1,119 @@
+package com.edu.ulab.app.benchmark;
+
+import com.edu.ulab.app.AppApplication;
+import com.edu.ulab.app.facade.SingleFlight;
+import com.edu.ulab.app.facade.UserDataFacade;
+import com.edu.ulab.app.mapper.BookMapper;
+import com.edu.ulab.app.mapper.UserMapper;
+import com.edu.ulab.app.service.BookService;
+import com.edu.ulab.app.service.UserService;
+import com.edu.ulab.app.web.request.BookRequest;
+import com.edu.ulab.app.web.request.UserBookRequest;
+import com.edu.ulab.app.web.request.UserRequest;
+import com.edu.ulab.app.web.response.UserBookResponse;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.cache.CacheManager;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.core.ResolvableType;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.Executor;
+
+/**
+ * Запуск контекста приложения на H2 и сборка фасада поверх выбранной реализации сервисов.
+ */
+public final class BenchmarkContext {
+
+    public static final String JPA = "jpa";
+    public static final String TEMPLATE = "template";
+    public static final String STORAGE = "storage";
+
+    private BenchmarkContext() {
+    }
+
+    public static ConfigurableApplicationContext start() {
+        return start(new String[0]);
+    }
+
+    /**
+     * @param properties свойства в формате key=value поверх профиля benchmark
+     */
+    public static ConfigurableApplicationContext start(String... properties) {
+        //command line arguments, so that they override application.yaml, unlike default properties
+        String[] args = Arrays.stream(properties)
+                .map(property -> "--" + property)
+                .toArray(String[]::new);
+        return new SpringApplicationBuilder(AppApplication.class)
+                .profiles("benchmark")
+                .run(args);
+    }
+
+    /**
+     * Фасад над сервисами {@code implementation}. Бин проходит через post-processors контекста,
+     * поэтому @Transactional на фасаде работает так же, как в приложении.
+     */
+    public static UserDataFacade facade(ConfigurableApplicationContext context, String implementation) {
+        String userServiceName;
+        String bookServiceName;
+        switch (implementation) {
+            case JPA -> {
+                userServiceName = "userServiceImpl";
+                bookServiceName = "bookServiceImpl";
+            }
+            case TEMPLATE -> {
+                userServiceName = "userServiceImplTemplate";
+                bookServiceName = "bookServiceImplTemplate";
+            }
+            case STORAGE -> {
+                userServiceName = "userServiceImplStorage";
+                bookServiceName = "bookServiceImplStorage";
+            }
+            default -> throw new IllegalArgumentException("Unknown service implementation: " + implementation);
+        }
+
+        ObjectProvider<SingleFlight<Long, UserBookResponse>> singleFlight = context.getBeanProvider(
+                ResolvableType.forClassWithGenerics(SingleFlight.class, Long.class, UserBookResponse.class));
+        UserDataFacade facade = new UserDataFacade(
+                context.getBean(userServiceName, UserService.class),
+                context.getBean(bookServiceName, BookService.class),
+                context.getBean(UserMapper.class),
+                context.getBean(BookMapper.class),
+                context.getBean("facadeExecutor", Executor.class),
+                Duration.ofSeconds(5),
+                singleFlight.getObject(),
+                context.getBean(CacheManager.class),
+                Optional.empty(), false, Duration.ZERO);
+        return (UserDataFacade) context.getAutowireCapableBeanFactory()
+                .initializeBean(facade, implementation + "UserDataFacade");
+    }
+
+    public static UserBookRequest userBookRequest(long sequence, int booksPerUser) {
+        UserRequest userRequest = new UserRequest();
+        userRequest.setFullName("Benchmark User " + sequence);
+        userRequest.setTitle("reader-" + sequence);
+        userRequest.setAge(30);
+
+        List<BookRequest> bookRequests = new ArrayList<>(booksPerUser);
+        for (int i = 0; i < booksPerUser; i++) {
+            bookRequests.add(bookRequest(i));
+        }
+
+        UserBookRequest request = new UserBookRequest();
+        request.setUserRequest(userRequest);
+        request.setBookRequests(bookRequests);
+        return request;
+    }
+
+    public static BookRequest bookRequest(int number) {
+        BookRequest bookRequest = new BookRequest();
+        bookRequest.setTitle("Benchmark book " + number);
+        bookRequest.setAuthor("Benchmark author");
+        bookRequest.setPageCount(100 + number);
+        return bookRequest;
+    }
+}
@@ -0,0 +1,95 @@
+package com.edu.ulab.app.benchmark;
+
+import com.edu.ulab.app.dto.BookDto;
+import com.edu.ulab.app.facade.UserDataFacade;
+import com.edu.ulab.app.service.BookService;
+import com.edu.ulab.app.service.writebehind.BookWriteBehind;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Пропускная способность записи книг при {@value #THREADS} параллельных запросах:
+ * коммит на каждый запрос (JdbcTemplate) или групповой коммит {@link BookWriteBehind}.
+ * <p>
+ * В режиме writeBehind запрос ждёт коммита своей пачки, то есть сравнивается время до надёжной записи.
+ * Коммит встроенной H2 в памяти почти ничего не стоит, поэтому здесь видны только накладные расходы очереди;
+ * выигрыш от группового коммита появляется на PostgreSQL, где каждый коммит ждёт fsync журнала.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@Threads(BookWriteBehindBenchmark.THREADS)
+@State(Scope.Benchmark)
+public class BookWriteBehindBenchmark {
+
+    static final int THREADS = 16;
+
+    private static final int USERS = 100;
+    private static final int BOOKS_PER_REQUEST = 5;
+
+    @Param({"direct", "writeBehind"})
+    public String mode;
+
+    private ConfigurableApplicationContext context;
+    private BookService bookService;
+    private BookWriteBehind bookWriteBehind;
+    private final List<Long> userIds = new ArrayList<>();
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        context = BenchmarkContext.start(
+                "user-data-facade.write-behind.enabled=true",
+                "user-data-facade.write-behind.max-delay=1ms");
+        bookService = context.getBean("bookServiceImplTemplate", BookService.class);
+        bookWriteBehind = context.getBean(BookWriteBehind.class);
+
+        UserDataFacade facade = BenchmarkContext.facade(context, BenchmarkContext.TEMPLATE);
+        for (long i = 1; i <= USERS; i++) {
+            userIds.add(facade.createUserWithBooks(BenchmarkContext.userBookRequest(i, 0)).getUserId());
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public List<BookDto> createBooks() {
+        Long userId = userIds.get(ThreadLocalRandom.current().nextInt(USERS));
+        List<BookDto> books = new ArrayList<>(BOOKS_PER_REQUEST);
+        for (int i = 0; i < BOOKS_PER_REQUEST; i++) {
+            books.add(BookDto.builder()
+                    .userId(userId)
+                    .title("Benchmark book " + i)
+                    .author("Benchmark author")
+                    .pageCount(100 + i)
+                    .build());
+        }
+
+        if ("writeBehind".equals(mode)) {
+            return bookWriteBehind.enqueue(books).join();
+        }
+        return bookService.createBooks(books);
+    }
+}
@@ -0,0 +1,88 @@
+package com.edu.ulab.app.benchmark;
+
+import com.edu.ulab.app.facade.UserDataFacade;
+import com.edu.ulab.app.web.request.UserBookRequest;
+import com.edu.ulab.app.web.response.UserBookResponse;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Пропускная способность фасада при {@value #THREADS} параллельных запросах в зависимости от размера пула Hikari.
+ * <p>
+ * Пул фиксированного размера (minimum-idle = maximum-pool-size). Каждый поток читает и обновляет
+ * случайного пользователя из заранее созданных, поэтому размер таблиц не меняется.
+ * На встроенной H2 нет сетевой задержки, поэтому видна конкуренция за соединения, но не выигрыш
+ * от пула больше числа ядер при медленной базе; для этого бенчмарк нужно запускать против PostgreSQL.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@Threads(ConnectionPoolBenchmark.THREADS)
+@State(Scope.Benchmark)
+public class ConnectionPoolBenchmark {
+
+    static final int THREADS = 16;
+
+    private static final int USERS = 100;
+
+    @Param({BenchmarkContext.JPA, BenchmarkContext.TEMPLATE})
+    public String implementation;
+
+    @Param({"1", "2", "4", "8", "16"})
+    public int poolSize;
+
+    private ConfigurableApplicationContext context;
+    private UserDataFacade facade;
+    private final List<Long> userIds = new ArrayList<>();
+    private final List<UserBookRequest> updateRequests = new ArrayList<>();
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        context = BenchmarkContext.start(
+                "spring.datasource.hikari.maximum-pool-size=" + poolSize,
+                "spring.datasource.hikari.minimum-idle=" + poolSize,
+                "spring.datasource.hikari.connection-timeout=30000");
+        facade = BenchmarkContext.facade(context, implementation);
+        for (long i = 1; i <= USERS; i++) {
+            userIds.add(facade.createUserWithBooks(BenchmarkContext.userBookRequest(i, 5)).getUserId());
+            //same title as on creation: titles are unique
+            updateRequests.add(BenchmarkContext.userBookRequest(i, 0));
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public UserBookResponse getUserWithBooks() {
+        return facade.getUserWithBooks(userIds.get(ThreadLocalRandom.current().nextInt(USERS)));
+    }
+
+    @Benchmark
+    public UserBookResponse updateUserWithBooks() {
+        int index = ThreadLocalRandom.current().nextInt(USERS);
+        return facade.updateUserWithBooks(updateRequests.get(index), userIds.get(index));
+    }
+}
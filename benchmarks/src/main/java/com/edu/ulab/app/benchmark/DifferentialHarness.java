@@ -0,0 +1,579 @@
+package com.edu.ulab.app.benchmark;
+
+import com.edu.ulab.app.dto.BookDto;
+import com.edu.ulab.app.dto.UserBooksDto;
+import com.edu.ulab.app.dto.UserDto;
+import com.edu.ulab.app.service.BookService;
+import com.edu.ulab.app.service.UserService;
+import com.edu.ulab.app.storage.Storage;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Дифференциальная проверка реализаций UserService/BookService: одна и та же случайная последовательность
+ * операций выполняется на JPA, JdbcTemplate и хранилище в памяти, результаты сравниваются,
+ * время каждой операции записывается по реализациям.
+ * <p>
+ * Идентификаторы у реализаций разные (последовательности с шагом 50, счётчики хранилища), поэтому операции
+ * ссылаются на пользователей и книги по порядку создания, а в результатах id заменяются на этот порядок.
+ * Книги создаются и переносятся только к существующим пользователям, пользователь удаляется вместе с книгами,
+ * как это делает фасад. Порядок книг из getAllByUserId не гарантирован и не сравнивается.
+ * Версия, возвращённая обновлением без ожидаемой версии, тоже не сравнивается: JPA и JdbcTemplate её не читают.
+ * <p>
+ * Каждая реализация сначала прогоняет последовательность для прогрева, затем измеряется второй прогон.
+ *
+ * <pre>
+ * mvn -B install -DskipTests
+ * mvn -B -pl benchmarks exec:java -Dexec.mainClass=com.edu.ulab.app.benchmark.DifferentialHarness -Dexec.args="42 5000"
+ * </pre>
+ * Аргументы: seed и количество операций. При расхождении процесс завершается с кодом 1.
+ */
+public class DifferentialHarness {
+
+    public static final List<String> IMPLEMENTATIONS =
+            List.of(BenchmarkContext.JPA, BenchmarkContext.TEMPLATE, BenchmarkContext.STORAGE);
+
+    private static final long MISSING_ID = -1L;
+    private static final int PAGE_SIZE = 3;
+    private static final int MAX_MISMATCHES = 20;
+
+    private final ConfigurableApplicationContext context;
+
+    public DifferentialHarness(ConfigurableApplicationContext context) {
+        this.context = context;
+    }
+
+    public static void main(String[] args) {
+        long seed = args.length > 0 ? Long.parseLong(args[0]) : System.nanoTime();
+        int operations = args.length > 1 ? Integer.parseInt(args[1]) : 2000;
+
+        Report report;
+        try (ConfigurableApplicationContext context = BenchmarkContext.start()) {
+            report = new DifferentialHarness(context).run(seed, operations);
+        }
+
+        System.out.printf("seed=%d, operations=%d%n%n", seed, operations);
+        System.out.print(report.latencyTable());
+        if (!report.mismatches().isEmpty()) {
+            System.out.println();
+            report.mismatches().forEach(System.out::println);
+            System.exit(1);
+        }
+    }
+
+    public Report run(long seed, int operations) {
+        List<Operation> sequence = new Generator(new Random(seed)).generate(operations);
+        Map<String, List<String>> outcomes = new LinkedHashMap<>();
+        Map<String, Map<String, long[]>> latencies = new LinkedHashMap<>();
+        for (String implementation : IMPLEMENTATIONS) {
+            execute(implementation, sequence, new long[sequence.size()]);
+            long[] nanos = new long[sequence.size()];
+            outcomes.put(implementation, execute(implementation, sequence, nanos));
+            latencies.put(implementation, byOperation(sequence, nanos));
+        }
+        return new Report(compare(sequence, outcomes), latencies);
+    }
+
+    private List<String> execute(String implementation, List<Operation> sequence, long[] nanos) {
+        reset();
+        Target target = new Target(serviceBean(implementation, UserService.class, "userService"),
+                serviceBean(implementation, BookService.class, "bookService"));
+        List<String> outcomes = new ArrayList<>(sequence.size());
+        for (int i = 0; i < sequence.size(); i++) {
+            Object result;
+            long start = System.nanoTime();
+            try {
+                result = sequence.get(i).action().apply(target);
+            } catch (RuntimeException e) {
+                result = e;
+            }
+            nanos[i] = System.nanoTime() - start;
+            outcomes.add(sequence.get(i).describeResult().apply(target.describe(result)));
+        }
+        return outcomes;
+    }
+
+    private void reset() {
+        JdbcTemplate jdbcTemplate = context.getBean(JdbcTemplate.class);
+        jdbcTemplate.update("DELETE FROM BOOK");
+        jdbcTemplate.update("DELETE FROM PERSON");
+        context.getBean(Storage.class).clear();
+    }
+
+    private <T> T serviceBean(String implementation, Class<T> type, String prefix) {
+        String suffix = switch (implementation) {
+            case BenchmarkContext.JPA -> "Impl";
+            case BenchmarkContext.TEMPLATE -> "ImplTemplate";
+            case BenchmarkContext.STORAGE -> "ImplStorage";
+            default -> throw new IllegalArgumentException("Unknown service implementation: " + implementation);
+        };
+        return context.getBean(prefix + suffix, type);
+    }
+
+    private static List<String> compare(List<Operation> sequence, Map<String, List<String>> outcomes) {
+        List<String> mismatches = new ArrayList<>();
+        for (int i = 0; i < sequence.size() && mismatches.size() < MAX_MISMATCHES; i++) {
+            int index = i;
+            Map<String, String> results = new LinkedHashMap<>();
+            outcomes.forEach((implementation, list) -> results.put(implementation, list.get(index)));
+            if (results.values().stream().distinct().count() > 1) {
+                mismatches.add(String.format("#%d %s: %s", i, sequence.get(i).name(), results));
+            }
+        }
+        return mismatches;
+    }
+
+    private static Map<String, long[]> byOperation(List<Operation> sequence, long[] nanos) {
+        Map<String, List<Long>> grouped = new HashMap<>();
+        for (int i = 0; i < sequence.size(); i++) {
+            grouped.computeIfAbsent(sequence.get(i).kind(), key -> new ArrayList<>()).add(nanos[i]);
+        }
+        Map<String, long[]> sorted = new HashMap<>();
+        grouped.forEach((kind, values) -> sorted.put(kind, values.stream().mapToLong(Long::longValue).sorted().toArray()));
+        return sorted;
+    }
+
+    /**
+     * @param mismatches  операции, результаты которых различаются, не больше {@value #MAX_MISMATCHES}
+     * @param latencies   реализация → вид операции → отсортированные времена в наносекундах
+     */
+    public record Report(List<String> mismatches, Map<String, Map<String, long[]>> latencies) {
+
+        public String latencyTable() {
+            StringBuilder table = new StringBuilder(String.format("%-22s %6s", "operation, us p50/p99", "count"));
+            latencies.keySet().forEach(implementation -> table.append(String.format(" %18s", implementation)));
+            table.append(System.lineSeparator());
+            latencies.values().iterator().next().keySet().stream().sorted().forEach(kind -> {
+                table.append(String.format("%-22s %6d", kind, latencies.values().iterator().next().get(kind).length));
+                latencies.values().forEach(byKind -> {
+                    long[] nanos = byKind.get(kind);
+                    table.append(String.format(" %8.1f/%-9.1f", percentile(nanos, 0.5) / 1000.0,
+                            percentile(nanos, 0.99) / 1000.0));
+                });
+                table.append(System.lineSeparator());
+            });
+            return table.toString();
+        }
+
+        private static long percentile(long[] sorted, double percentile) {
+            return sorted[Math.min(sorted.length - 1, (int) Math.ceil(percentile * sorted.length) - 1)];
+        }
+    }
+
+    /**
+     * @param kind           вид операции для таблицы времени
+     * @param name           операция с аргументами для отчёта о расхождениях
+     * @param describeResult нормализация описания результата перед сравнением
+     */
+    private record Operation(String kind, String name, Function<Target, Object> action,
+                             Function<String, String> describeResult) {
+
+        Operation(String kind, String name, Function<Target, Object> action) {
+            this(kind, name, action, Function.identity());
+        }
+    }
+
+    /**
+     * Сервисы одной реализации и соответствие порядка создания её идентификаторам.
+     */
+    private static final class Target {
+        private final UserService userService;
+        private final BookService bookService;
+        private final List<Long> userIds = new ArrayList<>();
+        private final List<Long> bookIds = new ArrayList<>();
+        private final Map<Long, Integer> userNumbers = new HashMap<>();
+        private final Map<Long, Integer> bookNumbers = new HashMap<>();
+
+        Target(UserService userService, BookService bookService) {
+            this.userService = userService;
+            this.bookService = bookService;
+        }
+
+        long userId(int number) {
+            return number < 0 || number >= userIds.size() ? MISSING_ID : userIds.get(number);
+        }
+
+        long bookId(int number) {
+            return number < 0 || number >= bookIds.size() ? MISSING_ID : bookIds.get(number);
+        }
+
+        void createdUsers(List<UserDto> users) {
+            users.forEach(user -> {
+                userNumbers.put(user.getId(), userIds.size());
+                userIds.add(user.getId());
+            });
+        }
+
+        void createdBooks(List<BookDto> books) {
+            books.forEach(book -> {
+                bookNumbers.put(book.getId(), bookIds.size());
+                bookIds.add(book.getId());
+            });
+        }
+
+        String describe(Object result) {
+            if (result == null) {
+                return "ok";
+            }
+            if (result instanceof RuntimeException e) {
+                return "!" + e.getClass().getSimpleName();
+            }
+            if (result instanceof List<?> list) {
+                return list.stream().map(this::describe).collect(Collectors.joining(", ", "[", "]"));
+            }
+            if (result instanceof UserDto user) {
+                return String.format("user(%s, %s, %s, %d, v%s)", userRef(user.getId()), user.getFullName(),
+                        user.getTitle(), user.getAge(), user.getVersion());
+            }
+            if (result instanceof BookDto book) {
+                return String.format("book(%s, %s, %s, %s, %d, v%s)", bookRef(book.getId()), userRef(book.getUserId()),
+                        book.getTitle(), book.getAuthor(), book.getPageCount(), book.getVersion());
+            }
+            if (result instanceof UserBooksDto user) {
+                return String.format("user(%s, %s, %s, %d, v%s, books=%s)", userRef(user.getId()), user.getFullName(),
+                        user.getTitle(), user.getAge(), user.getVersion(),
+                        user.getBookIdList().stream().map(this::bookRef).toList());
+            }
+            return String.valueOf(result);
+        }
+
+        private String userRef(Long id) {
+            Integer number = userNumbers.get(id);
+            return number == null ? "u?" + id : "u" + number;
+        }
+
+        private String bookRef(Long id) {
+            Integer number = bookNumbers.get(id);
+            return number == null ? "b?" + id : "b" + number;
+        }
+    }
+
+    /**
+     * Случайная последовательность операций по модели ожидаемого состояния: какие пользователи и книги
+     * существуют, их версии и владельцы. Модель нужна только для выбора аргументов, результаты
+     * сравниваются между реализациями.
+     */
+    private static final class Generator {
+        private final Random random;
+        private final List<long[]> users = new ArrayList<>();
+        private final List<long[]> books = new ArrayList<>();
+        private int titles;
+
+        // users: {exists, version}; books: {exists, version, user}
+        Generator(Random random) {
+            this.random = random;
+        }
+
+        List<Operation> generate(int count) {
+            List<Operation> sequence = new ArrayList<>(count);
+            while (sequence.size() < count) {
+                Operation operation = next();
+                if (operation != null) {
+                    sequence.add(operation);
+                }
+            }
+            return sequence;
+        }
+
+        private Operation next() {
+            int choice = random.nextInt(100);
+            if (choice < 12) {
+                return createUsers(1);
+            } else if (choice < 16) {
+                return createUsers(1 + random.nextInt(3));
+            } else if (choice < 28) {
+                return updateUser();
+            } else if (choice < 36) {
+                return getUser();
+            } else if (choice < 44) {
+                return getUserWithBookIds();
+            } else if (choice < 48) {
+                return getUsersAfter();
+            } else if (choice < 49) {
+                return exportUsers();
+            } else if (choice < 52) {
+                return deleteUser();
+            } else if (choice < 64) {
+                return createBooks();
+            } else if (choice < 73) {
+                return updateBook();
+            } else if (choice < 81) {
+                return getBook();
+            } else if (choice < 89) {
+                return getBooksOfUser();
+            } else if (choice < 94) {
+                return getBooksOfUserAfter();
+            } else if (choice < 98) {
+                return deleteBook();
+            }
+            return deleteBooksOfUser();
+        }
+
+        private Operation createUsers(int count) {
+            List<UserDto> template = new ArrayList<>();
+            for (int i = 0; i < count; i++) {
+                template.add(user());
+                users.add(new long[]{1, 0});
+            }
+            if (count == 1) {
+                return new Operation("createUser", "createUser " + template.get(0), target -> {
+                    UserDto created = target.userService.createUser(copy(template.get(0)));
+                    target.createdUsers(List.of(created));
+                    return created;
+                });
+            }
+            return new Operation("createUsers", "createUsers " + template, target -> {
+                List<UserDto> created = target.userService.createUsers(template.stream().map(Generator::copy).toList());
+                target.createdUsers(created);
+                return created;
+            });
+        }
+
+        private Operation updateUser() {
+            int number = anyUser();
+            long[] model = number < 0 ? new long[]{0, 0} : users.get(number);
+            UserDto update = user();
+            boolean exists = model[0] == 1;
+            int mode = random.nextInt(4);
+            if (mode == 0) {
+                //stale version
+                update.setVersion(model[1] + 1);
+            } else if (mode < 3) {
+                update.setVersion(model[1]);
+                model[1] += exists ? 1 : 0;
+            } else {
+                model[1] += exists ? 1 : 0;
+            }
+            boolean unconditional = update.getVersion() == null;
+            return new Operation("updateUser", "updateUser u" + number + " " + update, target -> {
+                UserDto dto = copy(update);
+                dto.setId(target.userId(number));
+                return target.userService.updateUser(dto);
+            }, description -> unconditional ? description.replaceFirst(", v[^,)]*\\)$", ", v-)") : description);
+        }
+
+        private Operation getUser() {
+            int number = anyUser();
+            return new Operation("getUserById", "getUserById u" + number,
+                    target -> target.userService.getUserById(target.userId(number)));
+        }
+
+        private Operation getUserWithBookIds() {
+            int number = anyUser();
+            return new Operation("getUserWithBookIds", "getUserWithBookIds u" + number,
+                    target -> target.userService.getUserWithBookIds(target.userId(number)));
+        }
+
+        private Operation getUsersAfter() {
+            int number = anyUser();
+            return new Operation("getUsersAfter", "getUsersAfter u" + number, target ->
+                    target.userService.getUsersAfter(number < 0 ? 0 : target.userId(number), PAGE_SIZE));
+        }
+
+        private Operation exportUsers() {
+            return new Operation("forEachUserWithBookIds", "forEachUserWithBookIds", target -> {
+                List<UserBooksDto> exported = new ArrayList<>();
+                target.userService.forEachUserWithBookIds(exported::add);
+                return exported;
+            });
+        }
+
+        private Operation deleteUser() {
+            int number = anyUser();
+            if (number >= 0) {
+                users.get(number)[0] = 0;
+                books.stream().filter(book -> book[2] == number).forEach(book -> book[0] = 0);
+            }
+            return new Operation("deleteUser", "deleteUser u" + number, target -> {
+                long id = target.userId(number);
+                target.bookService.deleteAllByUserId(id);
+                target.userService.deleteUserById(id);
+                return null;
+            });
+        }
+
+        private Operation createBooks() {
+            int user = existingUser();
+            if (user < 0) {
+                return null;
+            }
+            int count = random.nextInt(4) == 0 ? 1 + random.nextInt(4) : 1;
+            List<BookDto> template = new ArrayList<>();
+            for (int i = 0; i < count; i++) {
+                template.add(book());
+                books.add(new long[]{1, 0, user});
+            }
+            if (count == 1) {
+                return new Operation("createBook", "createBook u" + user + " " + template.get(0), target -> {
+                    BookDto dto = copy(template.get(0));
+                    dto.setUserId(target.userId(user));
+                    BookDto created = target.bookService.createBook(dto);
+                    target.createdBooks(List.of(created));
+                    return created;
+                });
+            }
+            return new Operation("createBooks", "createBooks u" + user + " " + template, target -> {
+                List<BookDto> dtoList = template.stream().map(Generator::copy).toList();
+                dtoList.forEach(dto -> dto.setUserId(target.userId(user)));
+                List<BookDto> created = target.bookService.createBooks(dtoList);
+                target.createdBooks(created);
+                return created;
+            });
+        }
+
+        private Operation updateBook() {
+            int number = anyBook();
+            long[] model = number < 0 ? new long[]{0, 0, -1} : books.get(number);
+            boolean exists = model[0] == 1;
+            int user = !exists || random.nextInt(4) == 0 ? existingUser() : (int) model[2];
+            if (user < 0) {
+                //a book is updated only for an existing user
+                return null;
+            }
+            BookDto update = book();
+            int mode = random.nextInt(4);
+            if (mode == 0) {
+                update.setVersion(model[1] + 1);
+            } else {
+                if (mode < 3) {
+                    update.setVersion(model[1]);
+                }
+                if (exists) {
+                    model[1]++;
+                    model[2] = user;
+                }
+            }
+            boolean unconditional = update.getVersion() == null;
+            return new Operation("updateBook", "updateBook b" + number + " u" + user + " " + update, target -> {
+                BookDto dto = copy(update);
+                dto.setId(target.bookId(number));
+                dto.setUserId(target.userId(user));
+                return target.bookService.updateBook(dto);
+            }, description -> unconditional ? description.replaceFirst(", v[^,)]*\\)$", ", v-)") : description);
+        }
+
+        private Operation getBook() {
+            int number = anyBook();
+            return new Operation("getBookById", "getBookById b" + number,
+                    target -> target.bookService.getBookById(target.bookId(number)));
+        }
+
+        private Operation getBooksOfUser() {
+            int user = anyUser();
+            return new Operation("getAllByUserId", "getAllByUserId u" + user,
+                    target -> target.bookService.getAllByUserId(target.userId(user)),
+                    DifferentialHarness::sortedList);
+        }
+
+        private Operation getBooksOfUserAfter() {
+            int user = anyUser();
+            int after = anyBook();
+            return new Operation("getAllByUserIdAfter", "getAllByUserIdAfter u" + user + " b" + after,
+                    target -> target.bookService.getAllByUserIdAfter(target.userId(user),
+                            after < 0 ? 0 : target.bookId(after), PAGE_SIZE));
+        }
+
+        private Operation deleteBook() {
+            int number = anyBook();
+            if (number >= 0) {
+                books.get(number)[0] = 0;
+            }
+            return new Operation("deleteBookById", "deleteBookById b" + number, target -> {
+                target.bookService.deleteBookById(target.bookId(number));
+                return null;
+            });
+        }
+
+        private Operation deleteBooksOfUser() {
+            int user = anyUser();
+            books.stream().filter(book -> book[2] == user).forEach(book -> book[0] = 0);
+            return new Operation("deleteAllByUserId", "deleteAllByUserId u" + user, target -> {
+                target.bookService.deleteAllByUserId(target.userId(user));
+                return null;
+            });
+        }
+
+        /**
+         * Любой созданный пользователь, в том числе удалённый, иногда несуществующий (-1).
+         */
+        private int anyUser() {
+            return users.isEmpty() || random.nextInt(20) == 0 ? -1 : random.nextInt(users.size());
+        }
+
+        private int anyBook() {
+            return books.isEmpty() || random.nextInt(20) == 0 ? -1 : random.nextInt(books.size());
+        }
+
+        private int existingUser() {
+            int[] existing = new int[users.size()];
+            int count = 0;
+            for (int i = 0; i < users.size(); i++) {
+                if (users.get(i)[0] == 1) {
+                    existing[count++] = i;
+                }
+            }
+            return count == 0 ? -1 : existing[random.nextInt(count)];
+        }
+
+        private UserDto user() {
+            int title = titles++;
+            return UserDto.builder()
+                    .fullName("Differential User " + title)
+                    .title("reader-" + title)
+                    .age(18 + random.nextInt(80))
+                    .build();
+        }
+
+        private BookDto book() {
+            int title = titles++;
+            return BookDto.builder()
+                    .title("Differential book " + title)
+                    .author("Author " + random.nextInt(10))
+                    .pageCount(1 + random.nextInt(1000))
+                    .build();
+        }
+
+        private static UserDto copy(UserDto userDto) {
+            return UserDto.builder()
+                    .id(userDto.getId())
+                    .fullName(userDto.getFullName())
+                    .title(userDto.getTitle())
+                    .age(userDto.getAge())
+                    .version(userDto.getVersion())
+                    .build();
+        }
+
+        private static BookDto copy(BookDto bookDto) {
+            return BookDto.builder()
+                    .id(bookDto.getId())
+                    .userId(bookDto.getUserId())
+                    .title(bookDto.getTitle())
+                    .author(bookDto.getAuthor())
+                    .pageCount(bookDto.getPageCount())
+                    .version(bookDto.getVersion())
+                    .build();
+        }
+    }
+
+    /**
+     * Описание списка без учёта порядка элементов.
+     */
+    private static String sortedList(String description) {
+        if (!description.startsWith("[") || description.length() == 2) {
+            return description;
+        }
+        String[] elements = description.substring(1, description.length() - 1).split(", (?=book\\()");
+        Arrays.sort(elements);
+        return "[" + String.join(", ", elements) + "]";
+    }
+}
@@ -0,0 +1,53 @@
+package com.edu.ulab.app.benchmark;
+
+import com.edu.ulab.app.web.filter.HttpRequestFilter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import static com.edu.ulab.app.web.constant.WebConstant.RQID;
+
+/**
+ * Накладные расходы {@link HttpRequestFilter} (MDC + лог requestId) на один запрос.
+ * Запрос создаётся на каждый вызов: OncePerRequestFilter помечает уже отфильтрованные запросы.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class HttpRequestFilterBenchmark {
+
+    private final HttpRequestFilter filter = new HttpRequestFilter();
+    private final MockHttpServletResponse response = new MockHttpServletResponse();
+    private final FilterChain chain = (request, response) -> {
+    };
+
+    @Benchmark
+    public MockHttpServletRequest baselineRequest() {
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/api/v1/user/1");
+        request.addHeader(RQID, "benchmark-request-id");
+        return request;
+    }
+
+    @Benchmark
+    public MockHttpServletRequest filterRequest() throws ServletException, IOException {
+        MockHttpServletRequest request = baselineRequest();
+        filter.doFilter(request, response, chain);
+        return request;
+    }
+}
@@ -0,0 +1,122 @@
+package com.edu.ulab.app.benchmark;
+
+import ch.qos.logback.classic.Logger;
+import ch.qos.logback.classic.LoggerContext;
+import ch.qos.logback.classic.encoder.PatternLayoutEncoder;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.core.OutputStreamAppender;
+import com.edu.ulab.app.facade.UserDataFacade;
+import com.edu.ulab.app.storage.Storage;
+import com.edu.ulab.app.web.request.UserBookRequest;
+import com.edu.ulab.app.web.response.UserBookResponse;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.slf4j.LoggerFactory;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.io.OutputStream;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Стоимость логирования приложения на горячем пути фасада при уровнях INFO и DEBUG.
+ * <p>
+ * Логи пакета com.edu.ulab.app пишутся синхронным appender-ом с обычным шаблоном в пустой поток,
+ * так что в замер попадает форматирование сообщений, но не вывод в консоль. Сервисы работают
+ * поверх {@link Storage}, чтобы разница не терялась на фоне базы данных.
+ * Выделение памяти на операцию (gc.alloc.rate.norm) видно с профайлером gc:
+ * <pre>
+ * java -cp ... com.edu.ulab.app.benchmark.BenchmarkRunner LoggingBenchmark -prof gc
+ * </pre>
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class LoggingBenchmark {
+
+    private static final String APP_LOGGER = "com.edu.ulab.app";
+
+    @Param({"INFO", "DEBUG"})
+    public String logLevel;
+
+    @Param({"20"})
+    public int booksPerUser;
+
+    private final AtomicLong sequence = new AtomicLong();
+
+    private ConfigurableApplicationContext context;
+    private UserDataFacade facade;
+    private Long existingUserId;
+    private Logger appLogger;
+    private OutputStreamAppender<ILoggingEvent> appender;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        context = BenchmarkContext.start();
+        facade = BenchmarkContext.facade(context, BenchmarkContext.STORAGE);
+        attachAppender();
+
+        existingUserId = facade.createUserWithBooks(nextRequest()).getUserId();
+    }
+
+    @TearDown(Level.Iteration)
+    public void cleanUp() {
+        context.getBean(Storage.class).clear();
+        existingUserId = facade.createUserWithBooks(nextRequest()).getUserId();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        appLogger.detachAppender(appender);
+        appender.stop();
+        context.close();
+    }
+
+    private UserBookRequest nextRequest() {
+        return BenchmarkContext.userBookRequest(sequence.incrementAndGet(), booksPerUser);
+    }
+
+    private void attachAppender() {
+        LoggerContext loggerContext = (LoggerContext) LoggerFactory.getILoggerFactory();
+
+        PatternLayoutEncoder encoder = new PatternLayoutEncoder();
+        encoder.setContext(loggerContext);
+        encoder.setPattern("%d{yyyy-MM-dd HH:mm:ss.SSS} %5p [%t] %-40.40logger{39} : %m%n");
+        encoder.start();
+
+        appender = new OutputStreamAppender<>();
+        appender.setContext(loggerContext);
+        appender.setEncoder(encoder);
+        appender.setOutputStream(OutputStream.nullOutputStream());
+        appender.start();
+
+        appLogger = loggerContext.getLogger(APP_LOGGER);
+        appLogger.setLevel(ch.qos.logback.classic.Level.toLevel(logLevel));
+        appLogger.setAdditive(false);
+        appLogger.addAppender(appender);
+    }
+
+    @Benchmark
+    public UserBookResponse createUserWithBooks() {
+        return facade.createUserWithBooks(nextRequest());
+    }
+
+    @Benchmark
+    public UserBookResponse getUserWithBooks() {
+        return facade.getUserWithBooks(existingUserId);
+    }
+}
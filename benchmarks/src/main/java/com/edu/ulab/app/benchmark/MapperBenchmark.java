@@ -0,0 +1,98 @@
+package com.edu.ulab.app.benchmark;
+
+import com.edu.ulab.app.dto.BookDto;
+import com.edu.ulab.app.dto.UserDto;
+import com.edu.ulab.app.entity.Book;
+import com.edu.ulab.app.entity.Person;
+import com.edu.ulab.app.mapper.BookMapper;
+import com.edu.ulab.app.mapper.BookMapperImpl;
+import com.edu.ulab.app.mapper.UserMapper;
+import com.edu.ulab.app.mapper.UserMapperImpl;
+import com.edu.ulab.app.web.request.BookRequest;
+import com.edu.ulab.app.web.request.UserRequest;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Сгенерированные MapStruct мапперы {@link UserMapper} и {@link BookMapper}.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class MapperBenchmark {
+
+    private final UserMapper userMapper = new UserMapperImpl();
+    private final BookMapper bookMapper = new BookMapperImpl();
+
+    private UserRequest userRequest;
+    private Person person;
+    private BookRequest bookRequest;
+    private BookDto bookDto;
+    private Book book;
+
+    @Setup
+    public void setUp() {
+        userRequest = BenchmarkContext.userBookRequest(1, 0).getUserRequest();
+
+        person = new Person();
+        person.setId(1L);
+        person.setFullName("Benchmark User");
+        person.setTitle("reader");
+        person.setAge(30);
+
+        bookRequest = BenchmarkContext.bookRequest(1);
+
+        bookDto = BookDto.builder()
+                .id(1L)
+                .userId(1L)
+                .title("Benchmark book")
+                .author("Benchmark author")
+                .pageCount(100)
+                .build();
+
+        book = new Book();
+        book.setId(1L);
+        book.setTitle("Benchmark book");
+        book.setAuthor("Benchmark author");
+        book.setPageCount(100);
+        book.setPerson(person);
+    }
+
+    @Benchmark
+    public UserDto userRequestToUserDto() {
+        return userMapper.userRequestToUserDto(userRequest);
+    }
+
+    @Benchmark
+    public UserDto personToUserDto() {
+        return userMapper.personToUserDto(person);
+    }
+
+    @Benchmark
+    public BookDto bookRequestToBookDto() {
+        return bookMapper.bookRequestToBookDto(bookRequest);
+    }
+
+    @Benchmark
+    public Book bookDtoToBook() {
+        return bookMapper.bookDtoToBook(bookDto);
+    }
+
+    @Benchmark
+    public BookDto bookToBookDto() {
+        return bookMapper.bookToBookDto(book);
+    }
+}
@@ -0,0 +1,117 @@
+package com.edu.ulab.app.benchmark;
+
+import com.edu.ulab.app.facade.UserDataFacade;
+import com.edu.ulab.app.storage.Storage;
+import com.edu.ulab.app.web.request.UserBookRequest;
+import com.edu.ulab.app.web.response.UserBookResponse;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * CRUD через {@link UserDataFacade} для каждой реализации UserService/BookService.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class UserDataFacadeBenchmark {
+
+    @Param({BenchmarkContext.JPA, BenchmarkContext.TEMPLATE, BenchmarkContext.STORAGE})
+    public String implementation;
+
+    @Param({"1", "20"})
+    public int booksPerUser;
+
+    private final AtomicLong sequence = new AtomicLong();
+
+    private ConfigurableApplicationContext context;
+    private JdbcTemplate jdbcTemplate;
+    private UserDataFacade facade;
+    private Long existingUserId;
+    private UserBookRequest updateRequest;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        context = BenchmarkContext.start();
+        jdbcTemplate = context.getBean(JdbcTemplate.class);
+        facade = BenchmarkContext.facade(context, implementation);
+
+        existingUserId = facade.createUserWithBooks(nextRequest()).getUserId();
+        updateRequest = BenchmarkContext.userBookRequest(sequence.incrementAndGet(), 0);
+    }
+
+    /**
+     * Удаляет всё, что создали create-бенчмарки, чтобы размер таблиц не рос от итерации к итерации.
+     */
+    @TearDown(Level.Iteration)
+    public void cleanUp() {
+        if (BenchmarkContext.STORAGE.equals(implementation)) {
+            context.getBean(Storage.class).clear();
+            existingUserId = facade.createUserWithBooks(nextRequest()).getUserId();
+            return;
+        }
+        jdbcTemplate.update("DELETE FROM BOOK WHERE USER_ID <> ?", existingUserId);
+        jdbcTemplate.update("DELETE FROM PERSON WHERE ID <> ?", existingUserId);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.close();
+    }
+
+    UserBookRequest nextRequest() {
+        return BenchmarkContext.userBookRequest(sequence.incrementAndGet(), booksPerUser);
+    }
+
+    @Benchmark
+    public UserBookResponse createUserWithBooks() {
+        return facade.createUserWithBooks(nextRequest());
+    }
+
+    @Benchmark
+    public UserBookResponse getUserWithBooks() {
+        return facade.getUserWithBooks(existingUserId);
+    }
+
+    @Benchmark
+    public UserBookResponse updateUserWithBooks() {
+        return facade.updateUserWithBooks(updateRequest, existingUserId);
+    }
+
+    @Benchmark
+    public void deleteUserWithBooks(UserToDelete userToDelete) {
+        facade.deleteUserWithBooks(userToDelete.userId);
+    }
+
+    /**
+     * Пользователь с книгами, создаваемый перед каждым вызовом delete-бенчмарка.
+     */
+    @State(Scope.Thread)
+    public static class UserToDelete {
+        Long userId;
+
+        @Setup(Level.Invocation)
+        public void create(UserDataFacadeBenchmark benchmark) {
+            userId = benchmark.facade.createUserWithBooks(benchmark.nextRequest()).getUserId();
+        }
+    }
+}
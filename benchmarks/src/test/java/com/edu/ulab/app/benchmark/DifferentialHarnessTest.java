@@ -0,0 +1,40 @@
+package com.edu.ulab.app.benchmark;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Сравнение реализаций сервисов на случайных последовательностях {@link DifferentialHarness}.
+ */
+@DisplayName("Testing service implementations against each other.")
+public class DifferentialHarnessTest {
+
+    private static ConfigurableApplicationContext context;
+
+    @BeforeAll
+    static void startContext() {
+        context = BenchmarkContext.start();
+    }
+
+    @AfterAll
+    static void closeContext() {
+        context.close();
+    }
+
+    @ParameterizedTest(name = "seed {0}")
+    @ValueSource(longs = {1, 42, 2026})
+    @DisplayName("Случайная последовательность операций. Результаты JPA, JdbcTemplate и хранилища должны совпадать.")
+    void sameResults_Test(long seed) {
+        DifferentialHarness.Report report = new DifferentialHarness(context).run(seed, 500);
+
+        assertEquals(List.of(), report.mismatches());
+    }
+}
@@ -0,0 +1,47 @@
+package com.edu.ulab.app.benchmark;
+
+import com.edu.ulab.app.config.RepositoryIndexChecker;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import javax.persistence.EntityManagerFactory;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Тестирование столбцов поиска {@link RepositoryIndexChecker}, выведенных из запросов репозиториев.
+ */
+@DisplayName("Testing repository index checker.")
+public class RepositoryIndexCheckerTest {
+
+    private static ConfigurableApplicationContext context;
+
+    @BeforeAll
+    static void startContext() {
+        context = BenchmarkContext.start();
+    }
+
+    @AfterAll
+    static void closeContext() {
+        context.close();
+    }
+
+    @Test
+    @DisplayName("Столбцы поиска. Первичные ключи, первые условия WHERE и внешний ключ соединения книг.")
+    void lookupColumns_Test() {
+        //the checker is switched off in the benchmark profile, pg_catalog does not exist in H2
+        RepositoryIndexChecker checker = new RepositoryIndexChecker(context.getBean(JdbcTemplate.class),
+                context.getBean(EntityManagerFactory.class), context);
+
+        assertEquals(Map.of(
+                        "ulab_edu.person", Set.of("id"),
+                        "ulab_edu.book", Set.of("id", "user_id")),
+                checker.lookupColumns());
+    }
+}
@@ -0,0 +1,230 @@
+package com.edu.ulab.app.benchmark;
+
+import com.edu.ulab.app.dto.BookDto;
+import com.edu.ulab.app.dto.UserDto;
+import com.edu.ulab.app.entity.Book;
+import com.edu.ulab.app.entity.Person;
+import com.edu.ulab.app.exception.NotFoundException;
+import com.edu.ulab.app.facade.UserDataFacade;
+import com.edu.ulab.app.service.BookService;
+import com.edu.ulab.app.service.UserService;
+import com.edu.ulab.app.service.bulk.BookBulkImport;
+import com.edu.ulab.app.service.bulk.BookImportFormat;
+import com.edu.ulab.app.service.writebehind.BookWriteBehind;
+import com.edu.ulab.app.web.response.UserBookResponse;
+import com.github.benmanes.caffeine.jcache.configuration.CaffeineConfiguration;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.hibernate.Cache;
+import org.hibernate.SessionFactory;
+import org.hibernate.cache.CacheException;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import javax.cache.CacheManager;
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.OptionalLong;
+import java.util.concurrent.TimeUnit;
+
+import static com.edu.ulab.app.web.constant.CacheConstant.BOOK_REGION;
+import static com.edu.ulab.app.web.constant.CacheConstant.BOOKS_BY_USER_REGION;
+import static com.edu.ulab.app.web.constant.CacheConstant.PERSON_BOOKS_REGION;
+import static com.edu.ulab.app.web.constant.CacheConstant.PERSON_REGION;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Тестирование кэша второго уровня Hibernate на встроенной базе: регионы, сброс после записей мимо Hibernate
+ * и точечный сброс после записей JPA-сервисов.
+ */
+@DisplayName("Testing second-level cache.")
+public class SecondLevelCacheTest {
+
+    private static final String PERSON_BOOKS_ROLE = Person.class.getName() + ".bookSet";
+
+    private static ConfigurableApplicationContext context;
+
+    @BeforeAll
+    static void startContext() {
+        context = BenchmarkContext.start("hibernate-cache.enabled=true", "user-data-facade.write-behind.enabled=true");
+    }
+
+    @AfterAll
+    static void closeContext() {
+        context.close();
+    }
+
+    @Test
+    @DisplayName("Регионы создаются с размером из hibernate-cache.regions, попадания видны в метриках.")
+    void regions_Test() {
+        for (String region : List.of(PERSON_REGION, BOOK_REGION, PERSON_BOOKS_REGION, BOOKS_BY_USER_REGION)) {
+            CaffeineConfiguration<Object, Object> configuration = configuration(region);
+            assertTrue(configuration.getMaximumSize().isPresent(), region);
+            assertTrue(configuration.isStatisticsEnabled(), region);
+        }
+        assertEquals(OptionalLong.of(10000), configuration(PERSON_REGION).getMaximumSize());
+
+        Long userId = createUser().getUserId();
+        loadUserWithBooks(userId);
+        loadUserWithBooks(userId);
+        double hits = context.getBean(MeterRegistry.class).get("cache.gets")
+                .tag("cache", PERSON_REGION)
+                .tag("result", "hit")
+                .functionCounter()
+                .count();
+        assertTrue(hits > 0);
+    }
+
+    @Test
+    @DisplayName("Региона нет в настройках. Приложение не запускается.")
+    void missingRegion_Test() {
+        //every region name gets a prefix that hibernate-cache.regions does not have
+        Exception exception = assertThrows(Exception.class, () -> BenchmarkContext.start(
+                "hibernate-cache.enabled=true",
+                "spring.jpa.properties.hibernate.cache.region_prefix=missing").close());
+
+        Throwable rootCause = exception;
+        while (rootCause.getCause() != null) {
+            rootCause = rootCause.getCause();
+        }
+        assertInstanceOf(CacheException.class, rootCause);
+        assertTrue(rootCause.getMessage().contains("[missing."), rootCause.getMessage());
+    }
+
+    @Test
+    @DisplayName("Обновление пользователя через JdbcTemplate. Пользователь сбрасывается из кэша.")
+    void evictAfterTemplateUpdate_Test() {
+        Long userId = createUser().getUserId();
+        loadUserWithBooks(userId);
+        assertTrue(cache().containsEntity(Person.class, userId));
+
+        UserDto userDto = new UserDto();
+        userDto.setId(userId);
+        userDto.setFullName("Updated User");
+        userDto.setTitle("reader");
+        userDto.setAge(31);
+        context.getBean("userServiceImplTemplate", UserService.class).updateUser(userDto);
+
+        assertFalse(cache().containsEntity(Person.class, userId));
+        assertEquals("Updated User", loadUserWithBooks(userId).getFullName());
+    }
+
+    @Test
+    @DisplayName("Импорт книг. Списки книг сбрасываются из кэша.")
+    void evictAfterBulkImport_Test() {
+        Long userId = createUser().getUserId();
+        loadUserWithBooks(userId);
+        context.getBean("bookServiceImpl", BookService.class).getAllByUserId(userId);
+        assertTrue(cache().containsCollection(PERSON_BOOKS_ROLE, userId));
+        assertTrue(hibernateCacheManager().getCache(BOOKS_BY_USER_REGION, Object.class, Object.class).iterator().hasNext());
+
+        String csv = "title,author,page_count,user_id\n"
+                + "Dead souls,Nikolai Gogol,352," + userId + "\n";
+        context.getBean(BookBulkImport.class).importBooks(
+                new ByteArrayInputStream(csv.getBytes(StandardCharsets.UTF_8)), BookImportFormat.CSV);
+
+        assertFalse(cache().containsCollection(PERSON_BOOKS_ROLE, userId));
+        assertFalse(hibernateCacheManager().getCache(BOOKS_BY_USER_REGION, Object.class, Object.class).iterator().hasNext());
+        assertEquals(3, loadUserWithBooks(userId).getBookSet().size());
+    }
+
+    @Test
+    @DisplayName("Отложенная запись книг. Список книг пользователя сбрасывается из кэша.")
+    void evictAfterWriteBehind_Test() throws Exception {
+        Long userId = createUser().getUserId();
+        loadUserWithBooks(userId);
+        assertTrue(cache().containsCollection(PERSON_BOOKS_ROLE, userId));
+
+        BookDto bookDto = BookDto.builder()
+                .userId(userId)
+                .title("Dead souls")
+                .author("Nikolai Gogol")
+                .pageCount(352)
+                .build();
+        context.getBean(BookWriteBehind.class).enqueue(List.of(bookDto)).get(5, TimeUnit.SECONDS);
+
+        assertFalse(cache().containsCollection(PERSON_BOOKS_ROLE, userId));
+        assertEquals(3, loadUserWithBooks(userId).getBookSet().size());
+    }
+
+    @Test
+    @DisplayName("Перенос книги другому пользователю через JPA. Сбрасываются книга и списки книг обоих пользователей.")
+    void evictAfterJpaBookUpdate_Test() {
+        UserBookResponse from = createUser();
+        Long toUserId = createUser().getUserId();
+        loadUserWithBooks(from.getUserId());
+        loadUserWithBooks(toUserId);
+        Long movedBookId = from.getBooksIdList().get(0);
+        Long keptBookId = from.getBooksIdList().get(1);
+
+        BookService bookService = context.getBean("bookServiceImpl", BookService.class);
+        BookDto bookDto = bookService.getBookById(movedBookId);
+        bookDto.setUserId(toUserId);
+        bookService.updateBook(bookDto);
+
+        assertTrue(cache().containsEntity(Book.class, keptBookId));
+        assertTrue(cache().containsEntity(Person.class, from.getUserId()));
+        assertTrue(cache().containsEntity(Person.class, toUserId));
+        //entries written by Hibernate stay as soft locks until they expire, the lists are checked by reloading
+        assertEquals(1, loadUserWithBooks(from.getUserId()).getBookSet().size());
+        assertEquals(3, loadUserWithBooks(toUserId).getBookSet().size());
+    }
+
+    @Test
+    @DisplayName("Удаление пользователя с книгами через JPA. Остальные пользователи и книги остаются в кэше.")
+    void evictAfterJpaDelete_Test() {
+        UserBookResponse deleted = createUser();
+        UserBookResponse kept = createUser();
+        loadUserWithBooks(deleted.getUserId());
+        loadUserWithBooks(kept.getUserId());
+
+        BenchmarkContext.facade(context, BenchmarkContext.JPA).deleteUserWithBooks(deleted.getUserId());
+
+        assertThrows(NotFoundException.class, () -> context.getBean("userServiceImpl", UserService.class)
+                .getUserById(deleted.getUserId()));
+        assertThrows(NotFoundException.class, () -> context.getBean("bookServiceImpl", BookService.class)
+                .getBookById(deleted.getBooksIdList().get(0)));
+        assertTrue(cache().containsEntity(Person.class, kept.getUserId()));
+        assertTrue(cache().containsEntity(Book.class, kept.getBooksIdList().get(0)));
+        assertTrue(cache().containsCollection(PERSON_BOOKS_ROLE, kept.getUserId()));
+    }
+
+    private static UserBookResponse createUser() {
+        UserDataFacade facade = BenchmarkContext.facade(context, BenchmarkContext.JPA);
+        return facade.createUserWithBooks(BenchmarkContext.userBookRequest(1, 2));
+    }
+
+    /**
+     * Читает пользователя и его книги в отдельной сессии, после чего они лежат в кэше.
+     */
+    private static Person loadUserWithBooks(Long userId) {
+        EntityManager entityManager = context.getBean(EntityManagerFactory.class).createEntityManager();
+        try {
+            Person person = entityManager.find(Person.class, userId);
+            person.getBookSet().size();
+            return person;
+        } finally {
+            entityManager.close();
+        }
+    }
+
+    private static CacheManager hibernateCacheManager() {
+        return context.getBean("hibernateCacheManager", CacheManager.class);
+    }
+
+    //regions are created with Object keys and values, the class literal of the configuration is raw
+    @SuppressWarnings("unchecked")
+    private static CaffeineConfiguration<Object, Object> configuration(String region) {
+        return hibernateCacheManager().getCache(region, Object.class, Object.class)
+                .getConfiguration(CaffeineConfiguration.class);
+    }
+
+    private static Cache cache() {
+        return context.getBean(EntityManagerFactory.class).unwrap(SessionFactory.class).getCache();
+    }
+}
@@ -0,0 +1,97 @@
+package com.edu.ulab.app.benchmark;
+
+import com.edu.ulab.app.dto.BookDto;
+import com.edu.ulab.app.exception.NotFoundException;
+import com.edu.ulab.app.facade.UserDataFacade;
+import com.edu.ulab.app.service.BookService;
+import com.edu.ulab.app.web.etag.UserETag;
+import com.edu.ulab.app.web.response.UserBookResponse;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import static com.edu.ulab.app.web.constant.CacheConstant.USERS_WITH_BOOKS_CACHE;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Тестирование транзакционных методов {@link UserDataFacade} на встроенной базе.
+ */
+@DisplayName("Testing user data facade transactions.")
+public class UserDataFacadeTransactionTest {
+
+    private static ConfigurableApplicationContext context;
+
+    @BeforeAll
+    static void startContext() {
+        context = BenchmarkContext.start();
+    }
+
+    @AfterAll
+    static void closeContext() {
+        context.close();
+    }
+
+    @ParameterizedTest(name = "{0}")
+    @ValueSource(strings = {BenchmarkContext.JPA, BenchmarkContext.TEMPLATE})
+    @DisplayName("Удаление несуществующего пользователя. Транзакция фасада фиксируется без ошибки.")
+    void deleteNotExistUser_Test(String implementation) {
+        UserDataFacade facade = BenchmarkContext.facade(context, implementation);
+
+        assertDoesNotThrow(() -> facade.deleteUserWithBooks(Long.MAX_VALUE));
+    }
+
+    @ParameterizedTest(name = "{0}")
+    @ValueSource(strings = {BenchmarkContext.JPA, BenchmarkContext.TEMPLATE})
+    @DisplayName("Удаление пользователя с книгами. Пользователь и книги удаляются.")
+    void deleteUserWithBooks_Test(String implementation) {
+        UserDataFacade facade = BenchmarkContext.facade(context, implementation);
+        UserBookResponse user = facade.createUserWithBooks(BenchmarkContext.userBookRequest(1, 2));
+
+        facade.deleteUserWithBooks(user.getUserId());
+
+        assertThrows(NotFoundException.class, () -> facade.getUserWithBooks(user.getUserId()));
+    }
+
+    @ParameterizedTest(name = "{0}")
+    @ValueSource(strings = {BenchmarkContext.JPA, BenchmarkContext.TEMPLATE})
+    @DisplayName("ETag по версии пользователя. Совпадает с версией ответа, меняется при добавлении, переносе и удалении книги.")
+    void getUserWithBooksETag_Test(String implementation) {
+        UserDataFacade facade = BenchmarkContext.facade(context, implementation);
+        BookService bookService = context.getBean(BenchmarkContext.JPA.equals(implementation)
+                ? "bookServiceImpl" : "bookServiceImplTemplate", BookService.class);
+        Cache cache = context.getBean(CacheManager.class).getCache(USERS_WITH_BOOKS_CACHE);
+        UserBookResponse user = facade.createUserWithBooks(BenchmarkContext.userBookRequest(2, 3));
+        UserBookResponse other = facade.createUserWithBooks(BenchmarkContext.userBookRequest(3, 0));
+        cache.evict(user.getUserId());
+
+        String eTag = facade.getUserWithBooksETag(user.getUserId());
+        assertEquals(UserETag.of(user.getVersion()), eTag);
+        assertEquals(UserETag.of(facade.getUserWithBooks(user.getUserId()).getVersion()), eTag);
+        assertEquals(eTag, facade.getUserWithBooksETag(user.getUserId()));
+
+        BookDto book = bookService.createBook(BookDto.builder()
+                .userId(user.getUserId())
+                .title("title")
+                .author("author")
+                .pageCount(100)
+                .build());
+        String added = facade.getUserWithBooksETag(user.getUserId());
+        assertNotEquals(eTag, added);
+
+        book.setUserId(other.getUserId());
+        bookService.updateBook(book);
+        String moved = facade.getUserWithBooksETag(user.getUserId());
+        assertNotEquals(added, moved);
+        assertNotEquals(UserETag.of(other.getVersion()), facade.getUserWithBooksETag(other.getUserId()));
+
+        bookService.deleteBookById(user.getBooksIdList().get(0));
+        assertNotEquals(moved, facade.getUserWithBooksETag(user.getUserId()));
+        assertEquals(UserETag.of(facade.getUserWithBooks(user.getUserId()).getVersion()),
+                facade.getUserWithBooksETag(user.getUserId()));
+    }
+}